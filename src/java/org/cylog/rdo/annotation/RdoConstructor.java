@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the public constructor an immutable DTO is created with. Every row is then
+ * read into the constructor's parameters and the DTO is created with a single
+ * constructor call, instead of a default construction followed by the setters.
+ *
+ * The names are matched to the columns with the same rules as setters, i.e. both
+ * "integerValue" and "INTEGER_VALUE" match the column INTEGER_VALUE. Parameters
+ * without a matching column are passed NULL, or the default of a primitive.
+ *
+ * Java records are mapped through their canonical constructor without the annotation.
+ *
+ * @author Kostas Symeonidis
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.CONSTRUCTOR)
+public @interface RdoConstructor {
+
+    /**
+     * The property or column names of the constructor parameters, in order
+     */
+    String[] value();
+}
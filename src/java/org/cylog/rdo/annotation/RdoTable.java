@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a DTO class for build-time mapper generation. For every table named here
+ * the {@link org.cylog.rdo.compiler.RdoMapperProcessor} generates a mapper from the
+ * table's description in the schema file, which an RdoDao with useGeneratedMappers
+ * set then uses instead of building the mapper through reflection, as long as the
+ * table in the database still has the described columns.
+ *
+ * The annotation is optional, DTOs without it are mapped at runtime as before.
+ *
+ * @author Kostas Symeonidis
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface RdoTable {
+
+    /**
+     * The names of the tables this class is read from, as described in the schema file
+     */
+    String[] value();
+}
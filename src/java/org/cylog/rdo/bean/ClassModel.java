@@ -31,6 +31,11 @@ public class ClassModel {
 
     Map<String, MethodModel> methods;
 
+    /**
+     * The constructor the class is created with, NULL for the default constructor
+     */
+    ConstructorModel constructorModel;
+
     // ---- Constructors ------------------------------------------------------
 
     public ClassModel(Class c) {
@@ -64,13 +69,33 @@ public class ClassModel {
         return this.methods.get(methodName);
     }
 
+    /**
+     * Returns TRUE if instances are created with the parameters of the constructorModel
+     * instead of the default constructor and setters
+     */
+    public boolean isConstructorMapped() {
+        return this.constructorModel != null;
+    }
+
     public Object createNewInstance() throws InstantiationException, IllegalAccessException {
         return this.internalClass.newInstance();
     }
 
     // ---- Bean Properties ---------------------------------------------------
 
+    public Class getInternalClass() {
+        return internalClass;
+    }
+
     public String getClassName() {
         return className;
     }
+
+    public ConstructorModel getConstructorModel() {
+        return constructorModel;
+    }
+
+    public void setConstructorModel(ConstructorModel constructorModel) {
+        this.constructorModel = constructorModel;
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.bean;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.cylog.rdo.exception.ModelNotFoundException;
+import org.cylog.rdo.exception.ModelNotSupportedException;
+import org.cylog.rdo.util.FieldNameUtil;
+import org.cylog.rdo.util.ReflectionUtil;
+
+/**
+ * Represents the constructor an immutable class is created with. Each parameter is
+ * modelled as a MethodModel named like the setter of the parameter's name, so that
+ * the columns are matched to the parameters with the same rules as to setters.
+ *
+ * The Constructor itself is resolved lazily from the owner class and the parameter
+ * types.
+ *
+ * @author Kostas Symeonidis
+ */
+public class ConstructorModel {
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final Class<?> ownerClass;
+    private final Class[] parameterTypes;
+    private final List<MethodModel> parameters;
+
+    /**
+     * The argument of each parameter without a value, the default of primitives
+     */
+    private final Object[] defaultArguments;
+
+    private volatile Constructor<?> constructor;
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * @param ownerClass     the class declaring the public constructor
+     * @param parameterNames the property or column names of the parameters
+     * @param parameterTypes the types of the parameters
+     *
+     * @throws ModelNotSupportedException if a parameter type is not supported
+     */
+    public ConstructorModel(Class ownerClass, String[] parameterNames, Class[] parameterTypes) {
+        if (parameterNames.length != parameterTypes.length) {
+            throw new ModelNotSupportedException(
+                    "Constructor of " + ownerClass.getName() + " has " + parameterTypes.length +
+                    " parameters but " + parameterNames.length + " names");
+        }
+
+        this.ownerClass = ownerClass;
+        this.parameterTypes = parameterTypes.clone();
+        this.parameters = new ArrayList<MethodModel>(parameterTypes.length);
+        this.defaultArguments = new Object[parameterTypes.length];
+
+        for (int i = 0; i < parameterTypes.length; i++) {
+            RdoDataType dataType = ReflectionUtil.getDataType(parameterTypes[i]);
+            if (dataType == null) {
+                throw new ModelNotSupportedException(
+                        "RdoDataType " + parameterTypes[i] + " not supported for parameter " +
+                        parameterNames[i] + " of the constructor of " + ownerClass.getName());
+            }
+
+            String name = "set" + FieldNameUtil.firstUpper(
+                    FieldNameUtil.camelCase(parameterNames[i]));
+            parameters.add(new MethodModel(ownerClass, name, parameterTypes[i], dataType));
+            defaultArguments[i] = ReflectionUtil.getDefaultValue(parameterTypes[i]);
+        }
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Returns the parameter matching the given setter name, or NULL if there is none
+     */
+    public MethodModel getParameterWithName(String setterName) {
+        for (MethodModel p : parameters) {
+            if (p.getMethodName().equals(setterName)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the index of the given parameter, or -1 if it is not a parameter of this
+     * constructor
+     */
+    public int getParameterIndex(MethodModel parameter) {
+        for (int i = 0; i < parameters.size(); i++) {
+            if (parameters.get(i) == parameter) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a new array of arguments, set to the defaults of the parameters
+     */
+    public Object[] createArguments() {
+        return defaultArguments.clone();
+    }
+
+    public Object createNewInstance(Object[] arguments)
+            throws InstantiationException, IllegalAccessException, InvocationTargetException {
+        return getConstructor().newInstance(arguments);
+    }
+
+    /**
+     * Returns the Constructor, resolving it on first use
+     *
+     * @throws ModelNotFoundException if the class has no such public constructor
+     */
+    public Constructor<?> getConstructor() {
+        Constructor<?> c = this.constructor;
+        if (c == null) {
+            try {
+                c = ownerClass.getConstructor(parameterTypes);
+            } catch (NoSuchMethodException nsme) {
+                throw new ModelNotFoundException(
+                        "Cannot find public constructor of " + ownerClass.getName());
+            }
+            this.constructor = c;
+        }
+        return c;
+    }
+
+    // ---- Bean Properties (Read-Only) ---------------------------------------
+
+    public Class getOwnerClass() {
+        return ownerClass;
+    }
+
+    public List<MethodModel> getParameters() {
+        return Collections.unmodifiableList(parameters);
+    }
+}
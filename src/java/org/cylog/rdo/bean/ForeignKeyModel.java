@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.bean;
+
+import java.util.Arrays;
+
+/**
+ * A foreign key, as retrieved from the database metadata: the columns of the foreign
+ * (child) table that reference the columns of the primary (parent) table, in key order.
+ *
+ * @author Kostas Symeonidis
+ */
+public class ForeignKeyModel {
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final String name;
+    private final String primaryTable;
+    private final String[] primaryColumns;
+    private final String foreignTable;
+    private final String[] foreignColumns;
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * @param name           the name of the foreign key, NULL if the database has none
+     * @param primaryColumns the referenced columns of the primary table, in key order
+     * @param foreignColumns the referencing columns of the foreign table, in key order
+     */
+    public ForeignKeyModel(String name, String primaryTable, String[] primaryColumns,
+                           String foreignTable, String[] foreignColumns) {
+        this.name = name;
+        this.primaryTable = primaryTable;
+        this.primaryColumns = primaryColumns;
+        this.foreignTable = foreignTable;
+        this.foreignColumns = foreignColumns;
+    }
+
+    // ---- String representation ---------------------------------------------
+
+    @Override
+    public String toString() {
+        return "ForeignKeyModel{'" + name + '\'' +
+               ", " + foreignTable + Arrays.asList(foreignColumns) +
+               " -> " + primaryTable + Arrays.asList(primaryColumns) +
+               '}';
+    }
+
+    // ---- Bean Properties (Read-Only) ---------------------------------------
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPrimaryTable() {
+        return primaryTable;
+    }
+
+    public String[] getPrimaryColumns() {
+        return primaryColumns;
+    }
+
+    public String getForeignTable() {
+        return foreignTable;
+    }
+
+    public String[] getForeignColumns() {
+        return foreignColumns;
+    }
+}
@@ -17,14 +17,23 @@ package org.cylog.rdo.bean;
 
 import java.lang.reflect.Method;
 
+import org.cylog.rdo.exception.ModelNotFoundException;
+
 /**
+ * Represents a setter method of a class. The Method itself may be resolved
+ * lazily from the owner class, the method name and the parameter type, so that
+ * mappers generated at build time do not need reflection until it is used.
+ *
  * @author Kostas Symeonidis
  */
 public class MethodModel {
 
     // ---- Member Variables --------------------------------------------------
 
-    private final Method method;
+    private final Class<?> ownerClass;
+    private final String methodName;
+    private final Class parameterType;
+    private volatile Method method;
     private final RdoDataType dataType;
     private final Class enumClass;
     private final boolean isPrimitive;
@@ -32,6 +41,9 @@ public class MethodModel {
     // ---- Constructors ------------------------------------------------------
 
     public MethodModel(Method method, RdoDataType dataType, boolean isPrimitive) {
+        this.ownerClass = method.getDeclaringClass();
+        this.methodName = method.getName();
+        this.parameterType = method.getParameterTypes()[0];
         this.method = method;
         this.dataType = dataType;
         this.enumClass = null;
@@ -39,17 +51,39 @@ public class MethodModel {
     }
 
     public MethodModel(Method method, RdoDataType dataType, Class enumClass) {
+        this.ownerClass = method.getDeclaringClass();
+        this.methodName = method.getName();
+        this.parameterType = method.getParameterTypes()[0];
         this.method = method;
         this.dataType = dataType;
         this.enumClass = enumClass;
         this.isPrimitive = false;
     }
 
+    /**
+     * Constructs a MethodModel whose Method is resolved on first use
+     *
+     * @param ownerClass    the class declaring or inheriting the public method
+     * @param methodName    the name of the method
+     * @param parameterType the type of the single parameter of the method
+     * @param dataType      the RdoDataType of the parameter
+     */
+    public MethodModel(Class ownerClass, String methodName, Class parameterType,
+                       RdoDataType dataType) {
+        this.ownerClass = ownerClass;
+        this.methodName = methodName;
+        this.parameterType = parameterType;
+        this.method = null;
+        this.dataType = dataType;
+        this.enumClass = parameterType.isEnum() ? parameterType : null;
+        this.isPrimitive = parameterType.isPrimitive();
+    }
+
     // ---- String representation ---------------------------------------------
 
     @Override
     public String toString() {
-        return "MethodModel{'" + method.getName() + '\'' +
+        return "MethodModel{'" + methodName + '\'' +
                ", dataType=" + dataType +
                (enumClass == null ?
                 ", isPrimitive=" + isPrimitive :
@@ -60,13 +94,31 @@ public class MethodModel {
     // ---- Public methods ----------------------------------------------------
 
     public String getMethodName() {
-        return this.method.getName();
+        return this.methodName;
+    }
+
+    /**
+     * Returns the setter Method, resolving it from the owner class if needed
+     */
+    public Method getMethod() {
+        Method m = this.method;
+        if (m == null) {
+            try {
+                m = ownerClass.getMethod(methodName, parameterType);
+                this.method = m;
+            } catch (NoSuchMethodException nsme) {
+                throw new ModelNotFoundException(
+                        "Cannot find method " + methodName + "(" + parameterType.getName() +
+                        ") in class " + ownerClass.getName());
+            }
+        }
+        return m;
     }
 
     // ---- Bean Properties ---------------------------------------------------
 
-    public Method getMethod() {
-        return this.method;
+    public Class getParameterType() {
+        return parameterType;
     }
 
     public RdoDataType getDataType() {
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.bean;
+
+import org.cylog.rdo.exception.DataExtractionException;
+
+/**
+ * What happens when a SQL NULL is read from a column mapped to a setter with a
+ * primitive parameter, i.e. setIntValue(int).
+ *
+ * @author Kostas Symeonidis
+ */
+public enum PrimitiveNullPolicy {
+
+    /**
+     * The setter is invoked with the primitive default (0, 0.0, false or '\0'),
+     * the same value JDBC returns for a SQL NULL
+     */
+    ZERO,
+
+    /**
+     * The setter is not invoked, so the DTO keeps its current value
+     */
+    SKIP,
+
+    /**
+     * The extraction fails with a DataExtractionException
+     */
+    FAIL;
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Called when a SQL NULL was read for a primitive setter.
+     *
+     * @param columnName the column that was NULL
+     *
+     * @return TRUE if the setter should be invoked with the primitive default, FALSE if the
+     *         setter should not be invoked
+     *
+     * @throws DataExtractionException if the policy is FAIL
+     */
+    public boolean assignDefault(String columnName) {
+        switch (this) {
+            case ZERO:
+                return true;
+            case SKIP:
+                return false;
+            default:
+                throw new DataExtractionException(
+                        "NULL value in column " + columnName + " cannot be set to a primitive");
+        }
+    }
+}
@@ -15,9 +15,20 @@
  */
 package org.cylog.rdo.bean;
 
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.cylog.rdo.dao.extractor.RdoRowReader;
+import org.cylog.rdo.exception.ModelNotSupportedException;
 import org.cylog.rdo.logger.ClassLogger;
 import org.cylog.rdo.util.FieldNameUtil;
 
@@ -33,6 +44,18 @@ public class RdoMapper {
 
     public static ClassLogger log = new ClassLogger();
 
+    // ---- Constants ---------------------------------------------------------
+
+    /**
+     * The maximum number of custom SQL statements whose column indexes are cached
+     */
+    public static final int MAX_CACHED_STATEMENTS = 256;
+
+    /**
+     * The maximum number of where clauses whose SELECT statements are cached
+     */
+    public static final int MAX_CACHED_WHERE_CLAUSES = 128;
+
     // ---- Member Variables --------------------------------------------------
 
     private final ClassModel classModel;
@@ -40,6 +63,40 @@ public class RdoMapper {
 
     private final List<RdoOperation> readOperations;
 
+    /**
+     * The result set column indexes of the readOperations for the statements built by
+     * this mapper, which select all the table columns in their physical order
+     */
+    private final int[] tableColumnIndexes;
+
+    /**
+     * The result set column indexes of the readOperations for custom SQL statements,
+     * resolved from the ResultSetMetaData on first use and keyed by the SQL
+     */
+    private final ConcurrentMap<String, int[]> sqlColumnIndexes;
+
+    /**
+     * The SELECT statement of the table for each number of primary key columns, built on
+     * first use
+     */
+    private final AtomicReferenceArray<String> keyStatements;
+
+    /**
+     * The SELECT statements of the table for the most recently used where clauses
+     */
+    private final Map<String, String> whereStatements;
+
+    /**
+     * The constructor parameter index of each of the readOperations, NULL if the class
+     * is not created through a constructor with parameters
+     */
+    private final int[] constructorArguments;
+
+    /**
+     * The compiled row reader of this mapper, NULL if rows are read through reflection
+     */
+    private volatile RdoRowReader rowReader;
+
     // ---- Constructors ------------------------------------------------------
 
     /**
@@ -51,24 +108,137 @@ public class RdoMapper {
         this.classModel = classModel;
         this.tableModel = tableModel;
         this.readOperations = new ArrayList<RdoOperation>();
+        this.sqlColumnIndexes = new ConcurrentHashMap<String, int[]>();
+        this.keyStatements = createKeyStatements();
+        this.whereStatements = createWhereStatements();
 
         init();
+        this.tableColumnIndexes = createTableColumnIndexes();
+        this.constructorArguments = createConstructorArguments();
+    }
+
+    /**
+     * Constructs an RdoMapper from a list of readOperations that has already been
+     * matched, i.e. by a mapper generated at build time. No name matching is done.
+     */
+    public RdoMapper(ClassModel classModel, TableModel tableModel,
+                     List<RdoOperation> readOperations) {
+        this.classModel = classModel;
+        this.tableModel = tableModel;
+        this.readOperations = readOperations;
+        this.sqlColumnIndexes = new ConcurrentHashMap<String, int[]>();
+        this.keyStatements = createKeyStatements();
+        this.whereStatements = createWhereStatements();
+        this.tableColumnIndexes = createTableColumnIndexes();
+        this.constructorArguments = createConstructorArguments();
     }
 
     // ---- Public methods ----------------------------------------------------
 
+    /**
+     * Returns the SELECT statement of the table for the number of the given keys. The
+     * statement is built once per number of keys, so the same String instance is
+     * returned for every call with as many keys.
+     */
     public String getSqlStatement(Object[] keys) {
-        return this.tableModel.getSqlStatement(keys);
+        int arity = (keys == null) ? 0 : keys.length;
+        if (arity >= keyStatements.length()) {
+            // more keys than columns, let the table model report it
+            return this.tableModel.getSqlStatement(keys);
+        }
+
+        String sql = keyStatements.get(arity);
+        if (sql == null) {
+            keyStatements.compareAndSet(arity, null, this.tableModel.getSqlStatement(keys));
+            sql = keyStatements.get(arity);
+        }
+        return sql;
     }
 
+    /**
+     * Returns the SELECT statement of the table with the given where clause. The
+     * statements of the most recently used where clauses are kept, so the same String
+     * instance is returned while a where clause stays in use.
+     */
     public String getSqlStatementWithWhereClause(String whereClause) {
-        return this.tableModel.getSqlStatementWithWhereClause(whereClause);
+        if (whereClause == null) {
+            return getSqlStatement(null);
+        }
+
+        String sql = whereStatements.get(whereClause);
+        if (sql == null) {
+            sql = this.tableModel.getSqlStatementWithWhereClause(whereClause);
+            synchronized (whereStatements) {
+                String existing = whereStatements.get(whereClause);
+                if (existing != null) {
+                    sql = existing;
+                } else {
+                    whereStatements.put(whereClause, sql);
+                }
+            }
+        }
+        return sql;
+    }
+
+    /**
+     * Returns TRUE if the DTOs are created with a single call to the constructor of the
+     * classModel's ConstructorModel, with the read operations as its arguments
+     */
+    public boolean isConstructorMapped() {
+        return constructorArguments != null;
+    }
+
+    /**
+     * Returns the constructor parameter index of each read operation, NULL if the DTOs
+     * are created with the default constructor and populated with setters
+     */
+    public int[] getConstructorArguments() {
+        return constructorArguments;
+    }
+
+    /**
+     * Returns the result set column index of each read operation for the statements
+     * built by this mapper, 0 for any column not in the result set.
+     */
+    public int[] getTableColumnIndexes() {
+        return tableColumnIndexes;
+    }
+
+    /**
+     * Returns the result set column index of each read operation for the given SQL
+     * statement, 0 for any column not in the result set. The indexes are resolved from
+     * the column labels of the metadata the first time a statement is seen.
+     */
+    public int[] getColumnIndexes(String sql, ResultSetMetaData metaData) throws SQLException {
+        int[] indexes = sqlColumnIndexes.get(sql);
+        if (indexes == null) {
+            indexes = createColumnIndexes(metaData);
+            if (sqlColumnIndexes.size() < MAX_CACHED_STATEMENTS) {
+                sqlColumnIndexes.putIfAbsent(sql, indexes);
+            }
+        }
+        return indexes;
     }
 
     // ---- Private methods ---------------------------------------------------
 
+    private AtomicReferenceArray<String> createKeyStatements() {
+        return new AtomicReferenceArray<String>(this.tableModel.getColumns().size() + 1);
+    }
+
+    private Map<String, String> createWhereStatements() {
+        return Collections.synchronizedMap(
+                new LinkedHashMap<String, String>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                        return size() > MAX_CACHED_WHERE_CLAUSES;
+                    }
+                });
+    }
+
     private void init() {
         log.info(" + Initialising RowMapper for class %s and table %s ", classModel, tableModel);
+        ConstructorModel constructorModel = classModel.getConstructorModel();
         for (ColumnModel column : tableModel.getColumns()) {
 
             boolean found = false;
@@ -76,7 +246,9 @@ public class RdoMapper {
                     column.getColumnName())) {
                 log.debug(" ? Check if setter with name " + setterName + " exists");
 
-                MethodModel method = classModel.getMethodWithName(setterName);
+                MethodModel method = (constructorModel != null)
+                                     ? constructorModel.getParameterWithName(setterName)
+                                     : classModel.getMethodWithName(setterName);
                 if (method != null) {
                     if (compatibleTypes(column.getDataType(), method.getDataType())) {
                         log.debug(" + Setter with name " + setterName +
@@ -102,6 +274,53 @@ public class RdoMapper {
         }
     }
 
+    private int[] createConstructorArguments() {
+        ConstructorModel constructorModel = classModel.getConstructorModel();
+        if (constructorModel == null) {
+            return null;
+        }
+
+        int[] arguments = new int[readOperations.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = constructorModel.getParameterIndex(
+                    readOperations.get(i).getMethodModel());
+            if (arguments[i] < 0) {
+                throw new ModelNotSupportedException(
+                        "Operation " + readOperations.get(i) + " is not a parameter of the " +
+                        "constructor of " + classModel.getClassName());
+            }
+        }
+        return arguments;
+    }
+
+    private int[] createTableColumnIndexes() {
+        List<ColumnModel> columns = tableModel.getColumns();
+        int[] indexes = new int[readOperations.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = columns.indexOf(readOperations.get(i).getColumnModel()) + 1;
+        }
+        return indexes;
+    }
+
+    private int[] createColumnIndexes(ResultSetMetaData metaData) throws SQLException {
+        Map<String, Integer> labels = new HashMap<String, Integer>();
+        for (int i = metaData.getColumnCount(); i > 0; i--) {
+            labels.put(metaData.getColumnLabel(i).toUpperCase(), i);
+        }
+
+        int[] indexes = new int[readOperations.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            String columnName = readOperations.get(i).getColumnName();
+            Integer index = labels.get(columnName.toUpperCase());
+            if (index != null) {
+                indexes[i] = index;
+            } else {
+                log.debug(" - Column %s is not in the result set and will not be read", columnName);
+            }
+        }
+        return indexes;
+    }
+
     private boolean compatibleTypes(RdoDataType source, RdoDataType target) {
         if (source.equals(target)) {
             return true;
@@ -141,4 +360,12 @@ public class RdoMapper {
     public List<RdoOperation> getReadOperations() {
         return readOperations;
     }
-}
\ No newline at end of file
+
+    public RdoRowReader getRowReader() {
+        return rowReader;
+    }
+
+    public void setRowReader(RdoRowReader rowReader) {
+        this.rowReader = rowReader;
+    }
+}
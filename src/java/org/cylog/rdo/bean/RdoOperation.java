@@ -18,9 +18,13 @@ package org.cylog.rdo.bean;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 
+import org.cylog.rdo.codec.ValueCodec;
+import org.cylog.rdo.codec.ValueCodecRegistry;
+
 /**
  * Represents an Rdo assignment operation from a database column to a java
- * setter method. Encapsulates a MethodModel and a ColumnModel
+ * setter method. Encapsulates a MethodModel and a ColumnModel, and the ValueCodec
+ * that reads the column for a setter with a non primitive parameter
  *
  * @author Kostas Symeonidis
  */
@@ -31,6 +35,11 @@ public class RdoOperation implements Serializable {
     private final MethodModel methodModel;
     private final ColumnModel columnModel;
 
+    /**
+     * Resolved from the ValueCodecRegistry on first use
+     */
+    private transient volatile ValueCodec codec;
+
     // ---- Constructors ------------------------------------------------------
 
     public RdoOperation(MethodModel methodModel, ColumnModel columnModel) {
@@ -62,6 +71,19 @@ public class RdoOperation implements Serializable {
         return this.columnModel.getColumnName();
     }
 
+    /**
+     * Returns the codec that reads the column for the setter
+     */
+    public ValueCodec getCodec() {
+        ValueCodec c = this.codec;
+        if (c == null) {
+            c = ValueCodecRegistry.getCodec(methodModel.getDataType(),
+                                            methodModel.getParameterType());
+            this.codec = c;
+        }
+        return c;
+    }
+
     // ---- Bean Properties (Read-Only) ---------------------------------------
 
     public MethodModel getMethodModel() {
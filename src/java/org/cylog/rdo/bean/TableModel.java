@@ -30,6 +30,23 @@ public class TableModel {
     private final String tableName;
     private final List<ColumnModel> columns;
 
+    /**
+     * The names of the primary key columns in key order, NULL until they are retrieved
+     */
+    private volatile String[] keyColumns;
+
+    /**
+     * The foreign keys of this table referencing other tables, NULL until they are
+     * retrieved
+     */
+    private volatile List<ForeignKeyModel> importedKeys;
+
+    /**
+     * The foreign keys of other tables referencing this table, NULL until they are
+     * retrieved
+     */
+    private volatile List<ForeignKeyModel> exportedKeys;
+
     // ---- Constructors ------------------------------------------------------
 
     /**
@@ -129,4 +146,40 @@ public class TableModel {
     public List<ColumnModel> getColumns() {
         return columns;
     }
+
+    /**
+     * Returns the names of the primary key columns in key order, NULL if they have not
+     * been retrieved, or an empty array if the table has no primary key
+     */
+    public String[] getKeyColumns() {
+        return keyColumns;
+    }
+
+    public void setKeyColumns(String[] keyColumns) {
+        this.keyColumns = keyColumns;
+    }
+
+    /**
+     * Returns the foreign keys of this table referencing other tables, NULL if they have
+     * not been retrieved
+     */
+    public List<ForeignKeyModel> getImportedKeys() {
+        return importedKeys;
+    }
+
+    public void setImportedKeys(List<ForeignKeyModel> importedKeys) {
+        this.importedKeys = importedKeys;
+    }
+
+    /**
+     * Returns the foreign keys of other tables referencing this table, NULL if they have
+     * not been retrieved
+     */
+    public List<ForeignKeyModel> getExportedKeys() {
+        return exportedKeys;
+    }
+
+    public void setExportedKeys(List<ForeignKeyModel> exportedKeys) {
+        this.exportedKeys = exportedKeys;
+    }
 }
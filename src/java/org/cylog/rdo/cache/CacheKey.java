@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import org.cylog.rdo.bean.RdoMapper;
+
+/**
+ * The key of a DTO read by primary key in the caches: its RdoMapper, compared by
+ * identity, and its key values.
+ *
+ * @author Kostas Symeonidis
+ */
+final class CacheKey {
+
+    // ---- Member Variables --------------------------------------------------
+
+    final RdoMapper mapper;
+    final KeyTuple keys;
+
+    // ---- Constructors ------------------------------------------------------
+
+    CacheKey(RdoMapper mapper, KeyTuple keys) {
+        this.mapper = mapper;
+        this.keys = keys;
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+        CacheKey other = (CacheKey) o;
+        return (mapper == other.mapper) && keys.equals(other.keys);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(mapper) + keys.hashCode();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.logger.ClassLogger;
+
+/**
+ * The tables and mappers seen by a cache: the policy of each table, e.g. its time to
+ * live, and the table, policy and DTO properties of each mapper.
+ *
+ * A cache that shares DTOs returns the cached instances of immutable DTOs, and of all
+ * DTOs if shareInstances is set, and copies the others. A cache that does not share
+ * DTOs reads their values and creates new ones. Either way, a DTO whose class has a
+ * setter without a getter cannot be cached unless it is shared.
+ *
+ * @param <P> the policy of a table, NULL while the table is not cached
+ *
+ * @author Kostas Symeonidis
+ */
+final class CachedTables<P> {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static Log log = new ClassLogger();
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final String cacheName;
+    private final boolean sharing;
+
+    /**
+     * The policy of each table seen, keyed by upper case name
+     */
+    private final ConcurrentMap<String, AtomicReference<P>> policies;
+
+    /**
+     * What is known of each mapper seen, keyed by identity
+     */
+    private final ConcurrentMap<RdoMapper, MapperInfo> mappers;
+
+    private volatile boolean shareInstances = false;
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * @param cacheName the name of the cache, for its warnings
+     * @param sharing   TRUE if the cache may share DTOs instead of copying them
+     */
+    CachedTables(String cacheName, boolean sharing) {
+        this.cacheName = cacheName;
+        this.sharing = sharing;
+        this.policies = new ConcurrentHashMap<String, AtomicReference<P>>();
+        this.mappers = new ConcurrentHashMap<RdoMapper, MapperInfo>();
+    }
+
+    // ---- Package methods ---------------------------------------------------
+
+    /**
+     * Sets the policy of a table, NULL to stop caching it
+     */
+    void setPolicy(String tableName, P policy) {
+        getPolicyRef(tableName).set(policy);
+    }
+
+    MapperInfo getMapperInfo(RdoMapper mapper) {
+        MapperInfo info = mappers.get(mapper);
+        if (info == null) {
+            info = new MapperInfo(mapper);
+            mappers.putIfAbsent(mapper, info);
+        }
+        return info;
+    }
+
+    /**
+     * Returns the mappers seen of the given table, for all the classes mapped to it
+     */
+    List<RdoMapper> getMappers(String tableName) {
+        List<RdoMapper> list = new ArrayList<RdoMapper>();
+        for (MapperInfo info : mappers.values()) {
+            if (info.table.equalsIgnoreCase(tableName)) {
+                list.add(info.mapper);
+            }
+        }
+        return list;
+    }
+
+    boolean isShareInstances() {
+        return shareInstances;
+    }
+
+    void setShareInstances(boolean shareInstances) {
+        this.shareInstances = shareInstances;
+    }
+
+    // ---- Static Package methods --------------------------------------------
+
+    static boolean isOfTable(RdoMapper mapper, String tableName) {
+        return mapper.getTableModel().getTableName().equalsIgnoreCase(tableName);
+    }
+
+    /**
+     * Returns the ratio of the given hits to all reads, 0 if there have been none
+     */
+    static double getHitRate(AtomicLong hits, AtomicLong misses) {
+        long h = hits.get();
+        long total = h + misses.get();
+        return (total == 0) ? 0 : (double) h / total;
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private AtomicReference<P> getPolicyRef(String tableName) {
+        String table = tableName.toUpperCase();
+        AtomicReference<P> ref = policies.get(table);
+        if (ref == null) {
+            AtomicReference<P> newRef = new AtomicReference<P>();
+            ref = policies.putIfAbsent(table, newRef);
+            if (ref == null) {
+                ref = newRef;
+            }
+        }
+        return ref;
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    /**
+     * The table, policy and properties of the DTOs of one mapper
+     */
+    final class MapperInfo {
+
+        final RdoMapper mapper;
+        final String table;
+        private final AtomicReference<P> policy;
+
+        /**
+         * The properties and layout of the DTOs, found on first use
+         */
+        private volatile DtoProperties properties;
+        private volatile RowLayout layout;
+
+        private MapperInfo(RdoMapper mapper) {
+            this.mapper = mapper;
+            this.table = mapper.getTableModel().getTableName();
+            this.policy = getPolicyRef(table);
+        }
+
+        /**
+         * Returns the current policy of the mapper's table, NULL if it is not cached
+         */
+        P getPolicy() {
+            return policy.get();
+        }
+
+        boolean isShared() {
+            return sharing && (shareInstances || mapper.isConstructorMapped());
+        }
+
+        /**
+         * Returns TRUE if the DTOs can be shared, or read and copied through their getters
+         */
+        boolean isCacheable() {
+            return isShared() || getProperties().isReadable();
+        }
+
+        /**
+         * Returns the given DTO if it is shared, otherwise a shallow copy of it
+         */
+        Object copy(Object dto) {
+            return isShared() ? dto : getProperties().copy(dto);
+        }
+
+        DtoProperties getProperties() {
+            DtoProperties p = properties;
+            if (p == null) {
+                p = new DtoProperties(mapper);
+                if (!p.isReadable() && !isShared()) {
+                    log.warn("Not caching " + mapper.getClassModel().getClassName() + " in " +
+                             cacheName + ", it has no getter for " + p.getMissingGetter());
+                }
+                properties = p;
+            }
+            return p;
+        }
+
+        RowLayout getLayout() {
+            RowLayout l = layout;
+            if (l == null) {
+                l = new RowLayout(mapper);
+                layout = l;
+            }
+            return l;
+        }
+    }
+}
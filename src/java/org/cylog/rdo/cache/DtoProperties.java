@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.cylog.rdo.bean.ConstructorModel;
+import org.cylog.rdo.bean.MethodModel;
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.bean.RdoOperation;
+import org.cylog.rdo.exception.DataExtractionException;
+
+/**
+ * The properties of the DTOs of a mapper as seen by the caches: the getter matching
+ * each setter of the mapper's read operations, used to copy a cached DTO, to estimate
+ * the memory it retains, and to read its values to store them off the heap.
+ *
+ * @author Kostas Symeonidis
+ */
+final class DtoProperties {
+
+    // ---- Constants ---------------------------------------------------------
+
+    private static final int OBJECT_HEADER = 16;
+    private static final int REFERENCE = 8;
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final RdoMapper mapper;
+
+    /**
+     * The getter of each read operation, NULL for a setter without a matching getter
+     */
+    private final Method[] getters;
+
+    /**
+     * The setter of each read operation, NULL if the DTOs are not copyable
+     */
+    private final Method[] setters;
+
+    private final boolean readable;
+    private final boolean copyable;
+
+    // ---- Constructors ------------------------------------------------------
+
+    DtoProperties(RdoMapper mapper) {
+        this.mapper = mapper;
+
+        Class c = mapper.getClassModel().getInternalClass();
+        List<RdoOperation> ops = mapper.getReadOperations();
+
+        this.getters = new Method[ops.size()];
+        this.setters = new Method[ops.size()];
+
+        boolean complete = true;
+        for (int i = 0; i < ops.size(); i++) {
+            MethodModel mm = ops.get(i).getMethodModel();
+            getters[i] = findGetter(c, mm.getMethodName(), mm.getParameterType());
+            complete &= (getters[i] != null);
+        }
+        this.readable = complete;
+
+        // the parameters of a constructor have no setters to copy through
+        this.copyable = complete && !mapper.isConstructorMapped();
+        if (copyable) {
+            for (int i = 0; i < ops.size(); i++) {
+                setters[i] = ops.get(i).getMethod();
+            }
+        }
+    }
+
+    // ---- Package methods ---------------------------------------------------
+
+    /**
+     * Returns the first setter without a matching getter, NULL if there is none
+     */
+    String getMissingGetter() {
+        for (int i = 0; i < getters.length; i++) {
+            if (getters[i] == null) {
+                return mapper.getReadOperations().get(i).getMethodName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns TRUE if every property has a getter, so that all the values of a DTO can
+     * be read and a DTO created from them
+     */
+    boolean isReadable() {
+        return readable;
+    }
+
+    boolean isCopyable() {
+        return copyable;
+    }
+
+    /**
+     * Returns the values of the properties of the given DTO, in the order of the mapper's
+     * read operations
+     */
+    Object[] getValues(Object dto) {
+        try {
+            Object[] values = new Object[getters.length];
+            for (int i = 0; i < getters.length; i++) {
+                values[i] = getters[i].invoke(dto);
+            }
+            return values;
+        } catch (Exception e) {
+            throw new DataExtractionException(
+                    "Cannot read cached " + mapper.getClassModel().getClassName(), e);
+        }
+    }
+
+    /**
+     * Returns a new DTO of the given values, in the order of the mapper's read
+     * operations, created through its constructor or its setters
+     */
+    Object create(Object[] values) {
+        try {
+            if (mapper.isConstructorMapped()) {
+                ConstructorModel constructorModel = mapper.getClassModel().getConstructorModel();
+                int[] arguments = mapper.getConstructorArguments();
+                Object[] args = constructorModel.createArguments();
+                for (int i = 0; i < values.length; i++) {
+                    args[arguments[i]] = values[i];
+                }
+                return constructorModel.createNewInstance(args);
+            }
+
+            Object dto = mapper.getClassModel().createNewInstance();
+            for (int i = 0; i < setters.length; i++) {
+                setters[i].invoke(dto, values[i]);
+            }
+            return dto;
+        } catch (Exception e) {
+            throw new DataExtractionException(
+                    "Cannot create cached " + mapper.getClassModel().getClassName(), e);
+        }
+    }
+
+    /**
+     * Returns a shallow copy of the given DTO, set through the setters of the mapper
+     */
+    Object copy(Object dto) {
+        try {
+            Object copy = mapper.getClassModel().createNewInstance();
+            for (int i = 0; i < setters.length; i++) {
+                setters[i].invoke(copy, getters[i].invoke(dto));
+            }
+            return copy;
+        } catch (Exception e) {
+            throw new DataExtractionException(
+                    "Cannot copy cached " + mapper.getClassModel().getClassName(), e);
+        }
+    }
+
+    /**
+     * Returns a rough estimate of the bytes retained by the given DTO: its header, a
+     * slot per property, and the values of the properties that are read through a
+     * getter. A property without a getter is counted as a reference only.
+     */
+    long estimateSize(Object dto) {
+        long size = OBJECT_HEADER + REFERENCE * getters.length;
+        for (Method getter : getters) {
+            // primitives are held in their slot
+            if ((getter != null) && !getter.getReturnType().isPrimitive()) {
+                try {
+                    size += estimateValueSize(getter.invoke(dto));
+                } catch (Exception e) {
+                    // not readable, counted as a reference only
+                }
+            }
+        }
+        return size;
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private static long estimateValueSize(Object value) {
+        if ((value == null) || (value instanceof Enum) || (value instanceof Boolean)) {
+            return 0;
+        } else if (value instanceof String) {
+            return OBJECT_HEADER + REFERENCE + OBJECT_HEADER + 2L * ((String) value).length();
+        }
+        // a boxed number, a date or any other small value
+        return OBJECT_HEADER + 8;
+    }
+
+    private static Method findGetter(Class<?> c, String setterName, Class type) {
+        String property = setterName.substring(3);
+        for (String prefix : new String[]{"get", "is"}) {
+            try {
+                Method getter = c.getMethod(prefix + property);
+                if (getter.getReturnType() == type) {
+                    return getter;
+                }
+            } catch (NoSuchMethodException nsme) {
+                // try the next prefix
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.logger.ClassLogger;
+
+/**
+ * A second-level cache of the DTOs read by primary key, keyed by their RdoMapper and
+ * key values. Only the tables given a time to live are cached, so that a cache can be
+ * shared by a whole DAO and enabled for its reference tables only.
+ *
+ * The number of entries is bounded with the W-TinyLFU policy: new entries go to a small
+ * admission window, and an entry leaving the window replaces the oldest entry of the
+ * main space only if it has been requested more often recently, as estimated by a
+ * {@link FrequencySketch}. Both spaces are kept in insertion order rather than access
+ * order, so that a read never has to reorder them: reads are a lookup in a
+ * ConcurrentHashMap and an update of the sketch, without locking. Only puts and
+ * evictions lock.
+ *
+ * A hit returns a shallow copy of the cached DTO, made through the getters matching
+ * the mapper's setters, so that the caller cannot change the cached instance. DTOs
+ * created through a constructor are immutable and shared, as are all DTOs if
+ * shareInstances is set. A DTO whose class cannot be copied is not cached.
+ *
+ * @author Kostas Symeonidis
+ */
+public class EntityCache {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static Log log = new ClassLogger();
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final int maximumSize;
+    private final int windowSize;
+
+    private final ConcurrentMap<CacheKey, Entry> entries;
+    private final FrequencySketch sketch;
+
+    /**
+     * The entries of the admission window and of the main space, oldest first. Guarded
+     * by the window.
+     */
+    private final ArrayDeque<Entry> window;
+    private final ArrayDeque<Entry> main;
+
+    /**
+     * The time to live in nanoseconds of each table seen, and what is known of each
+     * mapper seen
+     */
+    private final CachedTables<Long> tables;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * @param maximumSize the maximum number of DTOs kept
+     */
+    public EntityCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.windowSize = Math.max(1, maximumSize / 100);
+        this.entries = new ConcurrentHashMap<CacheKey, Entry>();
+        this.sketch = new FrequencySketch(maximumSize);
+        this.window = new ArrayDeque<Entry>();
+        this.main = new ArrayDeque<Entry>();
+        this.tables = new CachedTables<Long>("the entity cache", true);
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Enables the caching of the DTOs of a table, each kept for up to the given time.
+     * A time of 0 or less disables the caching of the table and removes its entries.
+     */
+    public void setTimeToLive(String tableName, long duration, TimeUnit unit) {
+        if (duration > 0) {
+            tables.setPolicy(tableName, unit.toNanos(duration));
+        } else {
+            tables.setPolicy(tableName, null);
+            invalidateTable(tableName);
+        }
+    }
+
+    /**
+     * Returns a copy of the cached DTO of the given mapper and keys, or NULL if it is
+     * not cached or has expired
+     */
+    public Object get(RdoMapper mapper, Object[] keys) {
+        CachedTables<Long>.MapperInfo info = tables.getMapperInfo(mapper);
+        if (info.getPolicy() == null) {
+            return null;
+        }
+
+        CacheKey key = new CacheKey(mapper, KeyTuple.of(keys));
+        sketch.increment(key);
+
+        Entry e = entries.get(key);
+        if ((e != null) && (System.nanoTime() - e.expiresAt >= 0)) {
+            entries.remove(key, e);
+            e = null;
+        }
+        if (e == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return info.copy(e.value);
+    }
+
+    /**
+     * Caches a copy of the DTO read with the given mapper and keys, if its table is cached
+     */
+    public void put(RdoMapper mapper, Object[] keys, Object dto) {
+        CachedTables<Long>.MapperInfo info = tables.getMapperInfo(mapper);
+        Long ttl = info.getPolicy();
+        if ((ttl == null) || (dto == null) || !info.isCacheable()) {
+            return;
+        }
+
+        CacheKey key = new CacheKey(mapper, KeyTuple.of(keys));
+        Entry e = new Entry(key, info.copy(dto), System.nanoTime() + ttl);
+
+        synchronized (window) {
+            entries.put(key, e);
+            window.add(e);
+            evict();
+        }
+    }
+
+    /**
+     * Removes the cached DTOs of the given table and keys, for all the classes mapped to
+     * the table
+     */
+    public void invalidate(String tableName, Object... keys) {
+        KeyTuple tuple = KeyTuple.of(keys);
+        for (RdoMapper mapper : tables.getMappers(tableName)) {
+            entries.remove(new CacheKey(mapper, tuple));
+        }
+    }
+
+    /**
+     * Removes all the cached DTOs of the given table
+     */
+    public void invalidateTable(String tableName) {
+        Iterator<CacheKey> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (CachedTables.isOfTable(it.next().mapper, tableName)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached DTOs
+     */
+    public void invalidateAll() {
+        synchronized (window) {
+            entries.clear();
+            window.clear();
+            main.clear();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the ratio of the reads of cached tables that were hits, 0 if there have
+     * been none
+     */
+    public double getHitRate() {
+        return CachedTables.getHitRate(hits, misses);
+    }
+
+    @Override
+    public String toString() {
+        return "EntityCache{size=" + size() +
+               ", hits=" + hits.get() +
+               ", misses=" + misses.get() +
+               ", evictions=" + evictions.get() +
+               '}';
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    /**
+     * Moves the entries over the window size to the main space, evicting the less
+     * frequently requested of each candidate and the oldest main entry while the cache
+     * is over its maximum size. Called holding the window lock.
+     */
+    private void evict() {
+        while (window.size() > windowSize) {
+            Entry candidate = window.poll();
+            if (!isLive(candidate)) {
+                continue;
+            }
+            if (entries.size() <= maximumSize) {
+                main.add(candidate);
+                continue;
+            }
+
+            Entry victim = main.poll();
+            while ((victim != null) && !isLive(victim)) {
+                victim = main.poll();
+            }
+
+            if ((victim == null) ||
+                (sketch.frequency(candidate.key) > sketch.frequency(victim.key))) {
+                if (victim != null) {
+                    entries.remove(victim.key, victim);
+                }
+                main.add(candidate);
+            } else {
+                entries.remove(candidate.key, candidate);
+                main.addFirst(victim);
+            }
+            evictions.incrementAndGet();
+        }
+
+        // drop the invalidated and replaced entries the main space still refers to
+        if (main.size() > 2 * maximumSize) {
+            Iterator<Entry> it = main.iterator();
+            while (it.hasNext()) {
+                if (!isLive(it.next())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private boolean isLive(Entry e) {
+        return entries.get(e.key) == e;
+    }
+
+    // ---- Bean Properties ---------------------------------------------------
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public boolean isShareInstances() {
+        return tables.isShareInstances();
+    }
+
+    /**
+     * Returns the cached DTOs themselves instead of copies, for DTO classes that are
+     * never changed after they are read
+     */
+    public void setShareInstances(boolean shareInstances) {
+        tables.setShareInstances(shareInstances);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    private static final class Entry {
+
+        private final CacheKey key;
+        private final Object value;
+        private final long expiresAt;
+
+        private Entry(CacheKey key, Object value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
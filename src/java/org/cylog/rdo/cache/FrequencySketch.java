@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+/**
+ * A count-min sketch of 4-bit counters estimating how often each key has been seen
+ * recently, the TinyLFU admission filter of the caches. The counters are halved after
+ * a sample of ten times the width of the sketch, so that old popularity fades.
+ *
+ * The sketch is updated without locking by any number of threads. A racing update
+ * may be lost, which only makes an estimate slightly lower.
+ *
+ * @author Kostas Symeonidis
+ */
+class FrequencySketch {
+
+    // ---- Constants ---------------------------------------------------------
+
+    private static final int[] SEEDS = {0x97cb3127, 0xb4f1a7a5, 0x6d2b79f5, 0x9e3779b9};
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+
+    private int additions;
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * @param maximumSize the maximum number of entries of the cache using the sketch
+     */
+    FrequencySketch(int maximumSize) {
+        int width = 16;
+        while (width < maximumSize && width < (1 << 30)) {
+            width <<= 1;
+        }
+
+        this.table = new long[width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    // ---- Package methods ---------------------------------------------------
+
+    /**
+     * Returns the estimated number of times the key has been seen recently, up to 15
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int h = hash * SEEDS[i];
+            int shift = (h >>> 28) << 2;
+            frequency = Math.min(frequency, (int) ((table[(h >>> 8) & mask] >>> shift) & 15L));
+        }
+        return frequency;
+    }
+
+    /**
+     * Records that the key has been seen once more
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int h = hash * SEEDS[i];
+            int index = (h >>> 8) & mask;
+            int shift = (h >>> 28) << 2;
+            // the word is read once, so that a counter raised to 15 by another thread
+            // meanwhile is not carried into its neighbour, only overwritten
+            long word = table[index];
+            if (((word >>> shift) & 15L) < 15L) {
+                table[index] = word + (1L << shift);
+                added = true;
+            }
+        }
+
+        if (added && (++additions >= sampleSize)) {
+            reset();
+        }
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private static int spread(int h) {
+        h ^= (h >>> 17);
+        h *= 0xed5ad4bb;
+        h ^= (h >>> 11);
+        return h;
+    }
+}
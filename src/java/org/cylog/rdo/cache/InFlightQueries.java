@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.exception.DataExtractionException;
+import org.cylog.rdo.logger.ClassLogger;
+
+/**
+ * The queries being executed, keyed by their RdoMapper, SQL and parameters, so that
+ * identical queries issued while one of them runs share its execution instead of each
+ * taking a connection of its own, i.e. the herd of callers of a list whose cache entry
+ * has just expired.
+ *
+ * Nothing is kept once a query completes: a query issued after it runs again. A failed
+ * query fails the callers sharing it.
+ *
+ * The callers sharing a query get copies of the DTOs of the caller that ran it, made
+ * with copy, unless shareInstances is set or the DTOs are immutable. Queries of DTOs
+ * that can be neither copied nor shared are not shared.
+ *
+ * @author Kostas Symeonidis
+ */
+public class InFlightQueries {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static Log log = new ClassLogger();
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final ConcurrentMap<QueryKey, FutureTask<?>> flights;
+
+    /**
+     * The properties of the DTOs of each mapper seen, keyed by identity
+     */
+    private final ConcurrentMap<RdoMapper, DtoProperties> properties;
+
+    private volatile boolean shareInstances = false;
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong sharedExecutions = new AtomicLong();
+
+    // ---- Constructors ------------------------------------------------------
+
+    public InFlightQueries() {
+        this.flights = new ConcurrentHashMap<QueryKey, FutureTask<?>>();
+        this.properties = new ConcurrentHashMap<RdoMapper, DtoProperties>();
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Returns the result of the given query, waiting for the execution of an identical
+     * query if one is running, or running it on the caller's thread otherwise. All the
+     * callers sharing an execution get the same result, which they copy with copy.
+     *
+     * @throws RuntimeException the exception of the query, if it failed
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V execute(RdoMapper mapper, String sql, Object[] params, Callable<V> query) {
+        if (!isShareable(mapper)) {
+            executions.incrementAndGet();
+            return getValue(sql, run(query));
+        }
+
+        QueryKey key = new QueryKey(mapper, sql, KeyTuple.of(params));
+        FutureTask<V> task = new FutureTask<V>(query);
+        FutureTask<V> f = (FutureTask<V>) flights.putIfAbsent(key, task);
+        if (f == null) {
+            executions.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                flights.remove(key, task);
+            }
+            f = task;
+        } else {
+            sharedExecutions.incrementAndGet();
+        }
+
+        return getValue(sql, f);
+    }
+
+    /**
+     * Returns a copy of a DTO of the given mapper read by a shared query, or the DTO
+     * itself if the DTOs of the mapper are shared
+     */
+    public Object copy(RdoMapper mapper, Object dto) {
+        if ((dto == null) || isShared(mapper)) {
+            return dto;
+        }
+        return getProperties(mapper).copy(dto);
+    }
+
+    /**
+     * Returns a new list of copies of the DTOs of the given mapper read by a shared query
+     */
+    @SuppressWarnings("unchecked")
+    public List copy(RdoMapper mapper, List dtos) {
+        List copy = new ArrayList(dtos.size());
+        for (Object dto : dtos) {
+            copy.add(copy(mapper, dto));
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the number of queries being executed
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    @Override
+    public String toString() {
+        return "InFlightQueries{executions=" + executions.get() +
+               ", sharedExecutions=" + sharedExecutions.get() +
+               '}';
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private boolean isShared(RdoMapper mapper) {
+        return shareInstances || mapper.isConstructorMapped();
+    }
+
+    private boolean isShareable(RdoMapper mapper) {
+        return isShared(mapper) || getProperties(mapper).isCopyable();
+    }
+
+    private DtoProperties getProperties(RdoMapper mapper) {
+        DtoProperties p = properties.get(mapper);
+        if (p == null) {
+            p = new DtoProperties(mapper);
+            if (!p.isCopyable() && !isShared(mapper)) {
+                log.warn("Not sharing queries of " + mapper.getClassModel().getClassName() +
+                         ", it has no getter for " + p.getMissingGetter());
+            }
+            properties.put(mapper, p);
+        }
+        return p;
+    }
+
+    private static <V> FutureTask<V> run(Callable<V> query) {
+        FutureTask<V> task = new FutureTask<V>(query);
+        task.run();
+        return task;
+    }
+
+    private static <V> V getValue(String sql, FutureTask<V> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new DataExtractionException("Interrupted while waiting for query " + sql, ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DataExtractionException("Cannot execute query " + sql, cause);
+        }
+    }
+
+    // ---- Bean Properties ---------------------------------------------------
+
+    public boolean isShareInstances() {
+        return shareInstances;
+    }
+
+    /**
+     * Sets whether the callers sharing a query get the same DTO instances rather than
+     * copies. Only to be set if the DTOs are not changed once read.
+     */
+    public void setShareInstances(boolean shareInstances) {
+        this.shareInstances = shareInstances;
+    }
+
+    /**
+     * Returns the number of queries executed so far
+     */
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    /**
+     * Returns the number of queries that have shared the execution of an identical query
+     * so far
+     */
+    public long getSharedExecutions() {
+        return sharedExecutions.get();
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import java.sql.Types;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of the primary keys of a table, checked before a DTO is read by its
+ * keys so that a key that is certainly not in the table is answered without a query.
+ * A key the filter might contain is read from the database as usual, and a read that
+ * finds no row is counted as a false positive.
+ *
+ * The keys are hashed by value rather than by class, as converted to the values of
+ * their columns by {@link KeyTuple#ofColumnValues(Object[], int[], boolean)} like the
+ * reads by keys compare them: i.e. a key given as an Integer or as the string "42"
+ * matches the same key read from the table as a Long or a BigDecimal. A filter without
+ * the SQL types of its key columns converts each value as a column of its own class.
+ * Strings are hashed ignoring their case, their accents and their trailing spaces, so
+ * that an enum key matches however it is stored, a key of a CHAR column matches without
+ * its padding and a key matches as a case- and accent-insensitive collation compares
+ * it. Collations with other equivalences, i.e. of "ss" to "\u00df", are not supported:
+ * a table whose keys are compared by one should not have a filter.
+ *
+ * A key the database may compare in a way of its own, i.e. a number of a character
+ * column, which may be compared as a number as 42 to '042', or a key of a column of
+ * another type than a number, string or date, might be in the table. So a filter never
+ * answers a key the database would find.
+ *
+ * The filter is built from all the keys of the table, and then kept up to date by
+ * adding the keys of the rows inserted and by rebuilding it from time to time, which
+ * also drops the keys of the rows deleted. Until it is first built it might contain
+ * any key. Lookups and additions never lock.
+ *
+ * @author Kostas Symeonidis
+ */
+public class KeyFilter {
+
+    // ---- Constants ---------------------------------------------------------
+
+    private static final double LN2 = Math.log(2);
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final int keyColumns;
+    private final double falsePositiveRate;
+
+    /**
+     * The SQL types of the key columns, NULL to hash the key values as they are given
+     */
+    private final int[] sqlTypes;
+
+    /**
+     * The bits looked up, NULL until the filter is first built
+     */
+    private volatile Bits bits;
+
+    /**
+     * The bits being rebuilt, which keys added meanwhile are also added to
+     */
+    private volatile Bits pending;
+
+    private final AtomicLong negatives = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * @param keyColumns        the number of key values of each key, i.e. the number of
+     *                          primary key columns of the table
+     * @param falsePositiveRate the rate of false positives the filter is sized for
+     */
+    public KeyFilter(int keyColumns, double falsePositiveRate) {
+        this.keyColumns = keyColumns;
+        this.falsePositiveRate = falsePositiveRate;
+        this.sqlTypes = null;
+    }
+
+    /**
+     * @param sqlTypes          the {@link java.sql.Types} of the primary key columns of the
+     *                          table, to which the key values are converted
+     * @param falsePositiveRate the rate of false positives the filter is sized for
+     */
+    public KeyFilter(int[] sqlTypes, double falsePositiveRate) {
+        this.keyColumns = sqlTypes.length;
+        this.falsePositiveRate = falsePositiveRate;
+        this.sqlTypes = sqlTypes.clone();
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Returns FALSE if the table certainly has no row with the given keys. A filter not
+     * yet built, or given keys of another number of values, might contain any key.
+     */
+    public boolean mightContain(Object... keys) {
+        Bits b = bits;
+        if ((b == null) || !isApplicable(keys)) {
+            return true;
+        }
+
+        KeyTuple values = toColumnValues(keys);
+        if ((values == null) || b.mightContain(hash(values))) {
+            return true;
+        }
+        negatives.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Adds the keys of a row inserted in the table
+     */
+    public void add(Object... keys) {
+        KeyTuple values = isApplicable(keys) ? toColumnValues(keys) : null;
+        if (values == null) {
+            return;
+        }
+
+        long hash = hash(values);
+        Bits b = bits;
+        if (b != null) {
+            b.add(hash);
+        }
+
+        // a key added during a rebuild goes to the rebuilt bits too, even if they have
+        // replaced the bits it was added to meanwhile
+        Bits p = pending;
+        if (p != null) {
+            p.add(hash);
+        }
+        Bits current = bits;
+        if ((current != b) && (current != null)) {
+            current.add(hash);
+        }
+    }
+
+    /**
+     * Records that a read of keys the filter might contain found no row
+     */
+    public void recordFalsePositive(Object... keys) {
+        if ((bits != null) && isApplicable(keys)) {
+            falsePositives.incrementAndGet();
+        }
+    }
+
+    /**
+     * Replaces the keys of the filter with the given keys, i.e. all the keys of the table,
+     * sizing it for the given number of keys. Lookups use the previous keys until the
+     * rebuild is complete.
+     *
+     * @param expectedKeys the number of keys the filter is expected to hold, including the
+     *                     keys to be added before the next rebuild
+     */
+    public synchronized void rebuild(long expectedKeys, Iterator<Object[]> keys) {
+        Bits rebuilt = new Bits(expectedKeys, falsePositiveRate);
+        pending = rebuilt;
+        try {
+            while (keys.hasNext()) {
+                KeyTuple values = toColumnValues(keys.next());
+                if (values != null) {
+                    rebuilt.add(hash(values));
+                }
+            }
+            bits = rebuilt;
+        } finally {
+            pending = null;
+        }
+    }
+
+    /**
+     * Returns the rate of the reads of missing keys that the filter did not answer, i.e.
+     * false positives / (false positives + true negatives), 0 if there have been none
+     */
+    public double getFalsePositiveRate() {
+        long fp = falsePositives.get();
+        long total = fp + negatives.get();
+        return (total == 0) ? 0 : (double) fp / total;
+    }
+
+    /**
+     * Returns the rate of false positives expected for the keys the filter holds
+     */
+    public double getExpectedFalsePositiveRate() {
+        Bits b = bits;
+        return (b == null) ? 1 : b.getExpectedFalsePositiveRate();
+    }
+
+    @Override
+    public String toString() {
+        Bits b = bits;
+        return "KeyFilter{keys=" + getKeyCount() +
+               ", bits=" + ((b == null) ? 0 : b.numBits) +
+               ", negatives=" + negatives.get() +
+               ", falsePositives=" + falsePositives.get() +
+               '}';
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private boolean isApplicable(Object[] keys) {
+        return (keys != null) && (keys.length == keyColumns);
+    }
+
+    /**
+     * Returns the tuple of the key values as their columns compare them, with their case
+     * and accents folded, NULL if one of them might compare otherwise. The values of a
+     * filter without SQL types are compared as columns of the type of their class.
+     */
+    private KeyTuple toColumnValues(Object[] keys) {
+        int[] types = sqlTypes;
+        if (types == null) {
+            types = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                types[i] = getSqlType(keys[i]);
+            }
+        }
+        return KeyTuple.ofColumnValues(keys, types, true);
+    }
+
+    private static int getSqlType(Object value) {
+        if (value instanceof Number) {
+            return Types.NUMERIC;
+        } else if ((value instanceof String) || (value instanceof Enum) ||
+                   (value instanceof Character)) {
+            return Types.VARCHAR;
+        } else if (value instanceof Date) {
+            return Types.TIMESTAMP;
+        }
+        return Types.OTHER;
+    }
+
+    private static long hash(KeyTuple key) {
+        long h = 0x9e3779b97f4a7c15L;
+        for (int i = 0; i < key.size(); i++) {
+            Object value = key.get(i);
+            long valueHash = (value instanceof Long) ? (Long) value
+                             : (value == null) ? 0 : value.hashCode();
+            h = mix(h * 31 + valueHash);
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+    // ---- Bean Properties ---------------------------------------------------
+
+    public int getKeyColumns() {
+        return keyColumns;
+    }
+
+    /**
+     * Returns the number of keys added to the filter since it was last built
+     */
+    public long getKeyCount() {
+        Bits b = bits;
+        return (b == null) ? 0 : b.count.get();
+    }
+
+    public long getNegatives() {
+        return negatives.get();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    /**
+     * The bits of the filter, set by k hashes derived from one 64-bit hash of each key
+     */
+    private static final class Bits {
+
+        private final AtomicLongArray words;
+        private final long numBits;
+        private final int numHashes;
+        private final AtomicLong count = new AtomicLong();
+
+        private Bits(long expectedKeys, double falsePositiveRate) {
+            long n = Math.max(1, expectedKeys);
+            long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (LN2 * LN2));
+            int w = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (m + 63) / 64));
+
+            this.words = new AtomicLongArray(w);
+            this.numBits = 64L * w;
+            this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * LN2));
+        }
+
+        private void add(long hash) {
+            long h1 = hash;
+            long h2 = (hash >>> 32) | 1;
+            for (int i = 0; i < numHashes; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+
+                long word = words.get(index);
+                while (((word & mask) == 0) && !words.compareAndSet(index, word, word | mask)) {
+                    word = words.get(index);
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        private boolean mightContain(long hash) {
+            long h1 = hash;
+            long h2 = (hash >>> 32) | 1;
+            for (int i = 0; i < numHashes; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private double getExpectedFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-numHashes * (double) count.get() / numBits),
+                            numHashes);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.cylog.rdo.util.JdbcUtil;
+
+/**
+ * An immutable tuple of key values, i.e. the primary key values of a row, usable as
+ * the key of a hash map. The hash code is computed once.
+ *
+ * The key values given to a query and the values of the rows it finds are compared by
+ * the tuples of {@link #ofColumnValues(Object[], int[], boolean)}, which converts each
+ * value as the database compares it with its column, so that the key filter and the
+ * reads by keys agree on which keys are equal.
+ *
+ * @author Kostas Symeonidis
+ */
+public final class KeyTuple {
+
+    // ---- Constants ---------------------------------------------------------
+
+    public static final KeyTuple EMPTY = new KeyTuple(new Object[0]);
+
+    /**
+     * A key value the database may compare with its column in a way of its own: a number
+     * or a date of a character column, a string that is not a number of a numeric column,
+     * a NaN, or a value of a column of another type than a number, string or date
+     */
+    public static final Object UNCOMPARABLE = new Object();
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final Object[] values;
+    private final int hash;
+
+    // ---- Constructors ------------------------------------------------------
+
+    private KeyTuple(Object[] values) {
+        this.values = values;
+        this.hash = Arrays.hashCode(values);
+    }
+
+    // ---- Static Public methods ---------------------------------------------
+
+    /**
+     * Returns a tuple of the given values, which are copied
+     */
+    public static KeyTuple of(Object... values) {
+        if ((values == null) || (values.length == 0)) {
+            return EMPTY;
+        }
+        return new KeyTuple(values.clone());
+    }
+
+    /**
+     * Returns the tuple of the given key values converted with toColumnValue, NULL if one
+     * of them is UNCOMPARABLE
+     *
+     * @param sqlTypes the {@link java.sql.Types} of the columns of the values
+     */
+    public static KeyTuple ofColumnValues(Object[] values, int[] sqlTypes, boolean fold) {
+        Object[] converted = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            converted[i] = toColumnValue(values[i], sqlTypes[i], fold);
+            if (converted[i] == UNCOMPARABLE) {
+                return null;
+            }
+        }
+        return (converted.length == 0) ? EMPTY : new KeyTuple(converted);
+    }
+
+    /**
+     * Converts a key value to the value it is compared as with a column of the given SQL
+     * type, so that the values the database finds equal are equal: numbers to a Long if
+     * they are integral, otherwise to a BigDecimal without trailing zeros, strings and
+     * enums of character columns to strings without the padding of CHAR columns, and
+     * dates to their milliseconds.
+     *
+     * @param fold TRUE to fold the case and the accents of strings, as a case- and
+     *             accent-insensitive collation compares them
+     *
+     * @return the converted value, or UNCOMPARABLE
+     */
+    public static Object toColumnValue(Object value, int sqlType, boolean fold) {
+        if (value == null) {
+            return null;
+        } else if (JdbcUtil.isNumericType(sqlType)) {
+            return toNumber(value);
+        } else if (JdbcUtil.isCharacterType(sqlType)) {
+            if ((value instanceof String) || (value instanceof Character)) {
+                return toText(value.toString(), fold);
+            } else if (value instanceof Enum) {
+                return toText(((Enum) value).name(), fold);
+            }
+        } else if (JdbcUtil.isDateType(sqlType) && (value instanceof Date)) {
+            return ((Date) value).getTime();
+        }
+        return UNCOMPARABLE;
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    public int size() {
+        return values.length;
+    }
+
+    public Object get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns a copy of the values of this tuple
+     */
+    public Object[] toArray() {
+        return values.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KeyTuple)) {
+            return false;
+        }
+
+        KeyTuple other = (KeyTuple) o;
+        return (hash == other.hash) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    // ---- Static Private methods --------------------------------------------
+
+    private static Object toNumber(Object value) {
+        BigDecimal d;
+        if ((value instanceof Integer) || (value instanceof Long) ||
+            (value instanceof Short) || (value instanceof Byte)) {
+            return ((Number) value).longValue();
+        } else if (value instanceof BigDecimal) {
+            d = (BigDecimal) value;
+        } else if (value instanceof BigInteger) {
+            d = new BigDecimal((BigInteger) value);
+        } else if ((value instanceof Number) || (value instanceof String)) {
+            try {
+                d = new BigDecimal(value.toString().trim());
+            } catch (NumberFormatException nfe) {
+                return UNCOMPARABLE; // not a number, i.e. NaN
+            }
+        } else {
+            return UNCOMPARABLE;
+        }
+
+        if (d.signum() == 0) {
+            return 0L;
+        }
+        d = d.stripTrailingZeros();
+        return ((d.scale() <= 0) && (d.precision() - d.scale() <= 18)) ? (Object) d.longValue()
+                                                                        : d;
+    }
+
+    /**
+     * Returns a string without its trailing spaces, and without its case and accents if
+     * folded
+     */
+    private static String toText(String s, boolean fold) {
+        int end = s.length();
+        while ((end > 0) && (s.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        if (!fold) {
+            return s.substring(0, end);
+        }
+
+        String decomposed = Normalizer.normalize(s.substring(0, end), Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(Character.toLowerCase(Character.toUpperCase(c)));
+            }
+        }
+        return folded.toString();
+    }
+
+    // ---- String representation ---------------------------------------------
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.logger.ClassLogger;
+
+/**
+ * A cache of the DTOs read by primary key that keeps their values out of the Java heap,
+ * so that large reference data can be cached without lengthening garbage collections.
+ * Only the tables given a time to live are cached.
+ *
+ * The values of each DTO are encoded by the {@link RowLayout} of its mapper into fixed
+ * size slabs of direct or memory mapped memory, and a new DTO is created from them on
+ * every hit. Only an index entry per DTO is kept on the heap.
+ *
+ * The slabs are filled in turn, like a log. When the last slab is full, the oldest slab
+ * is reused and all the DTOs stored in it are evicted at once, so eviction costs
+ * nothing per DTO and the slabs never fragment. A DTO replaced or invalidated keeps its
+ * bytes until its slab is reused.
+ *
+ * A DTO is cached only if every property read has a getter. It can be used as a second
+ * tier behind an {@link EntityCache} holding the most frequently read DTOs on the heap.
+ *
+ * @author Kostas Symeonidis
+ */
+public class OffHeapCache {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static Log log = new ClassLogger();
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final int slabSize;
+    private final Slab[] slabs;
+
+    /**
+     * The slab written to. Guarded by this cache.
+     */
+    private int current = 0;
+
+    private final ConcurrentMap<CacheKey, Location> entries;
+
+    /**
+     * The time to live in nanoseconds of each table seen, and what is known of each
+     * mapper seen
+     */
+    private final CachedTables<Long> tables;
+
+    private final AtomicLong bytesUsed = new AtomicLong();
+    private final AtomicLong heapSaved = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * Creates a cache of direct memory slabs, each allocated on first use
+     *
+     * @param slabSize  the bytes of each slab, the size of the largest DTO cached
+     * @param slabCount the number of slabs
+     */
+    public OffHeapCache(int slabSize, int slabCount) {
+        this.slabSize = slabSize;
+        this.slabs = new Slab[Math.max(2, slabCount)];
+        for (int i = 0; i < slabs.length; i++) {
+            slabs[i] = new Slab();
+        }
+
+        this.entries = new ConcurrentHashMap<CacheKey, Location>();
+        this.tables = new CachedTables<Long>("the off heap cache", false);
+    }
+
+    /**
+     * Creates a cache of slabs mapped from the given file, which is created or overwritten.
+     * The file is only scratch space, its contents are not read back by a later cache.
+     *
+     * @param slabSize  the bytes of each slab, the size of the largest DTO cached
+     * @param slabCount the number of slabs
+     */
+    public OffHeapCache(File file, int slabSize, int slabCount) throws IOException {
+        this(slabSize, slabCount);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength((long) slabSize * slabs.length);
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < slabs.length; i++) {
+                slabs[i].buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                                              (long) slabSize * i, slabSize);
+            }
+        } finally {
+            // the mappings stay valid after the file is closed
+            raf.close();
+        }
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Enables the caching of the DTOs of a table, each kept for up to the given time.
+     * A time of 0 or less disables the caching of the table and removes its entries.
+     */
+    public void setTimeToLive(String tableName, long duration, TimeUnit unit) {
+        if (duration > 0) {
+            tables.setPolicy(tableName, unit.toNanos(duration));
+        } else {
+            tables.setPolicy(tableName, null);
+            invalidateTable(tableName);
+        }
+    }
+
+    /**
+     * Returns a new DTO of the cached values of the given mapper and keys, or NULL if
+     * they are not cached or have expired
+     */
+    public Object get(RdoMapper mapper, Object[] keys) {
+        CachedTables<Long>.MapperInfo info = tables.getMapperInfo(mapper);
+        if (info.getPolicy() == null) {
+            return null;
+        }
+
+        CacheKey key = new CacheKey(mapper, KeyTuple.of(keys));
+        Location loc = entries.get(key);
+        if ((loc != null) && (System.nanoTime() - loc.expiresAt >= 0)) {
+            remove(loc);
+            loc = null;
+        }
+
+        Object[] values = (loc == null) ? null : read(info, loc);
+        if (values == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return info.getProperties().create(values);
+    }
+
+    /**
+     * Caches the values of the DTO read with the given mapper and keys, if its table is
+     * cached
+     */
+    public void put(RdoMapper mapper, Object[] keys, Object dto) {
+        CachedTables<Long>.MapperInfo info = tables.getMapperInfo(mapper);
+        Long ttl = info.getPolicy();
+        if ((ttl == null) || (dto == null) || !info.isCacheable()) {
+            return;
+        }
+
+        Object[] values = info.getProperties().getValues(dto);
+        RowLayout layout = info.getLayout();
+        int size = layout.size(values);
+        if (size > slabSize) {
+            return;
+        }
+        long heap = info.getProperties().estimateSize(dto);
+        CacheKey key = new CacheKey(mapper, KeyTuple.of(keys));
+
+        synchronized (this) {
+            Slab slab = slabs[current];
+            if (slab.buffer == null) {
+                slab.buffer = ByteBuffer.allocateDirect(slabSize);
+            } else if (slab.used + size > slabSize) {
+                current = (current + 1) % slabs.length;
+                slab = slabs[current];
+                recycle(slab);
+            }
+
+            int offset = slab.used;
+            layout.write(slab.buffer, offset, values);
+            slab.used += size;
+            bytesUsed.addAndGet(size);
+
+            Location loc = new Location(key, current, slab.generation, offset, heap,
+                                        System.nanoTime() + ttl);
+            slab.locations.add(loc);
+            heapSaved.addAndGet(heap);
+
+            Location replaced = entries.put(key, loc);
+            if (replaced != null) {
+                heapSaved.addAndGet(-replaced.heapSize);
+            }
+        }
+    }
+
+    /**
+     * Removes the cached DTOs of the given table and keys, for all the classes mapped to
+     * the table
+     */
+    public void invalidate(String tableName, Object... keys) {
+        KeyTuple tuple = KeyTuple.of(keys);
+        for (RdoMapper mapper : tables.getMappers(tableName)) {
+            Location loc = entries.get(new CacheKey(mapper, tuple));
+            if (loc != null) {
+                remove(loc);
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached DTOs of the given table
+     */
+    public void invalidateTable(String tableName) {
+        for (Map.Entry<CacheKey, Location> e : entries.entrySet()) {
+            if (CachedTables.isOfTable(e.getKey().mapper, tableName)) {
+                remove(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached DTOs
+     */
+    public void invalidateAll() {
+        for (Location loc : entries.values()) {
+            remove(loc);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the ratio of the reads of cached tables that were hits, 0 if there have
+     * been none
+     */
+    public double getHitRate() {
+        return CachedTables.getHitRate(hits, misses);
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapCache{size=" + size() +
+               ", bytesUsed=" + bytesUsed.get() +
+               ", capacity=" + getCapacity() +
+               ", heapSaved=" + heapSaved.get() +
+               ", hits=" + hits.get() +
+               ", misses=" + misses.get() +
+               ", evictions=" + evictions.get() +
+               '}';
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    /**
+     * Returns the values at the given location, or NULL if its slab has been reused
+     */
+    private Object[] read(CachedTables<Long>.MapperInfo info, Location loc) {
+        Slab slab = slabs[loc.slab];
+        slab.lock.readLock().lock();
+        try {
+            if (slab.generation != loc.generation) {
+                return null;
+            }
+            return info.getLayout().read(slab.buffer, loc.offset);
+        } finally {
+            slab.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Evicts all the DTOs stored in a slab about to be reused. Called holding the lock
+     * of this cache.
+     */
+    private void recycle(Slab slab) {
+        if (slab.buffer == null) {
+            slab.buffer = ByteBuffer.allocateDirect(slabSize);
+            return;
+        }
+
+        slab.lock.writeLock().lock();
+        try {
+            slab.generation++;
+        } finally {
+            slab.lock.writeLock().unlock();
+        }
+
+        for (Location loc : slab.locations) {
+            if (remove(loc)) {
+                evictions.incrementAndGet();
+            }
+        }
+        slab.locations.clear();
+        bytesUsed.addAndGet(-slab.used);
+        slab.used = 0;
+    }
+
+    private boolean remove(Location loc) {
+        if (entries.remove(loc.key, loc)) {
+            heapSaved.addAndGet(-loc.heapSize);
+            return true;
+        }
+        return false;
+    }
+
+    // ---- Bean Properties ---------------------------------------------------
+
+    /**
+     * Returns the total bytes of the slabs
+     */
+    public long getCapacity() {
+        return (long) slabSize * slabs.length;
+    }
+
+    /**
+     * Returns the bytes of the slabs written to, including the bytes of DTOs replaced or
+     * invalidated since
+     */
+    public long getBytesUsed() {
+        return bytesUsed.get();
+    }
+
+    /**
+     * Returns the estimated bytes the cached DTOs would retain if they were cached on the
+     * heap
+     */
+    public long getHeapSaved() {
+        return heapSaved.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    /**
+     * A slab and the DTOs stored in it. The buffer, used bytes and locations are guarded
+     * by the lock of the cache. The generation is guarded by the slab's lock, and
+     * incremented each time the slab is reused.
+     */
+    private static final class Slab {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final List<Location> locations = new ArrayList<Location>();
+
+        private ByteBuffer buffer;
+        private int used;
+        private int generation;
+    }
+
+    /**
+     * Where the values of a cached DTO are stored
+     */
+    private static final class Location {
+
+        private final CacheKey key;
+        private final int slab;
+        private final int generation;
+        private final int offset;
+        private final long heapSize;
+        private final long expiresAt;
+
+        private Location(CacheKey key, int slab, int generation, int offset, long heapSize,
+                         long expiresAt) {
+            this.key = key;
+            this.slab = slab;
+            this.generation = generation;
+            this.offset = offset;
+            this.heapSize = heapSize;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
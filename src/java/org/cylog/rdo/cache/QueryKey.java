@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import org.cylog.rdo.bean.RdoMapper;
+
+/**
+ * The key of a query in the result cache and the in-flight queries: its RdoMapper,
+ * compared by identity, its SQL and its parameter values.
+ *
+ * @author Kostas Symeonidis
+ */
+final class QueryKey {
+
+    // ---- Member Variables --------------------------------------------------
+
+    final RdoMapper mapper;
+    final String sql;
+    final KeyTuple params;
+
+    // ---- Constructors ------------------------------------------------------
+
+    QueryKey(RdoMapper mapper, String sql, KeyTuple params) {
+        this.mapper = mapper;
+        this.sql = sql;
+        this.params = params;
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof QueryKey)) {
+            return false;
+        }
+        QueryKey other = (QueryKey) o;
+        return (mapper == other.mapper) && sql.equals(other.sql) &&
+               params.equals(other.params);
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * System.identityHashCode(mapper) + sql.hashCode()) * 31 +
+               params.hashCode();
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.exception.DataExtractionException;
+import org.cylog.rdo.logger.ClassLogger;
+
+/**
+ * A cache of the DTO lists read by getDtoList and getDtoListFromSql, keyed by their
+ * RdoMapper, SQL and parameters. Only the tables given a freshness are cached.
+ *
+ * The cache is bounded by the estimated bytes the cached lists retain rather than by
+ * their number, as one list may hold a few rows or many thousands. The size of a list
+ * is estimated from a sample of its rows. When the cache is over its maximum, the
+ * least recently read lists are evicted.
+ *
+ * A list is fresh for a while after it is read, and then stale for a while longer.
+ * A stale list is still returned, and a single background refresh replaces it, so
+ * that a frequently read list never makes its callers wait for the database. A list
+ * that has not been read while stale expires and is read again by the next caller.
+ *
+ * Each hit returns a new list of shallow copies of the cached DTOs, or of the cached
+ * DTOs themselves if they are immutable or shareInstances is set.
+ *
+ * @author Kostas Symeonidis
+ */
+public class ResultCache {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static Log log = new ClassLogger();
+
+    // ---- Constants ---------------------------------------------------------
+
+    /**
+     * The number of rows of a list whose size is estimated to extrapolate its total size
+     */
+    private static final int SAMPLED_ROWS = 16;
+
+    private static final int LIST_OVERHEAD = 64;
+    private static final int REFERENCE = 8;
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final long maximumBytes;
+    private final AtomicLong weightedSize = new AtomicLong();
+
+    private final ConcurrentMap<QueryKey, Entry> entries;
+
+    /**
+     * The freshness of each table seen, and what is known of each mapper seen
+     */
+    private final CachedTables<Freshness> tables;
+
+    private volatile Executor executor;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * @param maximumBytes the maximum estimated bytes retained by the cached lists
+     */
+    public ResultCache(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+        this.entries = new ConcurrentHashMap<QueryKey, Entry>();
+        this.tables = new CachedTables<Freshness>("the result cache", true);
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Enables the caching of the lists read from a table. A list is returned as it is
+     * for freshFor after it is read, and then returned while it is refreshed in the
+     * background for staleFor more. A freshFor of 0 or less disables the caching of the
+     * table and removes its lists.
+     */
+    public void setTimeToLive(String tableName, long freshFor, long staleFor, TimeUnit unit) {
+        if (freshFor > 0) {
+            tables.setPolicy(tableName, new Freshness(unit.toNanos(freshFor),
+                                                      unit.toNanos(Math.max(0, staleFor))));
+        } else {
+            tables.setPolicy(tableName, null);
+            invalidateTable(tableName);
+        }
+    }
+
+    /**
+     * Returns the list of the given mapper, SQL and parameters, from the cache if it is
+     * there and not expired, otherwise from the loader. The loader is called on the
+     * caller's thread on a miss, and on the executor to refresh a stale list.
+     */
+    @SuppressWarnings("unchecked")
+    public List get(RdoMapper mapper, String sql, Object[] params, Callable<List> loader) {
+        CachedTables<Freshness>.MapperInfo info = tables.getMapperInfo(mapper);
+        Freshness f = info.getPolicy();
+        if (f == null) {
+            return load(loader);
+        }
+
+        QueryKey key = new QueryKey(mapper, sql, KeyTuple.of(params));
+        long now = System.nanoTime();
+
+        Entry e = entries.get(key);
+        if (e != null) {
+            if (now - e.freshUntil < 0) {
+                hits.incrementAndGet();
+                e.lastRead = now;
+                return copy(info, e.rows);
+            } else if (now - e.staleUntil < 0) {
+                staleHits.incrementAndGet();
+                e.lastRead = now;
+                refresh(key, e, info, loader);
+                return copy(info, e.rows);
+            }
+            remove(key, e);
+        }
+
+        misses.incrementAndGet();
+        List rows = load(loader);
+        if (info.isCacheable()) {
+            Entry loaded = createEntry(info, rows, f);
+            if (loaded != null) {
+                add(key, loaded, entries.put(key, loaded));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Removes all the cached lists read from the given table
+     */
+    public void invalidateTable(String tableName) {
+        for (Map.Entry<QueryKey, Entry> e : entries.entrySet()) {
+            if (CachedTables.isOfTable(e.getKey().mapper, tableName)) {
+                remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached lists
+     */
+    public void invalidateAll() {
+        for (Map.Entry<QueryKey, Entry> e : entries.entrySet()) {
+            remove(e.getKey(), e.getValue());
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the estimated bytes retained by the cached lists
+     */
+    public long getWeightedSize() {
+        return weightedSize.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ResultCache{size=" + size() +
+               ", bytes=" + weightedSize.get() +
+               ", hits=" + hits.get() +
+               ", staleHits=" + staleHits.get() +
+               ", misses=" + misses.get() +
+               ", refreshes=" + refreshes.get() +
+               ", evictions=" + evictions.get() +
+               '}';
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private static List load(Callable<List> loader) {
+        try {
+            return loader.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DataExtractionException("Cannot read list", e);
+        }
+    }
+
+    /**
+     * Refreshes a stale entry on the executor, unless it is already being refreshed
+     */
+    private void refresh(final QueryKey key, final Entry stale,
+                         final CachedTables<Freshness>.MapperInfo info,
+                         final Callable<List> loader) {
+        if (!stale.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        getExecutor().execute(new Runnable() {
+            public void run() {
+                try {
+                    Freshness f = info.getPolicy();
+                    List rows = load(loader);
+                    Entry loaded = (f == null) ? null : createEntry(info, rows, f);
+                    if (loaded == null) {
+                        remove(key, stale);
+                    } else if (entries.replace(key, stale, loaded)) {
+                        // an entry invalidated meanwhile is not put back
+                        add(key, loaded, stale);
+                    }
+                    refreshes.incrementAndGet();
+                } catch (RuntimeException e) {
+                    log.warn("Cannot refresh cached list of " + info.table, e);
+                } finally {
+                    stale.refreshing.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns a new entry of a copy of the given rows, or NULL if they are too big
+     */
+    private Entry createEntry(CachedTables<Freshness>.MapperInfo info, List rows,
+                              Freshness f) {
+        long weight = estimateSize(info, rows);
+        if (weight > maximumBytes) {
+            return null;
+        }
+
+        long now = System.nanoTime();
+        return new Entry(copy(info, rows), weight, now + f.freshFor,
+                         now + f.freshFor + f.staleFor);
+    }
+
+    /**
+     * Accounts for an entry that has been put in the map in place of the old one, and
+     * evicts the least recently read entries if the cache is over its maximum size
+     */
+    private void add(QueryKey key, Entry added, Entry replaced) {
+        weightedSize.addAndGet(added.weight);
+        if (replaced != null) {
+            weightedSize.addAndGet(-replaced.weight);
+        }
+
+        if (weightedSize.get() > maximumBytes) {
+            evict();
+        }
+    }
+
+    private synchronized void evict() {
+        if (weightedSize.get() <= maximumBytes) {
+            return;
+        }
+
+        List<Map.Entry<QueryKey, Entry>> byLastRead =
+                new ArrayList<Map.Entry<QueryKey, Entry>>(entries.entrySet());
+        Collections.sort(byLastRead, new Comparator<Map.Entry<QueryKey, Entry>>() {
+            public int compare(Map.Entry<QueryKey, Entry> a, Map.Entry<QueryKey, Entry> b) {
+                long d = a.getValue().lastRead - b.getValue().lastRead;
+                return (d < 0) ? -1 : ((d > 0) ? 1 : 0);
+            }
+        });
+
+        Iterator<Map.Entry<QueryKey, Entry>> it = byLastRead.iterator();
+        while ((weightedSize.get() > maximumBytes) && it.hasNext()) {
+            Map.Entry<QueryKey, Entry> e = it.next();
+            if (remove(e.getKey(), e.getValue())) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns a new list of the given rows, or of shallow copies of them
+     */
+    @SuppressWarnings("unchecked")
+    private static List copy(CachedTables<Freshness>.MapperInfo info, List rows) {
+        List copy = new ArrayList(rows.size());
+        for (Object dto : rows) {
+            copy.add(info.copy(dto));
+        }
+        return copy;
+    }
+
+    private static long estimateSize(CachedTables<Freshness>.MapperInfo info, List rows) {
+        int n = rows.size();
+        long size = LIST_OVERHEAD + (long) REFERENCE * n;
+        if (n == 0) {
+            return size;
+        }
+
+        // sample rows spread over the list and extrapolate
+        DtoProperties p = info.getProperties();
+        int samples = Math.min(n, SAMPLED_ROWS);
+        long sampled = 0;
+        for (int i = 0; i < samples; i++) {
+            sampled += p.estimateSize(rows.get((int) ((long) i * n / samples)));
+        }
+        return size + sampled * n / samples;
+    }
+
+    private boolean remove(QueryKey key, Entry e) {
+        if (entries.remove(key, e)) {
+            weightedSize.addAndGet(-e.weight);
+            return true;
+        }
+        return false;
+    }
+
+    private Executor getExecutor() {
+        Executor ex = this.executor;
+        if (ex == null) {
+            synchronized (this) {
+                ex = this.executor;
+                if (ex == null) {
+                    ex = createDefaultExecutor();
+                    this.executor = ex;
+                }
+            }
+        }
+        return ex;
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ResultCache-refresh");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    // ---- Bean Properties ---------------------------------------------------
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * Sets the executor of the background refreshes. Defaults to a pool of daemon threads.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public boolean isShareInstances() {
+        return tables.isShareInstances();
+    }
+
+    /**
+     * Returns the cached DTOs themselves in the lists instead of copies, for DTO classes
+     * that are never changed after they are read
+     */
+    public void setShareInstances(boolean shareInstances) {
+        tables.setShareInstances(shareInstances);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    private static final class Entry {
+
+        private final List rows;
+        private final long weight;
+        private final long freshUntil;
+        private final long staleUntil;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long lastRead;
+
+        private Entry(List rows, long weight, long freshUntil, long staleUntil) {
+            this.rows = rows;
+            this.weight = weight;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+            this.lastRead = System.nanoTime();
+        }
+    }
+
+    private static final class Freshness {
+
+        private final long freshFor;
+        private final long staleFor;
+
+        private Freshness(long freshFor, long staleFor) {
+            this.freshFor = freshFor;
+            this.staleFor = staleFor;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import org.cylog.rdo.bean.MethodModel;
+import org.cylog.rdo.bean.RdoDataType;
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.bean.RdoOperation;
+
+/**
+ * The binary layout of the rows of a mapper in the slabs of an {@link OffHeapCache}:
+ * a bitmap of the NULL values, followed by each non NULL value in the order of the
+ * mapper's read operations, encoded by its RdoDataType.
+ *
+ * <pre>
+ * BOOLEAN  1 byte         INT     4 bytes        LONG    8 bytes
+ * FLOAT    4 bytes        DOUBLE  8 bytes        CHAR    2 bytes
+ * DATE     8 bytes of milliseconds, 4 bytes of nanoseconds or -1 if not a Timestamp
+ * STRING   4 bytes of length, 2 bytes per char
+ * ENUM     4 bytes of ordinal
+ * </pre>
+ *
+ * All reads and writes use absolute positions, so a buffer is shared by any number of
+ * readers.
+ *
+ * @author Kostas Symeonidis
+ */
+final class RowLayout {
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final RdoDataType[] dataTypes;
+    private final Class[] types;
+
+    /**
+     * The constants of the enum of each ENUM operation, NULL for the other operations
+     */
+    private final Object[][] enumConstants;
+
+    private final int nullBytes;
+
+    // ---- Constructors ------------------------------------------------------
+
+    RowLayout(RdoMapper mapper) {
+        List<RdoOperation> ops = mapper.getReadOperations();
+        this.dataTypes = new RdoDataType[ops.size()];
+        this.types = new Class[ops.size()];
+        this.enumConstants = new Object[ops.size()][];
+        this.nullBytes = (ops.size() + 7) / 8;
+
+        for (int i = 0; i < ops.size(); i++) {
+            MethodModel mm = ops.get(i).getMethodModel();
+            dataTypes[i] = mm.getDataType();
+            types[i] = mm.getParameterType();
+            if (dataTypes[i] == RdoDataType.ENUM) {
+                Class enumClass = (mm.getEnumClass() != null) ? mm.getEnumClass() : types[i];
+                enumConstants[i] = enumClass.getEnumConstants();
+            }
+        }
+    }
+
+    // ---- Package methods ---------------------------------------------------
+
+    /**
+     * Returns the number of bytes the given values are encoded in
+     */
+    int size(Object[] values) {
+        int size = nullBytes;
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+
+            switch (dataTypes[i]) {
+                case BOOLEAN:
+                    size += 1;
+                    break;
+                case CHAR:
+                    size += 2;
+                    break;
+                case INT:
+                case FLOAT:
+                case ENUM:
+                    size += 4;
+                    break;
+                case LONG:
+                case DOUBLE:
+                    size += 8;
+                    break;
+                case DATE:
+                    size += 12;
+                    break;
+                case STRING:
+                    size += 4 + 2 * ((String) value).length();
+                    break;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes the given values at the given position of the buffer, which must have
+     * room for their size
+     */
+    void write(ByteBuffer buffer, int position, Object[] values) {
+        // the buffer may hold the bytes of an evicted row
+        for (int b = 0; b < nullBytes; b++) {
+            buffer.put(position + b, (byte) 0);
+        }
+
+        int p = position + nullBytes;
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                int b = position + (i >>> 3);
+                buffer.put(b, (byte) (buffer.get(b) | (1 << (i & 7))));
+                continue;
+            }
+
+            switch (dataTypes[i]) {
+                case BOOLEAN:
+                    buffer.put(p, (byte) (((Boolean) value) ? 1 : 0));
+                    p += 1;
+                    break;
+                case CHAR:
+                    buffer.putChar(p, (Character) value);
+                    p += 2;
+                    break;
+                case INT:
+                    buffer.putInt(p, ((Number) value).intValue());
+                    p += 4;
+                    break;
+                case FLOAT:
+                    buffer.putFloat(p, ((Number) value).floatValue());
+                    p += 4;
+                    break;
+                case ENUM:
+                    buffer.putInt(p, ((Enum) value).ordinal());
+                    p += 4;
+                    break;
+                case LONG:
+                    buffer.putLong(p, ((Number) value).longValue());
+                    p += 8;
+                    break;
+                case DOUBLE:
+                    buffer.putDouble(p, ((Number) value).doubleValue());
+                    p += 8;
+                    break;
+                case DATE:
+                    buffer.putLong(p, ((Date) value).getTime());
+                    buffer.putInt(p + 8,
+                                  (value instanceof Timestamp) ? ((Timestamp) value).getNanos()
+                                                               : -1);
+                    p += 12;
+                    break;
+                case STRING:
+                    String s = (String) value;
+                    buffer.putInt(p, s.length());
+                    p += 4;
+                    for (int c = 0; c < s.length(); c++) {
+                        buffer.putChar(p, s.charAt(c));
+                        p += 2;
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reads the values written at the given position of the buffer
+     */
+    Object[] read(ByteBuffer buffer, int position) {
+        Object[] values = new Object[dataTypes.length];
+        int p = position + nullBytes;
+        for (int i = 0; i < values.length; i++) {
+            if ((buffer.get(position + (i >>> 3)) & (1 << (i & 7))) != 0) {
+                continue;
+            }
+
+            switch (dataTypes[i]) {
+                case BOOLEAN:
+                    values[i] = (buffer.get(p) != 0) ? Boolean.TRUE : Boolean.FALSE;
+                    p += 1;
+                    break;
+                case CHAR:
+                    values[i] = buffer.getChar(p);
+                    p += 2;
+                    break;
+                case INT:
+                    values[i] = toIntType(buffer.getInt(p), types[i]);
+                    p += 4;
+                    break;
+                case FLOAT:
+                    values[i] = buffer.getFloat(p);
+                    p += 4;
+                    break;
+                case ENUM:
+                    values[i] = enumConstants[i][buffer.getInt(p)];
+                    p += 4;
+                    break;
+                case LONG:
+                    values[i] = buffer.getLong(p);
+                    p += 8;
+                    break;
+                case DOUBLE:
+                    values[i] = buffer.getDouble(p);
+                    p += 8;
+                    break;
+                case DATE:
+                    values[i] = toDate(buffer.getLong(p), buffer.getInt(p + 8), types[i]);
+                    p += 12;
+                    break;
+                case STRING:
+                    char[] chars = new char[buffer.getInt(p)];
+                    p += 4;
+                    for (int c = 0; c < chars.length; c++) {
+                        chars[c] = buffer.getChar(p);
+                        p += 2;
+                    }
+                    values[i] = new String(chars);
+                    break;
+            }
+        }
+        return values;
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private static Object toIntType(int value, Class type) {
+        if ((type == short.class) || (type == Short.class)) {
+            return (short) value;
+        } else if ((type == byte.class) || (type == Byte.class)) {
+            return (byte) value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the date of the given time, a Timestamp as read from the database unless
+     * it was set as another kind of date
+     */
+    private static Date toDate(long time, int nanos, Class type) {
+        if (nanos >= 0) {
+            Timestamp ts = new Timestamp(time);
+            ts.setNanos(nanos);
+            return ts;
+        } else if (type == java.sql.Date.class) {
+            return new java.sql.Date(time);
+        } else if (type == java.sql.Time.class) {
+            return new java.sql.Time(time);
+        }
+        return new Date(time);
+    }
+}
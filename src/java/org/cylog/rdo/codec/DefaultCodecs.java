@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.codec;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The built-in codecs of the types supported by the RdoDataTypes.
+ *
+ * @author Kostas Symeonidis
+ */
+public class DefaultCodecs {
+
+    // ---- Constants ---------------------------------------------------------
+
+    public static final ValueCodec OBJECT = new ObjectCodec();
+    public static final ValueCodec STRING = new StringCodec();
+    public static final ValueCodec INTEGER = new IntegerCodec();
+    public static final ValueCodec SHORT = new ShortCodec();
+    public static final ValueCodec BYTE = new ByteCodec();
+    public static final ValueCodec LONG = new LongCodec();
+    public static final ValueCodec FLOAT = new FloatCodec();
+    public static final ValueCodec DOUBLE = new DoubleCodec();
+    public static final ValueCodec CHARACTER = new CharacterCodec();
+    public static final ValueCodec TIMESTAMP = new TimestampCodec();
+    public static final ValueCodec YN_BOOLEAN = new YNBooleanCodec();
+
+    // ---- Constructors ------------------------------------------------------
+
+    private DefaultCodecs() {
+        // static only
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    /**
+     * Reads and writes any value through getObject and setObject
+     */
+    private static class ObjectCodec implements ValueCodec {
+
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            return rs.getObject(columnIndex);
+        }
+
+        public void write(PreparedStatement pstmt, int parameterIndex, Object value)
+                throws SQLException {
+            pstmt.setObject(parameterIndex, value);
+        }
+    }
+
+    private static class StringCodec extends ObjectCodec {
+
+        @Override
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            return rs.getString(columnIndex);
+        }
+    }
+
+    private static class IntegerCodec extends ObjectCodec {
+
+        @Override
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            int i = rs.getInt(columnIndex);
+            return rs.wasNull() ? null : Integer.valueOf(i);
+        }
+    }
+
+    private static class ShortCodec extends ObjectCodec {
+
+        @Override
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            short s = rs.getShort(columnIndex);
+            return rs.wasNull() ? null : Short.valueOf(s);
+        }
+    }
+
+    private static class ByteCodec extends ObjectCodec {
+
+        @Override
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            byte b = rs.getByte(columnIndex);
+            return rs.wasNull() ? null : Byte.valueOf(b);
+        }
+    }
+
+    private static class LongCodec extends ObjectCodec {
+
+        @Override
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            long l = rs.getLong(columnIndex);
+            return rs.wasNull() ? null : Long.valueOf(l);
+        }
+    }
+
+    private static class FloatCodec extends ObjectCodec {
+
+        @Override
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            float f = rs.getFloat(columnIndex);
+            return rs.wasNull() ? null : Float.valueOf(f);
+        }
+    }
+
+    private static class DoubleCodec extends ObjectCodec {
+
+        @Override
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            double d = rs.getDouble(columnIndex);
+            return rs.wasNull() ? null : Double.valueOf(d);
+        }
+    }
+
+    /**
+     * Reads a single character column, Character.valueOf caches the ASCII range
+     */
+    private static class CharacterCodec extends ObjectCodec {
+
+        @Override
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            String s = rs.getString(columnIndex);
+            if (s == null || s.length() == 0) {
+                return null;
+            } else if (s.length() > 1) {
+                throw new SQLException("String value too long for a Character " + s);
+            }
+            return Character.valueOf(s.charAt(0));
+        }
+
+        @Override
+        public void write(PreparedStatement pstmt, int parameterIndex, Object value)
+                throws SQLException {
+            pstmt.setString(parameterIndex, value.toString());
+        }
+    }
+
+    /**
+     * Reads dates as the Timestamp of the driver, which is a java.util.Date itself,
+     * so that no second object is created
+     */
+    private static class TimestampCodec extends ObjectCodec {
+
+        @Override
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            return rs.getTimestamp(columnIndex);
+        }
+
+        @Override
+        public void write(PreparedStatement pstmt, int parameterIndex, Object value)
+                throws SQLException {
+            if (value instanceof java.sql.Timestamp) {
+                pstmt.setTimestamp(parameterIndex, (java.sql.Timestamp) value);
+            } else {
+                pstmt.setTimestamp(parameterIndex,
+                                   new java.sql.Timestamp(((java.util.Date) value).getTime()));
+            }
+        }
+    }
+
+    /**
+     * Reads a column which contains 'Y' for true, anything else is false, into the
+     * shared Boolean constants, and writes 'Y' or 'N'
+     */
+    private static class YNBooleanCodec implements ValueCodec {
+
+        private static final String YES = "Y";
+        private static final String NO = "N";
+
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            String s = rs.getString(columnIndex);
+            if (s == null) {
+                return null;
+            }
+            return (s.length() == 1 && s.charAt(0) == 'Y') ? Boolean.TRUE : Boolean.FALSE;
+        }
+
+        public void write(PreparedStatement pstmt, int parameterIndex, Object value)
+                throws SQLException {
+            pstmt.setString(parameterIndex, ((Boolean) value) ? YES : NO);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.codec;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cylog.rdo.exception.DataExtractionException;
+
+/**
+ * Reads and writes the constants of an enum by name. Column values are matched to
+ * the constant names case-insensitively, through a table built once per enum class,
+ * and parameters are written as the precomputed toString() of the constants,
+ * optionally in lower case.
+ *
+ * @author Kostas Symeonidis
+ */
+public class EnumCodec implements ValueCodec {
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final Class enumClass;
+
+    /**
+     * The constants keyed by their name, upper case and lower case name
+     */
+    private final Map<String, Object> constants;
+
+    /**
+     * The value written for each constant, indexed by ordinal
+     */
+    private final String[] names;
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * @param enumClass the class of the enum
+     * @param lowerCase if TRUE, the constants are written in lower case
+     */
+    public EnumCodec(Class enumClass, boolean lowerCase) {
+        this.enumClass = enumClass;
+
+        Object[] values = enumClass.getEnumConstants();
+        this.constants = new HashMap<String, Object>(values.length * 4);
+        this.names = new String[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            String name = ((Enum) values[i]).name();
+            constants.put(name.toUpperCase(), values[i]);
+            constants.put(name.toLowerCase(), values[i]);
+            constants.put(name, values[i]);
+
+            String value = values[i].toString();
+            names[i] = lowerCase ? value.toLowerCase() : value;
+        }
+    }
+
+    // ---- Interface implementation ------------------------------------------
+
+    public Object read(ResultSet rs, int columnIndex) throws SQLException {
+        String s = rs.getString(columnIndex);
+        if (s == null) {
+            return null;
+        }
+
+        Object value = constants.get(s);
+        if (value == null) {
+            // mixed case
+            value = constants.get(s.toUpperCase());
+            if (value == null) {
+                throw new DataExtractionException(
+                        "No constant of enum " + enumClass.getName() + " matches " + s);
+            }
+        }
+
+        return value;
+    }
+
+    public void write(PreparedStatement pstmt, int parameterIndex, Object value)
+            throws SQLException {
+        pstmt.setString(parameterIndex, names[((Enum) value).ordinal()]);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.codec;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Converts the values of a java type from and to JDBC. Codecs are resolved once
+ * per setter or parameter type through the {@link ValueCodecRegistry} and are then
+ * called for every row, so they should keep any lookup state precomputed and must
+ * be thread safe.
+ *
+ * @author Kostas Symeonidis
+ */
+public interface ValueCodec {
+
+    /**
+     * Reads a column of the current row of a result set.
+     *
+     * @param rs          the result set, positioned on the row to read
+     * @param columnIndex the index of the column, starting from 1
+     *
+     * @return the value of the column, or NULL if the column was a SQL NULL
+     */
+    public Object read(ResultSet rs, int columnIndex) throws SQLException;
+
+    /**
+     * Sets a parameter of a prepared statement.
+     *
+     * @param pstmt          the prepared statement
+     * @param parameterIndex the index of the parameter, starting from 1
+     * @param value          the value to set, never NULL
+     */
+    public void write(PreparedStatement pstmt, int parameterIndex, Object value)
+            throws SQLException;
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.codec;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+
+import org.cylog.rdo.bean.RdoDataType;
+import org.cylog.rdo.exception.ModelNotSupportedException;
+import org.cylog.rdo.logger.ClassLogger;
+
+/**
+ * Static registry of the {@link ValueCodec}s used to read columns into setters and
+ * to set the parameters of statements.
+ *
+ * Codecs registered for a class replace the built-in {@link DefaultCodecs} of that
+ * class. Codecs are resolved once per mapper, so they should be registered before
+ * the mappers that use them are created. Setters with primitive parameters are always
+ * read directly and cannot have a codec.
+ *
+ * @author Kostas Symeonidis
+ */
+public class ValueCodecRegistry {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static Log log = new ClassLogger();
+
+    /**
+     * The codecs registered by the application, keyed by the class they convert
+     */
+    private static final ConcurrentMap<Class, ValueCodec> codecs =
+            new ConcurrentHashMap<Class, ValueCodec>();
+
+    /**
+     * The enum codecs that write constants with their names as declared
+     */
+    private static final ConcurrentMap<Class, ValueCodec> enumCodecs =
+            new ConcurrentHashMap<Class, ValueCodec>();
+
+    /**
+     * The enum codecs that write constants with their names in lower case
+     */
+    private static final ConcurrentMap<Class, ValueCodec> lowerCaseEnumCodecs =
+            new ConcurrentHashMap<Class, ValueCodec>();
+
+    // ---- Static Public methods ---------------------------------------------
+
+    /**
+     * Registers a codec for a class, replacing any codec of the same class
+     *
+     * @throws ModelNotSupportedException if the class is a primitive
+     */
+    public static void register(Class c, ValueCodec codec) {
+        if (c.isPrimitive()) {
+            throw new ModelNotSupportedException(
+                    "Codecs cannot be registered for primitive type " + c);
+        }
+
+        log.info("+ Registering codec " + codec.getClass().getName() + " for " + c.getName());
+        codecs.put(c, codec);
+    }
+
+    /**
+     * Returns the codec that reads a column into a setter of the given type
+     *
+     * @param dataType the RdoDataType of the setter
+     * @param c        the parameter type of the setter
+     *
+     * @throws ModelNotSupportedException if there is no codec for the type
+     */
+    public static ValueCodec getCodec(RdoDataType dataType, Class c) {
+        ValueCodec codec = codecs.get(c);
+        if (codec != null) {
+            return codec;
+        }
+
+        switch (dataType) {
+            case STRING:
+                return DefaultCodecs.STRING;
+
+            case INT:
+                if (c == Short.class) {
+                    return DefaultCodecs.SHORT;
+                } else if (c == Byte.class) {
+                    return DefaultCodecs.BYTE;
+                }
+                return DefaultCodecs.INTEGER;
+
+            case LONG:
+                return DefaultCodecs.LONG;
+
+            case FLOAT:
+                return DefaultCodecs.FLOAT;
+
+            case DOUBLE:
+                return DefaultCodecs.DOUBLE;
+
+            case CHAR:
+                return DefaultCodecs.CHARACTER;
+
+            case DATE:
+                return DefaultCodecs.TIMESTAMP;
+
+            case BOOLEAN:
+                return DefaultCodecs.YN_BOOLEAN;
+
+            case ENUM:
+                return getEnumCodec(c, true);
+
+            default:
+                throw new ModelNotSupportedException(
+                        "No codec for RdoDataType " + dataType + " and type " + c.getName());
+        }
+    }
+
+    /**
+     * Returns the codec that sets a statement parameter of the given class. Enum constants
+     * are set by name, everything else through setObject unless a codec is registered.
+     *
+     * @param c              the class of the parameter value
+     * @param lowerCaseEnums if TRUE, enum constants are set in lower case
+     */
+    public static ValueCodec getParameterCodec(Class c, boolean lowerCaseEnums) {
+        if (!codecs.isEmpty()) {
+            ValueCodec codec = codecs.get(c);
+            if (codec != null) {
+                return codec;
+            }
+        }
+
+        if (c.isEnum()) {
+            return getEnumCodec(c, lowerCaseEnums);
+        } else if ((c.getSuperclass() != null) && c.getSuperclass().isEnum()) {
+            // constant with a class body
+            return getEnumCodec(c.getSuperclass(), lowerCaseEnums);
+        }
+
+        return DefaultCodecs.OBJECT;
+    }
+
+    // ---- Static Private methods --------------------------------------------
+
+    private static ValueCodec getEnumCodec(Class c, boolean lowerCase) {
+        ConcurrentMap<Class, ValueCodec> cache = lowerCase ? lowerCaseEnumCodecs : enumCodecs;
+
+        ValueCodec codec = cache.get(c);
+        if (codec == null) {
+            codec = new EnumCodec(c, lowerCase);
+            ValueCodec existing = cache.putIfAbsent(c, codec);
+            if (existing != null) {
+                codec = existing;
+            }
+        }
+
+        return codec;
+    }
+}
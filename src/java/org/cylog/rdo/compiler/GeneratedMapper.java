@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.compiler;
+
+import org.cylog.rdo.bean.RdoMapper;
+
+/**
+ * A mapper generated at build time by the {@link RdoMapperProcessor}. Implementations
+ * are registered as services under META-INF/services and looked up through the
+ * {@link GeneratedMapperRegistry}.
+ *
+ * @author Kostas Symeonidis
+ */
+public interface GeneratedMapper {
+
+    /**
+     * Returns the DTO class of this mapper
+     */
+    public Class getDtoClass();
+
+    /**
+     * Returns the table name of this mapper, as it appears in the schema file
+     */
+    public String getTableName();
+
+    /**
+     * Creates a fully matched RdoMapper with a compiled RdoRowReader, without using
+     * the database metadata or reflection.
+     */
+    public RdoMapper createMapper();
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+
+import org.apache.commons.logging.Log;
+
+import org.cylog.rdo.logger.ClassLogger;
+
+/**
+ * Static registry of the {@link GeneratedMapper}s available to the application.
+ *
+ * Generated mappers are discovered with a {@link ServiceLoader} the first time a
+ * class of a given class loader is looked up, and can also be registered manually.
+ *
+ * @author Kostas Symeonidis
+ */
+public class GeneratedMapperRegistry {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static Log log = new ClassLogger();
+
+    /**
+     * The registered mappers keyed by "className:TABLENAME"
+     */
+    private static final Map<String, GeneratedMapper> mappers =
+            new HashMap<String, GeneratedMapper>();
+
+    /**
+     * The class loaders that have already been searched for generated mappers
+     */
+    private static final Map<ClassLoader, Boolean> scannedLoaders =
+            new WeakHashMap<ClassLoader, Boolean>();
+
+    // ---- Static Public methods ---------------------------------------------
+
+    /**
+     * Returns the generated mapper of the given class and table, or NULL if there is none
+     */
+    public static synchronized GeneratedMapper getMapper(Class c, String tableName) {
+        ClassLoader loader = c.getClassLoader();
+        if ((loader != null) && (scannedLoaders.put(loader, Boolean.TRUE) == null)) {
+            loadMappers(loader);
+        }
+
+        GeneratedMapper m = mappers.get(getKey(c, tableName));
+        return ((m != null) && (m.getDtoClass() == c)) ? m : null;
+    }
+
+    /**
+     * Registers a generated mapper, replacing any mapper of the same class and table
+     */
+    public static synchronized void register(GeneratedMapper m) {
+        log.info("+ Registering generated mapper " + m.getClass().getName());
+        mappers.put(getKey(m.getDtoClass(), m.getTableName()), m);
+    }
+
+    // ---- Static Private methods --------------------------------------------
+
+    private static void loadMappers(ClassLoader loader) {
+        try {
+            for (GeneratedMapper m : ServiceLoader.load(GeneratedMapper.class, loader)) {
+                register(m);
+            }
+        } catch (ServiceConfigurationError sce) {
+            log.warn("Cannot load generated mappers: " + sce.getMessage());
+        }
+    }
+
+    private static String getKey(Class c, String tableName) {
+        return c.getName() + ":" + tableName.toUpperCase();
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.logging.Log;
+
+import org.cylog.rdo.bean.ConstructorModel;
+import org.cylog.rdo.bean.MethodModel;
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.bean.RdoOperation;
+import org.cylog.rdo.dao.extractor.RdoRowReader;
+import org.cylog.rdo.exception.ModelNotSupportedException;
+import org.cylog.rdo.logger.ClassLogger;
+
+/**
+ * Compiles an RdoMapper into a generated {@link RdoRowReader} class, which reads
+ * the mapped columns in a straight line and calls the setters, or the constructor,
+ * of the DTO directly.
+ *
+ * The source is written by a {@link MapperSourceWriter}, compiled in memory with the
+ * system Java compiler and defined in a private class loader that delegates to the
+ * DTO's class loader. When the class cannot be generated (no compiler available in
+ * a JRE, a non-public DTO, an unsupported setter type) the compiler returns NULL
+ * and the caller is expected to fall back to the reflective extraction.
+ *
+ * @author Kostas Symeonidis
+ */
+public class MapperCompiler {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static Log log = new ClassLogger();
+
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    // ---- Constants ---------------------------------------------------------
+
+    public static final String GENERATED_PACKAGE = "org.cylog.rdo.generated";
+
+    // ---- Static Public methods ---------------------------------------------
+
+    /**
+     * Generates, compiles and instantiates an RdoRowReader for the given mapper.
+     *
+     * @return the compiled RdoRowReader, or NULL if one cannot be generated
+     */
+    public static RdoRowReader compile(RdoMapper mapper) {
+        Class dtoClass = mapper.getClassModel().getInternalClass();
+        log.info("+ Compiling RdoRowReader for class " + dtoClass.getCanonicalName() +
+                 " and table " + mapper.getTableModel().getTableName());
+
+        try {
+            checkAccessible(dtoClass);
+
+            MapperSourceWriter writer = new MapperSourceWriter(
+                    GENERATED_PACKAGE, generateClassName(mapper), dtoClass.getCanonicalName());
+
+            ConstructorModel constructorModel = mapper.getClassModel().getConstructorModel();
+            if (mapper.isConstructorMapped()) {
+                List<String> types = new ArrayList<String>();
+                for (MethodModel p : constructorModel.getParameters()) {
+                    checkAccessible(p.getParameterType());
+                    types.add(p.getParameterType().getCanonicalName());
+                }
+                writer.setConstructorParameters(types);
+            }
+
+            List<RdoOperation> readOperations = mapper.getReadOperations();
+            for (int i = 0; i < readOperations.size(); i++) {
+                RdoOperation ro = readOperations.get(i);
+                Class paramType = ro.getMethodModel().getParameterType();
+                checkAccessible(paramType);
+
+                if (mapper.isConstructorMapped()) {
+                    writer.addArgument(ro.getColumnName(), mapper.getConstructorArguments()[i],
+                                       paramType.getCanonicalName(),
+                                       ro.getMethodModel().getDataType());
+                } else {
+                    writer.addAssignment(ro.getColumnName(), ro.getMethodName(),
+                                         paramType.getCanonicalName(),
+                                         ro.getMethodModel().getDataType());
+                }
+            }
+
+            Class<?> readerClass = compileClass(writer.getQualifiedClassName(), writer.write(),
+                                             dtoClass);
+            return (RdoRowReader) readerClass.getConstructor().newInstance();
+        } catch (ModelNotSupportedException mnse) {
+            log.warn("Cannot compile RdoRowReader, using reflection instead: " + mnse.getMessage());
+        } catch (InstantiationException ie) {
+            log.warn("Cannot instantiate compiled RdoRowReader, using reflection instead", ie);
+        } catch (IllegalAccessException iae) {
+            log.warn("Cannot instantiate compiled RdoRowReader, using reflection instead", iae);
+        } catch (InvocationTargetException ite) {
+            log.warn("Cannot instantiate compiled RdoRowReader, using reflection instead",
+                     ite.getCause());
+        } catch (NoSuchMethodException nsme) {
+            log.warn("Cannot instantiate compiled RdoRowReader, using reflection instead", nsme);
+        }
+
+        return null;
+    }
+
+    // ---- Static Private methods --------------------------------------------
+
+    /**
+     * Compiles the given source in memory and returns the loaded class
+     */
+    private static Class compileClass(String className, String source, Class dtoClass) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new ModelNotSupportedException("No system Java compiler available");
+        }
+
+        ClassLoader parent = dtoClass.getClassLoader();
+        if (parent == null) {
+            parent = MapperCompiler.class.getClassLoader();
+        }
+        checkVisible(RdoRowReader.class, parent);
+
+        log.debug("Compiling generated source:\n" + source);
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        MemoryFileManager fileManager = new MemoryFileManager(
+                compiler.getStandardFileManager(diagnostics, null, null));
+
+        List<String> options = Arrays.asList(
+                "-classpath", getClassPath(dtoClass), "-proc:none", "-nowarn", "-g");
+        List<SourceFile> units = Arrays.asList(new SourceFile(className, source));
+
+        Boolean success = compiler.getTask(null, fileManager, diagnostics, options, null,
+                                           units).call();
+        if (!Boolean.TRUE.equals(success)) {
+            StringBuilder sb = new StringBuilder("Compilation of " + className + " failed:");
+            for (Diagnostic d : diagnostics.getDiagnostics()) {
+                sb.append("\n  ").append(d.getMessage(null));
+            }
+            throw new ModelNotSupportedException(sb.toString());
+        }
+
+        try {
+            return new GeneratedClassLoader(parent, fileManager.getClassBytes()).loadClass(
+                    className);
+        } catch (ClassNotFoundException cnfe) {
+            throw new ModelNotSupportedException("Compiled class not found " + className);
+        }
+    }
+
+    /**
+     * Returns the class path for the compiler, which is the system class path plus
+     * the locations of the RDO library and the DTO class, in case these have been
+     * loaded by an application-specific class loader.
+     */
+    private static String getClassPath(Class dtoClass) {
+        Set<String> paths = new LinkedHashSet<String>();
+        addCodeSource(paths, MapperCompiler.class);
+        addCodeSource(paths, dtoClass);
+
+        StringBuilder sb = new StringBuilder(System.getProperty("java.class.path", ""));
+        for (String path : paths) {
+            sb.append(File.pathSeparator).append(path);
+        }
+        return sb.toString();
+    }
+
+    private static void addCodeSource(Set<String> paths, Class c) {
+        try {
+            CodeSource cs = c.getProtectionDomain().getCodeSource();
+            if ((cs != null) && (cs.getLocation() != null)) {
+                paths.add(new File(cs.getLocation().toURI()).getPath());
+            }
+        } catch (Exception e) {
+            log.debug("Cannot determine the location of class " + c.getName());
+        }
+    }
+
+    /**
+     * Checks that the given class can be referenced from the generated class
+     */
+    private static void checkAccessible(Class c) {
+        if (c.isPrimitive()) {
+            return;
+        }
+
+        if (c.getCanonicalName() == null) {
+            throw new ModelNotSupportedException("Class " + c.getName() + " has no canonical name");
+        }
+
+        for (Class k = c; k != null; k = k.getEnclosingClass()) {
+            if (!Modifier.isPublic(k.getModifiers())) {
+                throw new ModelNotSupportedException("Class " + k.getName() + " is not public");
+            }
+        }
+    }
+
+    /**
+     * Checks that the given class is visible through the given class loader
+     */
+    private static void checkVisible(Class c, ClassLoader loader) {
+        try {
+            if (Class.forName(c.getName(), false, loader) == c) {
+                return;
+            }
+        } catch (ClassNotFoundException cnfe) {
+            // fall through
+        }
+
+        throw new ModelNotSupportedException(
+                "Class " + c.getName() + " is not visible from class loader " + loader);
+    }
+
+    /**
+     * Returns a unique name for the generated class, i.e. "NumberData_NUMBERS_1"
+     */
+    private static String generateClassName(RdoMapper mapper) {
+        String name = mapper.getClassModel().getInternalClass().getSimpleName() + "_" +
+                      mapper.getTableModel().getTableName();
+
+        StringBuilder sb = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            sb.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+
+        return sb.append('_').append(classCounter.incrementAndGet()).toString();
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    /**
+     * A compilation unit held in memory
+     */
+    private static class SourceFile extends SimpleJavaFileObject {
+
+        private final String source;
+
+        private SourceFile(String className, String source) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension),
+                  Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    /**
+     * A class file produced by the compiler, held in memory
+     */
+    private static class ClassFile extends SimpleJavaFileObject {
+
+        private final ByteArrayOutputStream bytes;
+
+        private ClassFile(String className) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension),
+                  Kind.CLASS);
+            this.bytes = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return bytes;
+        }
+    }
+
+    /**
+     * A file manager that keeps the compiled classes in memory
+     */
+    private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        private final Map<String, ClassFile> classFiles;
+
+        private MemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+            this.classFiles = new HashMap<String, ClassFile>();
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location,
+                                                   String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) {
+            ClassFile file = new ClassFile(className);
+            classFiles.put(className, file);
+            return file;
+        }
+
+        private Map<String, byte[]> getClassBytes() {
+            Map<String, byte[]> result = new HashMap<String, byte[]>();
+            for (Map.Entry<String, ClassFile> e : classFiles.entrySet()) {
+                result.put(e.getKey(), e.getValue().bytes.toByteArray());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Defines the generated classes on top of the DTO's class loader
+     */
+    private static class GeneratedClassLoader extends ClassLoader {
+
+        private final Map<String, byte[]> classBytes;
+
+        private GeneratedClassLoader(ClassLoader parent, Map<String, byte[]> classBytes) {
+            super(parent);
+            this.classBytes = classBytes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] b = classBytes.get(name);
+            if (b == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+}
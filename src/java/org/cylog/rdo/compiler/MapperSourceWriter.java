@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cylog.rdo.bean.RdoDataType;
+import org.cylog.rdo.exception.ModelNotSupportedException;
+
+/**
+ * Writes the Java source of an {@link org.cylog.rdo.dao.extractor.RdoRowReader}
+ * implementation for a single DTO class. Every column-to-setter assignment is
+ * written as a direct setter call on the DTO, reading the column with the most
+ * specific JDBC getter for the setter's primitive parameter type, or through the
+ * ValueCodec of any other parameter type. The codecs are resolved from the
+ * ValueCodecRegistry once, when the generated class is initialised. Primitive
+ * setters are passed the primitive value as read, without boxing, and a SQL NULL
+ * is handled by the PrimitiveNullPolicy the reader is given.
+ *
+ * A DTO that is created through a constructor with parameters gets its columns
+ * read into local variables instead, which are then passed to a single
+ * constructor call.
+ *
+ * The writer works on type names only, so that it can be driven both from the
+ * runtime models and from source elements.
+ *
+ * @author Kostas Symeonidis
+ */
+public class MapperSourceWriter {
+
+    // ---- Constants ---------------------------------------------------------
+
+    private static final String JDBC_UTIL = "org.cylog.rdo.util.JdbcUtil";
+    private static final String CODEC = "org.cylog.rdo.codec.ValueCodec";
+    private static final String CODEC_REGISTRY = "org.cylog.rdo.codec.ValueCodecRegistry";
+
+    private static final List<String> PRIMITIVES = Arrays.asList(
+            "boolean", "char", "byte", "short", "int", "long", "float", "double");
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final String packageName;
+    private final String className;
+    private final String dtoClassName;
+
+    private final List<Assignment> assignments;
+
+    /**
+     * The parameter types of the DTO constructor, NULL if the DTO is created with its
+     * default constructor and populated with setters
+     */
+    private List<String> constructorParameters;
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * @param packageName  the package of the generated class
+     * @param className    the simple name of the generated class
+     * @param dtoClassName the canonical name of the DTO class that will be populated
+     */
+    public MapperSourceWriter(String packageName, String className, String dtoClassName) {
+        this.packageName = packageName;
+        this.className = className;
+        this.dtoClassName = dtoClassName;
+        this.assignments = new ArrayList<Assignment>();
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Adds an assignment of a column to a setter, in the order the assignments
+     * will be executed. The generated reader reads the column of the n-th assignment
+     * from the n-th entry of the column indexes it is given.
+     *
+     * @param columnName the name of the column, for reference in the generated source
+     * @param setterName the name of the setter method
+     * @param paramType  the canonical name of the setter's parameter type, i.e.
+     *                   "int" or "java.lang.Integer"
+     * @param dataType   the RdoDataType of the setter
+     *
+     * @throws ModelNotSupportedException if a read cannot be generated for this type
+     */
+    public void addAssignment(String columnName, String setterName, String paramType,
+                              RdoDataType dataType) {
+        addAssignment(new Assignment(columnName, setterName, -1, paramType, dataType));
+    }
+
+    /**
+     * Makes the generated reader create the DTO through the constructor with the given
+     * parameter types, whose arguments are then added with addArgument
+     *
+     * @param parameterTypes the canonical names of the constructor's parameter types
+     */
+    public void setConstructorParameters(List<String> parameterTypes) {
+        this.constructorParameters = new ArrayList<String>(parameterTypes);
+    }
+
+    /**
+     * Adds a read of a column into a constructor argument, in the order the reads
+     * will be executed, like addAssignment.
+     *
+     * @param columnName     the name of the column, for reference in the generated source
+     * @param parameterIndex the index of the constructor parameter
+     * @param paramType      the canonical name of the parameter type
+     * @param dataType       the RdoDataType of the parameter
+     *
+     * @throws ModelNotSupportedException if a read cannot be generated for this type
+     */
+    public void addArgument(String columnName, int parameterIndex, String paramType,
+                            RdoDataType dataType) {
+        if ((constructorParameters == null) ||
+            !paramType.equals(constructorParameters.get(parameterIndex))) {
+            throw new ModelNotSupportedException(
+                    "No constructor parameter " + parameterIndex + " of type " + paramType +
+                    " for column " + columnName);
+        }
+        addAssignment(new Assignment(columnName, null, parameterIndex, paramType, dataType));
+    }
+
+    public String getQualifiedClassName() {
+        return packageName + "." + className;
+    }
+
+    /**
+     * Returns the complete source of the generated class
+     */
+    public String write() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("package ").append(packageName).append(";\n\n");
+        sb.append("public final class ").append(className)
+          .append(" implements org.cylog.rdo.dao.extractor.RdoRowReader {\n\n");
+
+        for (int i = 0; i < assignments.size(); i++) {
+            Assignment a = assignments.get(i);
+            if (!a.isPrimitive()) {
+                sb.append("    private static final ").append(CODEC).append(" CODEC_").append(i)
+                  .append(" =\n            ").append(CODEC_REGISTRY).append(".getCodec(")
+                  .append("org.cylog.rdo.bean.RdoDataType.").append(a.dataType).append(", ")
+                  .append(a.paramType).append(".class);\n");
+            }
+        }
+        sb.append('\n');
+
+        sb.append("    public Object readRow(java.sql.ResultSet rs, int[] columns,\n");
+        sb.append("                          org.cylog.rdo.bean.PrimitiveNullPolicy nulls,")
+          .append(" Object target) throws java.sql.SQLException {\n");
+        if (constructorParameters == null) {
+            sb.append("        ").append(dtoClassName).append(" dto = (target != null) ? (")
+              .append(dtoClassName).append(") target : new ").append(dtoClassName)
+              .append("();\n");
+        } else {
+            for (int i = 0; i < constructorParameters.size(); i++) {
+                String t = constructorParameters.get(i);
+                sb.append("        ").append(t).append(" a").append(i).append(" = ")
+                  .append("boolean".equals(t) ? "false" : PRIMITIVES.contains(t) ? "0" : "null")
+                  .append(";\n");
+            }
+        }
+        sb.append("        int c;\n");
+
+        for (int i = 0; i < assignments.size(); i++) {
+            Assignment a = assignments.get(i);
+            sb.append("        if ((c = columns[").append(i).append("]) > 0) { // ")
+              .append(a.columnName).append('\n');
+            if (a.isPrimitive()) {
+                sb.append("            ").append(a.paramType).append(" v = ")
+                  .append(readExpression(a)).append(";\n");
+                sb.append("            if (!rs.wasNull() || nulls.assignDefault(\"")
+                  .append(a.columnName).append("\")) {\n");
+                sb.append("                ").append(assign(a, "v")).append(";\n");
+                sb.append("            }\n");
+            } else {
+                sb.append("            ").append(assign(a, "(" + a.paramType + ") CODEC_" + i +
+                                                         ".read(rs, c)")).append(";\n");
+            }
+            sb.append("        }\n");
+        }
+
+        if (constructorParameters == null) {
+            sb.append("        return dto;\n");
+        } else {
+            sb.append("        return new ").append(dtoClassName).append('(');
+            for (int i = 0; i < constructorParameters.size(); i++) {
+                sb.append(i > 0 ? ", a" : "a").append(i);
+            }
+            sb.append(");\n");
+        }
+        sb.append("    }\n");
+        sb.append("}\n");
+
+        return sb.toString();
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private void addAssignment(Assignment a) {
+        // fail early, not when the source is written
+        if (a.isPrimitive()) {
+            readExpression(a);
+        }
+        this.assignments.add(a);
+    }
+
+    /**
+     * Returns the statement that assigns the given value to the setter or the constructor
+     * argument of the assignment
+     */
+    private String assign(Assignment a, String value) {
+        if (a.argument >= 0) {
+            return "a" + a.argument + " = " + value;
+        }
+        return "dto." + a.setterName + "(" + value + ")";
+    }
+
+    /**
+     * Returns the expression that reads the column of the given assignment
+     * as a value of the setter's primitive parameter type. The column index
+     * is held in the local variable "c" of the generated method.
+     */
+    private String readExpression(Assignment a) {
+        String col = "c";
+        String t = a.paramType;
+
+        switch (a.dataType) {
+            case INT:
+                if ("int".equals(t)) {
+                    return "rs.getInt(" + col + ")";
+                } else if ("short".equals(t) || "byte".equals(t)) {
+                    return "(" + t + ") rs.getInt(" + col + ")";
+                }
+                break;
+
+            case LONG:
+                if ("long".equals(t)) {
+                    return "rs.getLong(" + col + ")";
+                }
+                break;
+
+            case FLOAT:
+                if ("float".equals(t)) {
+                    return "rs.getFloat(" + col + ")";
+                }
+                break;
+
+            case DOUBLE:
+                if ("double".equals(t)) {
+                    return "rs.getDouble(" + col + ")";
+                }
+                break;
+
+            case CHAR:
+                if ("char".equals(t)) {
+                    return JDBC_UTIL + ".getChar(rs, " + col + ")";
+                }
+                break;
+
+            case BOOLEAN:
+                if ("boolean".equals(t)) {
+                    return JDBC_UTIL + ".getYNString(rs, " + col + ")";
+                }
+                break;
+        }
+
+        throw new ModelNotSupportedException(
+                "Cannot generate a read of " + a.dataType + " into type " + t +
+                " for column " + a.columnName);
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    private static class Assignment {
+
+        private final String columnName;
+        private final String setterName;
+        private final int argument;
+        private final String paramType;
+        private final RdoDataType dataType;
+
+        private Assignment(String columnName, String setterName, int argument,
+                           String paramType, RdoDataType dataType) {
+            this.columnName = columnName;
+            this.setterName = setterName;
+            this.argument = argument;
+            this.paramType = paramType;
+            this.dataType = dataType;
+        }
+
+        private boolean isPrimitive() {
+            return PRIMITIVES.contains(paramType);
+        }
+    }
+}
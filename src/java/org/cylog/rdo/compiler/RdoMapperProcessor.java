@@ -0,0 +1,560 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.compiler;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import org.cylog.rdo.annotation.RdoConstructor;
+import org.cylog.rdo.annotation.RdoTable;
+import org.cylog.rdo.bean.ColumnModel;
+import org.cylog.rdo.bean.RdoDataType;
+import org.cylog.rdo.bean.TableModel;
+import org.cylog.rdo.exception.ModelNotSupportedException;
+import org.cylog.rdo.exception.ModelRetrievalException;
+import org.cylog.rdo.util.FieldNameUtil;
+
+/**
+ * Annotation processor that generates the mappers of the classes annotated with
+ * {@link RdoTable} at build time. The tables are read from the UTF-8 schema description
+ * given with the "rdo.schema" processor option (see {@link SchemaDescription}) and
+ * the columns are matched to the setters, or to the parameters of an
+ * {@link RdoConstructor}, with the same rules the RdoMapper uses at runtime.
+ *
+ * For every class and table the processor generates an RdoRowReader and a
+ * {@link GeneratedMapper}, and registers the latter in
+ * META-INF/services/org.cylog.rdo.compiler.GeneratedMapper. Without the "rdo.schema"
+ * option the processor does nothing.
+ *
+ * @author Kostas Symeonidis
+ */
+@SupportedAnnotationTypes("org.cylog.rdo.annotation.RdoTable")
+@SupportedOptions(RdoMapperProcessor.SCHEMA_OPTION)
+public class RdoMapperProcessor extends AbstractProcessor {
+
+    // ---- Constants ---------------------------------------------------------
+
+    public static final String SCHEMA_OPTION = "rdo.schema";
+
+    private static final String SERVICE_FILE =
+            "META-INF/services/" + GeneratedMapper.class.getName();
+
+    // ---- Member Variables --------------------------------------------------
+
+    private Map<String, TableModel> schema;
+
+    private final Set<String> generatedMappers = new LinkedHashSet<String>();
+
+    // ---- Processor implementation ------------------------------------------
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!generatedMappers.isEmpty()) {
+                writeServiceFile();
+            }
+            return false;
+        }
+
+        for (Element e : roundEnv.getElementsAnnotatedWith(RdoTable.class)) {
+            if (e.getKind() != ElementKind.CLASS) {
+                error(e, "@RdoTable can only be used on classes");
+                continue;
+            }
+
+            if (!loadSchema(e)) {
+                return true;
+            }
+
+            TypeElement type = (TypeElement) e;
+            for (String tableName : type.getAnnotation(RdoTable.class).value()) {
+                generate(type, tableName);
+            }
+        }
+
+        return true;
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    /**
+     * Loads the schema description on first use, returns FALSE if it is not available
+     */
+    private boolean loadSchema(Element e) {
+        if (schema != null) {
+            return true;
+        }
+
+        String fileName = processingEnv.getOptions().get(SCHEMA_OPTION);
+        if (fileName == null) {
+            processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.WARNING,
+                    "No -A" + SCHEMA_OPTION + " option given, RDO mappers will not be generated",
+                    e);
+            return false;
+        }
+
+        Reader reader = null;
+        try {
+            reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
+            schema = SchemaDescription.read(reader);
+            return true;
+        } catch (IOException ioe) {
+            error(e, "Cannot read RDO schema description " + fileName + ": " + ioe.getMessage());
+        } catch (ModelRetrievalException mre) {
+            error(e, mre.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ioe) {
+                    // ignore
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generates the RdoRowReader and the GeneratedMapper of a class and table
+     */
+    private void generate(TypeElement type, String tableName) {
+        TableModel table = schema.get(tableName.toUpperCase());
+        if (table == null) {
+            error(type, "Table " + tableName + " not found in the RDO schema description");
+            return;
+        }
+
+        ExecutableElement constructor = getRdoConstructor(type);
+        if ((constructor == null) && !hasPublicDefaultConstructor(type)) {
+            error(type, "Class " + type.getQualifiedName() + " needs a public no-arguments " +
+                        "constructor or an @RdoConstructor to generate an RDO mapper");
+            return;
+        }
+
+        String packageName = getPackageName(type);
+        String baseName = getBaseName(type, packageName) + "_" + sanitize(table.getTableName());
+        String dtoClassName = type.getQualifiedName().toString();
+
+        MapperSourceWriter reader = new MapperSourceWriter(
+                packageName, baseName + "_RdoRowReader", dtoClassName);
+
+        StringBuilder operations = new StringBuilder();
+        if (constructor != null) {
+            if (!writeConstructorOperations(constructor, table, reader, operations)) {
+                return;
+            }
+        } else {
+            Map<String, ExecutableElement> setters = getSetters(type);
+            for (int i = 0; i < table.getColumns().size(); i++) {
+                ColumnModel column = table.getColumns().get(i);
+
+                for (String setterName : FieldNameUtil.getPossibleSettersFromFieldName(
+                        column.getColumnName())) {
+                    ExecutableElement setter = setters.get(setterName);
+                    if (setter != null) {
+                        TypeMirror paramType = setter.getParameters().get(0).asType();
+                        RdoDataType dataType = getDataType(paramType);
+                        String typeName = getTypeName(paramType);
+
+                        try {
+                            reader.addAssignment(column.getColumnName(), setterName, typeName,
+                                                 dataType);
+                        } catch (ModelNotSupportedException mnse) {
+                            error(setter, mnse.getMessage());
+                            return;
+                        }
+
+                        operations.append("        ops.add(new org.cylog.rdo.bean.RdoOperation(")
+                                  .append("method(cls, \"").append(setterName).append("\", ")
+                                  .append(typeName).append(".class, ")
+                                  .append("org.cylog.rdo.bean.RdoDataType.").append(dataType)
+                                  .append("), table.getColumns().get(").append(i)
+                                  .append(")));\n");
+                        break;
+                    }
+                }
+            }
+        }
+
+        String mapperName = packageName + "." + baseName + "_RdoMapper";
+        writeSource(type, reader.getQualifiedClassName(), reader.write());
+        writeSource(type, mapperName,
+                    writeMapperSource(packageName, baseName, dtoClassName, table, operations));
+        generatedMappers.add(mapperName);
+    }
+
+    /**
+     * Adds the reads of the columns into the arguments of an @RdoConstructor, and writes the
+     * operations that create the ConstructorModel and read into its parameters
+     *
+     * @return FALSE if an error has been reported
+     */
+    private boolean writeConstructorOperations(ExecutableElement constructor, TableModel table,
+                                               MapperSourceWriter reader,
+                                               StringBuilder operations) {
+        String[] names = constructor.getAnnotation(RdoConstructor.class).value();
+        List<? extends VariableElement> parameters = constructor.getParameters();
+        if (names.length != parameters.size()) {
+            error(constructor, "@RdoConstructor has " + names.length + " names for " +
+                               parameters.size() + " parameters");
+            return false;
+        }
+
+        List<String> typeNames = new ArrayList<String>();
+        Map<String, Integer> parameterIndexes = new HashMap<String, Integer>();
+        StringBuilder nameList = new StringBuilder();
+        StringBuilder typeList = new StringBuilder();
+        for (int p = 0; p < names.length; p++) {
+            TypeMirror paramType = parameters.get(p).asType();
+            if (getDataType(paramType) == null) {
+                error(parameters.get(p), "Parameter type " + paramType + " is not supported");
+                return false;
+            }
+
+            typeNames.add(getTypeName(paramType));
+            parameterIndexes.put(
+                    "set" + FieldNameUtil.firstUpper(FieldNameUtil.camelCase(names[p])), p);
+            nameList.append(p > 0 ? ", \"" : "\"").append(names[p]).append('"');
+            typeList.append(p > 0 ? ", " : "").append(typeNames.get(p)).append(".class");
+        }
+        reader.setConstructorParameters(typeNames);
+
+        operations.append("        org.cylog.rdo.bean.ConstructorModel ctor = ")
+                  .append("new org.cylog.rdo.bean.ConstructorModel(cls.getInternalClass(),\n")
+                  .append("                new String[] {").append(nameList).append("},\n")
+                  .append("                new Class[] {").append(typeList).append("});\n")
+                  .append("        cls.setConstructorModel(ctor);\n");
+
+        for (int i = 0; i < table.getColumns().size(); i++) {
+            ColumnModel column = table.getColumns().get(i);
+
+            for (String setterName : FieldNameUtil.getPossibleSettersFromFieldName(
+                    column.getColumnName())) {
+                Integer p = parameterIndexes.get(setterName);
+                if (p != null) {
+                    TypeMirror paramType = parameters.get(p).asType();
+                    try {
+                        reader.addArgument(column.getColumnName(), p, typeNames.get(p),
+                                           getDataType(paramType));
+                    } catch (ModelNotSupportedException mnse) {
+                        error(parameters.get(p), mnse.getMessage());
+                        return false;
+                    }
+
+                    operations.append("        ops.add(new org.cylog.rdo.bean.RdoOperation(")
+                              .append("ctor.getParameters().get(").append(p).append("), ")
+                              .append("table.getColumns().get(").append(i).append(")));\n");
+                    break;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the source of the GeneratedMapper, which creates the models and the
+     * operations directly
+     */
+    private String writeMapperSource(String packageName, String baseName, String dtoClassName,
+                                     TableModel table, CharSequence operations) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("package ").append(packageName).append(";\n\n");
+        sb.append("public final class ").append(baseName).append("_RdoMapper")
+          .append(" implements org.cylog.rdo.compiler.GeneratedMapper {\n\n");
+
+        sb.append("    public Class getDtoClass() {\n");
+        sb.append("        return ").append(dtoClassName).append(".class;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    public String getTableName() {\n");
+        sb.append("        return \"").append(table.getTableName()).append("\";\n");
+        sb.append("    }\n\n");
+
+        sb.append("    public org.cylog.rdo.bean.RdoMapper createMapper() {\n");
+        sb.append("        org.cylog.rdo.bean.TableModel table = ")
+          .append("new org.cylog.rdo.bean.TableModel(\"").append(table.getTableName())
+          .append("\");\n");
+        for (ColumnModel c : table.getColumns()) {
+            sb.append("        table.addColumn(new org.cylog.rdo.bean.ColumnModel(")
+              .append(c.getColumnIndex()).append(", \"").append(c.getColumnName()).append("\", ")
+              .append(c.getSqlType()).append(", ").append(c.getColumnLength()).append(", ")
+              .append(c.getDecimalDigits()).append(", ").append(c.isNullable()).append("));\n");
+        }
+        sb.append("\n");
+        sb.append("        org.cylog.rdo.bean.ClassModel cls = ")
+          .append("new org.cylog.rdo.bean.ClassModel(").append(dtoClassName).append(".class);\n");
+        sb.append("        java.util.List<org.cylog.rdo.bean.RdoOperation> ops = ")
+          .append("new java.util.ArrayList<org.cylog.rdo.bean.RdoOperation>();\n");
+        sb.append(operations);
+        sb.append("\n");
+        sb.append("        org.cylog.rdo.bean.RdoMapper m = ")
+          .append("new org.cylog.rdo.bean.RdoMapper(cls, table, ops);\n");
+        sb.append("        m.setRowReader(new ").append(baseName).append("_RdoRowReader());\n");
+        sb.append("        return m;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    private static org.cylog.rdo.bean.MethodModel method(")
+          .append("org.cylog.rdo.bean.ClassModel cls, String name, Class type, ")
+          .append("org.cylog.rdo.bean.RdoDataType dataType) {\n");
+        sb.append("        org.cylog.rdo.bean.MethodModel mm = new org.cylog.rdo.bean.MethodModel(")
+          .append("cls.getInternalClass(), name, type, dataType);\n");
+        sb.append("        cls.addMethod(mm);\n");
+        sb.append("        return mm;\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns the public single-argument setters of the type, including the inherited ones
+     */
+    private Map<String, ExecutableElement> getSetters(TypeElement type) {
+        Map<String, ExecutableElement> setters = new LinkedHashMap<String, ExecutableElement>();
+
+        List<? extends Element> members = processingEnv.getElementUtils().getAllMembers(type);
+        for (ExecutableElement m : ElementFilter.methodsIn(members)) {
+            String name = m.getSimpleName().toString();
+            if (name.startsWith("set") &&
+                m.getModifiers().contains(Modifier.PUBLIC) &&
+                !m.getModifiers().contains(Modifier.STATIC) &&
+                (m.getReturnType().getKind() == TypeKind.VOID) &&
+                (m.getParameters().size() == 1) &&
+                (getDataType(m.getParameters().get(0).asType()) != null) &&
+                !setters.containsKey(name)) {
+                setters.put(name, m);
+            }
+        }
+
+        return setters;
+    }
+
+    /**
+     * Returns the RdoDataType of a setter parameter type, following the same rules as
+     * the ReflectionUtil, or NULL if the type is not supported
+     */
+    private RdoDataType getDataType(TypeMirror t) {
+        switch (t.getKind()) {
+            case BOOLEAN:
+                return RdoDataType.BOOLEAN;
+            case CHAR:
+                return RdoDataType.CHAR;
+            case BYTE:
+            case SHORT:
+            case INT:
+                return RdoDataType.INT;
+            case LONG:
+                return RdoDataType.LONG;
+            case FLOAT:
+                return RdoDataType.FLOAT;
+            case DOUBLE:
+                return RdoDataType.DOUBLE;
+            case DECLARED:
+                TypeElement e = (TypeElement) ((DeclaredType) t).asElement();
+                if (e.getKind() == ElementKind.ENUM) {
+                    return RdoDataType.ENUM;
+                }
+
+                String name = e.getQualifiedName().toString();
+                if ("java.lang.String".equals(name)) {
+                    return RdoDataType.STRING;
+                } else if ("java.util.Date".equals(name) || "java.sql.Timestamp".equals(name)) {
+                    return RdoDataType.DATE;
+                } else if ("java.lang.Boolean".equals(name)) {
+                    return RdoDataType.BOOLEAN;
+                } else if ("java.lang.Character".equals(name)) {
+                    return RdoDataType.CHAR;
+                } else if ("java.lang.Integer".equals(name) || "java.lang.Short".equals(name) ||
+                           "java.lang.Byte".equals(name)) {
+                    return RdoDataType.INT;
+                } else if ("java.lang.Long".equals(name)) {
+                    return RdoDataType.LONG;
+                } else if ("java.lang.Float".equals(name)) {
+                    return RdoDataType.FLOAT;
+                } else if ("java.lang.Double".equals(name)) {
+                    return RdoDataType.DOUBLE;
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the canonical name of a type without type arguments
+     */
+    private String getTypeName(TypeMirror t) {
+        if (t.getKind() == TypeKind.DECLARED) {
+            return ((TypeElement) ((DeclaredType) t).asElement()).getQualifiedName().toString();
+        }
+        return t.toString();
+    }
+
+    /**
+     * Returns the public constructor annotated with @RdoConstructor, or NULL
+     */
+    private ExecutableElement getRdoConstructor(TypeElement type) {
+        for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (c.getModifiers().contains(Modifier.PUBLIC) &&
+                (c.getAnnotation(RdoConstructor.class) != null)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasPublicDefaultConstructor(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(
+                type.getEnclosedElements());
+        for (ExecutableElement c : constructors) {
+            if (c.getParameters().isEmpty() && c.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String getPackageName(TypeElement type) {
+        PackageElement p = processingEnv.getElementUtils().getPackageOf(type);
+        return p.getQualifiedName().toString();
+    }
+
+    /**
+     * Returns the name of the type within its package, with nested classes separated
+     * by underscores
+     */
+    private String getBaseName(TypeElement type, String packageName) {
+        String name = type.getQualifiedName().toString();
+        if (packageName.length() > 0) {
+            name = name.substring(packageName.length() + 1);
+        }
+        return name.replace('.', '_');
+    }
+
+    private String sanitize(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            sb.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private void writeSource(TypeElement type, String className, String source) {
+        try {
+            Writer w = processingEnv.getFiler().createSourceFile(className, type).openWriter();
+            try {
+                w.write(source);
+            } finally {
+                w.close();
+            }
+        } catch (IOException ioe) {
+            error(type, "Cannot write generated source " + className + ": " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Writes the service file of the generated mappers, keeping the entries of any
+     * previous service file in the output
+     */
+    private void writeServiceFile() {
+        Filer filer = processingEnv.getFiler();
+        Set<String> entries = new LinkedHashSet<String>();
+
+        try {
+            FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            BufferedReader r = new BufferedReader(existing.openReader(true));
+            try {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    if (line.trim().length() > 0) {
+                        entries.add(line.trim());
+                    }
+                }
+            } finally {
+                r.close();
+            }
+        } catch (IOException ioe) {
+            // no previous service file
+        }
+
+        entries.addAll(generatedMappers);
+
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            Writer w = file.openWriter();
+            try {
+                for (String entry : entries) {
+                    w.write(entry);
+                    w.write("\n");
+                }
+            } finally {
+                w.close();
+            }
+        } catch (IOException ioe) {
+            processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR, "Cannot write " + SERVICE_FILE + ": " + ioe.getMessage());
+        }
+    }
+
+    private void error(Element e, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, e);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.compiler;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cylog.rdo.bean.ColumnModel;
+import org.cylog.rdo.bean.TableModel;
+import org.cylog.rdo.exception.ModelRetrievalException;
+
+/**
+ * Reads and writes a checked-in description of a database schema, used to generate
+ * mappers at build time without a database connection. The description is a
+ * properties file with one entry per table and the columns in physical order,
+ * separated by semicolons:
+ *
+ * <pre>
+ * NUMBERS = INTEGER_VALUE INTEGER NOT NULL; PRICE DECIMAL(10,2); NAME VARCHAR(64)
+ * </pre>
+ *
+ * The column types are the names of the {@link java.sql.Types} constants.
+ *
+ * @author Kostas Symeonidis
+ */
+public class SchemaDescription {
+
+    // ---- Static ------------------------------------------------------------
+
+    private static Map<String, Integer> sqlTypesByName = null;
+
+    // ---- Static Public methods ---------------------------------------------
+
+    /**
+     * Reads a schema description and returns its TableModels keyed by the upper case table name
+     */
+    public static Map<String, TableModel> read(Reader reader) throws IOException {
+        Properties props = new Properties();
+        props.load(reader);
+
+        Map<String, TableModel> tables = new HashMap<String, TableModel>();
+        for (String tableName : props.stringPropertyNames()) {
+            TableModel table = new TableModel(tableName);
+
+            int index = 1;
+            for (String column : props.getProperty(tableName).split(";")) {
+                if (column.trim().length() > 0) {
+                    table.addColumn(parseColumn(tableName, index++, column.trim()));
+                }
+            }
+
+            tables.put(tableName.toUpperCase(), table);
+        }
+
+        return tables;
+    }
+
+    /**
+     * Returns the schema description entry of the given TableModel, i.e. to write a
+     * description file from the models retrieved from a live database.
+     */
+    public static String format(TableModel table) {
+        StringBuilder sb = new StringBuilder(table.getTableName()).append(" = ");
+
+        int f = 0;
+        for (ColumnModel c : table.getColumns()) {
+            if (f++ > 0) {
+                sb.append("; ");
+            }
+            sb.append(c.getColumnName()).append(' ').append(getSqlTypeName(c.getSqlType()))
+              .append('(').append(c.getColumnLength()).append(',').append(c.getDecimalDigits())
+              .append(')');
+            if (!c.isNullable()) {
+                sb.append(" NOT NULL");
+            }
+        }
+
+        return sb.toString();
+    }
+
+    // ---- Static Private methods --------------------------------------------
+
+    /**
+     * Parses a column of the form "NAME TYPE[(length[,digits])] [NOT NULL]"
+     */
+    private static ColumnModel parseColumn(String tableName, int index, String column) {
+        String[] tokens = column.split("\\s+", 3);
+        if (tokens.length < 2) {
+            throw new ModelRetrievalException(
+                    "Invalid column description \"" + column + "\" for table " + tableName);
+        }
+
+        String type = tokens[1];
+        int length = 0;
+        int digits = 0;
+
+        int paren = type.indexOf('(');
+        if (paren > 0) {
+            String[] size = type.substring(paren + 1, type.length() - 1).split(",");
+            length = Integer.parseInt(size[0].trim());
+            if (size.length > 1) {
+                digits = Integer.parseInt(size[1].trim());
+            }
+            type = type.substring(0, paren);
+        }
+
+        boolean nullable = !((tokens.length > 2) &&
+                             tokens[2].replaceAll("\\s+", " ").equalsIgnoreCase("NOT NULL"));
+
+        return new ColumnModel(index, tokens[0], getSqlType(tableName, type), length, digits,
+                               nullable);
+    }
+
+    private static int getSqlType(String tableName, String typeName) {
+        Integer sqlType = getSqlTypesByName().get(typeName.toUpperCase());
+        if (sqlType == null) {
+            throw new ModelRetrievalException(
+                    "Unknown SQL type " + typeName + " in description of table " + tableName);
+        }
+        return sqlType;
+    }
+
+    private static String getSqlTypeName(int sqlType) {
+        for (Map.Entry<String, Integer> e : getSqlTypesByName().entrySet()) {
+            if (e.getValue() == sqlType) {
+                return e.getKey();
+            }
+        }
+        return "OTHER";
+    }
+
+    /**
+     * Returns the names of the java.sql.Types constants
+     */
+    private static synchronized Map<String, Integer> getSqlTypesByName() {
+        if (sqlTypesByName == null) {
+            Map<String, Integer> map = new HashMap<String, Integer>();
+            for (Field f : java.sql.Types.class.getFields()) {
+                try {
+                    map.put(f.getName(), f.getInt(null));
+                } catch (IllegalAccessException iae) {
+                    // public constants, cannot happen
+                }
+            }
+            sqlTypesByName = map;
+        }
+        return sqlTypesByName;
+    }
+}
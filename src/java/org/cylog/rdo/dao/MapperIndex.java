@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.cylog.rdo.bean.RdoMapper;
+
+/**
+ * A two-level index of the RdoMappers that have already been created, by class and then
+ * by table name, ignoring the case of the table name. A lookup hashes the Class by
+ * identity and compares the table names in place, so a hit allocates nothing.
+ *
+ * Each class is usually mapped to one or two tables, so the tables of a class are kept
+ * in a small array that is scanned linearly and copied on write.
+ *
+ * @author Kostas Symeonidis
+ */
+class MapperIndex {
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final ConcurrentMap<Class, ClassSlot> slots;
+
+    // ---- Constructors ------------------------------------------------------
+
+    MapperIndex() {
+        this.slots = new ConcurrentHashMap<Class, ClassSlot>();
+    }
+
+    // ---- Package methods ---------------------------------------------------
+
+    /**
+     * Returns the mapper of the given class and table, or NULL if it is not indexed yet
+     */
+    RdoMapper get(Class c, String tableName) {
+        ClassSlot slot = slots.get(c);
+        return (slot == null) ? null : slot.get(tableName);
+    }
+
+    /**
+     * Indexes the mapper of the given class and table, unless one is indexed already
+     */
+    void put(Class c, String tableName, RdoMapper mapper) {
+        ClassSlot slot = slots.get(c);
+        if (slot == null) {
+            ClassSlot newSlot = new ClassSlot();
+            slot = slots.putIfAbsent(c, newSlot);
+            if (slot == null) {
+                slot = newSlot;
+            }
+        }
+        slot.put(tableName, mapper);
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    private static class ClassSlot {
+
+        private static final Object[] EMPTY = new Object[0];
+
+        /**
+         * The table names and their mappers, interleaved
+         */
+        private volatile Object[] entries = EMPTY;
+
+        private RdoMapper get(String tableName) {
+            Object[] e = entries;
+            for (int i = 0; i < e.length; i += 2) {
+                if (tableName.equalsIgnoreCase((String) e[i])) {
+                    return (RdoMapper) e[i + 1];
+                }
+            }
+            return null;
+        }
+
+        private synchronized void put(String tableName, RdoMapper mapper) {
+            if (get(tableName) != null) {
+                return;
+            }
+
+            Object[] e = new Object[entries.length + 2];
+            System.arraycopy(entries, 0, e, 0, entries.length);
+            e[entries.length] = tableName;
+            e[entries.length + 1] = mapper;
+            entries = e;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+import org.cylog.rdo.exception.DataExtractionException;
+import org.cylog.rdo.logger.ClassLogger;
+
+/**
+ * Coalesces the lookups of DTOs by key that arrive together into one multi-get, as
+ * returned by {@link RdoDao#batchLoader(Class, String, long, TimeUnit, int)}. The first
+ * key of a batch opens it for a window; the keys that arrive in the window, up to the
+ * maximum batch size, are read with a single getDtos and each caller gets its own DTO.
+ *
+ * A loader is meant to be kept and shared by all the threads reading the table, so that
+ * their lookups land in the same batches:
+ *
+ * <pre>
+ * RdoBatchLoader&lt;Order&gt; orders = dao.batchLoader(Order.class, "ORDERS",
+ *                                                  2, TimeUnit.MILLISECONDS, 256);
+ * ...
+ * Order order = orders.get(orderId);
+ * </pre>
+ *
+ * Each lookup waits up to the window for its batch, so a loader pays off under load,
+ * when many lookups share a batch, and only adds latency to a lone one.
+ *
+ * @author Kostas Symeonidis
+ */
+public class RdoBatchLoader<T> {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static Log log = new ClassLogger();
+
+    /**
+     * The timer of the windows of all the loaders, which only hands the batches over to
+     * the executor of their loader
+     */
+    private static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "RdoBatchLoader-timer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private static final Runnable NO_OP = new Runnable() {
+        public void run() {
+        }
+    };
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final RdoBinding<T> binding;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final Object lock = new Object();
+
+    /**
+     * The lookups of the open batch, NULL if there is none. Guarded by the lock.
+     */
+    private List<Pending<T>> batch;
+
+    private volatile Executor executor;
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    // ---- Constructors ------------------------------------------------------
+
+    RdoBatchLoader(RdoBinding<T> binding, long window, TimeUnit unit, int maxBatchSize) {
+        this.binding = binding;
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Adds the lookup of a key to the open batch and returns the future of its DTO, whose
+     * value is NULL if the table has no row of the key
+     *
+     * @param keys the values of the first columns of the table, as the keys of getDto
+     */
+    public Future<T> load(Object... keys) {
+        Pending<T> p = new Pending<T>(keys);
+        List<Pending<T>> full = null;
+        synchronized (lock) {
+            if (batch == null) {
+                final List<Pending<T>> opened = new ArrayList<Pending<T>>();
+                batch = opened;
+                TIMER.schedule(new Runnable() {
+                    public void run() {
+                        synchronized (lock) {
+                            if (batch != opened) {
+                                return;  // dispatched when it filled up
+                            }
+                            batch = null;
+                        }
+                        dispatch(opened);
+                    }
+                }, windowNanos, TimeUnit.NANOSECONDS);
+            }
+
+            batch.add(p);
+            if (batch.size() >= maxBatchSize) {
+                full = batch;
+                batch = null;
+            }
+        }
+
+        loads.incrementAndGet();
+        if (full != null) {
+            dispatch(full);
+        }
+        return p;
+    }
+
+    /**
+     * Adds the lookup of a key to the open batch and waits for its DTO
+     *
+     * @return the DTO of the key, NULL if the table has no row of the key
+     */
+    public T get(Object... keys) {
+        Future<T> f = load(keys);
+        try {
+            return f.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new DataExtractionException("Interrupted while loading " +
+                                              binding.getTableName(), ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DataExtractionException("Cannot load " + binding.getTableName(), cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RdoBatchLoader{tableName='" + binding.getTableName() + '\'' +
+               ", loads=" + loads.get() +
+               ", batches=" + batches.get() +
+               '}';
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private void dispatch(final List<Pending<T>> lookups) {
+        getExecutor().execute(new Runnable() {
+            public void run() {
+                execute(lookups);
+            }
+        });
+    }
+
+    /**
+     * Reads the DTOs of a batch, with a getDtos for the keys of each length, and completes
+     * the futures of its lookups
+     */
+    private void execute(List<Pending<T>> lookups) {
+        Map<Integer, List<Pending<T>>> byLength = new LinkedHashMap<Integer, List<Pending<T>>>();
+        for (Pending<T> p : lookups) {
+            List<Pending<T>> group = byLength.get(p.keys.length);
+            if (group == null) {
+                group = new ArrayList<Pending<T>>(lookups.size());
+                byLength.put(p.keys.length, group);
+            }
+            group.add(p);
+        }
+
+        for (List<Pending<T>> group : byLength.values()) {
+            batches.incrementAndGet();
+            try {
+                List<Object> keys = new ArrayList<Object>(group.size());
+                for (Pending<T> p : group) {
+                    keys.add(p.keys);
+                }
+                List<T> dtos = binding.getAll(keys);
+                for (int i = 0; i < group.size(); i++) {
+                    group.get(i).complete(dtos.get(i));
+                }
+            } catch (Throwable t) {
+                log.warn("Batch of " + group.size() + " lookups of " + binding.getTableName() +
+                         " failed: " + t.getMessage());
+                for (Pending<T> p : group) {
+                    p.fail(t);
+                }
+            }
+        }
+    }
+
+    private Executor getExecutor() {
+        Executor ex = this.executor;
+        if (ex == null) {
+            synchronized (this) {
+                ex = this.executor;
+                if (ex == null) {
+                    ex = createDefaultExecutor();
+                    this.executor = ex;
+                }
+            }
+        }
+        return ex;
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "RdoBatchLoader-batch");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    // ---- Bean Properties ---------------------------------------------------
+
+    public RdoBinding<T> getBinding() {
+        return binding;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sets the executor the batches are read on. Defaults to a pool of daemon threads.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the number of lookups so far
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * Returns the number of multi-gets the lookups so far have been read with
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    /**
+     * The future of a lookup, completed by the batch it is read in
+     */
+    private static class Pending<T> extends FutureTask<T> {
+
+        private final Object[] keys;
+
+        private Pending(Object[] keys) {
+            super(NO_OP, null);
+            this.keys = keys;
+        }
+
+        private void complete(T dto) {
+            set(dto);
+        }
+
+        private void fail(Throwable t) {
+            setException(t);
+        }
+    }
+}
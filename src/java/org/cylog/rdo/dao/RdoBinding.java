@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.dao.extractor.QueryOptions;
+import org.cylog.rdo.dao.extractor.RdoCursor;
+import org.cylog.rdo.dao.extractor.RdoKeyExtractor;
+import org.cylog.rdo.dao.extractor.RdoObjectExtractor;
+import org.cylog.rdo.dao.extractor.RdoPage;
+import org.cylog.rdo.dao.extractor.RdoVisitor;
+
+/**
+ * A DTO class and table bound to their RdoMapper once, as returned by
+ * {@link RdoDao#bind(Class, String)}. The retrieval methods are the ones of the
+ * {@link RdoRetriever} without the mapper lookup, so a hot call site can keep a
+ * binding and reuse it from any thread.
+ *
+ * A binding keeps the settings its DAO had when it was created, and its query options
+ * unless it is created by withOptions.
+ *
+ * @author Kostas Symeonidis
+ */
+public class RdoBinding<T> {
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final Class<T> dtoClass;
+    private final String tableName;
+    private final RdoObjectExtractor extractor;
+
+    // ---- Constructors ------------------------------------------------------
+
+    RdoBinding(Class<T> dtoClass, String tableName, RdoObjectExtractor extractor) {
+        this.dtoClass = dtoClass;
+        this.tableName = tableName;
+        this.extractor = extractor;
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Returns a binding of the same class and table whose retrieval methods use the given
+     * query options, i.e. to be kept by a call site that reads with its own fetch size
+     */
+    public RdoBinding<T> withOptions(QueryOptions options) {
+        return new RdoBinding<T>(dtoClass, tableName, extractor.withQueryOptions(options));
+    }
+
+    // ---- Retrieval Operations ----------------------------------------------
+
+    /**
+     * @see RdoRetriever#getDto(Class, String, Object...)
+     */
+    public T get(Object... keys) {
+        return dtoClass.cast(extractor.extractObject(keys));
+    }
+
+    /**
+     * @see RdoRetriever#getDtoWhere(Class, String, String, Object...)
+     */
+    public T getWhere(String whereClause, Object... params) {
+        return dtoClass.cast(extractor.extractObjectWhere(whereClause, params));
+    }
+
+    /**
+     * @see RdoRetriever#getDtoFromSql(Class, String, String, Object...)
+     */
+    public T getFromSql(String sql, Object... params) {
+        return dtoClass.cast(extractor.extractObjectFromSql(sql, params));
+    }
+
+    /**
+     * @see RdoRetriever#mergeDto(Object, String, Object...)
+     */
+    public T merge(T dto, Object... keys) {
+        return dtoClass.cast(extractor.extractAndMergeObject(dto, keys));
+    }
+
+    /**
+     * @see RdoRetriever#getDtoList(Class, String, String, Object...)
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getList(String whereClause, Object... params) {
+        return extractor.extractList(whereClause, params);
+    }
+
+    /**
+     * @see RdoRetriever#getDtoListFromSql(Class, String, String, Object...)
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getListFromSql(String sql, Object... params) {
+        return extractor.extractListFromSql(sql, params);
+    }
+
+    /**
+     * @see RdoRetriever#iterateDtos(Class, String, String, Object...)
+     */
+    @SuppressWarnings("unchecked")
+    public RdoCursor<T> iterate(String whereClause, Object... params) {
+        return extractor.extractCursor(whereClause, params);
+    }
+
+    /**
+     * @see RdoRetriever#iterateDtosFromSql(Class, String, String, Object...)
+     */
+    @SuppressWarnings("unchecked")
+    public RdoCursor<T> iterateFromSql(String sql, Object... params) {
+        return extractor.extractCursorFromSql(sql, params);
+    }
+
+    /**
+     * @see RdoRetriever#scanDtos(Class, String, String, RdoVisitor, Object...)
+     */
+    public int scan(String whereClause, RdoVisitor<? super T> visitor, Object... params) {
+        return extractor.scan(whereClause, visitor, params);
+    }
+
+    /**
+     * @see RdoRetriever#scanDtosFromSql(Class, String, String, RdoVisitor, Object...)
+     */
+    public int scanFromSql(String sql, RdoVisitor<? super T> visitor, Object... params) {
+        return extractor.scanFromSql(sql, visitor, params);
+    }
+
+    /**
+     * @see RdoRetriever#getDtoPage(Class, String, Object[], int)
+     */
+    @SuppressWarnings("unchecked")
+    public RdoPage<T> getPage(Object[] afterKey, int pageSize) {
+        return extractor.extractPage(afterKey, pageSize);
+    }
+
+    /**
+     * @see RdoRetriever#getDtos(Class, String, Collection)
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getAll(Collection<?> keys) {
+        return extractor.extractObjects(keys);
+    }
+
+    /**
+     * @see RdoRetriever#mergeDtos(List, String, RdoKeyExtractor)
+     */
+    public int mergeAll(List<? extends T> dtos, RdoKeyExtractor<? super T> keyExtractor) {
+        return extractor.extractAndMergeObjects(dtos, keyExtractor);
+    }
+
+    // ---- Bean Properties ---------------------------------------------------
+
+    public Class<T> getDtoClass() {
+        return dtoClass;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public RdoMapper getMapper() {
+        return extractor.getRdoMapper();
+    }
+}
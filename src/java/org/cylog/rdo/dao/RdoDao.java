@@ -15,30 +15,79 @@
  */
 package org.cylog.rdo.dao;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 
 import org.cylog.rdo.bean.ClassModel;
+import org.cylog.rdo.bean.ColumnModel;
+import org.cylog.rdo.bean.ForeignKeyModel;
+import org.cylog.rdo.bean.PrimitiveNullPolicy;
 import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.bean.RdoOperation;
 import org.cylog.rdo.bean.TableModel;
+import org.cylog.rdo.cache.EntityCache;
+import org.cylog.rdo.cache.InFlightQueries;
+import org.cylog.rdo.cache.KeyFilter;
+import org.cylog.rdo.cache.KeyTuple;
+import org.cylog.rdo.cache.OffHeapCache;
+import org.cylog.rdo.cache.ResultCache;
+import org.cylog.rdo.compiler.GeneratedMapper;
+import org.cylog.rdo.compiler.GeneratedMapperRegistry;
+import org.cylog.rdo.compiler.MapperCompiler;
+import org.cylog.rdo.dao.extractor.QueryOptions;
+import org.cylog.rdo.dao.extractor.RdoCursor;
+import org.cylog.rdo.dao.extractor.RdoKeyExtractor;
 import org.cylog.rdo.dao.extractor.RdoObjectExtractor;
+import org.cylog.rdo.dao.extractor.RdoPage;
+import org.cylog.rdo.dao.extractor.RdoVisitor;
+import org.cylog.rdo.dialect.SqlDialect;
+import org.cylog.rdo.exception.DataExtractionException;
 import org.cylog.rdo.exception.ModelNotFoundException;
+import org.cylog.rdo.exception.ModelNotSupportedException;
 import org.cylog.rdo.exception.ModelRetrievalException;
 import org.cylog.rdo.logger.ClassLogger;
 import org.cylog.rdo.util.DatabaseMetadataUtil;
+import org.cylog.rdo.util.FieldNameUtil;
+import org.cylog.rdo.util.ModelSnapshot;
 import org.cylog.rdo.util.ReflectionUtil;
+import org.cylog.rdo.util.SingleFlightCache;
 import org.cylog.rdo.util.SqlResourceUtil;
+import org.cylog.rdo.util.StatementCache;
 
 /**
  * An implementation of a RdoRetriever.
  *
+ * A single RdoDao can be shared by any number of threads. The models and mappers are
+ * cached in SingleFlightCaches, so each one is built once, by the first thread that
+ * needs it, while the other threads wait for it.
+ *
  * @author Kostas Symeonidis
  */
 public class RdoDao implements RdoRetriever {
@@ -48,6 +97,17 @@ public class RdoDao implements RdoRetriever {
 
     // ---- Constants ---------------------------------------------------------
 
+    /**
+     * The rows fetched at a time when the keys of a table are streamed into its KeyFilter
+     */
+    private static final int KEY_FETCH_SIZE = 1000;
+
+    /**
+     * The keys a KeyFilter is sized for besides the rows of its table, so that keys can be
+     * added to the filter of an empty or small table
+     */
+    private static final int KEY_FILTER_HEADROOM = 1024;
+
     // ---- Member Variables --------------------------------------------------
 
     /**
@@ -56,21 +116,105 @@ public class RdoDao implements RdoRetriever {
     private DataSource dataSource;
 
     /**
-     * The internal HashMap of tableModels for this DAO's dataSource.
-     * Initialised on the first attempt to retrieve a TableModel
+     * The internal cache of tableModels for this DAO's dataSource, keyed by the upper case
+     * table name. Populated one table at a time as they are used, or in bulk by
+     * loadTableModels
+     */
+    private final SingleFlightCache<String, TableModel> tableModels;
+
+    /**
+     * The background load of the table models in progress, NULL if there is none
      */
-    private final Map<String, TableModel> tableModels;
+    private final AtomicReference<Future<Integer>> tableModelsLoad =
+            new AtomicReference<Future<Integer>>();
 
     /**
-     * The internal HashMap of classModels, gradually populated with
+     * The internal cache of classModels, gradually populated with
      * ClassModels as they are used
      */
-    private final Map<String, ClassModel> classModels;
+    private final SingleFlightCache<Class<?>, ClassModel> classModels;
+
+    /**
+     * The internal cache of RdoMappers keyed by "className:TABLENAME", by the binary
+     * class name, which anonymous and local classes have too
+     */
+    private final SingleFlightCache<String, RdoMapper> mappers;
+
+    /**
+     * The index of the mappers already created, looked up before the mappers cache
+     * without building its string key
+     */
+    private final MapperIndex mapperIndex;
+
+    /**
+     * If TRUE, each new RdoMapper is compiled into a generated RdoRowReader
+     */
+    private boolean compileMappers = false;
+
+    /**
+     * If TRUE, mappers generated at build time are used instead of reflection, when their
+     * columns match the table in the database
+     */
+    private boolean useGeneratedMappers = false;
+
+    /**
+     * What happens when a SQL NULL is read for a setter with a primitive parameter
+     */
+    private PrimitiveNullPolicy primitiveNullPolicy = PrimitiveNullPolicy.ZERO;
+
+    /**
+     * The statements prepared by the extractors of this DAO, NULL if they are not cached
+     */
+    private volatile StatementCache statementCache;
+
+    /**
+     * The cache of the DTOs read by primary key, NULL if they are not cached
+     */
+    private volatile EntityCache entityCache;
+
+    /**
+     * The cache of the DTOs read by primary key kept off the heap, NULL if they are not
+     * cached off the heap
+     */
+    private volatile OffHeapCache offHeapCache;
+
+    /**
+     * The cache of the lists read, NULL if they are not cached
+     */
+    private volatile ResultCache resultCache;
+
+    /**
+     * The queries being executed, shared by identical queries, NULL if they are not shared
+     */
+    private volatile InFlightQueries inFlightQueries;
+
+    /**
+     * The fetch size of the statements of the cursors, 0 for the driver's default
+     */
+    private volatile int cursorFetchSize = 0;
+
+    /**
+     * The dialect of the statements of getDtoPage and getDtos, NULL to detect it on each
+     * call
+     */
+    private volatile SqlDialect sqlDialect;
+
+    /**
+     * The number of keys from which getDtos joins a temporary table of the keys, 0 to
+     * always read them in IN lists
+     */
+    private volatile int keyTableThreshold = RdoObjectExtractor.DEFAULT_KEY_TABLE_THRESHOLD;
+
+    /**
+     * The query options of the retrieval operations called without options of their own
+     */
+    private volatile QueryOptions queryOptions = new QueryOptions();
 
     /**
-     * The internal HashMap of
+     * The filters of the primary keys of the tables, keyed by upper case table name
      */
-    private final Map<String, RdoMapper> mappers;
+    private final ConcurrentMap<String, KeyFilter> keyFilters =
+            new ConcurrentHashMap<String, KeyFilter>();
 
     // ---- Constructors ------------------------------------------------------
 
@@ -79,9 +223,10 @@ public class RdoDao implements RdoRetriever {
      */
     public RdoDao() {
         log.info("Constructing RdoDao...");
-        this.tableModels = new HashMap<String, TableModel>();
-        this.classModels = new HashMap<String, ClassModel>();
-        this.mappers = new HashMap<String, RdoMapper>();
+        this.tableModels = new SingleFlightCache<String, TableModel>();
+        this.classModels = new SingleFlightCache<Class<?>, ClassModel>();
+        this.mappers = new SingleFlightCache<String, RdoMapper>();
+        this.mapperIndex = new MapperIndex();
     }
 
     /**
@@ -93,6 +238,25 @@ public class RdoDao implements RdoRetriever {
         setDataSource(dataSource);
     }
 
+    /**
+     * Constructs an instance of this class using the given dataSource, and loads the models
+     * of all the tables of the given schema up front.
+     *
+     * @param schemaPattern the schema name pattern, NULL for the schema of the connection
+     * @param background    true to load the table models on a background thread, false to
+     *                      load them before the constructor returns
+     *
+     * @see #loadTableModels(String, String)
+     */
+    public RdoDao(DataSource dataSource, String schemaPattern, boolean background) {
+        this(dataSource);
+        if (background) {
+            loadTableModelsInBackground(schemaPattern, "%");
+        } else {
+            loadTableModels(schemaPattern, "%");
+        }
+    }
+
     // ---- Bean Properties ---------------------------------------------------
 
     /**
@@ -103,6 +267,211 @@ public class RdoDao implements RdoRetriever {
         this.dataSource = dataSource;
     }
 
+    public boolean isCompileMappers() {
+        return compileMappers;
+    }
+
+    /**
+     * Enables the compilation of RdoMappers into generated classes that call the DTO
+     * setters directly. Compilation needs the system Java compiler, i.e. a JDK; mappers
+     * that cannot be compiled are read through reflection as before.
+     *
+     * Only affects the mappers constructed after this property is set.
+     */
+    public void setCompileMappers(boolean compileMappers) {
+        this.compileMappers = compileMappers;
+    }
+
+    public boolean isUseGeneratedMappers() {
+        return useGeneratedMappers;
+    }
+
+    /**
+     * Enables the lookup of mappers generated at build time from classes annotated with
+     * {@link org.cylog.rdo.annotation.RdoTable}. A generated mapper is only used if its
+     * columns match the columns of the table read from the database metadata; otherwise
+     * a warning is logged and the mapper is constructed through reflection. Disabled by
+     * default.
+     */
+    public void setUseGeneratedMappers(boolean useGeneratedMappers) {
+        this.useGeneratedMappers = useGeneratedMappers;
+    }
+
+    public PrimitiveNullPolicy getPrimitiveNullPolicy() {
+        return primitiveNullPolicy;
+    }
+
+    /**
+     * Sets what happens when a SQL NULL is read from a column mapped to a setter with a
+     * primitive parameter. Defaults to ZERO, the primitive default as returned by JDBC.
+     */
+    public void setPrimitiveNullPolicy(PrimitiveNullPolicy primitiveNullPolicy) {
+        this.primitiveNullPolicy = primitiveNullPolicy;
+    }
+
+    /**
+     * Returns the cache of the prepared statements, i.e. to report its hit rate, or NULL
+     * if statements are not cached
+     */
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * Enables the caching of prepared statements per connection, keeping up to the given
+     * number of statements for each connection. 0 disables the cache, which is the
+     * default, and closes any statements already cached. Statements are reused only
+     * while the DAO holds the same connection; reuse across pooled connections is left
+     * to the pool or the driver.
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        setStatementCacheSize(statementCacheSize, false);
+    }
+
+    /**
+     * Enables the caching of prepared statements, as setStatementCacheSize(int). If
+     * unwrapConnections is TRUE the statements are cached per the physical connection
+     * behind each pooled connection instead, bypassing the pool's statement tracking;
+     * see {@link StatementCache}.
+     */
+    public void setStatementCacheSize(int statementCacheSize, boolean unwrapConnections) {
+        StatementCache old = this.statementCache;
+        this.statementCache = (statementCacheSize > 0)
+                              ? new StatementCache(statementCacheSize, unwrapConnections)
+                              : null;
+        if (old != null) {
+            old.clear();
+        }
+    }
+
+    public int getCursorFetchSize() {
+        return cursorFetchSize;
+    }
+
+    /**
+     * Sets the number of rows the driver fetches at a time for the cursors of iterateDtos
+     * and iterateDtosFromSql, 0 for the driver's default. For MySQL, Integer.MIN_VALUE
+     * streams the rows one at a time. PostgreSQL only fetches in batches on connections
+     * that are not in auto-commit mode.
+     */
+    public void setCursorFetchSize(int cursorFetchSize) {
+        this.cursorFetchSize = cursorFetchSize;
+    }
+
+    public SqlDialect getSqlDialect() {
+        return sqlDialect;
+    }
+
+    /**
+     * Sets the SQL dialect of the statements of getDtoPage and getDtos. NULL, the default,
+     * detects it from the product name of the database on each call.
+     */
+    public void setSqlDialect(SqlDialect sqlDialect) {
+        this.sqlDialect = sqlDialect;
+    }
+
+    public int getKeyTableThreshold() {
+        return keyTableThreshold;
+    }
+
+    /**
+     * Sets the number of keys from which getDtos inserts the keys in a temporary table and
+     * joins it, rather than reading them in IN lists; 0 always reads them in IN lists
+     */
+    public void setKeyTableThreshold(int keyTableThreshold) {
+        this.keyTableThreshold = keyTableThreshold;
+    }
+
+    /**
+     * Returns a copy of the default query options
+     */
+    public QueryOptions getQueryOptions() {
+        return new QueryOptions(queryOptions);
+    }
+
+    /**
+     * Sets the query options of the retrieval operations called without options of their
+     * own, copying the given options so that they can be changed afterwards. NULL sets
+     * the driver's defaults.
+     */
+    public void setQueryOptions(QueryOptions queryOptions) {
+        this.queryOptions = (queryOptions != null) ? new QueryOptions(queryOptions)
+                                                   : new QueryOptions();
+    }
+
+    public EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * Sets the cache of the DTOs read by getDto, which only caches the tables it has been
+     * given a time to live for. NULL, the default, disables the cache.
+     */
+    public void setEntityCache(EntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    public OffHeapCache getOffHeapCache() {
+        return offHeapCache;
+    }
+
+    /**
+     * Sets the cache of the DTOs read by getDto kept off the heap, consulted on the misses
+     * of the entity cache if there is one. NULL, the default, disables the cache.
+     */
+    public void setOffHeapCache(OffHeapCache offHeapCache) {
+        this.offHeapCache = offHeapCache;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Sets the cache of the lists read by getDtoList and getDtoListFromSql, which only
+     * caches the tables it has been given a time to live for. NULL, the default, disables
+     * the cache.
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public InFlightQueries getInFlightQueries() {
+        return inFlightQueries;
+    }
+
+    /**
+     * Sets the registry of the queries being executed, through which identical queries of
+     * the retrieval operations share one execution rather than each running its own, i.e.
+     * the callers of a list whose cache entry has just expired. The cursors and scans, and
+     * the merges into the caller's DTO, always run their own queries. NULL, the default,
+     * disables the sharing.
+     *
+     * @see QueryOptions#setShareInFlight(boolean)
+     */
+    public void setInFlightQueries(InFlightQueries inFlightQueries) {
+        this.inFlightQueries = inFlightQueries;
+    }
+
+    /**
+     * Removes the DTOs and lists read from the given table from the caches of this DAO,
+     * to be called after the table is written to
+     */
+    public void invalidateTable(String tableName) {
+        EntityCache ec = entityCache;
+        if (ec != null) {
+            ec.invalidateTable(tableName);
+        }
+        OffHeapCache ohc = offHeapCache;
+        if (ohc != null) {
+            ohc.invalidateTable(tableName);
+        }
+        ResultCache rc = resultCache;
+        if (rc != null) {
+            rc.invalidateTable(tableName);
+        }
+    }
+
     // ---- Interface implementation ------------------------------------------
 
     /**
@@ -111,12 +480,8 @@ public class RdoDao implements RdoRetriever {
      * @param keys
      * @return
      */
-    @SuppressWarnings("unchecked")
     public <T> T getDto(Class<T> c, String tableName, Object... keys) {
-        RdoMapper m = getRdoMapper(c, tableName);
-        RdoObjectExtractor r = new RdoObjectExtractor(dataSource, m);
-
-        return (T) r.extractObject(keys);
+        return getDto(queryOptions, c, tableName, keys);
     }
 
     /**
@@ -127,12 +492,8 @@ public class RdoDao implements RdoRetriever {
      * @param <T>
      * @return
      */
-    @SuppressWarnings("unchecked")
     public <T> T getDtoWhere(Class<T> c, String tableName, String whereClause, Object... params) {
-        RdoMapper m = getRdoMapper(c, tableName);
-        RdoObjectExtractor r = new RdoObjectExtractor(dataSource, m);
-
-        return (T) r.extractObjectWhere(whereClause, params);
+        return getDtoWhere(queryOptions, c, tableName, whereClause, params);
     }
 
     /**
@@ -143,12 +504,8 @@ public class RdoDao implements RdoRetriever {
      * @param <T>
      * @return
      */
-    @SuppressWarnings("unchecked")
     public <T> T getDtoFromSql(Class<T> c, String tableName, String sql, Object... params) {
-        RdoMapper m = getRdoMapper(c, tableName);
-        RdoObjectExtractor r = new RdoObjectExtractor(dataSource, m);
-
-        return (T) r.extractObjectFromSql(sql, params);
+        return getDtoFromSql(queryOptions, c, tableName, sql, params);
     }
 
     /**
@@ -157,12 +514,8 @@ public class RdoDao implements RdoRetriever {
      * @param keys
      * @return
      */
-    @SuppressWarnings("unchecked")
     public <T> T mergeDto(T dto, String tableName, Object... keys) {
-        RdoMapper m = getRdoMapper(dto.getClass(), tableName);
-        RdoObjectExtractor r = new RdoObjectExtractor(dataSource, m);
-
-        return (T) r.extractAndMergeObject(dto, keys);
+        return mergeDto(queryOptions, dto, tableName, keys);
     }
 
     /**
@@ -173,12 +526,8 @@ public class RdoDao implements RdoRetriever {
      * @param <T>
      * @return
      */
-    @SuppressWarnings("unchecked")
     public <T> T mergeDtoWhere(T dto, String tableName, String whereClause, Object... params) {
-        RdoMapper m = getRdoMapper(dto.getClass(), tableName);
-        RdoObjectExtractor r = new RdoObjectExtractor(dataSource, m);
-
-        return (T) r.extractAndMergeObjectWhere(dto, whereClause, params);
+        return mergeDtoWhere(queryOptions, dto, tableName, whereClause, params);
     }
 
     /**
@@ -189,12 +538,8 @@ public class RdoDao implements RdoRetriever {
      * @param <T>
      * @return
      */
-    @SuppressWarnings("unchecked")
     public <T> T mergeDtoFromSql(T dto, String tableName, String sql, Object... params) {
-        RdoMapper m = getRdoMapper(dto.getClass(), tableName);
-        RdoObjectExtractor r = new RdoObjectExtractor(dataSource, m);
-
-        return (T) r.extractAndMergeObjectFromSql(dto, sql, params);
+        return mergeDtoFromSql(queryOptions, dto, tableName, sql, params);
     }
 
     /**
@@ -203,13 +548,9 @@ public class RdoDao implements RdoRetriever {
      * @param whereClause
      * @return
      */
-    @SuppressWarnings("unchecked")
     public <T> List<T> getDtoList(Class<T> c, String tableName, String whereClause,
                                   Object... params) {
-        RdoMapper m = getRdoMapper(c, tableName);
-        RdoObjectExtractor r = new RdoObjectExtractor(dataSource, m);
-
-        return r.extractList(whereClause, params);
+        return getDtoList(queryOptions, c, tableName, whereClause, params);
     }
 
     /**
@@ -218,116 +559,1135 @@ public class RdoDao implements RdoRetriever {
      * @param sql
      * @return
      */
-    @SuppressWarnings("unchecked")
     public <T> List<T> getDtoListFromSql(Class<T> c, String tableName, String sql,
                                          Object... params) {
-        RdoMapper m = getRdoMapper(c, tableName);
-        RdoObjectExtractor r = new RdoObjectExtractor(dataSource, m);
-
-        return r.extractListFromSql(sql, params);
+        return getDtoListFromSql(queryOptions, c, tableName, sql, params);
     }
 
-    // ---- Private methods ---------------------------------------------------
-
     /**
      * @param c
      * @param tableName
+     * @param whereClause
      * @return
      */
-    private RdoMapper getRdoMapper(Class c, String tableName) {
-        String key = c.getCanonicalName() + ":" + tableName.toUpperCase();
-        log.info("+ Acquiring RdoMapper from cache with key \"" + key + "\"...");
-
-        RdoMapper m = this.mappers.get(key);
-
-        if (m == null) {
-            log.info("! RdoMapper not found in cache, constructing from Class and TableModel...");
-
-            ClassModel classModel = getClassModel(c);
-
-            if (classModel == null) {
-                throw new ModelNotFoundException(
-                        "Cannot find model for class " + c.getCanonicalName());
-            }
-
-            TableModel tableModel = getTableModel(tableName);
-            if (tableModel == null) {
-                throw new ModelNotFoundException("Cannot find model for table " + tableName);
-            }
-
-            // instantiate a new RdoMapper to get the mathing done
-            m = new RdoMapper(classModel, tableModel);
-
-            // adding RdoMapper in cache
-            this.mappers.put(key, m);
-        }
-
-        return m;
+    public <T> RdoCursor<T> iterateDtos(Class<T> c, String tableName, String whereClause,
+                                        Object... params) {
+        return iterateDtos(queryOptions, c, tableName, whereClause, params);
     }
 
-    private TableModel getTableModel(String tableName) {
-        TableModel model = this.tableModels.get(tableName);
-        if (model == null) {
-            Connection conn = SqlResourceUtil.getConnection(dataSource);
-            try {
-                model = DatabaseMetadataUtil.retrieveTableModel(conn.getMetaData(), tableName);
-
-                if (model != null) {
-                    this.tableModels.put(tableName, model);
-                }
-            } catch (SQLException sqle) {
-                throw new ModelRetrievalException("Cannot retrieve data model", sqle);
-            } finally {
-                SqlResourceUtil.closeResource(conn);
-            }
-
-            /*
-            log.info("+ Initializing table models from dataSource...");
-            List<TableModel> tabs = getAllTableModels();
-
-            // add the table models in the cache now
-            Map<String, TableModel> map = new HashMap<String, TableModel>();
-            for (TableModel tm : tabs) {
-                map.put(tm.getTableName(), tm);
-            }
-
-            tableModels = map;
-            */
-        }
-
-        return model;
+    /**
+     * @param c
+     * @param tableName
+     * @param sql
+     * @return
+     */
+    public <T> RdoCursor<T> iterateDtosFromSql(Class<T> c, String tableName, String sql,
+                                               Object... params) {
+        return iterateDtosFromSql(queryOptions, c, tableName, sql, params);
     }
 
     /**
      * @param c
+     * @param tableName
+     * @param whereClause
+     * @param visitor
      * @return
      */
-    private ClassModel getClassModel(Class c) {
-        ClassModel classModel = this.classModels.get(c.getCanonicalName());
+    public <T> int scanDtos(Class<T> c, String tableName, String whereClause,
+                            RdoVisitor<? super T> visitor, Object... params) {
+        return scanDtos(queryOptions, c, tableName, whereClause, visitor, params);
+    }
 
-        if (classModel == null) {
-            log.info("+ Creating class model for class " + c.getCanonicalName() + "...");
-            classModel = ReflectionUtil.createClassModel(c);
+    /**
+     * @param c
+     * @param tableName
+     * @param sql
+     * @param visitor
+     * @return
+     */
+    public <T> int scanDtosFromSql(Class<T> c, String tableName, String sql,
+                                   RdoVisitor<? super T> visitor, Object... params) {
+        return scanDtosFromSql(queryOptions, c, tableName, sql, visitor, params);
+    }
 
-            // add the class model in the cache
-            this.classModels.put(c.getCanonicalName(), classModel);
-        }
+    /**
+     * @param c
+     * @param tableName
+     * @param afterKey
+     * @param pageSize
+     * @return
+     */
+    public <T> RdoPage<T> getDtoPage(Class<T> c, String tableName, Object[] afterKey,
+                                     int pageSize) {
+        return getDtoPage(queryOptions, c, tableName, afterKey, pageSize);
+    }
 
-        return classModel;
+    /**
+     * @param c
+     * @param tableName
+     * @param keys
+     * @return
+     */
+    public <T> List<T> getDtos(Class<T> c, String tableName, Collection<?> keys) {
+        return getDtos(queryOptions, c, tableName, keys);
     }
 
-    /*
+    /**
+     * @param dtos
+     * @param tableName
+     * @param keyExtractor
      * @return
-     *
-    private List<TableModel> getAllTableModels() {
-        Connection conn = SqlResourceUtil.getConnection(dataSource);
-        try {
-            return DatabaseMetadataUtil.retrieveAllTableModels(conn.getMetaData());
+     */
+    public <T> int mergeDtos(List<T> dtos, String tableName,
+                             RdoKeyExtractor<? super T> keyExtractor) {
+        return mergeDtos(queryOptions, dtos, tableName, keyExtractor);
+    }
+
+    /**
+     * @param options
+     * @param c
+     * @param tableName
+     * @param keys
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getDto(QueryOptions options, Class<T> c, String tableName, Object... keys) {
+        RdoMapper m = getRdoMapper(c, tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return (T) r.extractObject(keys);
+    }
+
+    /**
+     * @param options
+     * @param c
+     * @param tableName
+     * @param whereClause
+     * @param params
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getDtoWhere(QueryOptions options, Class<T> c, String tableName,
+                             String whereClause, Object... params) {
+        RdoMapper m = getRdoMapper(c, tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return (T) r.extractObjectWhere(whereClause, params);
+    }
+
+    /**
+     * @param options
+     * @param c
+     * @param tableName
+     * @param sql
+     * @param params
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getDtoFromSql(QueryOptions options, Class<T> c, String tableName, String sql,
+                               Object... params) {
+        RdoMapper m = getRdoMapper(c, tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return (T) r.extractObjectFromSql(sql, params);
+    }
+
+    /**
+     * @param options
+     * @param dto
+     * @param tableName
+     * @param keys
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T mergeDto(QueryOptions options, T dto, String tableName, Object... keys) {
+        RdoMapper m = getRdoMapper(dto.getClass(), tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return (T) r.extractAndMergeObject(dto, keys);
+    }
+
+    /**
+     * @param options
+     * @param dto
+     * @param tableName
+     * @param whereClause
+     * @param params
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T mergeDtoWhere(QueryOptions options, T dto, String tableName,
+                               String whereClause, Object... params) {
+        RdoMapper m = getRdoMapper(dto.getClass(), tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return (T) r.extractAndMergeObjectWhere(dto, whereClause, params);
+    }
+
+    /**
+     * @param options
+     * @param dto
+     * @param tableName
+     * @param sql
+     * @param params
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T mergeDtoFromSql(QueryOptions options, T dto, String tableName, String sql,
+                                 Object... params) {
+        RdoMapper m = getRdoMapper(dto.getClass(), tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return (T) r.extractAndMergeObjectFromSql(dto, sql, params);
+    }
+
+    /**
+     * @param options
+     * @param c
+     * @param tableName
+     * @param whereClause
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getDtoList(QueryOptions options, Class<T> c, String tableName,
+                                  String whereClause, Object... params) {
+        RdoMapper m = getRdoMapper(c, tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return r.extractList(whereClause, params);
+    }
+
+    /**
+     * @param options
+     * @param c
+     * @param tableName
+     * @param sql
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getDtoListFromSql(QueryOptions options, Class<T> c, String tableName,
+                                         String sql, Object... params) {
+        RdoMapper m = getRdoMapper(c, tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return r.extractListFromSql(sql, params);
+    }
+
+    /**
+     * @param options
+     * @param c
+     * @param tableName
+     * @param whereClause
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RdoCursor<T> iterateDtos(QueryOptions options, Class<T> c, String tableName,
+                                        String whereClause, Object... params) {
+        RdoMapper m = getRdoMapper(c, tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return r.extractCursor(whereClause, params);
+    }
+
+    /**
+     * @param options
+     * @param c
+     * @param tableName
+     * @param sql
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RdoCursor<T> iterateDtosFromSql(QueryOptions options, Class<T> c,
+                                               String tableName, String sql, Object... params) {
+        RdoMapper m = getRdoMapper(c, tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return r.extractCursorFromSql(sql, params);
+    }
+
+    /**
+     * @param options
+     * @param c
+     * @param tableName
+     * @param whereClause
+     * @param visitor
+     * @return
+     */
+    public <T> int scanDtos(QueryOptions options, Class<T> c, String tableName,
+                            String whereClause, RdoVisitor<? super T> visitor, Object... params) {
+        RdoMapper m = getRdoMapper(c, tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return r.scan(whereClause, visitor, params);
+    }
+
+    /**
+     * @param options
+     * @param c
+     * @param tableName
+     * @param sql
+     * @param visitor
+     * @return
+     */
+    public <T> int scanDtosFromSql(QueryOptions options, Class<T> c, String tableName,
+                                   String sql, RdoVisitor<? super T> visitor, Object... params) {
+        RdoMapper m = getRdoMapper(c, tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return r.scanFromSql(sql, visitor, params);
+    }
+
+    /**
+     * @param options
+     * @param c
+     * @param tableName
+     * @param afterKey
+     * @param pageSize
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RdoPage<T> getDtoPage(QueryOptions options, Class<T> c, String tableName,
+                                     Object[] afterKey, int pageSize) {
+        RdoMapper m = getRdoMapper(c, tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return r.extractPage(afterKey, pageSize);
+    }
+
+    /**
+     * @param options
+     * @param c
+     * @param tableName
+     * @param keys
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getDtos(QueryOptions options, Class<T> c, String tableName,
+                               Collection<?> keys) {
+        RdoMapper m = getRdoMapper(c, tableName);
+        RdoObjectExtractor r = createExtractor(m, options);
+
+        return r.extractObjects(keys);
+    }
+
+    /**
+     * @param options
+     * @param dtos
+     * @param tableName
+     * @param keyExtractor
+     * @return
+     */
+    public <T> int mergeDtos(QueryOptions options, List<T> dtos, String tableName,
+                             RdoKeyExtractor<? super T> keyExtractor) {
+        // the objects of each class are merged through the mapper of their own class,
+        // as a list may hold subclasses with setters the other classes do not have
+        Map<Class<?>, List<T>> byClass = new LinkedHashMap<Class<?>, List<T>>();
+        for (T dto : dtos) {
+            List<T> sameClass = byClass.get(dto.getClass());
+            if (sameClass == null) {
+                sameClass = new ArrayList<T>();
+                byClass.put(dto.getClass(), sameClass);
+            }
+            sameClass.add(dto);
+        }
+
+        int merged = 0;
+        for (Map.Entry<Class<?>, List<T>> e : byClass.entrySet()) {
+            RdoMapper m = getRdoMapper(e.getKey(), tableName);
+            RdoObjectExtractor r = createExtractor(m, options);
+            merged += r.extractAndMergeObjects(e.getValue(), keyExtractor);
+        }
+        return merged;
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Returns a binding of the given class to the given table, whose retrieval methods
+     * skip the mapper lookup of this DAO. The binding can be kept and shared by hot call
+     * sites; it uses the dataSource and settings of this DAO at the time it is bound.
+     *
+     * @throws ModelNotFoundException if the class or the table cannot be mapped
+     */
+    public <T> RdoBinding<T> bind(Class<T> c, String tableName) {
+        return new RdoBinding<T>(c, tableName, createExtractor(getRdoMapper(c, tableName)));
+    }
+
+    /**
+     * Returns a loader that reads the lookups of DTOs of the given class by key arriving
+     * within the given window, or up to the given number of them, with a single multi-get.
+     * The loader is meant to be kept and shared by the threads reading the table.
+     *
+     * @throws ModelNotFoundException if the class or the table cannot be mapped
+     * @see RdoBatchLoader
+     */
+    public <T> RdoBatchLoader<T> batchLoader(Class<T> c, String tableName, long window,
+                                             TimeUnit unit, int maxBatchSize) {
+        return new RdoBatchLoader<T>(bind(c, tableName), window, unit, maxBatchSize);
+    }
+
+    /**
+     * Reads the children of all the given parents with one keyed query, rather than one
+     * query per parent, through the foreign key of the child table referencing the parent
+     * table, as retrieved from the database metadata:
+     *
+     * "SELECT field1, field2, ... FROM childTableName WHERE fk IN (?, ?, ...)"
+     *
+     * The values of the referenced columns of each parent are read through the getters of
+     * the properties mapped to them.
+     *
+     * @param parents     the parent DTOs, read from parentTableName
+     * @param childClass  the class of the child DTOs
+     * @return the children of each parent, keyed by KeyTuple.of(the values of the parent's
+     *         referenced columns), in the order of the parents; a parent without children
+     *         has an empty list
+     *
+     * @throws ModelNotFoundException if there is no foreign key from the child table to
+     *                                the parent table
+     * @throws ModelNotSupportedException if there is more than one foreign key, or the
+     *                                    parent has no getter of a referenced column
+     */
+    public <C> Map<KeyTuple, List<C>> prefetchChildren(List<?> parents, String parentTableName,
+                                                       Class<C> childClass,
+                                                       String childTableName) {
+        return prefetchChildren(queryOptions, parents, parentTableName, childClass,
+                                childTableName);
+    }
+
+    /**
+     * @param options
+     * @param parents
+     * @param parentTableName
+     * @param childClass
+     * @param childTableName
+     * @param <C>
+     * @return
+     */
+    public <C> Map<KeyTuple, List<C>> prefetchChildren(QueryOptions options, List<?> parents,
+                                                       String parentTableName,
+                                                       Class<C> childClass,
+                                                       String childTableName) {
+        Map<KeyTuple, List<C>> children = new LinkedHashMap<KeyTuple, List<C>>();
+        if (parents.isEmpty()) {
+            return children;
+        }
+
+        ForeignKeyModel fk = getForeignKey(parentTableName, childTableName);
+        List<Object[]> keys = getParentKeys(parents, parentTableName, fk);
+        List<List<C>> lists = readChildren(options, childClass, childTableName, fk, keys);
+        for (int i = 0; i < keys.size(); i++) {
+            children.put(KeyTuple.of(keys.get(i)), lists.get(i));
+        }
+        return children;
+    }
+
+    /**
+     * Reads the children of all the given parents with one keyed query, as the other
+     * prefetchChildren, and sets the list of the children of each parent to the given
+     * property of the parent, i.e. "lines" through "setLines(List&lt;Line&gt; lines)".
+     *
+     * @throws ModelNotSupportedException if the parent has no setter of a List for the
+     *                                    property
+     */
+    public <C> void prefetchChildren(List<?> parents, String parentTableName,
+                                     Class<C> childClass, String childTableName,
+                                     String propertyName) {
+        prefetchChildren(queryOptions, parents, parentTableName, childClass, childTableName,
+                         propertyName);
+    }
+
+    /**
+     * @param options
+     * @param parents
+     * @param parentTableName
+     * @param childClass
+     * @param childTableName
+     * @param propertyName
+     * @param <C>
+     */
+    public <C> void prefetchChildren(QueryOptions options, List<?> parents,
+                                     String parentTableName, Class<C> childClass,
+                                     String childTableName, String propertyName) {
+        if (parents.isEmpty()) {
+            return;
+        }
+
+        Map<Class<?>, Method> setters = new HashMap<Class<?>, Method>();
+        for (Object parent : parents) {
+            if (!setters.containsKey(parent.getClass())) {
+                setters.put(parent.getClass(), findListSetter(parent.getClass(), propertyName));
+            }
+        }
+
+        ForeignKeyModel fk = getForeignKey(parentTableName, childTableName);
+        List<List<C>> lists = readChildren(options, childClass, childTableName, fk,
+                                           getParentKeys(parents, parentTableName, fk));
+        for (int i = 0; i < lists.size(); i++) {
+            Object parent = parents.get(i);
+            try {
+                setters.get(parent.getClass()).invoke(parent, lists.get(i));
+            } catch (Exception e) {
+                throw new DataExtractionException("Cannot set " + propertyName + " of " +
+                                                  parent.getClass().getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Loads the models of all the tables matching the given patterns with a single metadata
+     * scan and adds them to the table model cache, so that no table needs a metadata round
+     * trip of its own later on. Tables already in the cache are left as they are.
+     *
+     * The models are cached by table name only, so a name found in more than one of the
+     * scanned schemas is not cached, and its table is retrieved on its own when used.
+     *
+     * @param schemaPattern    the schema name pattern, NULL for the schema of the
+     *                         connection, or its catalog if the database has no schemas
+     * @param tableNamePattern the table name pattern, "%" or NULL for all the tables
+     *
+     * @return the number of table models added to the cache
+     *
+     * @throws ModelRetrievalException if the table models cannot be retrieved
+     */
+    public int loadTableModels(String schemaPattern, String tableNamePattern) {
+        log.info("+ Loading table models from dataSource...");
+        Connection conn = SqlResourceUtil.getConnection(dataSource);
+        List<TableModel> tabs;
+        try {
+            String catalog = null;
+            if (schemaPattern == null) {
+                schemaPattern = getSchema(conn);
+                catalog = (schemaPattern == null) ? conn.getCatalog() : null;
+            }
+            tabs = DatabaseMetadataUtil.retrieveAllTableModels(conn.getMetaData(), catalog,
+                                                               schemaPattern, tableNamePattern);
         } catch (SQLException sqle) {
             throw new ModelRetrievalException("Cannot retrieve data model", sqle);
         } finally {
             SqlResourceUtil.closeResource(conn);
         }
+
+        Map<String, TableModel> loaded = new LinkedHashMap<String, TableModel>();
+        for (TableModel tm : tabs) {
+            String key = tm.getTableName().toUpperCase();
+            if (loaded.containsKey(key)) {
+                log.warn("Table " + tm.getTableName() + " found in more than one schema, " +
+                         "its model is retrieved when it is used");
+                loaded.put(key, null);
+            } else {
+                loaded.put(key, tm);
+            }
+        }
+
+        int added = 0;
+        for (Map.Entry<String, TableModel> e : loaded.entrySet()) {
+            if (e.getValue() == null) {
+                continue;
+            }
+            if (this.tableModels.putIfAbsent(e.getKey(), e.getValue())) {
+                added++;
+            } else {
+                log.debug("Table model for " + e.getKey() + " already loaded");
+            }
+        }
+        log.info("+ Loaded " + added + " table models");
+
+        return added;
+    }
+
+    /**
+     * Starts loading the table models like {@link #loadTableModels(String, String)} on a
+     * background daemon thread. Until it completes, the lookup of a table that is not in the
+     * cache yet waits for the load instead of going to the database metadata on its own.
+     *
+     * @return the pending number of table models added to the cache
+     */
+    public Future<Integer> loadTableModelsInBackground(final String schemaPattern,
+                                                       final String tableNamePattern) {
+        FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+            public Integer call() {
+                try {
+                    return loadTableModels(schemaPattern, tableNamePattern);
+                } catch (RuntimeException e) {
+                    log.warn("Background loading of table models failed", e);
+                    throw e;
+                }
+            }
+        }) {
+            @Override
+            protected void done() {
+                // a load started in the meantime keeps its own marker
+                tableModelsLoad.compareAndSet(this, null);
+            }
+        };
+        this.tableModelsLoad.set(task);
+
+        Thread t = new Thread(task, "RdoDao-table-models");
+        t.setDaemon(true);
+        t.start();
+
+        return task;
+    }
+
+    /**
+     * Writes the table models and mappers of this DAO to a snapshot file, to be read back
+     * by {@link #readModelSnapshot(File, String)} on the next start.
+     *
+     * @param file              the snapshot file, replaced if it exists
+     * @param schemaFingerprint identifies the current database schema, i.e. the version of
+     *                          its migrations
+     *
+     * @see ModelSnapshot
+     */
+    public void writeModelSnapshot(File file, String schemaFingerprint) throws IOException {
+        ModelSnapshot.write(file, schemaFingerprint, this.tableModels.values(),
+                            this.mappers.values());
+    }
+
+    /**
+     * Fills the table model and mapper caches from a snapshot file, without any metadata
+     * calls. A snapshot that is missing, unreadable or written for another schema
+     * fingerprint is ignored, and the models are then retrieved lazily as before.
+     *
+     * @param file              the snapshot file
+     * @param schemaFingerprint identifies the current database schema
+     *
+     * @return the number of table models and mappers added to the caches
+     */
+    public int readModelSnapshot(File file, String schemaFingerprint) {
+        ModelSnapshot snapshot;
+        try {
+            snapshot = ModelSnapshot.read(file, schemaFingerprint);
+        } catch (IOException ioe) {
+            log.warn("Cannot read model snapshot " + file, ioe);
+            return 0;
+        }
+        if (snapshot == null) {
+            return 0;
+        }
+
+        int added = 0;
+        for (TableModel tm : snapshot.getTableModels()) {
+            if (this.tableModels.putIfAbsent(tm.getTableName().toUpperCase(), tm)) {
+                added++;
+            }
+        }
+
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = RdoDao.class.getClassLoader();
+        }
+        for (String[] mapper : snapshot.getMappers()) {
+            try {
+                getRdoMapper(Class.forName(mapper[0], false, loader), mapper[1]);
+                added++;
+            } catch (ClassNotFoundException e) {
+                log.warn("Skipping snapshot mapper of missing class " + mapper[0]);
+            } catch (RuntimeException e) {
+                log.warn("Skipping snapshot mapper of " + mapper[0] + " for " + mapper[1], e);
+            }
+        }
+
+        log.info("+ Read " + added + " models from snapshot " + file);
+        return added;
+    }
+
+    /**
+     * Builds a filter of the keys of a table, which getDto checks before reading a DTO by
+     * its keys so that a key certainly not in the table returns NULL without a query. The
+     * keys are streamed from the first keyColumns columns of the table, the columns
+     * getDto reads by. A filter already built for the table is replaced.
+     *
+     * The filter is not updated by the writes to the table: the keys of the rows inserted
+     * should be added with {@link #addKeys(String, Object...)}, and the filter rebuilt with
+     * {@link #refreshKeyFilter(String)} from time to time. A filter takes effect for the
+     * bindings bound after it is built.
+     *
+     * @param falsePositiveRate the rate of false positives the filter is sized for,
+     *                          i.e. 0.01
+     *
+     * @return the filter, i.e. to report its false positive rate
+     *
+     * @throws ModelNotFoundException if the table cannot be found
+     * @throws ModelNotSupportedException if keyColumns is not between 1 and the number of
+     *                                    columns of the table
+     */
+    public KeyFilter buildKeyFilter(String tableName, int keyColumns, double falsePositiveRate) {
+        TableModel tableModel = getTableModel(tableName);
+        if (tableModel == null) {
+            throw new ModelNotFoundException("Cannot find model for table " + tableName);
+        }
+        if ((keyColumns < 1) || (keyColumns > tableModel.getColumns().size())) {
+            throw new ModelNotSupportedException(
+                    "Cannot filter " + keyColumns + " key columns of table " +
+                    tableModel.getTableName() + " of " + tableModel.getColumns().size() +
+                    " columns");
+        }
+
+        int[] sqlTypes = new int[keyColumns];
+        for (int i = 0; i < keyColumns; i++) {
+            sqlTypes[i] = tableModel.getColumns().get(i).getSqlType();
+        }
+        KeyFilter filter = new KeyFilter(sqlTypes, falsePositiveRate);
+        streamKeys(tableModel, filter);
+        keyFilters.put(tableModel.getTableName().toUpperCase(), filter);
+        return filter;
+    }
+
+    /**
+     * Rebuilds the key filter of a table from all its keys, which also drops the keys of
+     * the rows deleted. The previous keys are used until the rebuild is complete.
+     *
+     * @return FALSE if the table has no key filter
+     */
+    public boolean refreshKeyFilter(String tableName) {
+        KeyFilter filter = keyFilters.get(tableName.toUpperCase());
+        if (filter == null) {
+            return false;
+        }
+
+        streamKeys(getTableModel(tableName), filter);
+        return true;
+    }
+
+    /**
+     * Adds the keys of a row inserted in a table to its key filter, if it has one
+     */
+    public void addKeys(String tableName, Object... keys) {
+        KeyFilter filter = keyFilters.get(tableName.toUpperCase());
+        if (filter != null) {
+            filter.add(keys);
+        }
+    }
+
+    /**
+     * Returns the key filter of a table, or NULL if it has none
+     */
+    public KeyFilter getKeyFilter(String tableName) {
+        return keyFilters.get(tableName.toUpperCase());
+    }
+
+    public void removeKeyFilter(String tableName) {
+        keyFilters.remove(tableName.toUpperCase());
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private RdoObjectExtractor createExtractor(RdoMapper m) {
+        return createExtractor(m, queryOptions);
+    }
+
+    /**
+     * @param options the query options of the extractor, NULL for the defaults of this DAO
+     */
+    private RdoObjectExtractor createExtractor(RdoMapper m, QueryOptions options) {
+        RdoObjectExtractor r = new RdoObjectExtractor(dataSource, m);
+        r.setQueryOptions((options != null) ? options : queryOptions);
+        r.setPrimitiveNullPolicy(primitiveNullPolicy);
+        r.setStatementCache(statementCache);
+        r.setEntityCache(entityCache);
+        r.setOffHeapCache(offHeapCache);
+        r.setResultCache(resultCache);
+        r.setInFlightQueries(inFlightQueries);
+        r.setCursorFetchSize(cursorFetchSize);
+        r.setSqlDialect(sqlDialect);
+        r.setKeyTableThreshold(keyTableThreshold);
+        if (!keyFilters.isEmpty()) {
+            r.setKeyFilter(keyFilters.get(m.getTableModel().getTableName().toUpperCase()));
+        }
+        return r;
+    }
+
+    /**
+     * Rebuilds a key filter from the keys of the given table, streamed from its first
+     * columns
+     */
+    private void streamKeys(TableModel tableModel, KeyFilter filter) {
+        StringBuilder columns = new StringBuilder();
+        for (int i = 0; i < filter.getKeyColumns(); i++) {
+            if (i > 0) {
+                columns.append(", ");
+            }
+            columns.append(tableModel.getColumns().get(i).getColumnName().toLowerCase());
+        }
+        String table = tableModel.getTableName().toLowerCase();
+
+        Connection conn = SqlResourceUtil.getConnection(dataSource);
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.createStatement();
+            rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table);
+            rs.next();
+            long count = rs.getLong(1);
+            rs.close();
+
+            stmt.setFetchSize(KEY_FETCH_SIZE);
+            rs = stmt.executeQuery("SELECT " + columns + " FROM " + table);
+            filter.rebuild(count + count / 4 + KEY_FILTER_HEADROOM,
+                           new KeyIterator(rs, filter.getKeyColumns()));
+
+            log.info("+ Built key filter of " + tableModel.getTableName() + ": " + filter);
+        } catch (SQLException sqle) {
+            throw new DataExtractionException(
+                    "Cannot read the keys of " + tableModel.getTableName(), sqle);
+        } finally {
+            SqlResourceUtil.closeResource(rs);
+            SqlResourceUtil.closeResource(stmt);
+            SqlResourceUtil.closeResource(conn);
+        }
+    }
+
+    /**
+     * Returns the children of the parents of the given keys, a list per parent
+     */
+    @SuppressWarnings("unchecked")
+    private <C> List<List<C>> readChildren(QueryOptions options, Class<C> childClass,
+                                           String childTableName, ForeignKeyModel fk,
+                                           List<Object[]> keys) {
+        RdoObjectExtractor r = createExtractor(getRdoMapper(childClass, childTableName),
+                                               options);
+        List lists = r.extractChildren(fk.getForeignColumns(), keys);
+        return (List<List<C>>) lists;
+    }
+
+    /**
+     * Returns the values of the columns of each parent referenced by a foreign key
+     */
+    private List<Object[]> getParentKeys(List<?> parents, String parentTableName,
+                                         ForeignKeyModel fk) {
+        String[] columns = fk.getPrimaryColumns();
+        Map<Class<?>, Method[]> gettersByClass = new HashMap<Class<?>, Method[]>();
+
+        List<Object[]> keys = new ArrayList<Object[]>(parents.size());
+        for (Object parent : parents) {
+            // the parents may be of different subclasses, each read by its own getters
+            Method[] getters = gettersByClass.get(parent.getClass());
+            if (getters == null) {
+                RdoMapper m = getRdoMapper(parent.getClass(), parentTableName);
+                getters = new Method[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    getters[i] = findColumnGetter(m, columns[i]);
+                }
+                gettersByClass.put(parent.getClass(), getters);
+            }
+
+            Object[] values = new Object[getters.length];
+            for (int i = 0; i < getters.length; i++) {
+                try {
+                    values[i] = getters[i].invoke(parent);
+                } catch (Exception e) {
+                    throw new DataExtractionException(
+                            "Cannot read " + getters[i].getName() + " of " +
+                            parent.getClass().getName(), e);
+                }
+            }
+            keys.add(values);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the single foreign key of the child table referencing the parent table,
+     * retrieving the foreign keys of the parent table into its model on first use
+     */
+    private ForeignKeyModel getForeignKey(String parentTableName, String childTableName) {
+        TableModel model = getTableModel(parentTableName);
+        List<ForeignKeyModel> exported = model.getExportedKeys();
+        if (exported == null) {
+            Connection conn = SqlResourceUtil.getConnection(dataSource);
+            try {
+                DatabaseMetaData metaData = conn.getMetaData();
+                model.setImportedKeys(DatabaseMetadataUtil.retrieveImportedKeys(
+                        metaData, model.getTableName()));
+                exported = DatabaseMetadataUtil.retrieveExportedKeys(metaData,
+                                                                     model.getTableName());
+                model.setExportedKeys(exported);
+            } catch (SQLException sqle) {
+                throw new ModelRetrievalException("Cannot retrieve foreign keys", sqle);
+            } finally {
+                SqlResourceUtil.closeResource(conn);
+            }
+        }
+
+        List<ForeignKeyModel> found = new ArrayList<ForeignKeyModel>();
+        for (ForeignKeyModel fk : exported) {
+            if (fk.getForeignTable().equalsIgnoreCase(childTableName)) {
+                found.add(fk);
+            }
+        }
+        if (found.isEmpty()) {
+            throw new ModelNotFoundException("No foreign key of " + childTableName +
+                                             " references " + parentTableName);
+        } else if (found.size() > 1) {
+            throw new ModelNotSupportedException(
+                    childTableName + " references " + parentTableName + " through more " +
+                    "than one foreign key: " + found);
+        }
+        return found.get(0);
+    }
+
+    /**
+     * Returns the getter of the property a mapper reads a column into
+     */
+    private static Method findColumnGetter(RdoMapper m, String columnName) {
+        Class<?> c = m.getClassModel().getInternalClass();
+        for (RdoOperation op : m.getReadOperations()) {
+            if (!op.getColumnName().equalsIgnoreCase(columnName)) {
+                continue;
+            }
+            String property = op.getMethodName().substring(3);
+            for (String prefix : new String[]{"get", "is"}) {
+                try {
+                    return c.getMethod(prefix + property);
+                } catch (NoSuchMethodException nsme) {
+                    // try the next prefix
+                }
+            }
+        }
+        throw new ModelNotSupportedException(
+                "No getter of column " + columnName + " in " + c.getName());
+    }
+
+    private static Method findListSetter(Class c, String propertyName) {
+        String name = "set" + FieldNameUtil.firstUpper(propertyName);
+        for (Method method : c.getMethods()) {
+            if (method.getName().equals(name) && (method.getParameterTypes().length == 1) &&
+                method.getParameterTypes()[0].isAssignableFrom(List.class)) {
+                return method;
+            }
+        }
+        throw new ModelNotSupportedException("No setter of a List " + name + " in " +
+                                             c.getName());
+    }
+
+    /**
+     * @param c
+     * @param tableName
+     * @return
+     */
+    private RdoMapper getRdoMapper(final Class c, final String tableName) {
+        RdoMapper m = this.mapperIndex.get(c, tableName);
+        if (m != null) {
+            return m;
+        }
+
+        String key = c.getName() + ":" + tableName.toUpperCase();
+        m = this.mappers.get(key, new Callable<RdoMapper>() {
+            public RdoMapper call() {
+                return createRdoMapper(c, tableName);
+            }
+        });
+        this.mapperIndex.put(c, tableName, m);
+
+        return m;
+    }
+
+    /**
+     * Creates the RdoMapper of a class and table, called once per key by the mappers cache
+     */
+    private RdoMapper createRdoMapper(Class c, String tableName) {
+        if (useGeneratedMappers) {
+            GeneratedMapper generated = GeneratedMapperRegistry.getMapper(c, tableName);
+            if (generated != null) {
+                RdoMapper m = generated.createMapper();
+                if (isSameColumns(m.getTableModel(), getTableModel(tableName))) {
+                    log.info("! RdoMapper not found in cache, using generated mapper " +
+                             generated.getClass().getName());
+                    return m;
+                }
+                log.warn("Generated mapper " + generated.getClass().getName() +
+                         " does not match the columns of table " + tableName +
+                         " in the database, constructing it from Class and TableModel");
+            }
+        }
+
+        log.info("! RdoMapper not found in cache, constructing from Class and TableModel...");
+
+        ClassModel classModel = getClassModel(c);
+
+        if (classModel == null) {
+            throw new ModelNotFoundException(
+                    "Cannot find model for class " + c.getCanonicalName());
+        }
+
+        TableModel tableModel = getTableModel(tableName);
+        if (tableModel == null) {
+            throw new ModelNotFoundException("Cannot find model for table " + tableName);
+        }
+
+        // instantiate a new RdoMapper to get the mathing done
+        RdoMapper m = new RdoMapper(classModel, tableModel);
+
+        if (compileMappers) {
+            m.setRowReader(MapperCompiler.compile(m));
+        }
+
+        return m;
+    }
+
+    /**
+     * Returns TRUE if the columns of a generated table model have the names and SQL types
+     * of the columns of the table in the database, in the same order
+     */
+    private static boolean isSameColumns(TableModel generated, TableModel live) {
+        if ((live == null) || (generated.getColumns().size() != live.getColumns().size())) {
+            return false;
+        }
+        for (int i = 0; i < live.getColumns().size(); i++) {
+            ColumnModel g = generated.getColumns().get(i);
+            ColumnModel l = live.getColumns().get(i);
+            if (!g.getColumnName().equalsIgnoreCase(l.getColumnName()) ||
+                (g.getSqlType() != l.getSqlType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private TableModel getTableModel(final String tableName) {
+        String key = tableName.toUpperCase();
+        TableModel model = this.tableModels.get(key);
+        if (model == null && awaitTableModelsLoad()) {
+            model = this.tableModels.get(key);
+        }
+        if (model == null) {
+            model = this.tableModels.get(key, new Callable<TableModel>() {
+                public TableModel call() {
+                    return retrieveTableModel(tableName);
+                }
+            });
+        }
+
+        return model;
+    }
+
+    /**
+     * Returns the current schema of a connection, NULL if the database has no schemas or
+     * the Java version or the driver predates JDBC 4.1. Connection.getSchema is looked up
+     * through reflection, as it is not available on all the supported Java versions.
+     */
+    private static String getSchema(Connection conn) throws SQLException {
+        try {
+            return (String) Connection.class.getMethod("getSchema").invoke(conn);
+        } catch (NoSuchMethodException nsme) {
+            return null; // no JDBC 4.1 in this Java version
+        } catch (InvocationTargetException ite) {
+            if (ite.getCause() instanceof SQLException) {
+                throw (SQLException) ite.getCause();
+            }
+            return null; // a driver older than JDBC 4.1
+        } catch (IllegalAccessException iae) {
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the model of a table from the database metadata, called once per table
+     * by the tableModels cache. Returns NULL if the table does not exist.
+     */
+    private TableModel retrieveTableModel(String tableName) {
+        Connection conn = SqlResourceUtil.getConnection(dataSource);
+        try {
+            return DatabaseMetadataUtil.retrieveTableModel(conn.getMetaData(), tableName);
+        } catch (SQLException sqle) {
+            throw new ModelRetrievalException("Cannot retrieve data model", sqle);
+        } finally {
+            SqlResourceUtil.closeResource(conn);
+        }
+    }
+
+    /**
+     * Waits for a background load of the table models, if one is in progress
+     *
+     * @return true if a load was waited for, successfully or not
+     */
+    private boolean awaitTableModelsLoad() {
+        Future<Integer> load = this.tableModelsLoad.get();
+        if (load == null) {
+            return false;
+        }
+
+        try {
+            load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // already logged, the table is retrieved on its own
+        }
+        return true;
+    }
+
+    /**
+     * @param c
+     * @return
+     */
+    private ClassModel getClassModel(final Class c) {
+        ClassModel classModel = this.classModels.get(c);
+
+        if (classModel == null) {
+            classModel = this.classModels.get(c, new Callable<ClassModel>() {
+                public ClassModel call() {
+                    log.info("+ Creating class model for class " + c.getName() + "...");
+                    return ReflectionUtil.createClassModel(c);
+                }
+            });
+        }
+
+        return classModel;
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    /**
+     * Iterates over the key values of the rows of a result set
+     */
+    private static final class KeyIterator implements Iterator<Object[]> {
+
+        private final ResultSet rs;
+        private final int keyColumns;
+
+        private Boolean hasNext;
+
+        private KeyIterator(ResultSet rs, int keyColumns) {
+            this.rs = rs;
+            this.keyColumns = keyColumns;
+        }
+
+        public boolean hasNext() {
+            if (hasNext == null) {
+                try {
+                    hasNext = rs.next();
+                } catch (SQLException sqle) {
+                    throw new DataExtractionException("Cannot read keys", sqle);
+                }
+            }
+            return hasNext;
+        }
+
+        public Object[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+
+            try {
+                Object[] keys = new Object[keyColumns];
+                for (int i = 0; i < keyColumns; i++) {
+                    keys[i] = rs.getObject(i + 1);
+                }
+                return keys;
+            } catch (SQLException sqle) {
+                throw new DataExtractionException("Cannot read keys", sqle);
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
-    */
 }
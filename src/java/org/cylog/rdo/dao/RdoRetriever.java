@@ -15,10 +15,17 @@
  */
 package org.cylog.rdo.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.sql.DataSource;
 
+import org.cylog.rdo.dao.extractor.QueryOptions;
+import org.cylog.rdo.dao.extractor.RdoCursor;
+import org.cylog.rdo.dao.extractor.RdoKeyExtractor;
+import org.cylog.rdo.dao.extractor.RdoPage;
+import org.cylog.rdo.dao.extractor.RdoVisitor;
+
 /**
  * Interface of RapidDataObject retriever classes. In the framework only the RdoDao
  * class implements this interface. Your code may implement this interface and
@@ -97,4 +104,136 @@ public interface RdoRetriever {
 
     public <T> List<T> getDtoListFromSql(Class<T> c, String tableName, String sql,
                                          Object... params);
+
+    /**
+     * Returns a cursor over the Class-"c" objects of the rows of table "tableName" that
+     * match the whereClause, like getDtoList, but mapping each row only when it is
+     * iterated to, so that any number of rows can be read in constant memory.
+     *
+     * The cursor holds a connection open until it is exhausted or closed, so it must be
+     * closed in a finally block.
+     */
+    public <T> RdoCursor<T> iterateDtos(Class<T> c, String tableName, String whereClause,
+                                        Object... params);
+
+    public <T> RdoCursor<T> iterateDtosFromSql(Class<T> c, String tableName, String sql,
+                                               Object... params);
+
+    /**
+     * Hands the Class-"c" objects of the rows of table "tableName" that match the
+     * whereClause to the visitor, filling a single object with each row in turn, so that
+     * a whole table can be aggregated without creating an object per row.
+     *
+     * @return the number of rows visited
+     *
+     * @see RdoVisitor
+     */
+    public <T> int scanDtos(Class<T> c, String tableName, String whereClause,
+                            RdoVisitor<? super T> visitor, Object... params);
+
+    public <T> int scanDtosFromSql(Class<T> c, String tableName, String sql,
+                                   RdoVisitor<? super T> visitor, Object... params);
+
+    /**
+     * Returns a page of up to pageSize Class-"c" objects of the rows of table "tableName"
+     * after the given primary key, in primary key order. This method will create a SQL
+     * statement like:
+     *
+     * "SELECT field1, field2, ... FROM tableName WHERE (k1, k2) > (?, ?) ORDER BY k1, k2"
+     *
+     * limited to the page, in the SQL dialect of the database. The next page is read
+     * after the next key of the page, so every page costs the same however deep it is.
+     *
+     * @param afterKey the values of the primary key columns of the row to read the page
+     *                 after, NULL for the first page
+     *
+     * @see RdoPage
+     */
+    public <T> RdoPage<T> getDtoPage(Class<T> c, String tableName, Object[] afterKey,
+                                     int pageSize);
+
+    /**
+     * Reads the objects of many keys of the table "tableName" with a few statements
+     * rather than one per key, and returns them in the order of the keys, with NULL for
+     * the keys that have no row. Each key is an Object[] of the values of the first columns
+     * of the table, as the keys of getDto, or a single value for keys of one column:
+     *
+     * "SELECT field1, field2, ... FROM tableName WHERE field1 IN (?, ?, ?, ?)"
+     *
+     * The IN lists are padded to a few fixed sizes so that their statements are prepared
+     * once. From a threshold of keys on, the keys are inserted in a temporary table that
+     * is joined instead.
+     */
+    public <T> List<T> getDtos(Class<T> c, String tableName, Collection<?> keys);
+
+    /**
+     * Populates the given objects from the rows of the table "tableName" with a few
+     * statements rather than a mergeDto per object, i.e. to add the columns of another
+     * table to a list of objects read from one. The key of the row of each object is
+     * returned by the "keyExtractor", as the keys of mergeDto, and the keys are read
+     * together as the keys of getDtos:
+     *
+     * "SELECT field1, field2, ... FROM tableName WHERE field1 IN (?, ?, ?, ?)"
+     *
+     * The objects whose key has no row, or a NULL key, are left intact. The objects of
+     * the same key are all populated from its row. Objects of different classes,
+     * i.e. of subclasses, are populated through the setters of their own class, with a
+     * query per class.
+     *
+     * @return the number of objects populated
+     */
+    public <T> int mergeDtos(List<T> dtos, String tableName,
+                             RdoKeyExtractor<? super T> keyExtractor);
+
+    // ---- Retrieval Operations with Query Options ---------------------------
+
+    /**
+     * The retrieval operations above, with the fetch size, maximum rows, timeout, result
+     * set type and read-only hint of the given options instead of the default options of
+     * the retriever. NULL options are the default options of the retriever.
+     *
+     * @see QueryOptions
+     */
+    public <T> T getDto(QueryOptions options, Class<T> c, String tableName, Object... keys);
+
+    public <T> T getDtoWhere(QueryOptions options, Class<T> c, String tableName,
+                             String whereClause, Object... params);
+
+    public <T> T getDtoFromSql(QueryOptions options, Class<T> c, String tableName, String sql,
+                               Object... params);
+
+    public <T> T mergeDto(QueryOptions options, T dto, String tableName, Object... keys);
+
+    public <T> T mergeDtoWhere(QueryOptions options, T dto, String tableName,
+                               String whereClause, Object... params);
+
+    public <T> T mergeDtoFromSql(QueryOptions options, T dto, String tableName, String sql,
+                                 Object... params);
+
+    public <T> List<T> getDtoList(QueryOptions options, Class<T> c, String tableName,
+                                  String whereClause, Object... params);
+
+    public <T> List<T> getDtoListFromSql(QueryOptions options, Class<T> c, String tableName,
+                                         String sql, Object... params);
+
+    public <T> RdoCursor<T> iterateDtos(QueryOptions options, Class<T> c, String tableName,
+                                        String whereClause, Object... params);
+
+    public <T> RdoCursor<T> iterateDtosFromSql(QueryOptions options, Class<T> c,
+                                               String tableName, String sql, Object... params);
+
+    public <T> int scanDtos(QueryOptions options, Class<T> c, String tableName,
+                            String whereClause, RdoVisitor<? super T> visitor, Object... params);
+
+    public <T> int scanDtosFromSql(QueryOptions options, Class<T> c, String tableName,
+                                   String sql, RdoVisitor<? super T> visitor, Object... params);
+
+    public <T> RdoPage<T> getDtoPage(QueryOptions options, Class<T> c, String tableName,
+                                     Object[] afterKey, int pageSize);
+
+    public <T> List<T> getDtos(QueryOptions options, Class<T> c, String tableName,
+                               Collection<?> keys);
+
+    public <T> int mergeDtos(QueryOptions options, List<T> dtos, String tableName,
+                             RdoKeyExtractor<? super T> keyExtractor);
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The JDBC settings of the statements and connections of a query: fetch size, maximum
+ * rows, query timeout, result set type and concurrency, the read-only hint of the
+ * connection, and whether the query shares the execution of an identical query in flight.
+ * The defaults are the driver's own, so a new QueryOptions changes nothing
+ * until its properties are set:
+ *
+ * <pre>
+ * QueryOptions options = new QueryOptions();
+ * options.setFetchSize(500);
+ * options.setQueryTimeout(5);
+ * List&lt;Order&gt; orders = dao.getDtoList(options, Order.class, "ORDERS", null);
+ * </pre>
+ *
+ * The options of a call replace the default options of the DAO as a whole. Options
+ * shared between threads must not be changed once they are in use.
+ *
+ * @author Kostas Symeonidis
+ */
+public class QueryOptions {
+
+    // ---- Member Variables --------------------------------------------------
+
+    private int fetchSize = 0;
+    private int maxRows = 0;
+    private int queryTimeout = 0;
+    private int resultSetType = ResultSet.TYPE_FORWARD_ONLY;
+    private int resultSetConcurrency = ResultSet.CONCUR_READ_ONLY;
+    private boolean readOnly = false;
+    private boolean shareInFlight = true;
+
+    // ---- Constructors ------------------------------------------------------
+
+    public QueryOptions() {
+    }
+
+    /**
+     * Constructs a copy of the given options
+     */
+    public QueryOptions(QueryOptions options) {
+        this.fetchSize = options.fetchSize;
+        this.maxRows = options.maxRows;
+        this.queryTimeout = options.queryTimeout;
+        this.resultSetType = options.resultSetType;
+        this.resultSetConcurrency = options.resultSetConcurrency;
+        this.readOnly = options.readOnly;
+        this.shareInFlight = options.shareInFlight;
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    @Override
+    public String toString() {
+        return "QueryOptions{fetchSize=" + fetchSize +
+               ", maxRows=" + maxRows +
+               ", queryTimeout=" + queryTimeout +
+               ", resultSetType=" + resultSetType +
+               ", resultSetConcurrency=" + resultSetConcurrency +
+               ", readOnly=" + readOnly +
+               ", shareInFlight=" + shareInFlight +
+               '}';
+    }
+
+    // ---- Package methods ---------------------------------------------------
+
+    /**
+     * Returns TRUE if the statement is of the driver's default type and concurrency, so
+     * that it can be taken from the statement cache
+     */
+    boolean isDefaultResultSet() {
+        return (resultSetType == ResultSet.TYPE_FORWARD_ONLY) &&
+               (resultSetConcurrency == ResultSet.CONCUR_READ_ONLY);
+    }
+
+    /**
+     * Returns TRUE if any of the limits of applyTo is set
+     */
+    boolean hasStatementLimits() {
+        return (fetchSize != 0) || (maxRows != 0) || (queryTimeout != 0);
+    }
+
+    /**
+     * Sets the fetch size, maximum rows and query timeout that are not the defaults to
+     * the given statement
+     */
+    void applyTo(PreparedStatement pstmt) throws SQLException {
+        if (fetchSize != 0) {
+            pstmt.setFetchSize(fetchSize);
+        }
+        if (maxRows != 0) {
+            pstmt.setMaxRows(maxRows);
+        }
+        if (queryTimeout != 0) {
+            pstmt.setQueryTimeout(queryTimeout);
+        }
+    }
+
+    /**
+     * Sets the limits applied to a cached statement back to the defaults, before the
+     * statement is reused by another query
+     */
+    void resetOn(PreparedStatement pstmt) throws SQLException {
+        if (fetchSize != 0) {
+            pstmt.setFetchSize(0);
+        }
+        if (maxRows != 0) {
+            pstmt.setMaxRows(0);
+        }
+        if (queryTimeout != 0) {
+            pstmt.setQueryTimeout(0);
+        }
+    }
+
+    // ---- Bean Properties ---------------------------------------------------
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets the number of rows the driver fetches at a time, 0 for the driver's default.
+     * For MySQL, Integer.MIN_VALUE streams the rows one at a time instead of buffering
+     * the whole result on the client.
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * Sets the maximum number of rows read, 0 for all of them. A list limited by maxRows
+     * is not cached by the result cache, as it is not the whole result of its query.
+     */
+    public void setMaxRows(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    /**
+     * Sets the number of seconds the driver waits for a query to execute, 0 for no limit
+     */
+    public void setQueryTimeout(int queryTimeout) {
+        this.queryTimeout = queryTimeout;
+    }
+
+    public int getResultSetType() {
+        return resultSetType;
+    }
+
+    /**
+     * Sets the type of the result sets, ResultSet.TYPE_FORWARD_ONLY by default. The
+     * statements of other types are not taken from the statement cache.
+     */
+    public void setResultSetType(int resultSetType) {
+        this.resultSetType = resultSetType;
+    }
+
+    public int getResultSetConcurrency() {
+        return resultSetConcurrency;
+    }
+
+    /**
+     * Sets the concurrency of the result sets, ResultSet.CONCUR_READ_ONLY by default. The
+     * statements of other concurrencies are not taken from the statement cache.
+     */
+    public void setResultSetConcurrency(int resultSetConcurrency) {
+        this.resultSetConcurrency = resultSetConcurrency;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Sets the connection of the query to read-only, which lets the driver route it to a
+     * replica or skip the locking of writes. The connection is set back to read-write
+     * before it is closed, so it is meant for data sources of read-write connections.
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public boolean isShareInFlight() {
+        return shareInFlight;
+    }
+
+    /**
+     * Sets whether the query shares the execution of an identical query that is already
+     * running, TRUE by default. Only applies to a DAO with in-flight queries set; FALSE runs
+     * the query on its own, i.e. to read the rows the caller has just written.
+     */
+    public void setShareInFlight(boolean shareInFlight) {
+        this.shareInFlight = shareInFlight;
+    }
+}
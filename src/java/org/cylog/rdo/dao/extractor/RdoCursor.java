@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+
+import org.cylog.rdo.logger.ClassLogger;
+import org.cylog.rdo.util.SqlResourceUtil;
+
+/**
+ * Iterates over the DTOs of the rows of a query, mapping each row only when it is
+ * iterated to, so that any number of rows is read in constant memory. The cursor holds
+ * its connection, statement and result set open until it is exhausted or closed, and
+ * must therefore be closed in a finally block:
+ *
+ * <pre>
+ * RdoCursor&lt;Order&gt; orders = dao.iterateDtos(Order.class, "ORDERS", null);
+ * try {
+ *     for (Order order : orders) {
+ *         ...
+ *     }
+ * } finally {
+ *     orders.close();
+ * }
+ * </pre>
+ *
+ * How many rows are held in memory at a time is up to the JDBC driver and the fetch
+ * size of the statement. A cursor is iterated once, by a single thread.
+ *
+ * @author Kostas Symeonidis
+ */
+public class RdoCursor<T> implements Iterator<T>, Iterable<T>, Closeable {
+    // ---- Static ------------------------------------------------------------
+
+    public static Log log = new ClassLogger();
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final RdoObjectExtractor extractor;
+    private final int[] columns;
+
+    private Connection conn;
+    private PreparedStatement pstmt;
+    private ResultSet rs;
+
+    /**
+     * TRUE if the result set is on a row not yet returned, NULL if it has to be advanced
+     */
+    private Boolean hasNext;
+
+    private int rowCount = 0;
+    private final long startTime = System.currentTimeMillis();
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * Takes over the given resources, which are closed with the cursor
+     */
+    RdoCursor(RdoObjectExtractor extractor, Connection conn, PreparedStatement pstmt,
+              ResultSet rs, int[] columns) {
+        this.extractor = extractor;
+        this.conn = conn;
+        this.pstmt = pstmt;
+        this.rs = rs;
+        this.columns = columns;
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    public boolean hasNext() {
+        if (hasNext == null) {
+            if (rs == null) {
+                return false;
+            }
+
+            try {
+                hasNext = rs.next();
+            } catch (SQLException sqle) {
+                close();
+                throw new RuntimeException(
+                        "SQL Exception while iterating cursor ... " + sqle.getMessage(), sqle);
+            }
+
+            // release the connection as soon as the rows are exhausted
+            if (!hasNext) {
+                close();
+            }
+        }
+        return hasNext;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasNext = null;
+
+        try {
+            T dto = (T) extractor.extractRow(rs, columns, null);
+            rowCount++;
+            return dto;
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Cannot remove rows through a cursor");
+    }
+
+    /**
+     * Returns this cursor, so that it can be iterated in a for-each loop, once
+     */
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    /**
+     * Closes the result set, statement and connection of the cursor, if they are not
+     * already closed
+     */
+    public void close() {
+        if (conn == null) {
+            return;
+        }
+
+        SqlResourceUtil.closeResource(rs);
+        SqlResourceUtil.closeResource(pstmt);
+        extractor.releaseConnection(conn);
+        rs = null;
+        pstmt = null;
+        conn = null;
+        hasNext = Boolean.FALSE;
+
+        if (log.isInfoEnabled()) {
+            log.info(" - Cursor closed after " + (System.currentTimeMillis() - startTime) +
+                     " milliseconds, result count = " + rowCount);
+        }
+    }
+
+    // ---- Package methods ---------------------------------------------------
+
+    /**
+     * Hands the DTO of each remaining row to the visitor, until the rows are exhausted
+     * or the visitor stops.
+     *
+     * @param reuse TRUE to fill the same DTO with each row
+     *
+     * @return the number of rows visited
+     */
+    @SuppressWarnings("unchecked")
+    int visitAll(RdoVisitor<? super T> visitor, boolean reuse) {
+        T dto = null;
+        int visited = 0;
+        while (hasNext()) {
+            hasNext = null;
+            dto = (T) extractor.extractRow(rs, columns, reuse ? dto : null);
+            rowCount++;
+            visited++;
+
+            if (!visitor.visit(dto)) {
+                break;
+            }
+        }
+        return visited;
+    }
+
+    // ---- Bean Properties (Read-Only) ---------------------------------------
+
+    /**
+     * Returns the number of rows iterated so far
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isClosed() {
+        return conn == null;
+    }
+}
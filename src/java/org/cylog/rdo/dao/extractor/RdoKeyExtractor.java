@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+/**
+ * Returns the key of the row of a table to merge into a DTO, i.e. the id of an order a
+ * DTO read from another table refers to, for the merges of mergeDtos.
+ *
+ * @author Kostas Symeonidis
+ */
+public interface RdoKeyExtractor<T> {
+
+    /**
+     * Returns the key of the row to merge into the given DTO: an Object[] of the values of
+     * the first columns of the table, as the keys of mergeDto, or a single value for a key
+     * of one column.
+     *
+     * @return the key, NULL or a key with a NULL value if there is no row to merge
+     */
+    public Object getKey(T dto);
+}
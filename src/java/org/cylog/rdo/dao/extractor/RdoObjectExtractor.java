@@ -20,21 +20,47 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 
+import org.cylog.rdo.bean.ColumnModel;
+import org.cylog.rdo.bean.ConstructorModel;
+import org.cylog.rdo.bean.MethodModel;
+import org.cylog.rdo.bean.PrimitiveNullPolicy;
 import org.cylog.rdo.bean.RdoMapper;
 import org.cylog.rdo.bean.RdoOperation;
+import org.cylog.rdo.bean.TableModel;
+import org.cylog.rdo.cache.EntityCache;
+import org.cylog.rdo.cache.InFlightQueries;
+import org.cylog.rdo.cache.KeyFilter;
+import org.cylog.rdo.cache.KeyTuple;
+import org.cylog.rdo.cache.OffHeapCache;
+import org.cylog.rdo.cache.ResultCache;
+import org.cylog.rdo.codec.ValueCodecRegistry;
+import org.cylog.rdo.dialect.SqlDialect;
+import org.cylog.rdo.exception.DataExtractionException;
 import org.cylog.rdo.exception.ModelNotSupportedException;
 import org.cylog.rdo.logger.ClassLogger;
+import org.cylog.rdo.util.DatabaseMetadataUtil;
 import org.cylog.rdo.util.JdbcUtil;
 import org.cylog.rdo.util.SqlResourceUtil;
+import org.cylog.rdo.util.StatementCache;
 
 /**
  * TODO description for class RdoResultSetExtractor
@@ -56,6 +82,36 @@ public class RdoObjectExtractor {
      */
     public static final Object[] NULL_VALUE = new Object[] {null};
 
+    /**
+     * The default number of keys from which extractObjects joins a temporary table of the
+     * keys instead of reading them in IN lists
+     */
+    public static final int DEFAULT_KEY_TABLE_THRESHOLD = 2048;
+
+    /**
+     * The numbers of keys of the IN lists of extractObjects. A list is padded up to the
+     * smallest bucket that fits its keys, so only a few distinct statements are prepared.
+     */
+    private static final int[] KEY_BUCKETS = {1, 4, 16, 64, 256};
+
+    /**
+     * The name of the temporary table of the keys of extractObjects
+     */
+    private static final String KEY_TABLE = "rdo_keys";
+
+    /**
+     * The number of keys inserted in the temporary table with each batch
+     */
+    private static final int KEY_TABLE_BATCH = 1000;
+
+    /**
+     * The keys of the in-flight queries of extractPage, extractObjects and extractChildren,
+     * which run more than one statement or build theirs once connected
+     */
+    private static final String PAGE_QUERY = "extractPage";
+    private static final String KEYS_QUERY = "extractObjects";
+    private static final String CHILDREN_QUERY = "extractChildren";
+
     // ---- Member Variables --------------------------------------------------
 
     private DataSource dataSource;
@@ -63,6 +119,62 @@ public class RdoObjectExtractor {
 
     private boolean lowerCaseEnums = true;
 
+    private PrimitiveNullPolicy primitiveNullPolicy = PrimitiveNullPolicy.ZERO;
+
+    /**
+     * The cache the statements are prepared from, NULL to prepare and close a statement
+     * on every call
+     */
+    private StatementCache statementCache;
+
+    /**
+     * The cache of the DTOs read by primary key, NULL if they are not cached
+     */
+    private EntityCache entityCache;
+
+    /**
+     * The cache of the DTOs read by primary key kept off the heap, consulted after the
+     * entityCache, NULL if they are not cached off the heap
+     */
+    private OffHeapCache offHeapCache;
+
+    /**
+     * The cache of the lists read, NULL if they are not cached
+     */
+    private ResultCache resultCache;
+
+    /**
+     * The queries being executed, shared by identical queries, NULL if they are not shared
+     */
+    private InFlightQueries inFlightQueries;
+
+    /**
+     * The filter of the primary keys of the mapper's table, NULL if there is none
+     */
+    private KeyFilter keyFilter;
+
+    /**
+     * The fetch size of the statements of the cursors, 0 for the driver's default
+     */
+    private int cursorFetchSize = 0;
+
+    /**
+     * The settings of the statements and connections of the queries
+     */
+    private QueryOptions queryOptions = new QueryOptions();
+
+    /**
+     * The dialect of the page and temporary table statements, NULL to detect it from the
+     * connection
+     */
+    private SqlDialect sqlDialect;
+
+    /**
+     * The number of keys from which extractObjects joins a temporary table of the keys, 0
+     * to always read them in IN lists
+     */
+    private int keyTableThreshold = DEFAULT_KEY_TABLE_THRESHOLD;
+
     // ---- Constructors ------------------------------------------------------
 
     /**
@@ -75,6 +187,10 @@ public class RdoObjectExtractor {
 
     // ---- Properties --------------------------------------------------------
 
+    public RdoMapper getRdoMapper() {
+        return rdoMapper;
+    }
+
     public boolean isLowerCaseEnums() {
         return lowerCaseEnums;
     }
@@ -83,14 +199,253 @@ public class RdoObjectExtractor {
         this.lowerCaseEnums = lowerCaseEnums;
     }
 
+    public PrimitiveNullPolicy getPrimitiveNullPolicy() {
+        return primitiveNullPolicy;
+    }
+
+    public void setPrimitiveNullPolicy(PrimitiveNullPolicy primitiveNullPolicy) {
+        this.primitiveNullPolicy = primitiveNullPolicy;
+    }
+
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    public void setStatementCache(StatementCache statementCache) {
+        this.statementCache = statementCache;
+    }
+
+    public EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    public void setEntityCache(EntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    public OffHeapCache getOffHeapCache() {
+        return offHeapCache;
+    }
+
+    public void setOffHeapCache(OffHeapCache offHeapCache) {
+        this.offHeapCache = offHeapCache;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public InFlightQueries getInFlightQueries() {
+        return inFlightQueries;
+    }
+
+    public void setInFlightQueries(InFlightQueries inFlightQueries) {
+        this.inFlightQueries = inFlightQueries;
+    }
+
+    public KeyFilter getKeyFilter() {
+        return keyFilter;
+    }
+
+    public void setKeyFilter(KeyFilter keyFilter) {
+        this.keyFilter = keyFilter;
+    }
+
+    public int getCursorFetchSize() {
+        return cursorFetchSize;
+    }
+
+    public void setCursorFetchSize(int cursorFetchSize) {
+        this.cursorFetchSize = cursorFetchSize;
+    }
+
+    public SqlDialect getSqlDialect() {
+        return sqlDialect;
+    }
+
+    public void setSqlDialect(SqlDialect sqlDialect) {
+        this.sqlDialect = sqlDialect;
+    }
+
+    public int getKeyTableThreshold() {
+        return keyTableThreshold;
+    }
+
+    public void setKeyTableThreshold(int keyTableThreshold) {
+        this.keyTableThreshold = keyTableThreshold;
+    }
+
+    public QueryOptions getQueryOptions() {
+        return queryOptions;
+    }
+
+    /**
+     * Sets the settings of the statements and connections of the queries, NULL for the
+     * driver's defaults
+     */
+    public void setQueryOptions(QueryOptions queryOptions) {
+        this.queryOptions = (queryOptions != null) ? queryOptions : new QueryOptions();
+    }
+
     // ---- Public methods ----------------------------------------------------
 
+    /**
+     * Returns an extractor with the settings and caches of this one and the given query
+     * options
+     */
+    public RdoObjectExtractor withQueryOptions(QueryOptions queryOptions) {
+        RdoObjectExtractor r = new RdoObjectExtractor(dataSource, rdoMapper);
+        r.lowerCaseEnums = lowerCaseEnums;
+        r.primitiveNullPolicy = primitiveNullPolicy;
+        r.statementCache = statementCache;
+        r.entityCache = entityCache;
+        r.offHeapCache = offHeapCache;
+        r.resultCache = resultCache;
+        r.inFlightQueries = inFlightQueries;
+        r.keyFilter = keyFilter;
+        r.cursorFetchSize = cursorFetchSize;
+        r.sqlDialect = sqlDialect;
+        r.keyTableThreshold = keyTableThreshold;
+        r.setQueryOptions(queryOptions);
+        return r;
+    }
+
     /**
      * @param keys
      * @return
      */
     public Object extractObject(Object... keys) {
-        return extractOrMergeObject(null, rdoMapper.getSqlStatement(keys), keys);
+        Object dto = getCachedObject(keys);
+        if (dto != null) {
+            return dto;
+        }
+
+        // a key certainly not in the table is not read
+        if ((keyFilter != null) && !keyFilter.mightContain(keys)) {
+            return null;
+        }
+
+        dto = extractOrMergeObject(null, rdoMapper.getSqlStatement(keys),
+                                   rdoMapper.getTableColumnIndexes(), keys);
+
+        cacheObject(keys, dto);
+        return dto;
+    }
+
+    /**
+     * Returns the objects of the given keys, in the order of the keys, with NULL for the
+     * keys that have no row. Each key is an Object[] of the values of the first columns of
+     * the table, or a single value for a key of one column, like the keys of extractObject.
+     *
+     * The keys the caches do not hold are read in IN lists of a few fixed sizes, or, from
+     * keyTableThreshold keys on, by joining a temporary table of the keys. Equal keys are
+     * read once and get the same object.
+     *
+     * @param keys
+     * @return
+     */
+    public List extractObjects(Collection<?> keys) {
+        List<Object[]> requested = new ArrayList<Object[]>(keys.size());
+        for (Object key : keys) {
+            Object[] values = (key instanceof Object[]) ? (Object[]) key : new Object[]{key};
+            if (!requested.isEmpty() && (values.length != requested.get(0).length)) {
+                throw new DataExtractionException(
+                        "Cannot read keys of " + requested.get(0).length + " and " +
+                        values.length + " values together from " +
+                        rdoMapper.getTableModel().getTableName());
+            }
+            requested.add(values);
+        }
+
+        // the keys to read, once each
+        Object[] results = new Object[requested.size()];
+        Map<KeyTuple, Object[]> missing = new LinkedHashMap<KeyTuple, Object[]>();
+        final ColumnModel[] keyColumns =
+                requested.isEmpty() ? null : getLeadingColumns(requested.get(0).length);
+        for (int i = 0; i < results.length; i++) {
+            Object[] values = requested.get(i);
+            results[i] = getCachedObject(values);
+            if ((results[i] == null) &&
+                ((keyFilter == null) || keyFilter.mightContain(values))) {
+                missing.put(toKeyTuple(values, keyColumns, false), values);
+            }
+        }
+        if (missing.isEmpty()) {
+            return new ArrayList<Object>(Arrays.asList(results));
+        }
+
+        final Collection<Object[]> keyValues = missing.values();
+        Map<KeyTuple, Object> found = shareQuery(KEYS_QUERY, missing.keySet().toArray(),
+                                                 new Callable<Map<KeyTuple, Object>>() {
+            public Map<KeyTuple, Object> call() {
+                return readByKeys(keyValues, keyColumns, KeyedRead.SINGLE,
+                                  new HashMap<KeyTuple, Object>());
+            }
+        });
+
+        for (Map.Entry<KeyTuple, Object[]> e : missing.entrySet()) {
+            cacheObject(e.getValue(), found.get(e.getKey()));
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = found.get(toKeyTuple(requested.get(i), keyColumns, false));
+            }
+        }
+        return new ArrayList<Object>(Arrays.asList(results));
+    }
+
+    /**
+     * Returns the objects of the rows whose given columns hold each of the given keys, as a
+     * list per key in the order of the keys, i.e. the children of a list of parents by the
+     * columns of their foreign key. The keys are read together, in IN lists or by joining
+     * a temporary table of the keys, as by extractObjects. A key with a NULL value has no
+     * rows.
+     *
+     * @param columnNames the names of the columns of the keys
+     * @param keys        the values of the columns of each key
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public List<List> extractChildren(String[] columnNames, List<Object[]> keys) {
+        final ColumnModel[] keyColumns = getNamedColumns(columnNames);
+
+        // the keys to read, once each
+        Map<KeyTuple, Object[]> distinct = new LinkedHashMap<KeyTuple, Object[]>();
+        for (Object[] values : keys) {
+            if (values.length != keyColumns.length) {
+                throw new DataExtractionException(
+                        "Cannot read keys of " + values.length + " values by " +
+                        keyColumns.length + " columns of " +
+                        rdoMapper.getTableModel().getTableName());
+            }
+            if (!Arrays.asList(values).contains(null)) {
+                distinct.put(toKeyTuple(values, keyColumns, false), values);
+            }
+        }
+
+        Map<KeyTuple, Object> found = new HashMap<KeyTuple, Object>();
+        if (!distinct.isEmpty()) {
+            final Collection<Object[]> keyValues = distinct.values();
+            found = shareQuery(CHILDREN_QUERY + Arrays.asList(columnNames),
+                               distinct.keySet().toArray(),
+                               new Callable<Map<KeyTuple, Object>>() {
+                public Map<KeyTuple, Object> call() {
+                    return readByKeys(keyValues, keyColumns, KeyedRead.GROUPED,
+                                      new HashMap<KeyTuple, Object>());
+                }
+            });
+        }
+
+        List<List> children = new ArrayList<List>(keys.size());
+        for (Object[] values : keys) {
+            List rows = (List) found.get(toKeyTuple(values, keyColumns, false));
+            children.add((rows == null) ? new ArrayList() : new ArrayList(rows));
+        }
+        return children;
     }
 
     /**
@@ -100,7 +455,7 @@ public class RdoObjectExtractor {
      */
     public Object extractObjectWhere(String whereClause, Object... args) {
         return extractOrMergeObject(null, rdoMapper.getSqlStatementWithWhereClause(whereClause),
-                                    args);
+                                    rdoMapper.getTableColumnIndexes(), args);
     }
 
     /**
@@ -109,7 +464,7 @@ public class RdoObjectExtractor {
      * @return
      */
     public Object extractObjectFromSql(String sql, Object... args) {
-        return extractOrMergeObject(null, sql, args);
+        return extractOrMergeObject(null, sql, null, args);
     }
 
     /**
@@ -117,7 +472,61 @@ public class RdoObjectExtractor {
      * @return
      */
     public Object extractAndMergeObject(Object dto, Object... keys) {
-        return extractOrMergeObject(dto, rdoMapper.getSqlStatement(keys), keys);
+        return extractOrMergeObject(dto, rdoMapper.getSqlStatement(keys),
+                                    rdoMapper.getTableColumnIndexes(), keys);
+    }
+
+    /**
+     * Merges the rows of the keys of the given objects into the objects, reading the keys
+     * together in IN lists or by joining a temporary table of the keys, as extractObjects,
+     * rather than with a query per object. The objects whose key has no row are left
+     * intact.
+     *
+     * @param dtos         the objects to merge the rows into
+     * @param keyExtractor the key of the row of each object
+     * @return the number of objects a row has been merged into
+     */
+    @SuppressWarnings("unchecked")
+    public int extractAndMergeObjects(List<?> dtos, RdoKeyExtractor keyExtractor) {
+        // the objects of each key, read once
+        Map<KeyTuple, Object> targets = new HashMap<KeyTuple, Object>(dtos.size() * 2);
+        Map<KeyTuple, Object[]> distinct = new LinkedHashMap<KeyTuple, Object[]>();
+        ColumnModel[] keyColumns = null;
+        int merging = 0;
+        for (Object dto : dtos) {
+            Object key = keyExtractor.getKey(dto);
+            Object[] values = (key instanceof Object[]) ? (Object[]) key : new Object[]{key};
+            if ((key == null) || Arrays.asList(values).contains(null)) {
+                continue;
+            }
+            if (keyColumns == null) {
+                keyColumns = getLeadingColumns(values.length);
+            } else if (values.length != keyColumns.length) {
+                throw new DataExtractionException(
+                        "Cannot read keys of " + keyColumns.length + " and " + values.length +
+                        " values together from " + rdoMapper.getTableModel().getTableName());
+            }
+
+            KeyTuple tuple = toKeyTuple(values, keyColumns, false);
+            List list = (List) targets.get(tuple);
+            if (list == null) {
+                list = new ArrayList(1);
+                targets.put(tuple, list);
+                distinct.put(tuple, values);
+            }
+            list.add(dto);
+            merging++;
+        }
+        if (distinct.isEmpty()) {
+            return 0;
+        }
+
+        // the merged keys are removed from the targets
+        readByKeys(distinct.values(), keyColumns, KeyedRead.MERGED, targets);
+        for (Object list : targets.values()) {
+            merging -= ((List) list).size();
+        }
+        return merging;
     }
 
     /**
@@ -128,7 +537,7 @@ public class RdoObjectExtractor {
      */
     public Object extractAndMergeObjectWhere(Object dto, String whereClause, Object... args) {
         return extractOrMergeObject(dto, rdoMapper.getSqlStatementWithWhereClause(whereClause),
-                                    args);
+                                    rdoMapper.getTableColumnIndexes(), args);
     }
 
     /**
@@ -138,32 +547,59 @@ public class RdoObjectExtractor {
      * @return
      */
     public Object extractAndMergeObjectFromSql(Object dto, String sql, Object... args) {
-        return extractOrMergeObject(dto, sql, args);
+        return extractOrMergeObject(dto, sql, null, args);
     }
 
     /**
      * @param dto
      * @param sql
+     * @param columns the column indexes of the mapper's read operations, or NULL to resolve
+     *                them from the result set metadata
      * @param params
      * @return
      */
-    private Object extractOrMergeObject(Object dto, String sql, Object[] params) {
+    private Object extractOrMergeObject(Object dto, final String sql, final int[] columns,
+                                        final Object[] params) {
+        // a merge fills the caller's own object, which is not shared
+        if (dto != null) {
+            return queryObject(dto, sql, columns, params);
+        }
+
+        return shareQuery(sql, params, new Callable<Object>() {
+            public Object call() {
+                return queryObject(null, sql, columns, params);
+            }
+        });
+    }
+
+    /**
+     * Runs the query of extractOrMergeObject, bypassing the in-flight queries
+     */
+    private Object queryObject(Object dto, String sql, int[] columns, Object[] params) {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         try {
-            conn = SqlResourceUtil.getConnection(dataSource);
-            pstmt = conn.prepareStatement(sql);
+            conn = getConnection();
+            pstmt = prepareStatement(conn, sql);
             setPreparedStatementParameters(pstmt, params);
 
-            log.debug(" - Executing query SQL = " + sql + "], params=" + Arrays.asList(params));
+            if (log.isDebugEnabled()) {
+                log.debug(" - Executing query SQL = " + sql + "], params=" +
+                          Arrays.asList(params));
+            }
             long startTime = System.currentTimeMillis();
             rs = pstmt.executeQuery();
             if (rs.next()) {
-                dto = extractObjectFromResultSetRow(rs, dto);
+                if (columns == null) {
+                    columns = rdoMapper.getColumnIndexes(sql, rs.getMetaData());
+                }
+                dto = extractObjectFromResultSetRow(rs, columns, dto);
+            }
+            if (log.isInfoEnabled()) {
+                log.info(" - Query executed read in " + (System.currentTimeMillis() - startTime) +
+                         " milliseconds, result count = " + (dto == null ? 0 : 1));
             }
-            log.info(" - Query executed read in " + (System.currentTimeMillis() - startTime) +
-                     " milliseconds, result count = " + (dto == null ? 0 : 1));
 
             return dto;
         } catch (SQLException sqle) {
@@ -171,8 +607,8 @@ public class RdoObjectExtractor {
                     "SQL Exception while extracting object ... " + sqle.getMessage(), sqle);
         } finally {
             SqlResourceUtil.closeResource(rs);
-            SqlResourceUtil.closeResource(pstmt);
-            SqlResourceUtil.closeResource(conn);
+            releaseStatement(sql, pstmt);
+            releaseConnection(conn);
         }
     }
 
@@ -183,36 +619,79 @@ public class RdoObjectExtractor {
      */
     public List extractList(String whereClause, Object... params) {
         String sql = rdoMapper.getSqlStatementWithWhereClause(whereClause);
-        return extractListFromSql(sql, params);
+        return extractList(sql, rdoMapper.getTableColumnIndexes(), params);
     }
 
     /**
      * @param params
      * @return
      */
-    @SuppressWarnings("unchecked")
     public List extractListFromSql(String sql, Object... params) {
+        return extractList(sql, null, params);
+    }
+
+    /**
+     * @param sql
+     * @param columns the column indexes of the mapper's read operations, or NULL to resolve
+     *                them from the result set metadata
+     * @param params
+     * @return
+     */
+    private List extractList(final String sql, final int[] columns, final Object[] params) {
+        // a list limited by maxRows is not the whole result of its query
+        if ((resultCache == null) || (queryOptions.getMaxRows() != 0)) {
+            return shareList(sql, columns, params);
+        }
+
+        return resultCache.get(rdoMapper, sql, params, new Callable<List>() {
+            public List call() {
+                return shareList(sql, columns, params);
+            }
+        });
+    }
+
+    private List shareList(final String sql, final int[] columns, final Object[] params) {
+        return shareQuery(sql, params, new Callable<List>() {
+            public List call() {
+                return queryList(sql, columns, params);
+            }
+        });
+    }
+
+    /**
+     * Runs the query of extractList, bypassing the result cache
+     */
+    @SuppressWarnings("unchecked")
+    private List queryList(String sql, int[] columns, Object[] params) {
         List list = new ArrayList();
 
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         try {
-            conn = SqlResourceUtil.getConnection(dataSource);
-            pstmt = conn.prepareStatement(sql);
+            conn = getConnection();
+            pstmt = prepareStatement(conn, sql);
             if (params != null) {
                 setPreparedStatementParameters(pstmt, params);
             }
 
-            log.debug(" - Executing query SQL = [" + sql + "], params=" + Arrays.asList(params));
+            if (log.isDebugEnabled()) {
+                log.debug(" - Executing query SQL = [" + sql + "], params=" +
+                          Arrays.asList(params));
+            }
             long startTime = System.currentTimeMillis();
             rs = pstmt.executeQuery();
+            if (columns == null) {
+                columns = rdoMapper.getColumnIndexes(sql, rs.getMetaData());
+            }
             while (rs.next()) {
-                Object dto = extractObjectFromResultSetRow(rs, null);
+                Object dto = extractObjectFromResultSetRow(rs, columns, null);
                 list.add(dto);
             }
-            log.info(" - Query executed read in " + (System.currentTimeMillis() - startTime) +
-                     " milliseconds, result count = " + list.size());
+            if (log.isInfoEnabled()) {
+                log.info(" - Query executed read in " + (System.currentTimeMillis() - startTime) +
+                         " milliseconds, result count = " + list.size());
+            }
 
             return list;
         } catch (SQLException sqle) {
@@ -220,162 +699,920 @@ public class RdoObjectExtractor {
                     "SQL Exception while extracting object ... " + sqle.getMessage() + " SQL:" + sql, sqle);
         } finally {
             SqlResourceUtil.closeResource(rs);
-            SqlResourceUtil.closeResource(pstmt);
-            SqlResourceUtil.closeResource(conn);
+            releaseStatement(sql, pstmt);
+            releaseConnection(conn);
         }
     }
 
-    // ---- Private methods ---------------------------------------------------
-
     /**
-     * Sets parameters from an array to a result set. Enums are normally converted
-     * to lower case before passed to the database, unless the isLowerCaseEnums property
-     * is set to FALSE.
+     * Returns a page of the objects of the rows after the given primary key, in primary key
+     * order, read with a seek on the key rather than an offset
+     *
+     * @param afterKey the values of the primary key columns to read the rows after, NULL
+     *                 for the first page
+     * @param pageSize the maximum number of objects of the page
+     * @return
      */
-    private void setPreparedStatementParameters(PreparedStatement pstmt, Object[] params) {
-        if (params == null) {
-            return;
+    public RdoPage extractPage(final Object[] afterKey, final int pageSize) {
+        Object[] params = new Object[(afterKey == null) ? 1 : afterKey.length + 1];
+        params[0] = pageSize;
+        if (afterKey != null) {
+            System.arraycopy(afterKey, 0, params, 1, afterKey.length);
         }
 
-        //log.debug("Setting PreparedStatement parameters");
+        return shareQuery(PAGE_QUERY, params, new Callable<RdoPage>() {
+            public RdoPage call() {
+                return queryPage(afterKey, pageSize);
+            }
+        });
+    }
+
+    /**
+     * Runs the query of extractPage, bypassing the in-flight queries
+     */
+    @SuppressWarnings("unchecked")
+    private RdoPage queryPage(Object[] afterKey, int pageSize) {
+        List list = new ArrayList();
+        Object[] lastKey = null;
+        boolean hasNext = false;
+
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        String sql = null;
         try {
-            int i = 1;
-            for (Object param : params) {
-                if (param == null)   // if NULL, set the NULL value as a varchar, Oracle is happy with it
-                {
-                    //log.debug("Setting parameter " + i + " to NULL");
-                    pstmt.setNull(i, Types.VARCHAR);
-                } else if (param.getClass().isEnum()) {
-                    String enumValue = param.toString();
-                    if ((enumValue != null) && isLowerCaseEnums()) {
-                        enumValue = enumValue.toLowerCase();
-                    }
-                    // log.debug("Setting parameter " + i + " to enum value " + enumValue);
-                    pstmt.setString(i, enumValue);
-                } else {
-                    //log.debug("Setting parameter " + i + " to " + param);
-                    pstmt.setObject(i, param);
-                }
+            conn = getConnection();
+            ColumnModel[] keyColumns = getKeyColumns(conn);
+            if ((afterKey != null) && (afterKey.length != keyColumns.length)) {
+                throw new DataExtractionException(
+                        "Table " + rdoMapper.getTableModel().getTableName() + " has " +
+                        keyColumns.length + " key columns, cannot page after a key of " +
+                        afterKey.length);
+            }
 
-                i++;  // increase param counter
+            SqlDialect dialect = getSqlDialect(conn);
+
+            // one row more than the page tells if there is a next page
+            StringBuilder sb = new StringBuilder(rdoMapper.getSqlStatement(null));
+            Object[] params;
+            if (afterKey == null) {
+                params = new Object[]{pageSize + 1};
+            } else {
+                sb.append(" WHERE ");
+                dialect.appendKeyAfter(sb, keyColumns);
+                Object[] keyParams = dialect.getKeyAfterParameters(afterKey);
+                params = Arrays.copyOf(keyParams, keyParams.length + 1);
+                params[keyParams.length] = pageSize + 1;
+            }
+            sb.append(" ORDER BY ");
+            for (int i = 0; i < keyColumns.length; i++) {
+                sb.append((i > 0) ? ", " : "")
+                  .append(keyColumns[i].getColumnName().toLowerCase());
+            }
+            dialect.appendLimit(sb);
+            sql = sb.toString();
+
+            pstmt = prepareStatement(conn, sql);
+            setPreparedStatementParameters(pstmt, params);
+
+            if (log.isDebugEnabled()) {
+                log.debug(" - Executing page query SQL = [" + sql + "], params=" +
+                          Arrays.asList(params));
+            }
+            long startTime = System.currentTimeMillis();
+            rs = pstmt.executeQuery();
+            int[] columns = rdoMapper.getTableColumnIndexes();
+            while (rs.next()) {
+                if (list.size() == pageSize) {
+                    hasNext = true;
+                    break;
+                }
+                list.add(extractObjectFromResultSetRow(rs, columns, null));
+                if (list.size() == pageSize) {
+                    lastKey = readKey(rs, keyColumns);
+                }
             }
+            if (log.isInfoEnabled()) {
+                log.info(" - Page query executed read in " +
+                         (System.currentTimeMillis() - startTime) +
+                         " milliseconds, result count = " + list.size());
+            }
+
+            return new RdoPage(list, hasNext ? lastKey : null);
         } catch (SQLException sqle) {
             throw new RuntimeException(
-                    "SQL exception when setting params for prepared statement " + sqle.getMessage(),
+                    "SQL Exception while extracting page ... " + sqle.getMessage() + " SQL:" + sql,
                     sqle);
+        } finally {
+            SqlResourceUtil.closeResource(rs);
+            releaseStatement(sql, pstmt);
+            releaseConnection(conn);
         }
     }
 
     /**
-     * Extracts an object from a ResultSet's row. The object returned is the same as the object
-     * passed
-     * plus the new fields from the result set. If the passed object is NULL a new instance of the
-     * internal rdoMapper's model will be created.
-     *
-     * Reading from the result set respects NULL values and is invoking the methods of the
-     * underlying
-     * objects
+     * Returns a cursor over the objects of the rows matching the where clause, mapped as
+     * they are iterated to
      *
-     * @param dto an instance of an existing objec to be populated, OR NULL for a new instance to be
-     *            created
+     * @param whereClause
+     * @param params
+     * @return
      */
-    @SuppressWarnings("unchecked")
-    private Object extractObjectFromResultSetRow(ResultSet rs, Object dto) {
-        try {
-            try {
-                if (dto == null) {
-                    dto = rdoMapper.getClassModel().createNewInstance();
-                }
+    public RdoCursor extractCursor(String whereClause, Object... params) {
+        String sql = rdoMapper.getSqlStatementWithWhereClause(whereClause);
+        return openCursor(sql, rdoMapper.getTableColumnIndexes(), params);
+    }
 
-                log.debug("========== setting values to object =====================");
-                for (RdoOperation ro : rdoMapper.getReadOperations()) {
-                    Object o = rs.getObject(ro.getColumnName());
-                    log.debug(
-                            " : " + ro.getColumnName() + " : " + (o != null ? o.getClass() : "NULL")
-                            + " = " + o);
-
-                    switch (ro.getMethodModel().getDataType()) {
-                        case INT:
-                            Integer intValue = JdbcUtil.getIntOrNull(rs, ro.getColumnName());
-
-                            log.debug(
-                                    " +++ Will set int value to " + intValue + " using rdoop " + ro);
-                            ro.getMethod().invoke(dto, intValue);
-                            break;
-
-                        case LONG:
-                            Long longValue = JdbcUtil.getLongOrNull(rs, ro.getColumnName());
-                            log.debug(
-                                    " +++ Will set long value to " + longValue + " using rdoop " + ro);
-                            ro.getMethod().invoke(dto, longValue);
-                            break;
-
-                        case FLOAT:
-                            Float floatValue = JdbcUtil.getFloatOrNull(rs, ro.getColumnName());
-                            log.debug(
-                                    " +++ Will set float value to " + floatValue + " using rdoop " + ro);
-                            ro.getMethod().invoke(dto, floatValue);
-                            break;
-
-                        case DOUBLE:
-                            Double doubleValue = JdbcUtil.getDoubleOrNull(rs, ro.getColumnName());
-                            log.debug(
-                                    " +++ Will set double value to " + doubleValue + " using rdoop " + ro);
-                            ro.getMethod().invoke(dto, doubleValue);
-                            break;
-
-                        case STRING:
-                            String stringValue = rs.getString(ro.getColumnName());
-                            log.debug(
-                                    " +++ Will set string value to \"" + stringValue + "\" using rdoop " + ro);
-                            ro.getMethod().invoke(dto, stringValue);
-                            break;
-
-                        case CHAR:
-                            Character charValue = JdbcUtil.getCharOrNull(rs, ro.getColumnName());
-                            log.debug(
-                                    " +++ Will set date value to \"" + charValue + "\" using rdoop " + ro);
-                            ro.getMethod().invoke(dto, charValue);
-                            break;
-
-                        case DATE:
-                            java.util.Date dateValue = JdbcUtil.getDateOrNull(rs,
-                                                                              ro.getColumnName());
-                            log.debug(
-                                    " +++ Will set date value to \"" + dateValue + "\" using rdoop " + ro);
-                            ro.getMethod().invoke(dto, dateValue);
-                            break;
-
-                        case BOOLEAN:
-                            Boolean booleanValue = JdbcUtil.getYNStringOrNull(rs,
-                                                                              ro.getColumnName());
-                            log.debug(
-                                    " +++ Will set boolean (YN) value to \"" + booleanValue + "\" using rdoop " + ro);
-                            ro.getMethod().invoke(dto, booleanValue);
-                            break;
-
-                        case ENUM:
-                            String enumStringValue = rs.getString(ro.getColumnName());
-                            log.debug(
-                                    " +++ Will set ENUM value to \"" + enumStringValue + "\" using rdoop " + ro);
-
-                            if (enumStringValue == null) {
-                                log.debug(" +++ invoking enum with NULL_VALUE ");
-                                ro.getMethod().invoke(dto, NULL_VALUE);
-                            } else {
-                                Object enumValue = Enum.valueOf(ro.getMethodModel().getEnumClass(),
-                                                                enumStringValue.toUpperCase());
-                                log.debug(" +++ invoking with enumValue = " + enumValue);
-                                ro.getMethod().invoke(dto, enumValue);
-                            }
-
-                            break;
-
-                        default:
-                            throw new ModelNotSupportedException(
-                                    "RdoDataType " + ro.getMethodModel().getDataType() +
-                                    " is not supported. Have you added this and forgot to change this class?");
-                    }
+    /**
+     * Returns a cursor over the objects of the rows of the given query, mapped as they are
+     * iterated to
+     *
+     * @param sql
+     * @param params
+     * @return
+     */
+    public RdoCursor extractCursorFromSql(String sql, Object... params) {
+        return openCursor(sql, null, params);
+    }
+
+    /**
+     * Hands the objects of the rows matching the where clause to the visitor, filling a
+     * single object with each row
+     *
+     * @param whereClause
+     * @param visitor
+     * @param params
+     * @return the number of rows visited
+     */
+    public int scan(String whereClause, RdoVisitor visitor, Object... params) {
+        String sql = rdoMapper.getSqlStatementWithWhereClause(whereClause);
+        return scanRows(openCursor(sql, rdoMapper.getTableColumnIndexes(), params), visitor);
+    }
+
+    /**
+     * Hands the objects of the rows of the given query to the visitor, filling a single
+     * object with each row
+     *
+     * @param sql
+     * @param visitor
+     * @param params
+     * @return the number of rows visited
+     */
+    public int scanFromSql(String sql, RdoVisitor visitor, Object... params) {
+        return scanRows(openCursor(sql, null, params), visitor);
+    }
+
+    // ---- Package methods ---------------------------------------------------
+
+    /**
+     * Maps the current row of a cursor's result set to the given object, or to a new
+     * object if it is NULL
+     */
+    Object extractRow(ResultSet rs, int[] columns, Object dto) {
+        return extractObjectFromResultSetRow(rs, columns, dto);
+    }
+
+    /**
+     * Closes a connection of getConnection, setting it back to read-write if the query
+     * options had set it to read-only and closing its statements in the statement cache
+     */
+    void releaseConnection(Connection conn) {
+        if ((conn != null) && queryOptions.isReadOnly()) {
+            try {
+                conn.setReadOnly(false);
+            } catch (SQLException sqle) {
+                log.warn("SQL Exception " + sqle.getMessage() +
+                         " when trying to set connection back to read-write");
+            }
+        }
+        if (statementCache != null) {
+            statementCache.releaseConnection(conn);
+        }
+        SqlResourceUtil.closeResource(conn);
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    @SuppressWarnings("unchecked")
+    private int scanRows(RdoCursor cursor, RdoVisitor visitor) {
+        try {
+            // an object created through its constructor cannot be refilled
+            return cursor.visitAll(visitor, !rdoMapper.isConstructorMapped());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Executes a query for a cursor, which takes over its resources. The statement is not
+     * taken from the statement cache, as it stays in use for as long as the cursor is
+     * iterated.
+     */
+    private RdoCursor openCursor(String sql, int[] columns, Object[] params) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(sql, queryOptions.getResultSetType(),
+                                          queryOptions.getResultSetConcurrency());
+            queryOptions.applyTo(pstmt);
+            if ((queryOptions.getFetchSize() == 0) && (cursorFetchSize != 0)) {
+                pstmt.setFetchSize(cursorFetchSize);
+            }
+            if (params != null) {
+                setPreparedStatementParameters(pstmt, params);
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug(" - Opening cursor SQL = [" + sql + "], params=" +
+                          Arrays.asList(params));
+            }
+            rs = pstmt.executeQuery();
+            if (columns == null) {
+                columns = rdoMapper.getColumnIndexes(sql, rs.getMetaData());
+            }
+
+            RdoCursor cursor = new RdoCursor(this, conn, pstmt, rs, columns);
+            conn = null;
+            pstmt = null;
+            rs = null;
+            return cursor;
+        } catch (SQLException sqle) {
+            throw new RuntimeException(
+                    "SQL Exception while opening cursor ... " + sqle.getMessage() + " SQL:" + sql,
+                    sqle);
+        } finally {
+            // only closed if the cursor could not be opened
+            SqlResourceUtil.closeResource(rs);
+            SqlResourceUtil.closeResource(pstmt);
+            releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Runs a query through the in-flight queries, so that it shares the execution of an
+     * identical query already running, and returns its result, copied if another caller
+     * ran it. Runs the query on its own if there are no in-flight queries, its options opt
+     * out, or its rows are limited by maxRows.
+     *
+     * @param sql    the SQL of the query, or a name of it for the queries of more statements
+     * @param params the parameters that, with the SQL, tell identical queries
+     */
+    @SuppressWarnings("unchecked")
+    private <V> V shareQuery(String sql, Object[] params, final Callable<V> query) {
+        if ((inFlightQueries == null) || !queryOptions.isShareInFlight() ||
+            (queryOptions.getMaxRows() != 0)) {
+            try {
+                return query.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new DataExtractionException("Cannot execute query " + sql, e);
+            }
+        }
+
+        // the callable of this caller only runs if no identical query is running
+        final boolean[] executed = new boolean[1];
+        V result = inFlightQueries.execute(rdoMapper, sql, params, new Callable<V>() {
+            public V call() throws Exception {
+                executed[0] = true;
+                return query.call();
+            }
+        });
+        return executed[0] ? result : (V) copySharedResult(result);
+    }
+
+    /**
+     * Returns a copy of the result of a query executed by another caller, so that each
+     * caller gets its own objects
+     */
+    @SuppressWarnings("unchecked")
+    private Object copySharedResult(Object result) {
+        if (result instanceof List) {
+            return inFlightQueries.copy(rdoMapper, (List) result);
+        } else if (result instanceof RdoPage) {
+            RdoPage page = (RdoPage) result;
+            return new RdoPage(inFlightQueries.copy(rdoMapper, page.getDtos()),
+                               page.getNextKey());
+        } else if (result instanceof Map) {
+            Map<KeyTuple, Object> found = (Map<KeyTuple, Object>) result;
+            Map<KeyTuple, Object> copy = new HashMap<KeyTuple, Object>(found.size() * 2);
+            for (Map.Entry<KeyTuple, Object> e : found.entrySet()) {
+                copy.put(e.getKey(), (e.getValue() instanceof List)
+                                     ? inFlightQueries.copy(rdoMapper, (List) e.getValue())
+                                     : inFlightQueries.copy(rdoMapper, e.getValue()));
+            }
+            return copy;
+        }
+        return inFlightQueries.copy(rdoMapper, result);
+    }
+
+    /**
+     * Returns the object of the given keys from the entity cache or the off-heap cache,
+     * NULL if neither holds it
+     */
+    private Object getCachedObject(Object[] keys) {
+        if (entityCache != null) {
+            Object dto = entityCache.get(rdoMapper, keys);
+            if (dto != null) {
+                return dto;
+            }
+        }
+        if (offHeapCache != null) {
+            Object dto = offHeapCache.get(rdoMapper, keys);
+            if (dto != null) {
+                if (entityCache != null) {
+                    entityCache.put(rdoMapper, keys, dto);
+                }
+                return dto;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts the object read for the given keys in the caches, or records a false positive of
+     * the key filter if there is no object
+     */
+    private void cacheObject(Object[] keys, Object dto) {
+        if ((dto == null) && (keyFilter != null)) {
+            keyFilter.recordFalsePositive(keys);
+        }
+        if (entityCache != null) {
+            entityCache.put(rdoMapper, keys, dto);
+        }
+        if (offHeapCache != null) {
+            offHeapCache.put(rdoMapper, keys, dto);
+        }
+    }
+
+    /**
+     * Reads the rows of the given keys, in IN lists or, from keyTableThreshold keys on, by
+     * joining a temporary table of the keys, into the given map by the tuples of their keys
+     *
+     * @param keys  the distinct keys to read, by their tuples as returned by toKeyTuple
+     * @param read  what the map holds for each key, see KeyedRead
+     * @param found the map of the rows read, holding the objects to merge the rows into for
+     *              a MERGED read
+     * @return the given map
+     */
+    private Map<KeyTuple, Object> readByKeys(Collection<Object[]> keys,
+                                             ColumnModel[] keyColumns, KeyedRead read,
+                                             Map<KeyTuple, Object> found) {
+        KeyIndex index = new KeyIndex(keys, keyColumns);
+        return ((keyTableThreshold > 0) && (keys.size() >= keyTableThreshold))
+               ? readByKeyTable(keys, index, read, found)
+               : readByKeyLists(keys, index, read, found);
+    }
+
+    /**
+     * Reads the objects of the given keys in IN lists of the KEY_BUCKETS sizes, over one
+     * connection, into the given map by the tuples of their keys
+     */
+    private Map<KeyTuple, Object> readByKeyLists(Collection<Object[]> keys, KeyIndex index,
+                                                 KeyedRead read, Map<KeyTuple, Object> found) {
+        ColumnModel[] keyColumns = index.keyColumns;
+        int arity = keyColumns.length;
+        Iterator<Object[]> it = keys.iterator();
+
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        String sql = null;
+        try {
+            conn = getConnection();
+            long startTime = System.currentTimeMillis();
+            int remaining = keys.size();
+            while (remaining > 0) {
+                int bucket = KEY_BUCKETS[KEY_BUCKETS.length - 1];
+                for (int size : KEY_BUCKETS) {
+                    if (size >= remaining) {
+                        bucket = size;
+                        break;
+                    }
+                }
+                int count = Math.min(bucket, remaining);
+                remaining -= count;
+
+                // the unused places of the bucket repeat the last key
+                Object[] params = new Object[bucket * arity];
+                Object[] values = null;
+                for (int i = 0; i < bucket; i++) {
+                    if (i < count) {
+                        values = it.next();
+                    }
+                    System.arraycopy(values, 0, params, i * arity, arity);
+                }
+
+                sql = rdoMapper.getSqlStatementWithWhereClause(getKeyList(keyColumns, bucket));
+                pstmt = prepareStatement(conn, sql);
+                setPreparedStatementParameters(pstmt, params);
+                rs = pstmt.executeQuery();
+                readRowsByKey(rs, index, read, found);
+
+                SqlResourceUtil.closeResource(rs);
+                rs = null;
+                releaseStatement(sql, pstmt);
+                pstmt = null;
+            }
+            if (log.isInfoEnabled()) {
+                log.info(" - Key list queries executed read in " +
+                         (System.currentTimeMillis() - startTime) +
+                         " milliseconds, keys = " + keys.size() + ", result count = " +
+                         found.size());
+            }
+
+            return found;
+        } catch (SQLException sqle) {
+            throw new RuntimeException(
+                    "SQL Exception while extracting objects ... " + sqle.getMessage() +
+                    " SQL:" + sql, sqle);
+        } finally {
+            SqlResourceUtil.closeResource(rs);
+            releaseStatement(sql, pstmt);
+            releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Reads the objects of the given keys by inserting the keys in a temporary table and
+     * joining it, into the given map by the tuples of their keys. Reads them in IN lists
+     * instead if the dialect does not know the types of the key columns.
+     */
+    private Map<KeyTuple, Object> readByKeyTable(Collection<Object[]> keys, KeyIndex index,
+                                                 KeyedRead read, Map<KeyTuple, Object> found) {
+        ColumnModel[] keyColumns = index.keyColumns;
+        int arity = keyColumns.length;
+
+        Connection conn = null;
+        Statement stmt = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        SqlDialect dialect = null;
+        String sql = null;
+        try {
+            conn = getConnection();
+            dialect = getSqlDialect(conn);
+            for (ColumnModel column : keyColumns) {
+                if (dialect.getTypeName(column) == null) {
+                    releaseConnection(conn);
+                    conn = null;
+                    return readByKeyLists(keys, index, read, found);
+                }
+            }
+
+            String[] names = new String[arity];
+            for (int i = 0; i < arity; i++) {
+                names[i] = "k" + (i + 1);
+            }
+            String keyTable = dialect.getTemporaryTableReference(KEY_TABLE);
+
+            long startTime = System.currentTimeMillis();
+            stmt = conn.createStatement();
+            sql = dialect.getCreateTemporaryTable(KEY_TABLE, names, keyColumns);
+            stmt.execute(sql);
+
+            StringBuilder sb = new StringBuilder("INSERT INTO ").append(keyTable)
+                                                                 .append(" VALUES (?");
+            for (int i = 1; i < arity; i++) {
+                sb.append(", ?");
+            }
+            sql = sb.append(')').toString();
+            pstmt = conn.prepareStatement(sql);
+            int batched = 0;
+            for (Object[] values : keys) {
+                setPreparedStatementParameters(pstmt, values);
+                pstmt.addBatch();
+                if (++batched % KEY_TABLE_BATCH == 0) {
+                    pstmt.executeBatch();
+                }
+            }
+            pstmt.executeBatch();
+            SqlResourceUtil.closeResource(pstmt);
+            pstmt = null;
+
+            // the statements of a temporary table are not cached, it is dropped after them
+            sql = getKeyTableJoin(keyTable, keyColumns, names);
+            pstmt = conn.prepareStatement(sql);
+            if (queryOptions.hasStatementLimits()) {
+                queryOptions.applyTo(pstmt);
+            }
+            rs = pstmt.executeQuery();
+            readRowsByKey(rs, index, read, found);
+            if (log.isInfoEnabled()) {
+                log.info(" - Key table query executed read in " +
+                         (System.currentTimeMillis() - startTime) +
+                         " milliseconds, keys = " + keys.size() + ", result count = " +
+                         found.size());
+            }
+
+            return found;
+        } catch (SQLException sqle) {
+            throw new RuntimeException(
+                    "SQL Exception while extracting objects ... " + sqle.getMessage() +
+                    " SQL:" + sql, sqle);
+        } finally {
+            SqlResourceUtil.closeResource(rs);
+            SqlResourceUtil.closeResource(pstmt);
+            if (stmt != null) {
+                try {
+                    stmt.execute(dialect.getDropTemporaryTable(KEY_TABLE));
+                } catch (SQLException sqle) {
+                    log.warn("SQL Exception " + sqle.getMessage() +
+                             " when trying to drop temporary table " + KEY_TABLE);
+                }
+            }
+            SqlResourceUtil.closeResource(stmt);
+            releaseConnection(conn);
+        }
+    }
+
+    /**
+     * Maps the rows of a result set of all the table's columns by the tuples of the keys
+     * they match, as the given KeyedRead
+     */
+    @SuppressWarnings("unchecked")
+    private void readRowsByKey(ResultSet rs, KeyIndex index, KeyedRead read,
+                               Map<KeyTuple, Object> found) throws SQLException {
+        int[] columns = rdoMapper.getTableColumnIndexes();
+        List<ColumnModel> tableColumns = rdoMapper.getTableModel().getColumns();
+        ColumnModel[] keyColumns = index.keyColumns;
+        int[] keyIndexes = new int[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyIndexes[i] = tableColumns.indexOf(keyColumns[i]) + 1;
+        }
+
+        Object[] values = new Object[keyColumns.length];
+        while (rs.next()) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = rs.getObject(keyIndexes[i]);
+            }
+            List<KeyTuple> keys = index.match(values);
+            if (keys.isEmpty()) {
+                log.warn("Row of key " + Arrays.asList(values) + " of " +
+                         rdoMapper.getTableModel().getTableName() +
+                         " matches none of the keys read, skipping it");
+                continue;
+            }
+
+            if (read == KeyedRead.MERGED) {
+                for (KeyTuple key : keys) {
+                    List targets = (List) found.remove(key);
+                    if (targets != null) {
+                        for (Object dto : targets) {
+                            extractObjectFromResultSetRow(rs, columns, dto);
+                        }
+                    }
+                }
+                continue;
+            }
+
+            Object dto = extractObjectFromResultSetRow(rs, columns, null);
+            for (KeyTuple key : keys) {
+                if (read == KeyedRead.SINGLE) {
+                    found.put(key, dto);
+                    continue;
+                }
+
+                List rows = (List) found.get(key);
+                if (rows == null) {
+                    rows = new ArrayList();
+                    found.put(key, rows);
+                }
+                rows.add(dto);
+            }
+        }
+    }
+
+    /**
+     * Returns the condition of the rows of the given number of keys, "a IN (?, ?)" for keys
+     * of one column and "(a = ? AND b = ?) OR (a = ? AND b = ?)" for keys of more
+     */
+    private String getKeyList(ColumnModel[] keyColumns, int count) {
+        StringBuilder sb = new StringBuilder();
+        if (keyColumns.length == 1) {
+            sb.append(keyColumns[0].getColumnName().toLowerCase()).append(" IN (");
+            for (int i = 0; i < count; i++) {
+                sb.append((i > 0) ? ", ?" : "?");
+            }
+            return sb.append(')').toString();
+        }
+
+        for (int i = 0; i < count; i++) {
+            sb.append((i > 0) ? " OR (" : "(");
+            for (int j = 0; j < keyColumns.length; j++) {
+                if (j > 0) {
+                    sb.append(" AND ");
+                }
+                sb.append(keyColumns[j].getColumnName().toLowerCase()).append(" = ?");
+            }
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the SELECT of all the table's columns joined to the temporary table of keys
+     */
+    private String getKeyTableJoin(String keyTable, ColumnModel[] keyColumns, String[] names) {
+        List<ColumnModel> columns = rdoMapper.getTableModel().getColumns();
+        StringBuilder sb = new StringBuilder("SELECT ");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append((i > 0) ? ", t." : "t.").append(columns.get(i).getColumnName().toLowerCase());
+        }
+        sb.append(" FROM ").append(rdoMapper.getTableModel().getTableName().toLowerCase())
+          .append(" t JOIN ").append(keyTable).append(" k ON ");
+        for (int i = 0; i < keyColumns.length; i++) {
+            if (i > 0) {
+                sb.append(" AND ");
+            }
+            sb.append("t.").append(keyColumns[i].getColumnName().toLowerCase())
+              .append(" = k.").append(names[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the first columns of the mapper's table, the key columns of extractObject
+     */
+    private ColumnModel[] getLeadingColumns(int arity) {
+        List<ColumnModel> columns = rdoMapper.getTableModel().getColumns();
+        if (arity > columns.size()) {
+            throw new DataExtractionException(
+                    "Cannot read keys of " + arity + " values from " +
+                    rdoMapper.getTableModel().getTableName() + ", which has " +
+                    columns.size() + " columns");
+        }
+        return columns.subList(0, arity).toArray(new ColumnModel[arity]);
+    }
+
+    /**
+     * Returns the columns of the mapper's table of the given names
+     */
+    private ColumnModel[] getNamedColumns(String[] columnNames) {
+        List<ColumnModel> columns = rdoMapper.getTableModel().getColumns();
+        ColumnModel[] named = new ColumnModel[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            for (ColumnModel column : columns) {
+                if (column.getColumnName().equalsIgnoreCase(columnNames[i])) {
+                    named[i] = column;
+                    break;
+                }
+            }
+            if (named[i] == null) {
+                throw new DataExtractionException(
+                        "Table " + rdoMapper.getTableModel().getTableName() +
+                        " has no column " + columnNames[i]);
+            }
+        }
+        return named;
+    }
+
+    /**
+     * Returns a tuple of key values by which a key given as a parameter matches the same
+     * key read from the table, whose values may be of other classes. Enums are taken as
+     * they are written as parameters, and each value is converted as its column compares
+     * it by {@link KeyTuple#toColumnValue(Object, int, boolean)}, as the key filter does.
+     * A value the database compares in a way of its own is matched as close as possible:
+     * a number of a character column as its string, any other value as it is.
+     *
+     * @param ignoreCase TRUE to fold the case and the accents of the strings, to match
+     *                   the keys of a database that compares them regardless of either
+     */
+    private KeyTuple toKeyTuple(Object[] values, ColumnModel[] keyColumns,
+                                boolean ignoreCase) {
+        Object[] converted = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value instanceof Enum) {
+                String name = ((Enum) value).name();
+                value = lowerCaseEnums ? name.toLowerCase() : name;
+            }
+
+            int sqlType = keyColumns[i].getSqlType();
+            converted[i] = KeyTuple.toColumnValue(value, sqlType, ignoreCase);
+            if ((converted[i] == KeyTuple.UNCOMPARABLE) && (value instanceof Number)) {
+                converted[i] = KeyTuple.toColumnValue(value.toString(), sqlType, ignoreCase);
+            }
+            if (converted[i] == KeyTuple.UNCOMPARABLE) {
+                converted[i] = value;
+            }
+        }
+        return KeyTuple.of(converted);
+    }
+
+    private SqlDialect getSqlDialect(Connection conn) throws SQLException {
+        return (sqlDialect != null) ? sqlDialect
+                                    : SqlDialect.forProductName(
+                                            conn.getMetaData().getDatabaseProductName());
+    }
+
+    /**
+     * Returns the primary key columns of the mapper's table, retrieving their names into
+     * its TableModel the first time
+     *
+     * @throws ModelNotSupportedException if the table has no primary key
+     */
+    private ColumnModel[] getKeyColumns(Connection conn) throws SQLException {
+        TableModel tableModel = rdoMapper.getTableModel();
+        String[] keyColumns = tableModel.getKeyColumns();
+        if (keyColumns == null) {
+            keyColumns = DatabaseMetadataUtil.retrieveKeyColumns(conn.getMetaData(),
+                                                                 tableModel.getTableName());
+            tableModel.setKeyColumns(keyColumns);
+        }
+        if (keyColumns.length == 0) {
+            throw new ModelNotSupportedException(
+                    "Table " + tableModel.getTableName() + " has no primary key to page by");
+        }
+
+        ColumnModel[] columns = new ColumnModel[keyColumns.length];
+        for (ColumnModel column : tableModel.getColumns()) {
+            for (int i = 0; i < keyColumns.length; i++) {
+                if (column.getColumnName().equalsIgnoreCase(keyColumns[i])) {
+                    columns[i] = column;
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Reads the values of the key columns of the current row
+     */
+    private Object[] readKey(ResultSet rs, ColumnModel[] keyColumns) throws SQLException {
+        Object[] key = new Object[keyColumns.length];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = rs.getObject(keyColumns[i].getColumnName());
+        }
+        return key;
+    }
+
+    /**
+     * Returns a connection of the dataSource, set to read-only if the query options say so
+     */
+    private Connection getConnection() throws SQLException {
+        Connection conn = SqlResourceUtil.getConnection(dataSource);
+        if (queryOptions.isReadOnly()) {
+            try {
+                conn.setReadOnly(true);
+            } catch (SQLException sqle) {
+                SqlResourceUtil.closeResource(conn);
+                throw sqle;
+            }
+        }
+        return conn;
+    }
+
+    /**
+     * Prepares a statement with the query options. Only the statements of the default
+     * result set type and concurrency are taken from the statement cache.
+     */
+    private PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+        PreparedStatement pstmt;
+        if (!queryOptions.isDefaultResultSet()) {
+            pstmt = conn.prepareStatement(sql, queryOptions.getResultSetType(),
+                                          queryOptions.getResultSetConcurrency());
+        } else if (statementCache != null) {
+            pstmt = statementCache.prepare(conn, sql);
+        } else {
+            pstmt = conn.prepareStatement(sql);
+        }
+
+        if (queryOptions.hasStatementLimits()) {
+            try {
+                queryOptions.applyTo(pstmt);
+            } catch (SQLException sqle) {
+                releaseStatement(sql, pstmt);
+                throw sqle;
+            }
+        }
+        return pstmt;
+    }
+
+    /**
+     * Gives a statement back to the statement cache, with the limits of the query options
+     * reset so that they do not apply to the next query, or closes it if it is not cached.
+     * The cache closes the statements it has not given out itself.
+     */
+    private void releaseStatement(String sql, PreparedStatement pstmt) {
+        if ((statementCache == null) || (pstmt == null)) {
+            SqlResourceUtil.closeResource(pstmt);
+            return;
+        }
+
+        if (queryOptions.hasStatementLimits() && queryOptions.isDefaultResultSet()) {
+            try {
+                queryOptions.resetOn(pstmt);
+            } catch (SQLException sqle) {
+                SqlResourceUtil.closeResource(pstmt);
+            }
+        }
+        statementCache.release(sql, pstmt);
+    }
+
+    /**
+     * Sets parameters from an array to a result set, through the codec of each parameter's
+     * class. Enums are normally converted to lower case before passed to the database,
+     * unless the isLowerCaseEnums property is set to FALSE.
+     */
+    private void setPreparedStatementParameters(PreparedStatement pstmt, Object[] params) {
+        if (params == null) {
+            return;
+        }
+
+        //log.debug("Setting PreparedStatement parameters");
+        try {
+            int i = 1;
+            for (Object param : params) {
+                if (param == null)   // if NULL, set the NULL value as a varchar, Oracle is happy with it
+                {
+                    //log.debug("Setting parameter " + i + " to NULL");
+                    pstmt.setNull(i, Types.VARCHAR);
+                } else {
+                    ValueCodecRegistry.getParameterCodec(param.getClass(), isLowerCaseEnums())
+                                      .write(pstmt, i, param);
+                }
+
+                i++;  // increase param counter
+            }
+        } catch (SQLException sqle) {
+            throw new RuntimeException(
+                    "SQL exception when setting params for prepared statement " + sqle.getMessage(),
+                    sqle);
+        }
+    }
+
+    /**
+     * Extracts an object from a ResultSet's row. The object returned is the same as the object
+     * passed
+     * plus the new fields from the result set. If the passed object is NULL a new instance of the
+     * internal rdoMapper's model will be created.
+     *
+     * Reading from the result set respects NULL values and is invoking the methods of the
+     * underlying
+     * objects. A NULL read for a primitive setter is handled by the primitiveNullPolicy.
+     *
+     * Each column is read once by its index, taken from the given column indexes which are in
+     * the same order as the rdoMapper's read operations; operations with an index of 0 are
+     * skipped. If the rdoMapper has a compiled RdoRowReader the row is read through it,
+     * otherwise the setters are invoked through reflection.
+     *
+     * @param columns the column index of each read operation
+     * @param dto     an instance of an existing objec to be populated, OR NULL for a new instance
+     *                to be created
+     */
+    private Object extractObjectFromResultSetRow(ResultSet rs, int[] columns, Object dto) {
+        if ((dto != null) && rdoMapper.isConstructorMapped()) {
+            throw new ModelNotSupportedException(
+                    "Cannot merge into an existing " + rdoMapper.getClassModel().getClassName() +
+                    ", which is created through its constructor");
+        }
+
+        RdoRowReader rowReader = rdoMapper.getRowReader();
+        if (rowReader != null) {
+            try {
+                return rowReader.readRow(rs, columns, primitiveNullPolicy, dto);
+            } catch (SQLException sqle) {
+                throw new RuntimeException(
+                        "SQL Exception while extracting object ... " + sqle.getMessage(), sqle);
+            }
+        }
+
+        try {
+            try {
+                if (rdoMapper.isConstructorMapped()) {
+                    return constructObjectFromResultSetRow(rs, columns);
+                }
+
+                if (dto == null) {
+                    dto = rdoMapper.getClassModel().createNewInstance();
+                }
+
+                // no per row logging here, this is called for every row of a result set
+                List<RdoOperation> readOperations = rdoMapper.getReadOperations();
+                for (int i = 0; i < columns.length; i++) {
+                    int col = columns[i];
+                    if (col == 0) {
+                        continue;
+                    }
+
+                    RdoOperation ro = readOperations.get(i);
+                    MethodModel mm = ro.getMethodModel();
+                    Object value = mm.isPrimitive() ? readPrimitive(rs, col, mm)
+                                                    : ro.getCodec().read(rs, col);
+
+                    if (mm.isPrimitive() && rs.wasNull() &&
+                        !primitiveNullPolicy.assignDefault(ro.getColumnName())) {
+                        continue;
+                    }
+
+                    if (value == null) {
+                        ro.getMethod().invoke(dto, NULL_VALUE);
+                    } else {
+                        ro.getMethod().invoke(dto, value);
+                    }
                 }
 
                 return dto;
@@ -395,4 +1632,139 @@ public class RdoObjectExtractor {
                     "Instantiation exception while extracting object " + iae.getMessage(), iae);
         }
     }
+
+    /**
+     * Creates an object from a ResultSet's row with a single call to the constructor of the
+     * rdoMapper's ConstructorModel. The columns are read into the constructor arguments,
+     * which are NULL or the primitive default for the parameters without a column.
+     *
+     * @param columns the column index of each read operation
+     */
+    private Object constructObjectFromResultSetRow(ResultSet rs, int[] columns)
+            throws SQLException, InstantiationException, IllegalAccessException,
+                   InvocationTargetException {
+        ConstructorModel constructorModel = rdoMapper.getClassModel().getConstructorModel();
+        int[] arguments = rdoMapper.getConstructorArguments();
+        Object[] args = constructorModel.createArguments();
+
+        List<RdoOperation> readOperations = rdoMapper.getReadOperations();
+        for (int i = 0; i < columns.length; i++) {
+            int col = columns[i];
+            if (col == 0) {
+                continue;
+            }
+
+            RdoOperation ro = readOperations.get(i);
+            MethodModel mm = ro.getMethodModel();
+            Object value = mm.isPrimitive() ? readPrimitive(rs, col, mm)
+                                            : ro.getCodec().read(rs, col);
+
+            // the argument already holds the primitive default
+            if (mm.isPrimitive() && rs.wasNull() &&
+                !primitiveNullPolicy.assignDefault(ro.getColumnName())) {
+                continue;
+            }
+
+            args[arguments[i]] = value;
+        }
+
+        return constructorModel.createNewInstance(args);
+    }
+
+    /**
+     * Reads a column for a primitive setter. The value read is never NULL; on a SQL NULL
+     * it is the primitive default and rs.wasNull() is TRUE.
+     */
+    private Object readPrimitive(ResultSet rs, int col, MethodModel mm) throws SQLException {
+        Class type = mm.getParameterType();
+
+        switch (mm.getDataType()) {
+            case INT:
+                int intValue = rs.getInt(col);
+                if (type == Short.TYPE) {
+                    return (short) intValue;
+                } else if (type == Byte.TYPE) {
+                    return (byte) intValue;
+                }
+                return intValue;
+
+            case LONG:
+                return rs.getLong(col);
+
+            case FLOAT:
+                return rs.getFloat(col);
+
+            case DOUBLE:
+                return rs.getDouble(col);
+
+            case CHAR:
+                return JdbcUtil.getChar(rs, col);
+
+            case BOOLEAN:
+                return JdbcUtil.getYNString(rs, col);
+
+            default:
+                throw new ModelNotSupportedException(
+                        "RdoDataType " + mm.getDataType() +
+                        " is not supported. Have you added this and forgot to change this class?");
+        }
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    /**
+     * The keys of a read by keys, by which the rows read are matched to the keys. A row
+     * whose key is none of the keys read, i.e. a string of a database comparing strings
+     * regardless of case, is matched to the keys of its key in lower case.
+     */
+    private class KeyIndex {
+
+        private final ColumnModel[] keyColumns;
+        private final Set<KeyTuple> keys = new HashSet<KeyTuple>();
+        private final Map<KeyTuple, List<KeyTuple>> caseless =
+                new HashMap<KeyTuple, List<KeyTuple>>();
+
+        private KeyIndex(Collection<Object[]> keyValues, ColumnModel[] keyColumns) {
+            this.keyColumns = keyColumns;
+            for (Object[] values : keyValues) {
+                KeyTuple key = toKeyTuple(values, keyColumns, false);
+                if (!keys.add(key)) {
+                    continue;
+                }
+
+                KeyTuple lower = toKeyTuple(values, keyColumns, true);
+                List<KeyTuple> matching = caseless.get(lower);
+                if (matching == null) {
+                    matching = new ArrayList<KeyTuple>(1);
+                    caseless.put(lower, matching);
+                }
+                matching.add(key);
+            }
+        }
+
+        /**
+         * Returns the keys read that the given key of a row matches, none if it matches
+         * none of them
+         */
+        private List<KeyTuple> match(Object[] values) {
+            KeyTuple key = toKeyTuple(values, keyColumns, false);
+            if (keys.contains(key)) {
+                return Collections.singletonList(key);
+            }
+            List<KeyTuple> matching = caseless.get(toKeyTuple(values, keyColumns, true));
+            return (matching == null) ? Collections.<KeyTuple>emptyList() : matching;
+        }
+    }
+
+    /**
+     * What a read by keys maps each key to
+     */
+    private static enum KeyedRead {
+        /** the object of the single row of the key */
+        SINGLE,
+        /** a list of the objects of the rows of the key */
+        GROUPED,
+        /** nothing: the row of the key is merged into the list of objects of the key */
+        MERGED
+    }
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.cylog.rdo.exception.DataExtractionException;
+import org.cylog.rdo.exception.ModelNotSupportedException;
+
+/**
+ * A page of the DTOs of a table in primary key order, as returned by getDtoPage, and the
+ * key to read the next page after. The next page is read with a seek on the primary key
+ * rather than an offset, so every page costs the same however deep it is:
+ *
+ * <pre>
+ * RdoPage&lt;Order&gt; page = dao.getDtoPage(Order.class, "ORDERS", null, 100);
+ * while (...) {
+ *     ...
+ *     page = dao.getDtoPage(Order.class, "ORDERS", page.getNextKey(), 100);
+ * }
+ * </pre>
+ *
+ * The next key can also be passed around as a continuation token, i.e. to the client of
+ * a web service, and decoded back to the key with decodeToken.
+ *
+ * @author Kostas Symeonidis
+ */
+public class RdoPage<T> {
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final List<T> dtos;
+
+    /**
+     * The key of the last row of the page, NULL if it is the last page
+     */
+    private final Object[] nextKey;
+
+    // ---- Constructors ------------------------------------------------------
+
+    RdoPage(List<T> dtos, Object[] nextKey) {
+        this.dtos = Collections.unmodifiableList(dtos);
+        this.nextKey = nextKey;
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Returns TRUE if there are rows after this page
+     */
+    public boolean hasNext() {
+        return nextKey != null;
+    }
+
+    /**
+     * Returns the continuation token of the next page, NULL if this is the last page. The
+     * token holds the values of the key as text, which is not encrypted or signed.
+     */
+    public String getContinuationToken() {
+        if (nextKey == null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Object value : nextKey) {
+            encodeValue(sb, value);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the key encoded in a continuation token, NULL for a NULL token, i.e. to read
+     * the first page
+     *
+     * @throws DataExtractionException if the token is not valid
+     */
+    public static Object[] decodeToken(String token) {
+        if (token == null) {
+            return null;
+        }
+
+        List<Object> values = new ArrayList<Object>();
+        try {
+            int pos = 0;
+            while (pos < token.length()) {
+                char type = token.charAt(pos);
+                int colon = token.indexOf(':', pos);
+                int length = Integer.parseInt(token.substring(pos + 1, colon));
+                String text = token.substring(colon + 1, colon + 1 + length);
+                values.add(decodeValue(type, text));
+                pos = colon + 1 + length;
+            }
+        } catch (RuntimeException e) {
+            throw new DataExtractionException("Invalid continuation token " + token, e);
+        }
+        return values.toArray();
+    }
+
+    @Override
+    public String toString() {
+        return "RdoPage{size=" + dtos.size() +
+               ", hasNext=" + hasNext() +
+               '}';
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    /**
+     * Appends a value as its type, the length of its text, a colon and its text
+     */
+    private static void encodeValue(StringBuilder sb, Object value) {
+        char type;
+        String text;
+        if (value == null) {
+            type = 'n';
+            text = "";
+        } else if ((value instanceof Integer) || (value instanceof Short) ||
+                   (value instanceof Byte)) {
+            type = 'i';
+            text = value.toString();
+        } else if (value instanceof Long) {
+            type = 'l';
+            text = value.toString();
+        } else if ((value instanceof BigDecimal) || (value instanceof BigInteger)) {
+            type = 'd';
+            text = value.toString();
+        } else if ((value instanceof Double) || (value instanceof Float)) {
+            type = 'f';
+            text = Double.toString(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            type = 'b';
+            text = value.toString();
+        } else if (value instanceof Timestamp) {
+            type = 't';
+            text = ((Timestamp) value).getTime() + "." + ((Timestamp) value).getNanos();
+        } else if (value instanceof Date) {
+            type = 't';
+            text = ((Date) value).getTime() + ".-1";
+        } else if ((value instanceof String) || (value instanceof Character)) {
+            type = 's';
+            text = value.toString();
+        } else {
+            throw new ModelNotSupportedException(
+                    "Cannot encode a key value of " + value.getClass().getName());
+        }
+        sb.append(type).append(text.length()).append(':').append(text);
+    }
+
+    private static Object decodeValue(char type, String text) {
+        switch (type) {
+            case 'n':
+                return null;
+            case 'i':
+                return Integer.valueOf(text);
+            case 'l':
+                return Long.valueOf(text);
+            case 'd':
+                return new BigDecimal(text);
+            case 'f':
+                return Double.valueOf(text);
+            case 'b':
+                return Boolean.valueOf(text);
+            case 't':
+                int dot = text.indexOf('.');
+                Timestamp ts = new Timestamp(Long.parseLong(text.substring(0, dot)));
+                int nanos = Integer.parseInt(text.substring(dot + 1));
+                if (nanos >= 0) {
+                    ts.setNanos(nanos);
+                }
+                return ts;
+            case 's':
+                return text;
+            default:
+                throw new DataExtractionException("Unknown value type " + type);
+        }
+    }
+
+    // ---- Bean Properties (Read-Only) ---------------------------------------
+
+    /**
+     * Returns the DTOs of the page, in primary key order
+     */
+    public List<T> getDtos() {
+        return dtos;
+    }
+
+    /**
+     * Returns the key of the last row of the page, to read the next page after, or NULL if
+     * this is the last page
+     */
+    public Object[] getNextKey() {
+        return (nextKey == null) ? null : nextKey.clone();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.cylog.rdo.bean.PrimitiveNullPolicy;
+
+/**
+ * Reads the current row of a ResultSet into a DTO. Implementations are normally
+ * generated by the {@link org.cylog.rdo.compiler.MapperCompiler} for a single
+ * RdoMapper, so that the columns are read and assigned in a straight line with
+ * direct setter calls instead of going through reflection.
+ *
+ * @author Kostas Symeonidis
+ */
+public interface RdoRowReader {
+
+    /**
+     * Reads the current row of the given ResultSet into the given dto.
+     *
+     * @param rs      the result set, already positioned on the row to read
+     * @param columns the result set column index of each of the mapper's read operations,
+     *                in the same order, or 0 if the column is not in the result set
+     * @param nulls   what to do when a SQL NULL is read for a primitive setter
+     * @param dto     an instance of an existing object to be populated, OR NULL for a new
+     *                instance to be created
+     *
+     * @return the populated object
+     */
+    public Object readRow(ResultSet rs, int[] columns, PrimitiveNullPolicy nulls, Object dto)
+            throws SQLException;
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+/**
+ * Receives the DTO of each row of a scan, i.e. to aggregate a whole table without
+ * keeping its rows.
+ *
+ * The scan fills a single DTO with each row in turn, so a visitor must copy out what it
+ * needs and not keep the DTO itself. DTOs created through a constructor cannot be
+ * refilled, and are created for each row instead. With the SKIP PrimitiveNullPolicy, a
+ * primitive property read as NULL keeps the value of the previous row.
+ *
+ * The rows of a mapper compiled by the MapperCompiler are read with direct setter
+ * calls, without the boxing and argument arrays of reflection, so that a scan creates
+ * no garbage per row besides the values the driver itself creates.
+ *
+ * @author Kostas Symeonidis
+ */
+public interface RdoVisitor<T> {
+
+    /**
+     * Visits the DTO of the current row.
+     *
+     * @param dto the DTO filled with the row, refilled with the next row after this call
+     *
+     * @return TRUE to continue with the next row, FALSE to stop the scan
+     */
+    public boolean visit(T dto);
+}
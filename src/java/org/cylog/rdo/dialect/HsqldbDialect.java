@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dialect;
+
+import org.cylog.rdo.bean.ColumnModel;
+
+/**
+ * The SQL dialect of HSQLDB, which compares the key columns as a single row value,
+ * "(k1, k2) > (CAST(? AS INTEGER), CAST(? AS BIGINT))". HSQLDB cannot tell the types of
+ * the parameters of a row value, so each is cast to the type of its column.
+ *
+ * @author Kostas Symeonidis
+ */
+public class HsqldbDialect extends SqlDialect {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static final HsqldbDialect INSTANCE = new HsqldbDialect();
+
+    // ---- Public methods ----------------------------------------------------
+
+    @Override
+    public void appendKeyAfter(StringBuilder sb, ColumnModel[] keyColumns) {
+        if (keyColumns.length == 1) {
+            sb.append(getName(keyColumns[0])).append(" > ?");
+            return;
+        }
+
+        sb.append('(');
+        for (int i = 0; i < keyColumns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(getName(keyColumns[i]));
+        }
+        sb.append(") > (");
+        for (int i = 0; i < keyColumns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            String type = getTypeName(keyColumns[i]);
+            if (type == null) {
+                sb.append('?');
+            } else {
+                sb.append("CAST(? AS ").append(type).append(')');
+            }
+        }
+        sb.append(')');
+    }
+
+    @Override
+    public Object[] getKeyAfterParameters(Object[] key) {
+        return key;
+    }
+
+    @Override
+    public String getCreateTemporaryTable(String name, String[] columnNames,
+                                          ColumnModel[] columns) {
+        StringBuilder sb = new StringBuilder("DECLARE LOCAL TEMPORARY TABLE ").append(name);
+        appendColumns(sb, columnNames, columns);
+        return sb.append(" ON COMMIT PRESERVE ROWS").toString();
+    }
+
+    @Override
+    public String getTemporaryTableReference(String name) {
+        return "SESSION." + name;
+    }
+
+    @Override
+    public String getDropTemporaryTable(String name) {
+        return "DROP TABLE SESSION." + name;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dialect;
+
+import org.cylog.rdo.bean.ColumnModel;
+
+/**
+ * The SQL dialect of MySQL and MariaDB. Older versions of MySQL do not read a row value
+ * comparison of the key columns as a range of the primary key, so the condition is
+ * expanded to one MySQL always does:
+ *
+ * "k1 >= ? AND ((k1 > ?) OR (k1 = ? AND k2 > ?))"
+ *
+ * @author Kostas Symeonidis
+ */
+public class MySqlDialect extends SqlDialect {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static final MySqlDialect INSTANCE = new MySqlDialect();
+
+    // ---- Public methods ----------------------------------------------------
+
+    @Override
+    public void appendKeyAfter(StringBuilder sb, ColumnModel[] keyColumns) {
+        if (keyColumns.length == 1) {
+            sb.append(getName(keyColumns[0])).append(" > ?");
+            return;
+        }
+
+        // the leading column bounds the range, the rest picks the rows after the key
+        sb.append(getName(keyColumns[0])).append(" >= ? AND (");
+        for (int i = 0; i < keyColumns.length; i++) {
+            if (i > 0) {
+                sb.append(" OR ");
+            }
+            sb.append('(');
+            for (int j = 0; j < i; j++) {
+                sb.append(getName(keyColumns[j])).append(" = ? AND ");
+            }
+            sb.append(getName(keyColumns[i])).append(" > ?)");
+        }
+        sb.append(')');
+    }
+
+    @Override
+    public Object[] getKeyAfterParameters(Object[] key) {
+        if (key.length == 1) {
+            return key;
+        }
+
+        // the leading column, then the columns of each term up to its own
+        Object[] params = new Object[1 + key.length * (key.length + 1) / 2];
+        int p = 0;
+        params[p++] = key[0];
+        for (int i = 0; i < key.length; i++) {
+            for (int j = 0; j <= i; j++) {
+                params[p++] = key[j];
+            }
+        }
+        return params;
+    }
+
+    @Override
+    public String getCreateTemporaryTable(String name, String[] columnNames,
+                                          ColumnModel[] columns) {
+        StringBuilder sb = new StringBuilder("CREATE TEMPORARY TABLE ").append(name);
+        appendColumns(sb, columnNames, columns);
+        return sb.toString();
+    }
+
+    @Override
+    public String getTemporaryTableReference(String name) {
+        return name;
+    }
+
+    @Override
+    public String getDropTemporaryTable(String name) {
+        return "DROP TEMPORARY TABLE " + name;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dialect;
+
+import java.sql.Types;
+
+import org.cylog.rdo.bean.ColumnModel;
+import org.cylog.rdo.exception.ModelNotSupportedException;
+
+/**
+ * The SQL that differs between databases, for the statements the framework generates
+ * itself rather than taking from the caller.
+ *
+ * @author Kostas Symeonidis
+ */
+public abstract class SqlDialect {
+
+    // ---- Static Public methods ---------------------------------------------
+
+    /**
+     * Returns the dialect of the database of the given product name, as returned by
+     * DatabaseMetaData.getDatabaseProductName
+     *
+     * @throws ModelNotSupportedException if there is no dialect for the database
+     */
+    public static SqlDialect forProductName(String productName) {
+        String name = (productName == null) ? "" : productName.toLowerCase();
+        if (name.startsWith("hsql")) {
+            return HsqldbDialect.INSTANCE;
+        } else if (name.startsWith("mysql") || name.startsWith("mariadb")) {
+            return MySqlDialect.INSTANCE;
+        }
+        throw new ModelNotSupportedException("No SQL dialect for database " + productName);
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Appends the condition of the rows whose key columns come after the values of a key,
+     * in the order of the columns, with a parameter placeholder for each value
+     *
+     * @param keyColumns the key columns, most significant first
+     */
+    public abstract void appendKeyAfter(StringBuilder sb, ColumnModel[] keyColumns);
+
+    /**
+     * Returns the parameters of the placeholders of appendKeyAfter for the given key
+     */
+    public abstract Object[] getKeyAfterParameters(Object[] key);
+
+    /**
+     * Appends the clause limiting the rows of a query to a number of rows, given as a
+     * parameter placeholder
+     */
+    public void appendLimit(StringBuilder sb) {
+        sb.append(" LIMIT ?");
+    }
+
+    /**
+     * Returns the statement creating a temporary table of the given name, only visible to
+     * the connection, with a column of the type of each of the given columns
+     *
+     * @param columnNames the names of the columns of the temporary table
+     * @param columns     the columns whose types the columns of the table take
+     */
+    public abstract String getCreateTemporaryTable(String name, String[] columnNames,
+                                                   ColumnModel[] columns);
+
+    /**
+     * Returns the name a temporary table is referred to by in the statements after it is
+     * created
+     */
+    public abstract String getTemporaryTableReference(String name);
+
+    /**
+     * Returns the statement dropping a temporary table
+     */
+    public abstract String getDropTemporaryTable(String name);
+
+    /**
+     * Returns the SQL type of a column, i.e. to create a column of the same type, or NULL
+     * if the dialect does not know the type
+     */
+    public String getTypeName(ColumnModel column) {
+        switch (column.getSqlType()) {
+            case Types.TINYINT:
+                return "TINYINT";
+            case Types.SMALLINT:
+                return "SMALLINT";
+            case Types.INTEGER:
+                return "INTEGER";
+            case Types.BIGINT:
+                return "BIGINT";
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return "DECIMAL(" + column.getColumnLength() + ", " +
+                       column.getDecimalDigits() + ")";
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return "DOUBLE";
+            case Types.CHAR:
+            case Types.VARCHAR:
+                return "VARCHAR(" + column.getColumnLength() + ")";
+            case Types.DATE:
+                return "DATE";
+            case Types.TIMESTAMP:
+                return "TIMESTAMP";
+            case Types.BOOLEAN:
+                return "BOOLEAN";
+            default:
+                return null;
+        }
+    }
+
+    // ---- Protected methods -------------------------------------------------
+
+    protected static String getName(ColumnModel column) {
+        return column.getColumnName().toLowerCase();
+    }
+
+    /**
+     * Appends the columns of a temporary table, in parentheses
+     */
+    protected void appendColumns(StringBuilder sb, String[] columnNames, ColumnModel[] columns) {
+        sb.append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(columnNames[i]).append(' ').append(getTypeName(columns[i]));
+        }
+        sb.append(')');
+    }
+}
@@ -18,16 +18,22 @@ package org.cylog.rdo.util;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 
 import org.cylog.rdo.bean.ColumnModel;
+import org.cylog.rdo.bean.ForeignKeyModel;
 import org.cylog.rdo.bean.TableModel;
 import org.cylog.rdo.exception.ModelRetrievalException;
 import org.cylog.rdo.logger.ClassLogger;
 
 /**
- * Static utility to retrieve a list of TableModels from a database connection.
+ * Static utility to retrieve a list of TableModels from a database connection, one
+ * table at a time or in bulk.
  *
  * @author Kostas Symeonidis
  */
@@ -60,13 +66,7 @@ public class DatabaseMetadataUtil {
 
             rsCols = metaData.getColumns(null, null, tableName, "%");
             while (rsCols.next()) {
-                ColumnModel col = new ColumnModel(
-                        rsCols.getInt("ORDINAL_POSITION"),
-                        rsCols.getString("COLUMN_NAME"),
-                        rsCols.getInt("DATA_TYPE"),
-                        rsCols.getInt("COLUMN_SIZE"),
-                        rsCols.getInt("DECIMAL_DIGITS"),
-                        rsCols.getInt("NULLABLE") == 1);
+                ColumnModel col = createColumnModel(rsCols);
 
                 log.debug("Adding " + col);
                 tableModel.addColumn(col);
@@ -87,4 +87,231 @@ public class DatabaseMetadataUtil {
             SqlResourceUtil.closeResource(rsCols);
         }
     }
+
+    /**
+     * Retrieves the {@link TableModel}s of all the tables matching the given patterns with a
+     * single scan of {@link DatabaseMetaData#getColumns(String, String, String, String)},
+     * instead of one call per table.
+     *
+     * @param metaData         the database metadata object containing all the table models
+     * @param schemaPattern    the schema name pattern, NULL for all the schemas
+     * @param tableNamePattern the table name pattern, "%" or NULL for all the tables
+     *
+     * @return the table models in the order returned by the database, which is by schema and
+     *         table name
+     *
+     * @throws ModelRetrievalException if an SQL exception occurs while retrieving the models
+     */
+    public static List<TableModel> retrieveAllTableModels(DatabaseMetaData metaData,
+                                                          String schemaPattern,
+                                                          String tableNamePattern) {
+        return retrieveAllTableModels(metaData, null, schemaPattern, tableNamePattern);
+    }
+
+    /**
+     * Retrieves the {@link TableModel}s of all the tables of the given catalog matching the
+     * given patterns with a single metadata scan.
+     *
+     * @param catalog the catalog name, NULL for all the catalogs
+     *
+     * @see #retrieveAllTableModels(DatabaseMetaData, String, String)
+     */
+    public static List<TableModel> retrieveAllTableModels(DatabaseMetaData metaData,
+                                                          String catalog,
+                                                          String schemaPattern,
+                                                          String tableNamePattern) {
+        log.info("Retrieving all table models for catalog [" + catalog + "], schema [" +
+                 schemaPattern + "] and tables [" + tableNamePattern + "]");
+        ResultSet rsCols = null;
+        try {
+            List<TableModel> tableModels = new ArrayList<TableModel>();
+
+            String schema = null;
+            TableModel tableModel = null;
+
+            rsCols = metaData.getColumns(catalog, schemaPattern,
+                                         tableNamePattern == null ? "%" : tableNamePattern, "%");
+            while (rsCols.next()) {
+                // the schema of databases without schemas is their catalog
+                String s = rsCols.getString("TABLE_CAT") + "." + rsCols.getString("TABLE_SCHEM");
+                String t = rsCols.getString("TABLE_NAME");
+
+                // the columns are ordered by catalog, schema, table and position
+                if ((tableModel == null) || !tableModel.getTableName().equals(t) ||
+                    !schema.equals(s)) {
+                    schema = s;
+                    tableModel = new TableModel(t);
+                    tableModels.add(tableModel);
+                }
+
+                tableModel.addColumn(createColumnModel(rsCols));
+            }
+            rsCols.close();
+
+            log.info("Retrieved " + tableModels.size() + " table models");
+            return tableModels;
+        } catch (SQLException e) {
+            throw new ModelRetrievalException(
+                    "Error retrieving table models for " + schemaPattern + "." + tableNamePattern,
+                    e);
+        } finally {
+            SqlResourceUtil.closeResource(rsCols);
+        }
+    }
+
+    /**
+     * Retrieves the names of the primary key columns of a table, in the order of the key,
+     * from {@link DatabaseMetaData#getPrimaryKeys(String, String, String)}.
+     *
+     * @param metaData  the database metadata object
+     * @param tableName the name of the table as stored in the database.
+     *
+     * @return the key column names, an empty array if the table has no primary key
+     *
+     * @throws ModelRetrievalException if an SQL exception occurs while retrieving the keys
+     */
+    public static String[] retrieveKeyColumns(DatabaseMetaData metaData, String tableName) {
+        log.info("Retrieving key columns for table [" + tableName + "]");
+        ResultSet rsKeys = null;
+        try {
+            // the rows are ordered by column name, KEY_SEQ gives the order in the key
+            List<String> names = new ArrayList<String>();
+            List<Integer> sequence = new ArrayList<Integer>();
+
+            rsKeys = metaData.getPrimaryKeys(null, null, tableName);
+            while (rsKeys.next()) {
+                names.add(rsKeys.getString("COLUMN_NAME"));
+                sequence.add(rsKeys.getInt("KEY_SEQ"));
+            }
+            rsKeys.close();
+
+            String[] keyColumns = new String[names.size()];
+            for (int i = 0; i < keyColumns.length; i++) {
+                int seq = sequence.get(i);
+                if ((seq < 1) || (seq > keyColumns.length)) {
+                    throw new ModelRetrievalException(
+                            "Invalid KEY_SEQ " + seq + " of primary key of " + tableName);
+                }
+                keyColumns[seq - 1] = names.get(i);
+            }
+            return keyColumns;
+        } catch (SQLException e) {
+            throw new ModelRetrievalException("Error retrieving key columns for " + tableName, e);
+        } finally {
+            SqlResourceUtil.closeResource(rsKeys);
+        }
+    }
+
+    /**
+     * Retrieves the foreign keys of a table referencing other tables, from
+     * {@link DatabaseMetaData#getImportedKeys(String, String, String)}.
+     *
+     * @param metaData  the database metadata object
+     * @param tableName the name of the table as stored in the database.
+     *
+     * @return the foreign keys, an empty list if the table has none
+     *
+     * @throws ModelRetrievalException if an SQL exception occurs while retrieving the keys
+     */
+    public static List<ForeignKeyModel> retrieveImportedKeys(DatabaseMetaData metaData,
+                                                             String tableName) {
+        log.info("Retrieving imported keys for table [" + tableName + "]");
+        ResultSet rsKeys = null;
+        try {
+            rsKeys = metaData.getImportedKeys(null, null, tableName);
+            return readForeignKeys(rsKeys, tableName);
+        } catch (SQLException e) {
+            throw new ModelRetrievalException("Error retrieving imported keys for " + tableName,
+                                              e);
+        } finally {
+            SqlResourceUtil.closeResource(rsKeys);
+        }
+    }
+
+    /**
+     * Retrieves the foreign keys of other tables referencing a table, from
+     * {@link DatabaseMetaData#getExportedKeys(String, String, String)}.
+     *
+     * @param metaData  the database metadata object
+     * @param tableName the name of the table as stored in the database.
+     *
+     * @return the foreign keys, an empty list if no table references the table
+     *
+     * @throws ModelRetrievalException if an SQL exception occurs while retrieving the keys
+     */
+    public static List<ForeignKeyModel> retrieveExportedKeys(DatabaseMetaData metaData,
+                                                             String tableName) {
+        log.info("Retrieving exported keys for table [" + tableName + "]");
+        ResultSet rsKeys = null;
+        try {
+            rsKeys = metaData.getExportedKeys(null, null, tableName);
+            return readForeignKeys(rsKeys, tableName);
+        } catch (SQLException e) {
+            throw new ModelRetrievalException("Error retrieving exported keys for " + tableName,
+                                              e);
+        } finally {
+            SqlResourceUtil.closeResource(rsKeys);
+        }
+    }
+
+    // ---- Static Private methods --------------------------------------------
+
+    /**
+     * Reads the foreign keys of a result set of getImportedKeys or getExportedKeys, which
+     * has a row per column of each key, with KEY_SEQ giving the order of the column in its
+     * key
+     */
+    private static List<ForeignKeyModel> readForeignKeys(ResultSet rsKeys, String tableName)
+            throws SQLException {
+        Map<String, List<String[]>> keys = new LinkedHashMap<String, List<String[]>>();
+        while (rsKeys.next()) {
+            String[] row = new String[]{
+                    rsKeys.getString("FK_NAME"),
+                    rsKeys.getString("PKTABLE_NAME"),
+                    rsKeys.getString("PKCOLUMN_NAME"),
+                    rsKeys.getString("FKTABLE_NAME"),
+                    rsKeys.getString("FKCOLUMN_NAME"),
+                    rsKeys.getString("KEY_SEQ")};
+
+            // a key without a name is told apart by its tables
+            String id = (row[0] != null) ? row[0] + "/" + row[3] : row[1] + "/" + row[3];
+            List<String[]> columns = keys.get(id);
+            if (columns == null) {
+                columns = new ArrayList<String[]>();
+                keys.put(id, columns);
+            }
+            columns.add(row);
+        }
+
+        List<ForeignKeyModel> foreignKeys = new ArrayList<ForeignKeyModel>(keys.size());
+        for (List<String[]> rows : keys.values()) {
+            String[] primaryColumns = new String[rows.size()];
+            String[] foreignColumns = new String[rows.size()];
+            for (String[] row : rows) {
+                int seq = Integer.parseInt(row[5]);
+                if ((seq < 1) || (seq > rows.size())) {
+                    throw new ModelRetrievalException(
+                            "Invalid KEY_SEQ " + seq + " of foreign key " + row[0] + " of " +
+                            tableName);
+                }
+                primaryColumns[seq - 1] = row[2];
+                foreignColumns[seq - 1] = row[4];
+            }
+
+            String[] first = rows.get(0);
+            foreignKeys.add(new ForeignKeyModel(first[0], first[1], primaryColumns, first[3],
+                                                foreignColumns));
+        }
+        return foreignKeys;
+    }
+
+    private static ColumnModel createColumnModel(ResultSet rsCols) throws SQLException {
+        return new ColumnModel(
+                rsCols.getInt("ORDINAL_POSITION"),
+                rsCols.getString("COLUMN_NAME"),
+                rsCols.getInt("DATA_TYPE"),
+                rsCols.getInt("COLUMN_SIZE"),
+                rsCols.getInt("DECIMAL_DIGITS"),
+                rsCols.getInt("NULLABLE") == 1);
+    }
 }
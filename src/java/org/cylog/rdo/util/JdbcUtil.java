@@ -18,6 +18,7 @@ package org.cylog.rdo.util;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 
 /**
  * TODO description for class JdbcUtil
@@ -28,25 +29,25 @@ public class JdbcUtil {
     // ---- Static ------------------------------------------------------------
 
     /**
-     * Gets a java.util.Date from a ResultSet, returning java null if the column was a SQL null.
+     * Gets a Character from a ResultSet, returning java null if the column was a SQL null.
      *
      * @param rs         - the result set to operate on
      * @param columnName - the name of the column to get
      */
     public static Character getCharOrNull(ResultSet rs, String columnName)
             throws SQLException {
-        String stringValue = rs.getString(columnName);
-        Character charValue = null;
-        if (stringValue != null) {
-            if (stringValue.length() == 1) {
-                charValue = stringValue.charAt(0);
-            } else if (stringValue.length() > 1) {
-                throw new SQLException(
-                        "String value too long for getCharOrNull method " + stringValue);
-            }
-        }
+        return getCharOrNull(rs, rs.findColumn(columnName));
+    }
 
-        return charValue;
+    /**
+     * Gets a char from a ResultSet, returning '\0' if the column was a SQL null.
+     *
+     * @param rs         - the result set to operate on
+     * @param columnName - the name of the column to get
+     */
+    public static char getChar(ResultSet rs, String columnName)
+            throws SQLException {
+        return getChar(rs, rs.findColumn(columnName));
     }
 
     /**
@@ -57,8 +58,7 @@ public class JdbcUtil {
      */
     public static java.util.Date getDateOrNull(ResultSet rs, String columnName)
             throws SQLException {
-        Timestamp ts = rs.getTimestamp(columnName);
-        return ts == null ? null : new java.util.Date(ts.getTime());
+        return getDateOrNull(rs, rs.findColumn(columnName));
     }
 
     /**
@@ -69,8 +69,7 @@ public class JdbcUtil {
      */
     public static Integer getIntOrNull(ResultSet rs, String columnName)
             throws SQLException {
-        int i = rs.getInt(columnName);
-        return rs.wasNull() ? null : i;
+        return getIntOrNull(rs, rs.findColumn(columnName));
     }
 
     /**
@@ -81,8 +80,7 @@ public class JdbcUtil {
      */
     public static Long getLongOrNull(ResultSet rs, String columnName)
             throws SQLException {
-        long l = rs.getLong(columnName);
-        return rs.wasNull() ? null : l;
+        return getLongOrNull(rs, rs.findColumn(columnName));
     }
 
     /**
@@ -93,8 +91,7 @@ public class JdbcUtil {
      */
     public static Float getFloatOrNull(ResultSet rs, String columnName)
             throws SQLException {
-        float f = rs.getFloat(columnName);
-        return rs.wasNull() ? null : f;
+        return getFloatOrNull(rs, rs.findColumn(columnName));
     }
 
     /**
@@ -105,8 +102,7 @@ public class JdbcUtil {
      */
     public static Double getDoubleOrNull(ResultSet rs, String columnName)
             throws SQLException {
-        double d = rs.getDouble(columnName);
-        return rs.wasNull() ? null : d;
+        return getDoubleOrNull(rs, rs.findColumn(columnName));
     }
 
     /**
@@ -118,8 +114,7 @@ public class JdbcUtil {
      */
     public static boolean getYNString(ResultSet rs, String columnName)
             throws SQLException {
-        String s = rs.getString(columnName);
-        return "Y".equals(s);
+        return getYNString(rs, rs.findColumn(columnName));
     }
 
     /**
@@ -132,7 +127,182 @@ public class JdbcUtil {
      */
     public static Boolean getYNStringOrNull(ResultSet rs, String columnName)
             throws SQLException {
-        String s = rs.getString(columnName);
+        return getYNStringOrNull(rs, rs.findColumn(columnName));
+    }
+
+    // ---- Static (by column index) ------------------------------------------
+
+    /**
+     * Gets a Character from a ResultSet, returning java null if the column was a SQL null.
+     *
+     * @param rs          - the result set to operate on
+     * @param columnIndex - the index of the column to get, starting from 1
+     */
+    public static Character getCharOrNull(ResultSet rs, int columnIndex)
+            throws SQLException {
+        String stringValue = rs.getString(columnIndex);
+        Character charValue = null;
+        if (stringValue != null) {
+            if (stringValue.length() == 1) {
+                charValue = stringValue.charAt(0);
+            } else if (stringValue.length() > 1) {
+                throw new SQLException(
+                        "String value too long for getCharOrNull method " + stringValue);
+            }
+        }
+
+        return charValue;
+    }
+
+    /**
+     * Gets a char from a ResultSet, returning '\0' if the column was a SQL null.
+     *
+     * @param rs          - the result set to operate on
+     * @param columnIndex - the index of the column to get, starting from 1
+     */
+    public static char getChar(ResultSet rs, int columnIndex)
+            throws SQLException {
+        String stringValue = rs.getString(columnIndex);
+        if (stringValue == null || stringValue.length() == 0) {
+            return '\0';
+        } else if (stringValue.length() > 1) {
+            throw new SQLException("String value too long for getChar method " + stringValue);
+        }
+
+        return stringValue.charAt(0);
+    }
+
+    /**
+     * Gets a java.util.Date from a ResultSet, returning java null if the column was a SQL null.
+     *
+     * @param rs          - the result set to operate on
+     * @param columnIndex - the index of the column to get, starting from 1
+     */
+    public static java.util.Date getDateOrNull(ResultSet rs, int columnIndex)
+            throws SQLException {
+        Timestamp ts = rs.getTimestamp(columnIndex);
+        return ts == null ? null : new java.util.Date(ts.getTime());
+    }
+
+    /**
+     * Gets an integer from a ResultSet, returning java null if the column was a SQL null.
+     *
+     * @param rs          - the result set to operate on
+     * @param columnIndex - the index of the column to get, starting from 1
+     */
+    public static Integer getIntOrNull(ResultSet rs, int columnIndex)
+            throws SQLException {
+        int i = rs.getInt(columnIndex);
+        return rs.wasNull() ? null : i;
+    }
+
+    /**
+     * Gets a long from a ResultSet, returning java null if the column was a SQL null.
+     *
+     * @param rs          - the result set to operate on
+     * @param columnIndex - the index of the column to get, starting from 1
+     */
+    public static Long getLongOrNull(ResultSet rs, int columnIndex)
+            throws SQLException {
+        long l = rs.getLong(columnIndex);
+        return rs.wasNull() ? null : l;
+    }
+
+    /**
+     * Gets a float from a ResultSet, returning java null if the column was a SQL null.
+     *
+     * @param rs          - the result set to operate on
+     * @param columnIndex - the index of the column to get, starting from 1
+     */
+    public static Float getFloatOrNull(ResultSet rs, int columnIndex)
+            throws SQLException {
+        float f = rs.getFloat(columnIndex);
+        return rs.wasNull() ? null : f;
+    }
+
+    /**
+     * Gets a double from a ResultSet, returning java null if the column was a SQL null.
+     *
+     * @param rs          - the result set to operate on
+     * @param columnIndex - the index of the column to get, starting from 1
+     */
+    public static Double getDoubleOrNull(ResultSet rs, int columnIndex)
+            throws SQLException {
+        double d = rs.getDouble(columnIndex);
+        return rs.wasNull() ? null : d;
+    }
+
+    /**
+     * Gets a boolean from a ResultSet for a <emph>non-nullable</emph>
+     * VARCHAR2(1) column which contains 'Y' for true or 'N' for false.
+     *
+     * @param rs          - the result set to operate on
+     * @param columnIndex - the index of the column to get, starting from 1
+     */
+    public static boolean getYNString(ResultSet rs, int columnIndex)
+            throws SQLException {
+        String s = rs.getString(columnIndex);
+        return "Y".equals(s);
+    }
+
+    /**
+     * Gets an Boolean from a ResultSet, returning null if the column was null,
+     * or the appropriate Boolean value where a 'Y' column value would return
+     * true and anything else false
+     *
+     * @param rs          - the result set to operate on
+     * @param columnIndex - the index of the column to get, starting from 1
+     */
+    public static Boolean getYNStringOrNull(ResultSet rs, int columnIndex)
+            throws SQLException {
+        String s = rs.getString(columnIndex);
         return rs.wasNull() ? null : "Y".equals(s);
     }
+
+    // ---- Static (SQL types) ------------------------------------------------
+
+    /**
+     * Returns TRUE for the {@link Types} of the columns read as numbers
+     */
+    public static boolean isNumericType(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns TRUE for the {@link Types} of the columns read as strings
+     */
+    public static boolean isCharacterType(int sqlType) {
+        switch (sqlType) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns TRUE for the {@link Types} of the columns read as dates
+     */
+    public static boolean isDateType(int sqlType) {
+        return (sqlType == Types.DATE) || (sqlType == Types.TIME) ||
+               (sqlType == Types.TIMESTAMP);
+    }
 }
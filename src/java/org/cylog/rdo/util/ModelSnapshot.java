@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+
+import org.cylog.rdo.bean.ColumnModel;
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.bean.TableModel;
+import org.cylog.rdo.logger.ClassLogger;
+
+/**
+ * A compact binary snapshot of the TableModels and RdoMappers of a DAO, written at
+ * shutdown or after warm-up and memory-mapped back in at startup, so that the models
+ * do not have to be retrieved from the database metadata again.
+ *
+ * The snapshot starts with a header holding the format version and a schema
+ * fingerprint given by the application, i.e. the version of its schema migrations.
+ * A snapshot written for a different fingerprint is ignored as a whole. Each entry
+ * that follows is a table model, or the class and table of a mapper, with its own
+ * CRC32; an entry that fails its check is skipped and loaded lazily as before.
+ *
+ * Mappers are stored by name only, their class models are rebuilt through reflection,
+ * which needs no database access.
+ *
+ * @author Kostas Symeonidis
+ */
+public class ModelSnapshot {
+
+    // ---- Static ------------------------------------------------------------
+
+    public static Log log = new ClassLogger();
+
+    // ---- Constants ---------------------------------------------------------
+
+    private static final int MAGIC = 0x52444F53;      // "RDOS"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte TABLE_ENTRY = 'T';
+    private static final byte MAPPER_ENTRY = 'M';
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final List<TableModel> tableModels;
+
+    /**
+     * The class name and the table name of each mapper
+     */
+    private final List<String[]> mappers;
+
+    /**
+     * The number of entries that failed their CRC check or could not be decoded
+     */
+    private int skippedEntries;
+
+    // ---- Constructors ------------------------------------------------------
+
+    private ModelSnapshot() {
+        this.tableModels = new ArrayList<TableModel>();
+        this.mappers = new ArrayList<String[]>();
+    }
+
+    // ---- Static Public methods ---------------------------------------------
+
+    /**
+     * Writes a snapshot of the given models. The snapshot is written to a temporary file
+     * first and then renamed, so that a concurrent reader never sees a partial snapshot.
+     *
+     * @param file              the snapshot file
+     * @param schemaFingerprint identifies the database schema the models were retrieved from
+     * @param tables            the table models
+     * @param mapperList        the mappers, of which only the class and table names are written
+     */
+    public static void write(File file, String schemaFingerprint, Collection<TableModel> tables,
+                             Collection<RdoMapper> mapperList) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(schemaFingerprint);
+            out.writeInt(tables.size() + mapperList.size());
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream entry = new DataOutputStream(bytes);
+            for (TableModel table : tables) {
+                bytes.reset();
+                writeTableModel(entry, table);
+                writeEntry(out, TABLE_ENTRY, bytes);
+            }
+            for (RdoMapper m : mapperList) {
+                bytes.reset();
+                entry.writeUTF(m.getClassModel().getInternalClass().getName());
+                entry.writeUTF(m.getTableModel().getTableName());
+                writeEntry(out, MAPPER_ENTRY, bytes);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+
+        log.info("Wrote snapshot of " + tables.size() + " table models and " + mapperList.size() +
+                 " mappers to " + file);
+    }
+
+    /**
+     * Reads a snapshot by mapping the file in memory.
+     *
+     * @param file              the snapshot file
+     * @param schemaFingerprint the fingerprint of the current database schema
+     *
+     * @return the snapshot, or NULL if the file does not exist, is not a snapshot, or was
+     *         written for another schema fingerprint
+     */
+    public static ModelSnapshot read(File file, String schemaFingerprint) throws IOException {
+        if (!file.isFile()) {
+            log.info("No model snapshot at " + file);
+            return null;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                                  channel.size());
+            return read(buffer, file, schemaFingerprint);
+        } finally {
+            raf.close();
+        }
+    }
+
+    // ---- Static Private methods --------------------------------------------
+
+    private static ModelSnapshot read(MappedByteBuffer buffer, File file,
+                                      String schemaFingerprint) throws IOException {
+        ModelSnapshot snapshot = new ModelSnapshot();
+        try {
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != FORMAT_VERSION)) {
+                log.warn("Ignoring " + file + ", not a model snapshot of this version");
+                return null;
+            }
+
+            byte[] fingerprint = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(fingerprint);
+            if (!schemaFingerprint.equals(readUTF(fingerprint))) {
+                log.info("Ignoring model snapshot " + file + ", the schema fingerprint changed");
+                return null;
+            }
+
+            int entries = buffer.getInt();
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < entries; i++) {
+                byte kind = buffer.get();
+                int length = buffer.getInt();
+                if ((length < 0) || (length > buffer.remaining())) {
+                    throw new BufferUnderflowException();
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                int checksum = buffer.getInt();
+
+                crc.reset();
+                crc.update(payload, 0, payload.length);
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("Skipping corrupt entry " + i + " of model snapshot " + file);
+                    snapshot.skippedEntries++;
+                    continue;
+                }
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                if (kind == TABLE_ENTRY) {
+                    snapshot.tableModels.add(readTableModel(in));
+                } else if (kind == MAPPER_ENTRY) {
+                    snapshot.mappers.add(new String[]{in.readUTF(), in.readUTF()});
+                } else {
+                    snapshot.skippedEntries++;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // a truncated file, keep what has been read so far
+            log.warn("Model snapshot " + file + " is truncated");
+            snapshot.skippedEntries++;
+        }
+
+        return snapshot;
+    }
+
+    private static void writeEntry(DataOutputStream out, byte kind, ByteArrayOutputStream bytes)
+            throws IOException {
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        out.writeByte(kind);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void writeTableModel(DataOutputStream out, TableModel table)
+            throws IOException {
+        out.writeUTF(table.getTableName());
+        out.writeShort(table.getColumns().size());
+        for (ColumnModel col : table.getColumns()) {
+            out.writeShort(col.getColumnIndex());
+            out.writeUTF(col.getColumnName());
+            out.writeInt(col.getSqlType());
+            out.writeInt(col.getColumnLength());
+            out.writeInt(col.getDecimalDigits());
+            out.writeBoolean(col.isNullable());
+        }
+    }
+
+    private static TableModel readTableModel(DataInputStream in) throws IOException {
+        TableModel table = new TableModel(in.readUTF());
+        int columns = in.readShort();
+        for (int i = 0; i < columns; i++) {
+            table.addColumn(new ColumnModel(in.readShort(), in.readUTF(), in.readInt(),
+                                            in.readInt(), in.readInt(), in.readBoolean()));
+        }
+        return table;
+    }
+
+    /**
+     * Decodes the modified UTF-8 bytes written by DataOutputStream.writeUTF, without their
+     * length prefix
+     */
+    private static String readUTF(byte[] bytes) throws IOException {
+        ByteArrayOutputStream prefixed = new ByteArrayOutputStream(bytes.length + 2);
+        prefixed.write(bytes.length >>> 8);
+        prefixed.write(bytes.length);
+        prefixed.write(bytes);
+        return new DataInputStream(new ByteArrayInputStream(prefixed.toByteArray())).readUTF();
+    }
+
+    // ---- Bean Properties ---------------------------------------------------
+
+    public List<TableModel> getTableModels() {
+        return tableModels;
+    }
+
+    /**
+     * Returns the class name and the table name of each mapper in the snapshot
+     */
+    public List<String[]> getMappers() {
+        return mappers;
+    }
+
+    public int getSkippedEntries() {
+        return skippedEntries;
+    }
+}
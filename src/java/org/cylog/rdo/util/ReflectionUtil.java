@@ -15,11 +15,14 @@
  */
 package org.cylog.rdo.util;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 
 import org.apache.commons.logging.Log;
 
+import org.cylog.rdo.annotation.RdoConstructor;
 import org.cylog.rdo.bean.ClassModel;
+import org.cylog.rdo.bean.ConstructorModel;
 import org.cylog.rdo.bean.MethodModel;
 import org.cylog.rdo.bean.RdoDataType;
 import org.cylog.rdo.exception.ModelNotSupportedException;
@@ -60,9 +63,89 @@ public class ReflectionUtil {
             }
         }
 
+        ConstructorModel constructorModel = createConstructorModel(c);
+        if (constructorModel != null) {
+            log.debug(" using constructor : " + constructorModel.getConstructor());
+            classModel.setConstructorModel(constructorModel);
+        }
+
         return classModel;
     }
 
+    /**
+     * Returns the model of the constructor a class is created with, which is the public
+     * constructor annotated with {@link RdoConstructor} or the canonical constructor of
+     * a record. Returns NULL if the class is created with its default constructor and
+     * setters.
+     *
+     * @throws ModelNotSupportedException if the constructor has parameters of an
+     *                                    unsupported type
+     */
+    public static ConstructorModel createConstructorModel(Class c) {
+        for (Constructor<?> constructor : c.getConstructors()) {
+            RdoConstructor rc = constructor.getAnnotation(RdoConstructor.class);
+            if (rc != null) {
+                return new ConstructorModel(c, rc.value(), constructor.getParameterTypes());
+            }
+        }
+
+        return createRecordConstructorModel(c);
+    }
+
+    /**
+     * Returns the RdoDataType of a setter or constructor parameter type, or NULL if the
+     * type is not supported
+     */
+    public static RdoDataType getDataType(Class param) {
+        if (param.isEnum()) {
+            return RdoDataType.ENUM;
+        } else if (String.class.equals(param)) {
+            return RdoDataType.STRING;
+        } else if (java.util.Date.class.equals(param) || java.sql.Timestamp.class.equals(param)) {
+            return RdoDataType.DATE;
+        } else if (Boolean.class.equals(param) || Boolean.TYPE.equals(param)) {
+            return RdoDataType.BOOLEAN;
+        } else if (Character.class.equals(param) || Character.TYPE.equals(param)) {
+            return RdoDataType.CHAR;
+        } else if (Integer.class.equals(param) || Short.class.equals(param) ||
+                   Byte.class.equals(param) || Integer.TYPE.equals(param) ||
+                   Short.TYPE.equals(param) || Byte.TYPE.equals(param)) {
+            return RdoDataType.INT;
+        } else if (Long.class.equals(param) || Long.TYPE.equals(param)) {
+            return RdoDataType.LONG;
+        } else if (Float.class.equals(param) || Float.TYPE.equals(param)) {
+            return RdoDataType.FLOAT;
+        } else if (Double.class.equals(param) || Double.TYPE.equals(param)) {
+            return RdoDataType.DOUBLE;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the default value of a type, which is the boxed zero (or false) for
+     * primitives and NULL for everything else
+     */
+    public static Object getDefaultValue(Class type) {
+        if (!type.isPrimitive()) {
+            return null;
+        } else if (Boolean.TYPE.equals(type)) {
+            return Boolean.FALSE;
+        } else if (Character.TYPE.equals(type)) {
+            return '\0';
+        } else if (Byte.TYPE.equals(type)) {
+            return (byte) 0;
+        } else if (Short.TYPE.equals(type)) {
+            return (short) 0;
+        } else if (Integer.TYPE.equals(type)) {
+            return 0;
+        } else if (Long.TYPE.equals(type)) {
+            return 0L;
+        } else if (Float.TYPE.equals(type)) {
+            return 0f;
+        }
+        return 0d;
+    }
+
     /**
      * @param m
      * @return
@@ -77,63 +160,8 @@ public class ReflectionUtil {
             m.getParameterTypes().length == 1) {
             Class param = m.getParameterTypes()[0];
 
-            RdoDataType dt = null;
-            boolean isPrimitive = false;
-
-            // enum
-            if (param.isEnum()) {
-                dt = RdoDataType.ENUM;
-            }
-            // string
-            else if (String.class.equals(param)) {
-                dt = RdoDataType.STRING;
-            }
-            // dates
-            else if (java.util.Date.class.equals(param)) {
-                dt = RdoDataType.DATE;
-            } else if (java.sql.Timestamp.class.equals(param)) {
-                dt = RdoDataType.DATE;
-            }
-            // primitives
-            else if (Boolean.class.equals(param)) // boolean
-            {
-                dt = RdoDataType.BOOLEAN;
-            } else if (Boolean.TYPE.equals(param)) {
-                dt = RdoDataType.BOOLEAN;
-                isPrimitive = true;
-            } else if (Character.class.equals(param)) // char
-            {
-                dt = RdoDataType.CHAR;
-            } else if (Character.TYPE.equals(param)) {
-                dt = RdoDataType.CHAR;
-                isPrimitive = true;
-            } else if (Integer.class.equals(param) || Short.class.equals(
-                    param) || Byte.class.equals(param))  // int
-            {
-                dt = RdoDataType.INT;
-            } else if (Integer.TYPE.equals(param) || Short.TYPE.equals(param) || Byte.TYPE.equals(
-                    param)) {
-                dt = RdoDataType.INT;
-                isPrimitive = true;
-            } else if (Long.class.equals(param))  // long
-            {
-                dt = RdoDataType.LONG;
-            } else if (Long.TYPE.equals(param)) {
-                dt = RdoDataType.LONG;
-                isPrimitive = true;
-            } else if (Float.class.equals(param))  // float
-            {
-                dt = RdoDataType.FLOAT;
-            } else if (Float.TYPE.equals(param)) {
-                dt = RdoDataType.FLOAT;
-                isPrimitive = true;
-            } else if (Double.class.equals(param))  // double
-            {
-                dt = RdoDataType.DOUBLE;
-            } else if (Double.TYPE.equals(param)) {
-                dt = RdoDataType.DOUBLE;
-                isPrimitive = true;
-            } else {
+            RdoDataType dt = getDataType(param);
+            if (dt == null) {
                 throw new ModelNotSupportedException(
                         "RdoDataType " + param + " not supported for injector method " + m.getName());
             }
@@ -142,10 +170,46 @@ public class ReflectionUtil {
             if (param.isEnum()) {
                 methodModel = new MethodModel(m, RdoDataType.ENUM, param);
             } else {
-                methodModel = new MethodModel(m, dt, isPrimitive);
+                methodModel = new MethodModel(m, dt, param.isPrimitive());
             }
         }
 
         return methodModel;
     }
+
+    /**
+     * Returns the model of the canonical constructor if the class is a record, or NULL.
+     * Records are looked up through reflection, as they are not available on all the
+     * supported Java versions.
+     */
+    private static ConstructorModel createRecordConstructorModel(Class c) {
+        Object[] components;
+        try {
+            if (!Boolean.TRUE.equals(Class.class.getMethod("isRecord").invoke(c))) {
+                return null;
+            }
+            components = (Object[]) Class.class.getMethod("getRecordComponents").invoke(c);
+        } catch (NoSuchMethodException nsme) {
+            return null; // no records in this Java version
+        } catch (Exception e) {
+            throw new ModelNotSupportedException(
+                    "Cannot read the components of record " + c.getName() + ": " + e);
+        }
+
+        try {
+            String[] names = new String[components.length];
+            Class[] types = new Class[components.length];
+            for (int i = 0; i < components.length; i++) {
+                Class<?> componentClass = components[i].getClass();
+                names[i] = (String) componentClass.getMethod("getName").invoke(components[i]);
+                types[i] = (Class) componentClass.getMethod("getType").invoke(components[i]);
+            }
+            return new ConstructorModel(c, names, types);
+        } catch (ModelNotSupportedException mnse) {
+            throw mnse;
+        } catch (Exception e) {
+            throw new ModelNotSupportedException(
+                    "Cannot read the components of record " + c.getName() + ": " + e);
+        }
+    }
 }
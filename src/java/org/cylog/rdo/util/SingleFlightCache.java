@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.cylog.rdo.exception.ModelRetrievalException;
+
+/**
+ * A concurrent cache that loads each value at most once at a time. The first caller
+ * of a missing key runs the loader, any other caller of the same key waits for its
+ * result instead of loading the value again.
+ *
+ * A hit is a single lookup in a ConcurrentHashMap and a read of a completed Future,
+ * without locking. NULL values and failed loads are not cached, the next caller
+ * loads the key again.
+ *
+ * @author Kostas Symeonidis
+ */
+public class SingleFlightCache<K, V> {
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final ConcurrentMap<K, Future<V>> entries;
+
+    // ---- Constructors ------------------------------------------------------
+
+    public SingleFlightCache() {
+        this.entries = new ConcurrentHashMap<K, Future<V>>();
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Returns the value of the given key, waiting for it if it is being loaded, or NULL
+     * if the key is not in the cache
+     */
+    public V get(K key) {
+        Future<V> f = entries.get(key);
+        return (f == null) ? null : getValue(key, f);
+    }
+
+    /**
+     * Returns the value of the given key, loading it with the given loader if it is not
+     * in the cache. Concurrent calls for the same key run one loader only.
+     *
+     * @throws RuntimeException the exception of the loader, if it failed
+     */
+    public V get(K key, Callable<V> loader) {
+        Future<V> f = entries.get(key);
+        if (f == null) {
+            FutureTask<V> task = new FutureTask<V>(loader);
+            f = entries.putIfAbsent(key, task);
+            if (f == null) {
+                f = task;
+                task.run();
+            }
+        }
+
+        return getValue(key, f);
+    }
+
+    /**
+     * Puts a value in the cache unless the key is already loaded or being loaded
+     *
+     * @return TRUE if the value has been put in the cache
+     */
+    public boolean putIfAbsent(K key, V value) {
+        FutureTask<V> task = new FutureTask<V>(new Constant<V>(value));
+        task.run();
+        return entries.putIfAbsent(key, task) == null;
+    }
+
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the values that have been loaded so far, skipping the keys that are still
+     * being loaded or have failed
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<V>(entries.size());
+        for (Future<V> f : entries.values()) {
+            if (f.isDone()) {
+                try {
+                    V value = f.get();
+                    if (value != null) {
+                        values.add(value);
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException ee) {
+                    // failed loads are not values
+                }
+            }
+        }
+        return values;
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private V getValue(K key, Future<V> f) {
+        try {
+            V value = f.get();
+            if (value == null) {
+                entries.remove(key, f);
+            }
+            return value;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ModelRetrievalException("Interrupted while loading " + key, ie);
+        } catch (ExecutionException ee) {
+            entries.remove(key, f);
+
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ModelRetrievalException("Cannot load " + key, cause);
+        }
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    private static class Constant<V> implements Callable<V> {
+
+        private final V value;
+
+        private Constant(V value) {
+            this.value = value;
+        }
+
+        public V call() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of PreparedStatements per connection, so that a statement is prepared once
+ * per connection instead of once per query.
+ *
+ * A statement is taken out of the cache while it is in use and put back when it is
+ * released, so two threads never share a statement. The statements of each connection
+ * are kept in LRU order up to maxStatements, and the statements of at most
+ * MAX_CONNECTIONS connections are kept; evicted statements are closed.
+ *
+ * Statements are prepared on the connection they are asked for, so a pool still tracks
+ * and wraps them, and are kept until that connection is given back with
+ * {@link #releaseConnection(Connection)}. Pooled connections are usually proxies that
+ * are different on every getConnection, so reusing statements across them is left to
+ * the pool or the driver, i.e. the pool's maxStatements or MySQL's cachePrepStmts.
+ *
+ * If unwrapConnections is set, statements are instead prepared on and cached per the
+ * physical connection behind the pooled one, as returned by Connection.unwrap. Those
+ * statements bypass the pool's statement tracking, and the cache keeps the physical
+ * connections of up to MAX_CONNECTIONS until they are found closed, so it should only
+ * be set when the pool does not cache statements itself.
+ *
+ * @author Kostas Symeonidis
+ */
+public class StatementCache {
+
+    // ---- Constants ---------------------------------------------------------
+
+    /**
+     * The maximum number of connections whose statements are kept
+     */
+    public static final int MAX_CONNECTIONS = 64;
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final int maxStatements;
+    private final boolean unwrapConnections;
+
+    /**
+     * The cached statements of each connection in LRU order, and the
+     * connections themselves in LRU order. Guarded by itself.
+     */
+    private final LinkedHashMap<Connection, LinkedHashMap<String, PreparedStatement>> connections;
+
+    /**
+     * The statements in use, and the connection each was prepared on
+     */
+    private final Map<PreparedStatement, Connection> borrowed;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // ---- Constructors ------------------------------------------------------
+
+    /**
+     * @param maxStatements the maximum number of statements kept per connection
+     */
+    public StatementCache(int maxStatements) {
+        this(maxStatements, false);
+    }
+
+    /**
+     * @param maxStatements     the maximum number of statements kept per connection
+     * @param unwrapConnections TRUE to prepare and cache statements on the physical
+     *                          connection behind a pooled connection
+     */
+    public StatementCache(int maxStatements, boolean unwrapConnections) {
+        this.maxStatements = maxStatements;
+        this.unwrapConnections = unwrapConnections;
+        this.connections =
+                new LinkedHashMap<Connection, LinkedHashMap<String, PreparedStatement>>(
+                        16, 0.75f, true);
+        this.borrowed = new IdentityHashMap<PreparedStatement, Connection>();
+    }
+
+    // ---- Public methods ----------------------------------------------------
+
+    /**
+     * Returns a prepared statement of the given SQL for the given connection, from the
+     * cache if there is one, otherwise newly prepared. The statement must be given
+     * back with {@link #release(String, PreparedStatement)} instead of being closed.
+     */
+    public PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        Connection target = unwrapConnections ? unwrap(conn) : conn;
+
+        PreparedStatement pstmt;
+        synchronized (connections) {
+            Map<String, PreparedStatement> statements = connections.get(target);
+            pstmt = (statements == null) ? null : statements.remove(sql);
+        }
+
+        if ((pstmt != null) && !pstmt.isClosed()) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            pstmt = target.prepareStatement(sql);
+        }
+
+        synchronized (connections) {
+            borrowed.put(pstmt, target);
+        }
+        return pstmt;
+    }
+
+    /**
+     * Puts a statement returned by prepare back in the cache of its connection, to be
+     * reused by the next prepare of the same SQL. The statement is closed instead if
+     * the cache of its connection already has one for the same SQL.
+     */
+    public void release(String sql, PreparedStatement pstmt) {
+        if (pstmt == null) {
+            return;
+        }
+
+        Connection target;
+        synchronized (connections) {
+            target = borrowed.remove(pstmt);
+        }
+
+        try {
+            if ((target == null) || pstmt.isClosed() || target.isClosed()) {
+                SqlResourceUtil.closeResource(pstmt);
+                return;
+            }
+            pstmt.clearParameters();
+        } catch (SQLException sqle) {
+            SqlResourceUtil.closeResource(pstmt);
+            return;
+        }
+
+        List<PreparedStatement> evicted = new ArrayList<PreparedStatement>(1);
+        synchronized (connections) {
+            LinkedHashMap<String, PreparedStatement> statements = connections.get(target);
+            if (statements == null) {
+                statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+                connections.put(target, statements);
+                evictConnections(evicted);
+            }
+
+            PreparedStatement existing = statements.put(sql, pstmt);
+            if (existing != null) {
+                evicted.add(existing);
+            }
+            if (statements.size() > maxStatements) {
+                Iterator<PreparedStatement> eldest = statements.values().iterator();
+                evicted.add(eldest.next());
+                eldest.remove();
+            }
+        }
+
+        close(evicted);
+    }
+
+    /**
+     * Closes and removes the cached statements of a connection that is about to be closed
+     * or given back to its pool. The statements of a physical connection are kept if
+     * unwrapConnections is set, as the physical connection outlives the pooled one.
+     */
+    public void releaseConnection(Connection conn) {
+        if (unwrapConnections || (conn == null)) {
+            return;
+        }
+
+        List<PreparedStatement> evicted = new ArrayList<PreparedStatement>();
+        synchronized (connections) {
+            Map<String, PreparedStatement> statements = connections.remove(conn);
+            if (statements != null) {
+                evicted.addAll(statements.values());
+            }
+        }
+
+        close(evicted);
+    }
+
+    /**
+     * Closes and removes all the cached statements. Statements in use are closed when
+     * they are released.
+     */
+    public void clear() {
+        List<PreparedStatement> evicted = new ArrayList<PreparedStatement>();
+        synchronized (connections) {
+            for (Map<String, PreparedStatement> statements : connections.values()) {
+                evicted.addAll(statements.values());
+            }
+            connections.clear();
+            borrowed.clear();
+        }
+
+        close(evicted);
+    }
+
+    /**
+     * Returns the number of statements in the cache, not counting the ones in use
+     */
+    public int size() {
+        int size = 0;
+        synchronized (connections) {
+            for (Map<String, PreparedStatement> statements : connections.values()) {
+                size += statements.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the ratio of prepare calls that were served from the cache, 0 if there have
+     * been none
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return (total == 0) ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementCache{size=" + size() +
+               ", hits=" + hits.get() +
+               ", misses=" + misses.get() +
+               ", evictions=" + evictions.get() +
+               '}';
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    /**
+     * Returns the physical connection behind a pooled connection, or the connection
+     * itself if it does not wrap one
+     */
+    private Connection unwrap(Connection conn) {
+        try {
+            if (conn.isWrapperFor(Connection.class)) {
+                Connection physical = conn.unwrap(Connection.class);
+                if (physical != null) {
+                    return physical;
+                }
+            }
+        } catch (SQLException sqle) {
+            // not a wrapper
+        } catch (AbstractMethodError e) {
+            // a driver older than JDBC 4
+        }
+        return conn;
+    }
+
+    /**
+     * Removes the connections that have been closed, i.e. retired by their pool, and then
+     * the least recently used connections over MAX_CONNECTIONS, adding their statements
+     * to the evicted list. Called holding the lock.
+     */
+    private void evictConnections(List<PreparedStatement> evicted) {
+        Iterator<Map.Entry<Connection, LinkedHashMap<String, PreparedStatement>>> entries =
+                connections.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Connection, LinkedHashMap<String, PreparedStatement>> entry =
+                    entries.next();
+            if (isClosed(entry.getKey())) {
+                evicted.addAll(entry.getValue().values());
+                entries.remove();
+            }
+        }
+
+        Iterator<LinkedHashMap<String, PreparedStatement>> eldest =
+                connections.values().iterator();
+        while (connections.size() > MAX_CONNECTIONS) {
+            evicted.addAll(eldest.next().values());
+            eldest.remove();
+        }
+    }
+
+    private static boolean isClosed(Connection conn) {
+        try {
+            return conn.isClosed();
+        } catch (SQLException sqle) {
+            return true;
+        }
+    }
+
+    private void close(List<PreparedStatement> evicted) {
+        for (PreparedStatement pstmt : evicted) {
+            evictions.incrementAndGet();
+            SqlResourceUtil.closeResource(pstmt);
+        }
+    }
+
+    // ---- Bean Properties ---------------------------------------------------
+
+    public int getMaxStatements() {
+        return maxStatements;
+    }
+
+    public boolean isUnwrapConnections() {
+        return unwrapConnections;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.bean;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Types;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.test.dto.SimpleInteger;
+import org.cylog.rdo.util.ReflectionUtil;
+
+/**
+ * Tests the SQL statements built by the RdoMapper.
+ *
+ * @author Kostas Symeonidis
+ */
+public class RdoMapperTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private TableModel table;
+    private RdoMapper mapper;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void createMapper() {
+        this.table = new TableModel("TABLE_OF_INTS");
+        table.addColumn(new ColumnModel(1, "INTEGER_VALUE", Types.INTEGER, 10, 0, false));
+        table.addColumn(new ColumnModel(2, "OTHER_VALUE", Types.INTEGER, 10, 0, true));
+
+        this.mapper = new RdoMapper(ReflectionUtil.createClassModel(SimpleInteger.class), table);
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void keyStatementsAreBuiltOncePerArity() {
+        String one = mapper.getSqlStatement(new Object[]{1});
+
+        assertThat(one, is(table.getSqlStatement(new Object[]{1})));
+        assertThat(mapper.getSqlStatement(new Object[]{2}), is(sameInstance(one)));
+        assertThat(mapper.getSqlStatement(new Object[]{1, 2}),
+                   is("SELECT integer_value, other_value FROM table_of_ints " +
+                      "WHERE integer_value = ? AND other_value = ?"));
+        assertThat(mapper.getSqlStatement(null),
+                   is(sameInstance(mapper.getSqlStatement(new Object[0]))));
+        assertThat(mapper.getSqlStatementWithWhereClause(null),
+                   is(sameInstance(mapper.getSqlStatement(null))));
+    }
+
+    @Test
+    public void whereStatementsAreKeptForRecentClauses() {
+        String first = mapper.getSqlStatementWithWhereClause("integer_value > ?");
+
+        assertThat(first, is(table.getSqlStatementWithWhereClause("integer_value > ?")));
+        assertThat(mapper.getSqlStatementWithWhereClause(new String("integer_value > ?")),
+                   is(sameInstance(first)));
+
+        for (int i = 0; i < RdoMapper.MAX_CACHED_WHERE_CLAUSES; i++) {
+            mapper.getSqlStatementWithWhereClause("integer_value = " + i);
+        }
+
+        String evicted = mapper.getSqlStatementWithWhereClause("integer_value > ?");
+        assertThat(evicted, is(first));
+        assertThat(evicted, is(not(sameInstance(first))));
+    }
+}
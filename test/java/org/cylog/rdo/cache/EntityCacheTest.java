@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.test.dto.ImmutableNumberData;
+import org.cylog.rdo.test.dto.SimpleInteger;
+
+/**
+ * Tests the entity cache of the DTOs read by primary key.
+ *
+ * @author Kostas Symeonidis
+ */
+public class EntityCacheTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+    private EntityCache cache;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:entity-cache");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE cached_refs (integer_value INT NOT NULL)");
+        stmt.execute("INSERT INTO cached_refs VALUES (1)");
+        stmt.execute("CREATE TABLE numbers (integer_value INT NOT NULL, " +
+                     "integer_value_nullable INT, long_value BIGINT NOT NULL, " +
+                     "long_value_nullable BIGINT, float_value REAL NOT NULL, " +
+                     "float_value_nullable REAL, double_value DOUBLE NOT NULL, " +
+                     "double_value_nullable DOUBLE)");
+        stmt.execute("INSERT INTO numbers VALUES (7, NULL, 8, NULL, 1.5, NULL, 2.5, NULL)");
+        stmt.close();
+        conn.commit();
+
+        this.cache = new EntityCache(100);
+        this.dao = new RdoDao(ds);
+        dao.setEntityCache(cache);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE cached_refs");
+            stmt.execute("DROP TABLE numbers");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void hitsAreCopiesOfTheCachedDto() throws Exception {
+        cache.setTimeToLive("cached_refs", 1, TimeUnit.HOURS);
+
+        SimpleInteger first = dao.getDto(SimpleInteger.class, "CACHED_REFS", 1);
+        execute("UPDATE cached_refs SET integer_value = 2");
+        first.setIntegerValue(3);
+
+        SimpleInteger second = dao.getDto(SimpleInteger.class, "CACHED_REFS", 1);
+        assertThat(second.getIntegerValue(), is(1));
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(dao.getDto(SimpleInteger.class, "CACHED_REFS", 1),
+                   is(not(sameInstance(second))));
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getMisses(), is(1L));
+
+        cache.invalidate("cached_refs", 1);
+        assertThat(dao.getDto(SimpleInteger.class, "CACHED_REFS", 1), is(nullValue()));
+        assertThat(dao.getDto(SimpleInteger.class, "CACHED_REFS", 2).getIntegerValue(), is(2));
+    }
+
+    @Test
+    public void immutableDtosAreShared() {
+        cache.setTimeToLive("NUMBERS", 1, TimeUnit.HOURS);
+
+        ImmutableNumberData first = dao.getDto(ImmutableNumberData.class, "NUMBERS", 7);
+        assertThat(dao.getDto(ImmutableNumberData.class, "NUMBERS", 7), is(sameInstance(first)));
+    }
+
+    @Test
+    public void onlyTablesWithTimeToLiveAreCached() throws Exception {
+        assertThat(dao.getDto(SimpleInteger.class, "CACHED_REFS", 1), is(notNullValue()));
+        assertThat(cache.size(), is(0));
+
+        cache.setTimeToLive("CACHED_REFS", 50, TimeUnit.MILLISECONDS);
+        dao.getDto(SimpleInteger.class, "CACHED_REFS", 1);
+        assertThat(cache.size(), is(1));
+
+        execute("UPDATE cached_refs SET integer_value = 2");
+        Thread.sleep(100);
+        assertThat(dao.getDto(SimpleInteger.class, "CACHED_REFS", 1), is(nullValue()));
+
+        cache.setTimeToLive("CACHED_REFS", 0, TimeUnit.MILLISECONDS);
+        dao.getDto(SimpleInteger.class, "CACHED_REFS", 2);
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void frequentEntriesSurviveAScan() {
+        cache.setTimeToLive("CACHED_REFS", 1, TimeUnit.HOURS);
+        RdoMapper mapper = dao.bind(SimpleInteger.class, "CACHED_REFS").getMapper();
+
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 5; j++) {
+                cache.get(mapper, new Object[]{i});
+            }
+            cache.put(mapper, new Object[]{i}, integer(i));
+        }
+        assertThat(cache.size(), is(100));
+
+        // a scan of keys read once each does not replace the frequently read ones
+        for (int i = 1000; i < 2000; i++) {
+            cache.get(mapper, new Object[]{i});
+            cache.put(mapper, new Object[]{i}, integer(i));
+        }
+
+        assertTrue(cache.size() <= 100);
+        int hot = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.get(mapper, new Object[]{i}) != null) {
+                hot++;
+            }
+        }
+        assertTrue("hot entries left " + hot, hot >= 95);
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private void execute(String sql) throws Exception {
+        Statement stmt = conn.createStatement();
+        stmt.execute(sql);
+        stmt.close();
+        conn.commit();
+    }
+
+    private static SimpleInteger integer(int value) {
+        SimpleInteger dto = new SimpleInteger();
+        dto.setIntegerValue(value);
+        return dto;
+    }
+}
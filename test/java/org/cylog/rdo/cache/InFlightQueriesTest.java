@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.dao.extractor.QueryOptions;
+import org.cylog.rdo.test.dto.SimpleInteger;
+
+/**
+ * Tests the sharing of the execution of identical queries in flight. The query of the
+ * tests waits in the database, through a Java function, until the test releases it.
+ *
+ * @author Kostas Symeonidis
+ */
+public class InFlightQueriesTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private static final String SQL = "SELECT hold(integer_value) AS integer_value " +
+                                      "FROM shared_numbers ORDER BY integer_value";
+
+    private static volatile CountDownLatch release;
+
+    private Connection conn;
+    private RdoDao dao;
+    private InFlightQueries inFlight;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:in-flight");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE shared_numbers (integer_value INT NOT NULL)");
+        stmt.execute("INSERT INTO shared_numbers VALUES (1)");
+        stmt.execute("INSERT INTO shared_numbers VALUES (2)");
+        stmt.execute("CREATE FUNCTION hold(v INT) RETURNS INT LANGUAGE JAVA " +
+                     "DETERMINISTIC NO SQL EXTERNAL NAME " +
+                     "'CLASSPATH:org.cylog.rdo.cache.InFlightQueriesTest.hold'");
+        stmt.close();
+        conn.commit();
+
+        release = new CountDownLatch(1);
+        this.inFlight = new InFlightQueries();
+        this.dao = new RdoDao(ds);
+        dao.setInFlightQueries(inFlight);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        release.countDown();
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP FUNCTION hold");
+            stmt.execute("DROP TABLE shared_numbers");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void identicalQueriesShareOneExecution() throws Exception {
+        final List<List<SimpleInteger>> results =
+                Collections.synchronizedList(new ArrayList<List<SimpleInteger>>());
+        List<Thread> threads = startReaders(5, null, results);
+
+        // the first reader holds the query until the others wait for it
+        waitFor(4, 1);
+        release.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertThat(results.size(), is(5));
+        assertThat(inFlight.getExecutions(), is(1L));
+        assertThat(inFlight.getSharedExecutions(), is(4L));
+        assertThat(inFlight.size(), is(0));
+        for (List<SimpleInteger> list : results) {
+            assertThat(list.size(), is(2));
+            assertThat(list.get(1).getIntegerValue(), is(2));
+        }
+        assertThat(results.get(0).get(0), is(not(sameInstance(results.get(1).get(0)))));
+    }
+
+    @Test
+    public void optedOutQueriesRunOnTheirOwn() throws Exception {
+        QueryOptions options = new QueryOptions();
+        options.setShareInFlight(false);
+
+        final List<List<SimpleInteger>> results =
+                Collections.synchronizedList(new ArrayList<List<SimpleInteger>>());
+        List<Thread> threads = startReaders(2, options, results);
+        release.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertThat(results.size(), is(2));
+        assertThat(inFlight.getExecutions(), is(0L));
+    }
+
+    @Test
+    public void completedQueriesAreNotKept() {
+        release.countDown();
+        dao.getDtoListFromSql(SimpleInteger.class, "SHARED_NUMBERS", SQL);
+        dao.getDtoListFromSql(SimpleInteger.class, "SHARED_NUMBERS", SQL);
+        dao.getDto(SimpleInteger.class, "SHARED_NUMBERS", 1);
+
+        assertThat(inFlight.getExecutions(), is(3L));
+        assertThat(inFlight.getSharedExecutions(), is(0L));
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    /**
+     * The Java function of the query, which waits for the test to release it
+     */
+    public static int hold(int value) throws InterruptedException {
+        release.await(10, TimeUnit.SECONDS);
+        return value;
+    }
+
+    private List<Thread> startReaders(int count, final QueryOptions options,
+                                      final List<List<SimpleInteger>> results) {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < count; i++) {
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    results.add(dao.getDtoListFromSql(options, SimpleInteger.class,
+                                                      "SHARED_NUMBERS", SQL));
+                }
+            };
+            t.start();
+            threads.add(t);
+        }
+        return threads;
+    }
+
+    private void waitFor(long sharedExecutions, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (((inFlight.getSharedExecutions() < sharedExecutions) ||
+                (inFlight.size() < size)) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+    }
+}
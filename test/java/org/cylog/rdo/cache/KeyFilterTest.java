@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.exception.ModelNotSupportedException;
+import org.cylog.rdo.test.dto.SimpleInteger;
+
+/**
+ * Tests the key filters checked before a DTO is read by primary key.
+ *
+ * @author Kostas Symeonidis
+ */
+public class KeyFilterTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:key-filter");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE filtered_ints (integer_value INT NOT NULL PRIMARY KEY)");
+        for (int i = 0; i < 100; i += 2) {
+            stmt.execute("INSERT INTO filtered_ints VALUES (" + i + ")");
+        }
+        stmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE filtered_ints");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void missingKeysAreNotRead() throws Exception {
+        KeyFilter filter = dao.buildKeyFilter("FILTERED_INTS", 1, 0.01);
+        assertThat(filter.getKeyCount(), is(50L));
+
+        for (int i = 0; i < 100; i++) {
+            SimpleInteger dto = dao.getDto(SimpleInteger.class, "FILTERED_INTS", i);
+            assertThat(dto == null, is(i % 2 == 1));
+        }
+        assertThat(filter.getNegatives() + filter.getFalsePositives(), is(50L));
+        assertTrue(filter.getFalsePositiveRate() < 0.2);
+
+        // an inserted key is found once it is added to the filter
+        execute("INSERT INTO filtered_ints VALUES (1001)");
+        assertThat(dao.getDto(SimpleInteger.class, "FILTERED_INTS", 1001), is(nullValue()));
+        dao.addKeys("filtered_ints", 1001);
+        assertThat(dao.getDto(SimpleInteger.class, "FILTERED_INTS", 1001), is(notNullValue()));
+
+        execute("INSERT INTO filtered_ints VALUES (1003)");
+        assertThat(dao.refreshKeyFilter("FILTERED_INTS"), is(true));
+        assertThat(dao.getDto(SimpleInteger.class, "FILTERED_INTS", 1003), is(notNullValue()));
+    }
+
+    @Test(expected = ModelNotSupportedException.class)
+    public void noKeyColumnsAreRejected() {
+        dao.buildKeyFilter("FILTERED_INTS", 0, 0.01);
+    }
+
+    @Test(expected = ModelNotSupportedException.class)
+    public void moreKeyColumnsThanTheTableHasAreRejected() {
+        dao.buildKeyFilter("FILTERED_INTS", 2, 0.01);
+    }
+
+    @Test
+    public void keysMatchAcrossValueClasses() {
+        KeyFilter filter = new KeyFilter(2, 0.01);
+        assertThat(filter.mightContain(1, "x"), is(true));
+
+        List<Object[]> keys = new ArrayList<Object[]>();
+        keys.add(new Object[]{1L, "open  "});
+        filter.rebuild(10, keys.iterator());
+
+        assertThat(filter.mightContain(1, "open"), is(true));
+        assertThat(filter.mightContain(new BigDecimal("1.00"), "OPEN"), is(true));
+        assertThat(filter.mightContain((short) 1, Status.OPEN), is(true));
+        assertThat(filter.mightContain(1), is(true));
+    }
+
+    @Test
+    public void keysOfOtherClassesThanTheColumnAreNotFilteredOut() {
+        dao.buildKeyFilter("FILTERED_INTS", 1, 0.01);
+
+        assertThat(dao.getDto(SimpleInteger.class, "FILTERED_INTS", "42").getIntegerValue(),
+                   is(42));
+        assertThat(dao.getDto(SimpleInteger.class, "FILTERED_INTS", 42.0).getIntegerValue(),
+                   is(42));
+        assertThat(dao.getDto(SimpleInteger.class, "FILTERED_INTS", new BigDecimal("42.00"))
+                      .getIntegerValue(), is(42));
+    }
+
+    @Test
+    public void keysAreConvertedToTheTypesOfTheColumns() {
+        KeyFilter filter = new KeyFilter(new int[]{Types.INTEGER, Types.VARCHAR}, 0.01);
+        List<Object[]> keys = new ArrayList<Object[]>();
+        keys.add(new Object[]{42, "7"});
+        filter.rebuild(10, keys.iterator());
+
+        assertThat(filter.mightContain("42", 7), is(true));
+        assertThat(filter.mightContain(42.0f, 7L), is(true));
+        // keys that cannot be converted are left to the database
+        assertThat(filter.mightContain("x", "7"), is(true));
+        assertThat(filter.mightContain(true, "7"), is(true));
+        assertThat(filter.mightContain(43, "7"), is(false));
+    }
+
+    @Test
+    public void keysTheDatabaseMayCompareOtherwiseAreNotFilteredOut() {
+        KeyFilter filter = new KeyFilter(new int[]{Types.CHAR}, 0.01);
+        List<Object[]> keys = new ArrayList<Object[]>();
+        keys.add(new Object[]{"042"});
+        keys.add(new Object[]{"caf\u00e9"});
+        filter.rebuild(10, keys.iterator());
+
+        // a number may be compared with a character column as a number
+        assertThat(filter.mightContain(42), is(true));
+        // and a string as a case- and accent-insensitive collation does
+        assertThat(filter.mightContain("CAFE"), is(true));
+        assertThat(filter.mightContain("42"), is(false));
+    }
+
+    @Test
+    public void falsePositiveRateIsNearTheTarget() {
+        KeyFilter filter = new KeyFilter(1, 0.01);
+        List<Object[]> keys = new ArrayList<Object[]>();
+        for (int i = 0; i < 10000; i++) {
+            keys.add(new Object[]{i});
+        }
+        filter.rebuild(keys.size(), keys.iterator());
+
+        for (int i = 0; i < 10000; i++) {
+            assertTrue("no false negatives", filter.mightContain(i));
+        }
+
+        int positives = 0;
+        for (int i = 10000; i < 20000; i++) {
+            if (filter.mightContain(i)) {
+                positives++;
+            }
+        }
+        assertTrue("false positives " + positives, positives < 300);
+        assertTrue(filter.getExpectedFalsePositiveRate() < 0.02);
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private void execute(String sql) throws Exception {
+        Statement stmt = conn.createStatement();
+        stmt.execute(sql);
+        stmt.close();
+        conn.commit();
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    public enum Status {
+        OPEN, CLOSED
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Types;
+
+import org.junit.Test;
+
+/**
+ * Tests the conversion of key values to the values their columns compare them as.
+ *
+ * @author Kostas Symeonidis
+ */
+public class KeyTupleTest {
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void numbersAreEqualAcrossClasses() {
+        int[] types = {Types.INTEGER, Types.DECIMAL};
+        KeyTuple key = KeyTuple.ofColumnValues(new Object[]{42, 1.5}, types, false);
+
+        assertThat(KeyTuple.ofColumnValues(new Object[]{"42", new BigDecimal("1.50")}, types,
+                                           false), is(key));
+        assertThat(KeyTuple.ofColumnValues(new Object[]{BigInteger.valueOf(42), 1.5f}, types,
+                                           false), is(key));
+        assertThat(KeyTuple.ofColumnValues(new Object[]{42.0, "1.500 "}, types, false),
+                   is(key));
+        assertThat(KeyTuple.ofColumnValues(new Object[]{43, 1.5}, types, false),
+                   is(not(key)));
+    }
+
+    @Test
+    public void stringsAreFoldedOnlyWhenAsked() {
+        assertThat(KeyTuple.toColumnValue("Caf\u00e9  ", Types.CHAR, false),
+                   is((Object) "Caf\u00e9"));
+        assertThat(KeyTuple.toColumnValue("Caf\u00e9  ", Types.CHAR, true), is((Object) "cafe"));
+        assertThat(KeyTuple.toColumnValue('x', Types.VARCHAR, true), is((Object) "x"));
+    }
+
+    @Test
+    public void valuesTheDatabaseMayCompareOtherwiseAreUncomparable() {
+        assertThat(KeyTuple.toColumnValue(42, Types.VARCHAR, false),
+                   is(sameInstance(KeyTuple.UNCOMPARABLE)));
+        assertThat(KeyTuple.toColumnValue("x", Types.INTEGER, false),
+                   is(sameInstance(KeyTuple.UNCOMPARABLE)));
+        assertThat(KeyTuple.toColumnValue(Double.NaN, Types.DOUBLE, false),
+                   is(sameInstance(KeyTuple.UNCOMPARABLE)));
+        assertThat(KeyTuple.toColumnValue(true, Types.BOOLEAN, false),
+                   is(sameInstance(KeyTuple.UNCOMPARABLE)));
+        assertThat(KeyTuple.ofColumnValues(new Object[]{1, 42}, new int[]{Types.INTEGER,
+                                           Types.CHAR}, false), is(nullValue()));
+    }
+}
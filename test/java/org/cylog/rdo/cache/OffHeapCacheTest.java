@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.dao.RdoDao;
+
+/**
+ * Tests the cache of the DTOs read by primary key kept off the heap.
+ *
+ * @author Kostas Symeonidis
+ */
+public class OffHeapCacheTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:off-heap-cache");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE off_heap_refs (id INT NOT NULL PRIMARY KEY, " +
+                     "name VARCHAR(20), status VARCHAR(10), created TIMESTAMP, active CHAR(1))");
+        stmt.execute("INSERT INTO off_heap_refs VALUES " +
+                     "(1, 'first', 'OPEN', '2014-03-01 10:20:30.123456', 'Y')");
+        stmt.execute("INSERT INTO off_heap_refs VALUES (2, NULL, NULL, NULL, NULL)");
+        stmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE off_heap_refs");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void valuesAreReadBackFromDirectSlabs() throws Exception {
+        OffHeapCache cache = new OffHeapCache(4096, 4);
+        assertValuesAreReadBack(cache);
+    }
+
+    @Test
+    public void valuesAreReadBackFromMappedSlabs() throws Exception {
+        File file = File.createTempFile("off-heap-cache", ".slabs");
+        file.deleteOnExit();
+
+        OffHeapCache cache = new OffHeapCache(file, 4096, 2);
+        assertValuesAreReadBack(cache);
+        file.delete();
+    }
+
+    @Test
+    public void oldestSlabIsEvictedWhole() {
+        OffHeapCache cache = new OffHeapCache(32, 2);
+        cache.setTimeToLive("OFF_HEAP_REFS", 1, TimeUnit.HOURS);
+        RdoMapper mapper = dao.bind(RefData.class, "OFF_HEAP_REFS").getMapper();
+
+        // two rows fit in a slab
+        for (int i = 1; i <= 5; i++) {
+            cache.put(mapper, new Object[]{i}, ref(i, "r" + i));
+        }
+
+        assertThat(cache.size(), is(3));
+        assertThat(cache.getEvictions(), is(2L));
+        assertThat(cache.get(mapper, new Object[]{1}), is(nullValue()));
+        assertThat(cache.get(mapper, new Object[]{2}), is(nullValue()));
+        assertThat(((RefData) cache.get(mapper, new Object[]{5})).getName(), is("r5"));
+        assertTrue(cache.getBytesUsed() <= 64);
+    }
+
+    @Test
+    public void onlyTablesWithTimeToLiveAreCached() {
+        OffHeapCache cache = new OffHeapCache(4096, 2);
+        dao.setOffHeapCache(cache);
+
+        dao.getDto(RefData.class, "OFF_HEAP_REFS", 1);
+        assertThat(cache.size(), is(0));
+
+        cache.setTimeToLive("off_heap_refs", 1, TimeUnit.HOURS);
+        dao.getDto(RefData.class, "OFF_HEAP_REFS", 1);
+        assertThat(cache.size(), is(1));
+
+        dao.invalidateTable("OFF_HEAP_REFS");
+        assertThat(cache.size(), is(0));
+        assertThat(cache.getHeapSaved(), is(0L));
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private void assertValuesAreReadBack(OffHeapCache cache) throws Exception {
+        cache.setTimeToLive("OFF_HEAP_REFS", 1, TimeUnit.HOURS);
+        dao.setOffHeapCache(cache);
+
+        RefData first = dao.getDto(RefData.class, "OFF_HEAP_REFS", 1);
+        RefData empty = dao.getDto(RefData.class, "OFF_HEAP_REFS", 2);
+        execute("UPDATE off_heap_refs SET name = 'changed'");
+
+        RefData cached = dao.getDto(RefData.class, "OFF_HEAP_REFS", 1);
+        assertThat(cached, is(not(sameInstance(first))));
+        assertThat(cached.getId(), is(1));
+        assertThat(cached.getName(), is("first"));
+        assertThat(cached.getStatus(), is(Status.OPEN));
+        assertThat(cached.getActive(), is(Boolean.TRUE));
+        assertThat(cached.getCreated(), is(first.getCreated()));
+        assertThat(((Timestamp) cached.getCreated()).getNanos(), is(123456000));
+
+        RefData cachedEmpty = dao.getDto(RefData.class, "OFF_HEAP_REFS", 2);
+        assertThat(cachedEmpty.getId(), is(empty.getId()));
+        assertThat(cachedEmpty.getName(), is(nullValue()));
+        assertThat(cachedEmpty.getStatus(), is(nullValue()));
+        assertThat(cachedEmpty.getCreated(), is(nullValue()));
+        assertThat(cachedEmpty.getActive(), is(nullValue()));
+
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getMisses(), is(2L));
+        assertTrue(cache.getHeapSaved() > cache.getBytesUsed());
+        assertThat(cache.toString(), is(notNullValue()));
+    }
+
+    private void execute(String sql) throws Exception {
+        Statement stmt = conn.createStatement();
+        stmt.execute(sql);
+        stmt.close();
+        conn.commit();
+    }
+
+    private static RefData ref(int id, String name) {
+        RefData dto = new RefData();
+        dto.setId(id);
+        dto.setName(name);
+        return dto;
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    public enum Status {
+        OPEN, CLOSED
+    }
+
+    public static class RefData {
+
+        private int id;
+        private String name;
+        private Status status;
+        private Date created;
+        private Boolean active;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(Status status) {
+            this.status = status;
+        }
+
+        public Date getCreated() {
+            return created;
+        }
+
+        public void setCreated(Date created) {
+            this.created = created;
+        }
+
+        public Boolean getActive() {
+            return active;
+        }
+
+        public void setActive(Boolean active) {
+            this.active = active;
+        }
+    }
+}
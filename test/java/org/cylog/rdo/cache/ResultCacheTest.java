@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.test.dto.SimpleInteger;
+
+/**
+ * Tests the cache of the DTO lists read by getDtoList.
+ *
+ * @author Kostas Symeonidis
+ */
+public class ResultCacheTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+    private ResultCache cache;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:result-cache");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE cached_lists (integer_value INT NOT NULL)");
+        stmt.execute("INSERT INTO cached_lists VALUES (1)");
+        stmt.execute("INSERT INTO cached_lists VALUES (2)");
+        stmt.close();
+        conn.commit();
+
+        this.cache = new ResultCache(1024 * 1024);
+        this.dao = new RdoDao(ds);
+        dao.setResultCache(cache);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE cached_lists");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void hitsAreCopiesOfTheCachedList() throws Exception {
+        cache.setTimeToLive("cached_lists", 1, 0, TimeUnit.HOURS);
+
+        List<SimpleInteger> first = readAll();
+        assertThat(first.size(), is(2));
+        execute("DELETE FROM cached_lists WHERE integer_value = 2");
+        first.get(0).setIntegerValue(3);
+        first.clear();
+
+        List<SimpleInteger> second = readAll();
+        assertThat(second.size(), is(2));
+        assertThat(second.get(0).getIntegerValue(), is(1));
+        assertThat(readAll().get(0), is(not(sameInstance(second.get(0)))));
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getMisses(), is(1L));
+
+        dao.invalidateTable("CACHED_LISTS");
+        assertThat(readAll().size(), is(1));
+    }
+
+    @Test
+    public void staleListsAreServedWhileRefreshed() throws Exception {
+        cache.setExecutor(new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        cache.setTimeToLive("CACHED_LISTS", 1, TimeUnit.HOURS.toNanos(1), TimeUnit.NANOSECONDS);
+
+        readAll();
+        execute("DELETE FROM cached_lists WHERE integer_value = 2");
+
+        // the stale list is returned and refreshed for the next read
+        assertThat(readAll().size(), is(2));
+        assertThat(readAll().size(), is(1));
+        assertThat(cache.getStaleHits(), is(2L));
+        assertThat(cache.getRefreshes(), is(2L));
+        assertThat(cache.getMisses(), is(1L));
+    }
+
+    @Test
+    public void listsAreEvictedOverTheMaximumBytes() {
+        this.cache = new ResultCache(120);
+        dao.setResultCache(cache);
+        cache.setTimeToLive("CACHED_LISTS", 1, 0, TimeUnit.HOURS);
+
+        dao.getDtoList(SimpleInteger.class, "CACHED_LISTS", "integer_value = ?", 1);
+        assertThat(cache.size(), is(1));
+        dao.getDtoList(SimpleInteger.class, "CACHED_LISTS", "integer_value = ?", 2);
+        assertThat(cache.size(), is(1));
+        assertThat(cache.getEvictions(), is(1L));
+        assertTrue(cache.getWeightedSize() <= 120);
+
+        // a list bigger than the whole cache is not cached
+        readAll();
+        readAll();
+        assertThat(cache.getMisses(), is(4L));
+    }
+
+    @Test
+    public void onlyTablesWithTimeToLiveAreCached() {
+        readAll();
+        assertThat(cache.size(), is(0));
+
+        cache.setTimeToLive("CACHED_LISTS", 1, 0, TimeUnit.HOURS);
+        readAll();
+        assertThat(cache.size(), is(1));
+
+        cache.setTimeToLive("CACHED_LISTS", 0, 0, TimeUnit.HOURS);
+        assertThat(cache.size(), is(0));
+        assertThat(cache.getWeightedSize(), is(0L));
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private List<SimpleInteger> readAll() {
+        return dao.getDtoList(SimpleInteger.class, "CACHED_LISTS", null);
+    }
+
+    private void execute(String sql) throws Exception {
+        Statement stmt = conn.createStatement();
+        stmt.execute(sql);
+        stmt.close();
+        conn.commit();
+    }
+}
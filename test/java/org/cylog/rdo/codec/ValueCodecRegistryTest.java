@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.codec;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.dao.RdoDao;
+
+/**
+ * ValueCodecRegistry Tester.
+ *
+ * @author Kostas Symeonidis
+ */
+public class ValueCodecRegistryTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:value-codec");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE codecs (id INT NOT NULL, status VARCHAR(10), " +
+                     "active CHAR(1), priority INT)");
+        stmt.execute("INSERT INTO codecs VALUES (1, 'open', 'Y', 1)");
+        stmt.execute("INSERT INTO codecs VALUES (2, 'CLOSED', 'N', 2)");
+        stmt.execute("INSERT INTO codecs VALUES (3, 'Open', NULL, NULL)");
+        stmt.close();
+        conn.commit();
+
+        ValueCodecRegistry.register(Priority.class, new PriorityCodec());
+
+        this.dao = new RdoDao(ds);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE codecs");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void readWithCodecs() {
+        assertCodecs(dao.getDtoList(CodecData.class, "CODECS", "id > ? ORDER BY id", 0));
+    }
+
+    @Test
+    public void readWithCodecsAndCompiledMapper() {
+        dao.setCompileMappers(true);
+        assertCodecs(dao.getDtoList(CodecData.class, "CODECS", "id > ? ORDER BY id", 0));
+    }
+
+    @Test
+    public void writeParametersWithCodecs() {
+        List<CodecData> list = dao.getDtoList(CodecData.class, "CODECS",
+                                              "status = ? AND priority = ?",
+                                              Status.OPEN, Priority.LOW);
+        assertThat(list.size(), is(1));
+        assertThat(list.get(0).getId(), is(1));
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private void assertCodecs(List<CodecData> list) {
+        assertThat(list.size(), is(3));
+
+        assertThat(list.get(0).getStatus(), is(Status.OPEN));
+        assertThat(list.get(0).getActive(), is(Boolean.TRUE));
+        assertThat(list.get(0).getPriority(), is(Priority.LOW));
+
+        assertThat(list.get(1).getStatus(), is(Status.CLOSED));
+        assertThat(list.get(1).getActive(), is(Boolean.FALSE));
+        assertThat(list.get(1).getPriority(), is(Priority.HIGH));
+
+        assertThat(list.get(2).getStatus(), is(Status.OPEN));
+        assertThat(list.get(2).getActive(), is(nullValue()));
+        assertThat(list.get(2).getPriority(), is(nullValue()));
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    public enum Status {
+        OPEN, CLOSED
+    }
+
+    /**
+     * Stored by the PriorityCodec as a number
+     */
+    public enum Priority {
+        LOW, HIGH
+    }
+
+    public static class PriorityCodec implements ValueCodec {
+
+        public Object read(ResultSet rs, int columnIndex) throws SQLException {
+            int i = rs.getInt(columnIndex);
+            return rs.wasNull() ? null : Priority.values()[i - 1];
+        }
+
+        public void write(PreparedStatement pstmt, int parameterIndex, Object value)
+                throws SQLException {
+            pstmt.setInt(parameterIndex, ((Priority) value).ordinal() + 1);
+        }
+    }
+
+    public static class CodecData {
+
+        private int id;
+        private Status status;
+        private Boolean active;
+        private Priority priority;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(Status status) {
+            this.status = status;
+        }
+
+        public Boolean getActive() {
+            return active;
+        }
+
+        public void setActive(Boolean active) {
+            this.active = active;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public void setPriority(Priority priority) {
+            this.priority = priority;
+        }
+    }
+}
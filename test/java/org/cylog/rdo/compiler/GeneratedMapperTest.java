@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.compiler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Map;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.bean.TableModel;
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.test.dto.GeneratedImmutableNumberData;
+import org.cylog.rdo.test.dto.GeneratedNumberData;
+import org.cylog.rdo.test.dto.SimpleInteger;
+import org.cylog.rdo.util.DatabaseMetadataUtil;
+
+/**
+ * Tests the mappers generated at build time by the RdoMapperProcessor.
+ *
+ * @author Kostas Symeonidis
+ */
+public class GeneratedMapperTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:generated-mapper");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE numbers (integer_value INT NOT NULL, " +
+                     "integer_value_nullable INT, long_value BIGINT NOT NULL, " +
+                     "long_value_nullable BIGINT, float_value REAL NOT NULL, " +
+                     "float_value_nullable REAL, double_value DOUBLE NOT NULL, " +
+                     "double_value_nullable DOUBLE)");
+        stmt.execute("INSERT INTO numbers VALUES (1001, NULL, 2001, 2002, 1.5, NULL, 3.5, 4.5)");
+        stmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+        this.dao.setUseGeneratedMappers(true);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE numbers");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void registryFindsGeneratedMapper() {
+        GeneratedMapper generated = GeneratedMapperRegistry.getMapper(GeneratedNumberData.class,
+                                                                      "numbers");
+        assertThat(generated, is(notNullValue()));
+
+        RdoMapper mapper = generated.createMapper();
+        assertThat(mapper.getRowReader(), is(notNullValue()));
+        assertThat(mapper.getReadOperations().size(), is(6));
+
+        assertThat(GeneratedMapperRegistry.getMapper(SimpleInteger.class, "TABLE_OF_INTS"),
+                   is(nullValue()));
+    }
+
+    @Test
+    public void generatedMappersAreNotUsedByDefault() {
+        assertThat(new RdoDao().isUseGeneratedMappers(), is(false));
+    }
+
+    @Test
+    public void readWithGeneratedMapper() {
+        assertThat(dao.bind(GeneratedNumberData.class, "NUMBERS").getMapper().getRowReader(),
+                   is(notNullValue()));
+        GeneratedNumberData n = dao.getDto(GeneratedNumberData.class, "NUMBERS", 1001);
+
+        assertThat(n.getIntegerValue(), is(1001));
+        assertThat(n.getIntegerValueNullable(), is(nullValue()));
+        assertThat(n.getLongValueNullable(), is(2002L));
+        assertThat(n.getFloatValueNullable(), is(nullValue()));
+        assertThat(n.getDoubleValue(), is(3.5));
+    }
+
+    @Test
+    public void readImmutableWithGeneratedMapper() {
+        GeneratedMapper generated =
+                GeneratedMapperRegistry.getMapper(GeneratedImmutableNumberData.class, "NUMBERS");
+        assertThat(generated, is(notNullValue()));
+        assertThat(generated.createMapper().isConstructorMapped(), is(true));
+
+        GeneratedImmutableNumberData n =
+                dao.getDto(GeneratedImmutableNumberData.class, "NUMBERS", 1001);
+
+        assertThat(n.getIntegerValue(), is(1001));
+        assertThat(n.getIntegerValueNullable(), is(nullValue()));
+        assertThat(n.getLongValue(), is(2001L));
+        assertThat(n.getDoubleValueNullable(), is(4.5));
+    }
+
+    @Test
+    public void tableNotMatchingTheSchemaIsReadThroughReflection() throws Exception {
+        // the columns of the table are not those the mapper was generated from
+        Statement stmt = conn.createStatement();
+        stmt.execute("DROP TABLE numbers");
+        stmt.execute("CREATE TABLE numbers (integer_value INT NOT NULL, " +
+                     "long_value BIGINT NOT NULL, integer_value_nullable INT)");
+        stmt.execute("INSERT INTO numbers VALUES (1001, 2001, 7)");
+        stmt.close();
+        conn.commit();
+
+        assertThat(dao.bind(GeneratedNumberData.class, "NUMBERS").getMapper().getRowReader(),
+                   is(nullValue()));
+        GeneratedNumberData n = dao.getDto(GeneratedNumberData.class, "NUMBERS", 1001);
+
+        assertThat(n.getIntegerValue(), is(1001));
+        assertThat(n.getLongValue(), is(2001L));
+        assertThat(n.getIntegerValueNullable(), is(7));
+        assertThat(n.getLongValueNullable(), is(nullValue()));
+    }
+
+    @Test
+    public void schemaDescriptionMatchesDatabase() throws Exception {
+        TableModel live = DatabaseMetadataUtil.retrieveTableModel(conn.getMetaData(), "NUMBERS");
+
+        Map<String, TableModel> schema = SchemaDescription.read(
+                new StringReader(SchemaDescription.format(live)));
+        TableModel described = schema.get("NUMBERS");
+
+        assertThat(described.getColumnsAsCommaList(), is(live.getColumnsAsCommaList()));
+        assertThat(described.getColumns().get(1).isNullable(), is(true));
+        assertThat(described.getColumns().get(2).isNullable(), is(false));
+    }
+}
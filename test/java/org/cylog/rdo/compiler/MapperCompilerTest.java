@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.compiler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.test.dto.NumberData;
+import org.cylog.rdo.util.DatabaseMetadataUtil;
+import org.cylog.rdo.util.ReflectionUtil;
+
+/**
+ * MapperCompiler Tester.
+ *
+ * @author Kostas Symeonidis
+ */
+public class MapperCompilerTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:mapper-compiler");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE numbers (integer_value INT NOT NULL, " +
+                     "integer_value_nullable INT, long_value BIGINT NOT NULL, " +
+                     "long_value_nullable BIGINT, float_value REAL NOT NULL, " +
+                     "float_value_nullable REAL, double_value DOUBLE NOT NULL, " +
+                     "double_value_nullable DOUBLE)");
+        stmt.execute("INSERT INTO numbers VALUES (1001, 1002, 2001, 2002, 1.5, 2.5, 3.5, 4.5)");
+        stmt.execute("INSERT INTO numbers VALUES (1003, NULL, 2003, NULL, 5.5, NULL, 6.5, NULL)");
+        stmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+        this.dao.setCompileMappers(true);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE numbers");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void compileMapper() throws Exception {
+        RdoMapper mapper = new RdoMapper(
+                ReflectionUtil.createClassModel(NumberData.class),
+                DatabaseMetadataUtil.retrieveTableModel(conn.getMetaData(), "NUMBERS"));
+
+        assertThat(MapperCompiler.compile(mapper), is(notNullValue()));
+    }
+
+    @Test
+    public void readWithCompiledMapper() throws Exception {
+        List<NumberData> list = dao.getDtoList(NumberData.class, "NUMBERS",
+                                               "integer_value > ? ORDER BY integer_value", 0);
+        assertThat(list.size(), is(2));
+
+        NumberData n = list.get(0);
+        assertThat(n.getIntegerValue(), is(1001));
+        assertThat(n.getIntegerValueNullable(), is(1002));
+        assertThat(n.getLongValue(), is(2001L));
+        assertThat(n.getLongValueNullable(), is(2002L));
+        assertThat(n.getFloatValue(), is(1.5f));
+        assertThat(n.getFloatValueNullable(), is(2.5f));
+        assertThat(n.getDoubleValue(), is(3.5));
+        assertThat(n.getDoubleValueNullable(), is(4.5));
+
+        n = list.get(1);
+        assertThat(n.getIntegerValue(), is(1003));
+        assertThat(n.getIntegerValueNullable(), is(nullValue()));
+        assertThat(n.getLongValueNullable(), is(nullValue()));
+        assertThat(n.getFloatValueNullable(), is(nullValue()));
+        assertThat(n.getDoubleValueNullable(), is(nullValue()));
+    }
+}
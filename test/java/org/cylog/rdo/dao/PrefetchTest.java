@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.bean.ForeignKeyModel;
+import org.cylog.rdo.cache.KeyTuple;
+import org.cylog.rdo.exception.ModelNotFoundException;
+import org.cylog.rdo.test.dto.GroupData;
+import org.cylog.rdo.test.dto.NumberData;
+import org.cylog.rdo.util.DatabaseMetadataUtil;
+
+/**
+ * Tests the prefetch of the children of a parent list through the foreign key metadata.
+ *
+ * @author Kostas Symeonidis
+ */
+public class PrefetchTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:prefetch");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE prefetch_groups (integer_value INT NOT NULL PRIMARY KEY, " +
+                     "long_value BIGINT NOT NULL)");
+        stmt.execute("CREATE TABLE prefetch_members (long_value BIGINT NOT NULL PRIMARY KEY, " +
+                     "integer_value_nullable INT, CONSTRAINT fk_members_groups " +
+                     "FOREIGN KEY (integer_value_nullable) " +
+                     "REFERENCES prefetch_groups (integer_value))");
+        for (int g = 1; g <= 3; g++) {
+            stmt.execute("INSERT INTO prefetch_groups VALUES (" + g + ", " + (g * 100) + ")");
+        }
+        stmt.execute("INSERT INTO prefetch_members VALUES (10, 1)");
+        stmt.execute("INSERT INTO prefetch_members VALUES (11, 1)");
+        stmt.execute("INSERT INTO prefetch_members VALUES (12, 1)");
+        stmt.execute("INSERT INTO prefetch_members VALUES (30, 3)");
+        stmt.execute("INSERT INTO prefetch_members VALUES (31, 3)");
+        stmt.execute("INSERT INTO prefetch_members VALUES (99, NULL)");
+        stmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE prefetch_members");
+            stmt.execute("DROP TABLE prefetch_groups");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void foreignKeysAreRetrievedFromTheMetadata() throws Exception {
+        List<ForeignKeyModel> imported =
+                DatabaseMetadataUtil.retrieveImportedKeys(conn.getMetaData(), "PREFETCH_MEMBERS");
+        assertThat(imported.size(), is(1));
+        assertThat(imported.get(0).getName(), is("FK_MEMBERS_GROUPS"));
+        assertThat(imported.get(0).getPrimaryTable(), is("PREFETCH_GROUPS"));
+        assertThat(Arrays.asList(imported.get(0).getPrimaryColumns()),
+                   is(Arrays.asList("INTEGER_VALUE")));
+        assertThat(Arrays.asList(imported.get(0).getForeignColumns()),
+                   is(Arrays.asList("INTEGER_VALUE_NULLABLE")));
+
+        List<ForeignKeyModel> exported =
+                DatabaseMetadataUtil.retrieveExportedKeys(conn.getMetaData(), "PREFETCH_GROUPS");
+        assertThat(exported.size(), is(1));
+        assertThat(exported.get(0).getForeignTable(), is("PREFETCH_MEMBERS"));
+        assertThat(DatabaseMetadataUtil.retrieveExportedKeys(conn.getMetaData(),
+                                                             "PREFETCH_MEMBERS").size(), is(0));
+    }
+
+    @Test
+    public void childrenAreReturnedByParentKey() {
+        List<GroupData> groups = dao.getDtoList(GroupData.class, "PREFETCH_GROUPS", null);
+
+        Map<KeyTuple, List<NumberData>> members =
+                dao.prefetchChildren(groups, "PREFETCH_GROUPS", NumberData.class,
+                                     "PREFETCH_MEMBERS");
+        assertThat(members.size(), is(3));
+        assertThat(members.get(KeyTuple.of(1)).size(), is(3));
+        assertThat(members.get(KeyTuple.of(2)).size(), is(0));
+        assertThat(members.get(KeyTuple.of(3)).size(), is(2));
+        assertThat(members.get(KeyTuple.of(3)).get(0).getIntegerValueNullable(), is(3));
+    }
+
+    @Test
+    public void childrenAreSetToTheParents() {
+        List<GroupData> groups = dao.getDtoList(GroupData.class, "PREFETCH_GROUPS",
+                                                "integer_value IN (3, 2)");
+
+        dao.prefetchChildren(groups, "PREFETCH_GROUPS", NumberData.class, "PREFETCH_MEMBERS",
+                             "members");
+        for (GroupData group : groups) {
+            assertThat(group.getMembers().size(), is((group.getIntegerValue() == 3) ? 2 : 0));
+            for (NumberData member : group.getMembers()) {
+                assertThat(member.getLongValue() / 10, is((long) group.getIntegerValue()));
+            }
+        }
+    }
+
+    @Test
+    public void childrenAreSetToParentsOfDifferentSubclasses() {
+        GroupData third = new ReadOnlyGroupData();
+        third.setIntegerValue(3);
+        GroupData first = new GroupData();
+        first.setIntegerValue(1);
+        List<GroupData> groups = Arrays.asList(third, first);
+
+        dao.prefetchChildren(groups, "PREFETCH_GROUPS", NumberData.class, "PREFETCH_MEMBERS",
+                             "members");
+        assertThat(third.getMembers().size(), is(2));
+        assertThat(first.getMembers().size(), is(3));
+        assertThat(dao.prefetchChildren(groups, "PREFETCH_GROUPS", NumberData.class,
+                                        "PREFETCH_MEMBERS").size(), is(2));
+    }
+
+    @Test(expected = ModelNotFoundException.class)
+    public void tablesWithoutForeignKeyAreRejected() {
+        List<NumberData> members = dao.getDtoList(NumberData.class, "PREFETCH_MEMBERS", null);
+        dao.prefetchChildren(members, "PREFETCH_MEMBERS", GroupData.class, "PREFETCH_GROUPS");
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    /**
+     * A subclass overriding a getter and a setter, which cannot be invoked on its superclass
+     */
+    public static class ReadOnlyGroupData extends GroupData {
+
+        @Override
+        public int getIntegerValue() {
+            return super.getIntegerValue();
+        }
+
+        @Override
+        public void setMembers(List<NumberData> members) {
+            super.setMembers(Collections.unmodifiableList(members));
+        }
+    }
+}
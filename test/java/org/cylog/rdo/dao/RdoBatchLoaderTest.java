@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.test.dto.NumberData;
+
+/**
+ * Tests the coalescing of the lookups of a RdoBatchLoader into multi-gets.
+ *
+ * @author Kostas Symeonidis
+ */
+public class RdoBatchLoaderTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:batch-loader");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE loaded_numbers (integer_value INT NOT NULL PRIMARY KEY, " +
+                     "long_value BIGINT NOT NULL)");
+        for (int i = 0; i < 50; i++) {
+            stmt.execute("INSERT INTO loaded_numbers VALUES (" + i + ", " + (i * 10) + ")");
+        }
+        stmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE loaded_numbers");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void fullBatchIsReadAtOnce() throws Exception {
+        RdoBatchLoader<NumberData> loader =
+                dao.batchLoader(NumberData.class, "LOADED_NUMBERS", 1, TimeUnit.MINUTES, 10);
+
+        List<Future<NumberData>> futures = new ArrayList<Future<NumberData>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(loader.load(i * 6));
+        }
+        for (int i = 0; i < 10; i++) {
+            NumberData dto = futures.get(i).get(10, TimeUnit.SECONDS);
+            if (i * 6 < 50) {
+                assertThat(dto.getLongValue(), is(i * 60L));
+            } else {
+                assertThat(dto, is(nullValue()));
+            }
+        }
+        assertThat(loader.getLoadCount(), is(10L));
+        assertThat(loader.getBatchCount(), is(1L));
+    }
+
+    @Test
+    public void concurrentLookupsShareABatch() throws Exception {
+        final RdoBatchLoader<NumberData> loader =
+                dao.batchLoader(NumberData.class, "LOADED_NUMBERS", 500, TimeUnit.MILLISECONDS,
+                                100);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 20; i++) {
+            final int key = i;
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        NumberData dto = loader.get(key);
+                        assertThat(dto.getLongValue(), is(key * 10L));
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            t.start();
+            threads.add(t);
+        }
+
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertThat(errors.isEmpty(), is(true));
+        assertThat(loader.getBatchCount(), is(1L));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void failedBatchFailsItsLookups() {
+        RdoBatchLoader<NumberData> loader =
+                dao.batchLoader(NumberData.class, "LOADED_NUMBERS", 1, TimeUnit.MILLISECONDS, 10);
+        loader.get("not a number");
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.bean.RdoMapper;
+import org.cylog.rdo.test.dto.SimpleInteger;
+
+/**
+ * Tests the mapper lookup of the RdoDao and the bindings it returns.
+ *
+ * @author Kostas Symeonidis
+ */
+public class RdoBindingTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:rdo-binding");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE binding_ints (integer_value INT NOT NULL)");
+        stmt.execute("INSERT INTO binding_ints VALUES (5)");
+        stmt.execute("INSERT INTO binding_ints VALUES (6)");
+        stmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE binding_ints");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void bindingReadsLikeTheDao() {
+        RdoBinding<SimpleInteger> ints = dao.bind(SimpleInteger.class, "BINDING_INTS");
+
+        assertThat(ints.get(5).getIntegerValue(), is(5));
+        assertThat(ints.get(7), is(nullValue()));
+        assertThat(ints.getWhere("integer_value > ?", 5).getIntegerValue(), is(6));
+
+        List<SimpleInteger> list = ints.getList("integer_value >= ? ORDER BY integer_value", 5);
+        assertThat(list.size(), is(2));
+        assertThat(list.get(1).getIntegerValue(), is(6));
+
+        SimpleInteger merged = ints.merge(new SimpleInteger(), 6);
+        assertThat(merged.getIntegerValue(), is(6));
+    }
+
+    @Test
+    public void mapperLookupIgnoresTableCase() {
+        RdoMapper upper = dao.bind(SimpleInteger.class, "BINDING_INTS").getMapper();
+        RdoMapper lower = dao.bind(SimpleInteger.class, "binding_ints").getMapper();
+
+        assertThat(lower, is(sameInstance(upper)));
+        assertThat(dao.getDto(SimpleInteger.class, "Binding_Ints", 6).getIntegerValue(), is(6));
+    }
+
+    @Test
+    public void mapperIndexKeepsTheFirstMapper() {
+        MapperIndex index = new MapperIndex();
+        RdoMapper first = dao.bind(SimpleInteger.class, "BINDING_INTS").getMapper();
+
+        assertThat(index.get(SimpleInteger.class, "BINDING_INTS"), is(nullValue()));
+        index.put(SimpleInteger.class, "binding_ints", first);
+        index.put(SimpleInteger.class, "BINDING_INTS", null);
+
+        assertThat(index.get(SimpleInteger.class, "BINDING_INTS"), is(sameInstance(first)));
+        assertThat(index.get(SimpleInteger.class, "OTHER_INTS"), is(nullValue()));
+    }
+}
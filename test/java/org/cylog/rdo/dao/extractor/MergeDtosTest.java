@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.test.dto.NumberData;
+
+/**
+ * Tests the merge of the rows of another table into a list of DTOs with mergeDtos.
+ *
+ * @author Kostas Symeonidis
+ */
+public class MergeDtosTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private static final RdoKeyExtractor<NumberData> DETAIL_KEY =
+            new RdoKeyExtractor<NumberData>() {
+                public Object getKey(NumberData dto) {
+                    return dto.getIntegerValue();
+                }
+            };
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:merge-dtos");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE merge_orders (long_value BIGINT NOT NULL PRIMARY KEY, " +
+                     "integer_value INT NOT NULL)");
+        stmt.execute("CREATE TABLE merge_details (integer_value INT NOT NULL PRIMARY KEY, " +
+                     "double_value DOUBLE NOT NULL)");
+        for (int i = 0; i < 100; i++) {
+            stmt.execute("INSERT INTO merge_orders VALUES (" + i + ", " + (i % 40) + ")");
+        }
+        // the orders of the keys 30 to 39 have no details
+        for (int i = 0; i < 30; i++) {
+            stmt.execute("INSERT INTO merge_details VALUES (" + i + ", " + i + ".5)");
+        }
+        stmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE merge_orders");
+            stmt.execute("DROP TABLE merge_details");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void rowsAreMergedIntoTheDtosOfTheirKeys() {
+        List<NumberData> orders = dao.getDtoList(NumberData.class, "MERGE_ORDERS", null);
+
+        int merged = dao.mergeDtos(orders, "MERGE_DETAILS", DETAIL_KEY);
+        assertThat(merged, is(80));
+        assertMerged(orders);
+    }
+
+    @Test
+    public void dtosWithoutKeyAreLeftIntact() {
+        List<NumberData> orders = dao.getDtoList(NumberData.class, "MERGE_ORDERS",
+                                                 "long_value < 10");
+
+        int merged = dao.mergeDtos(orders, "MERGE_DETAILS", new RdoKeyExtractor<NumberData>() {
+            public Object getKey(NumberData dto) {
+                return (dto.getLongValue() % 2 == 0) ? new Object[]{dto.getIntegerValue()} : null;
+            }
+        });
+        assertThat(merged, is(5));
+        for (NumberData order : orders) {
+            assertThat(order.getDoubleValue(),
+                       is((order.getLongValue() % 2 == 0) ? order.getIntegerValue() + 0.5 : 0.0));
+        }
+        assertThat(dao.mergeDtos(new ArrayList<NumberData>(), "MERGE_DETAILS", DETAIL_KEY),
+                   is(0));
+    }
+
+    @Test
+    public void manyKeysAreJoinedFromATemporaryTable() {
+        dao.setKeyTableThreshold(10);
+        List<NumberData> orders = dao.getDtoList(NumberData.class, "MERGE_ORDERS", null);
+
+        assertThat(dao.mergeDtos(orders, "MERGE_DETAILS", DETAIL_KEY), is(80));
+        assertMerged(orders);
+    }
+
+    @Test
+    public void keysOfOtherClassesThanTheColumnAreMerged() {
+        List<NumberData> orders = dao.getDtoList(NumberData.class, "MERGE_ORDERS", null);
+
+        int merged = dao.mergeDtos(orders, "MERGE_DETAILS", new RdoKeyExtractor<NumberData>() {
+            public Object getKey(NumberData dto) {
+                return String.valueOf(dto.getIntegerValue());
+            }
+        });
+        assertThat(merged, is(80));
+        assertMerged(orders);
+    }
+
+    @Test
+    public void dtosOfDifferentSubclassesAreMergedThroughTheirOwnSetters() {
+        List<NumberData> dtos = new ArrayList<NumberData>();
+        for (int i = 0; i < 4; i++) {
+            NumberData dto = (i % 2 == 0) ? new RoundedNumberData() : new NumberData();
+            dto.setIntegerValue(i);
+            dtos.add(dto);
+        }
+
+        assertThat(dao.mergeDtos(dtos, "MERGE_DETAILS", DETAIL_KEY), is(4));
+        assertThat(dtos.get(0).getDoubleValue(), is(0.0));
+        assertThat(dtos.get(1).getDoubleValue(), is(1.5));
+        assertThat(dtos.get(2).getDoubleValue(), is(2.0));
+        assertThat(dtos.get(3).getDoubleValue(), is(3.5));
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private void assertMerged(List<NumberData> orders) {
+        assertThat(orders.size(), is(100));
+        for (NumberData order : orders) {
+            int key = (int) (order.getLongValue() % 40);
+            assertThat(order.getIntegerValue(), is(key));
+            assertThat(order.getDoubleValue(), is((key < 30) ? key + 0.5 : 0.0));
+        }
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    /**
+     * A subclass overriding a setter, which cannot be invoked on its superclass
+     */
+    public static class RoundedNumberData extends NumberData {
+
+        @Override
+        public void setDoubleValue(double doubleValue) {
+            super.setDoubleValue(Math.floor(doubleValue));
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.exception.DataExtractionException;
+import org.cylog.rdo.test.dto.NumberData;
+
+/**
+ * Tests the multi-get of getDtos, through IN lists and through a temporary table of keys.
+ *
+ * @author Kostas Symeonidis
+ */
+public class MultiGetTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:multi-get");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE single_numbers (integer_value INT NOT NULL PRIMARY KEY, " +
+                     "long_value BIGINT NOT NULL)");
+        stmt.execute("CREATE TABLE pair_numbers (integer_value INT NOT NULL, " +
+                     "long_value BIGINT NOT NULL, PRIMARY KEY (integer_value, long_value))");
+        for (int i = 0; i < 100; i++) {
+            stmt.execute("INSERT INTO single_numbers VALUES (" + i + ", " + (i * 10) + ")");
+            stmt.execute("INSERT INTO pair_numbers VALUES (" + (i / 10) + ", " + (i % 10) + ")");
+        }
+        stmt.execute("CREATE TABLE decimal_numbers (double_value DECIMAL(10,2) NOT NULL " +
+                     "PRIMARY KEY, long_value BIGINT NOT NULL)");
+        stmt.execute("INSERT INTO decimal_numbers VALUES (1.5, 15)");
+        stmt.execute("INSERT INTO decimal_numbers VALUES (2.25, 225)");
+        // the codes are compared regardless of case, as by default in MySQL
+        stmt.execute("CREATE TABLE coded_numbers (code VARCHAR_IGNORECASE(10) NOT NULL " +
+                     "PRIMARY KEY, long_value BIGINT NOT NULL)");
+        stmt.execute("INSERT INTO coded_numbers VALUES ('ABC', 1)");
+        stmt.execute("INSERT INTO coded_numbers VALUES ('Def', 2)");
+        stmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE single_numbers");
+            stmt.execute("DROP TABLE pair_numbers");
+            stmt.execute("DROP TABLE decimal_numbers");
+            stmt.execute("DROP TABLE coded_numbers");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void dtosComeInKeyOrderWithNullsForMisses() {
+        List<NumberData> dtos = dao.getDtos(NumberData.class, "SINGLE_NUMBERS",
+                                            Arrays.asList(42, 500, 7, 42));
+
+        assertThat(dtos.size(), is(4));
+        assertThat(dtos.get(0).getLongValue(), is(420L));
+        assertThat(dtos.get(1), is(nullValue()));
+        assertThat(dtos.get(2).getLongValue(), is(70L));
+        assertThat(dtos.get(3), is(sameInstance(dtos.get(0))));
+    }
+
+    @Test
+    public void keysSpanSeveralBuckets() {
+        List<Object> keys = new ArrayList<Object>();
+        for (int i = 99; i >= -200; i -= 1) {
+            keys.add((long) i);
+        }
+
+        List<NumberData> dtos = dao.getDtos(NumberData.class, "SINGLE_NUMBERS", keys);
+        assertDtos(keys, dtos);
+    }
+
+    @Test
+    public void compositeKeysAreMatched() {
+        List<Object[]> keys = Arrays.asList(new Object[]{3, 4L}, new Object[]{12, 0L},
+                                            new Object[]{0, 9L});
+
+        List<NumberData> dtos = dao.getDtos(NumberData.class, "PAIR_NUMBERS", keys);
+        assertThat(dtos.get(0).getIntegerValue(), is(3));
+        assertThat(dtos.get(0).getLongValue(), is(4L));
+        assertThat(dtos.get(1), is(nullValue()));
+        assertThat(dtos.get(2).getLongValue(), is(9L));
+    }
+
+    @Test
+    public void manyKeysAreJoinedFromATemporaryTable() {
+        dao.setKeyTableThreshold(10);
+        List<Object> keys = new ArrayList<Object>();
+        for (int i = -5; i < 105; i++) {
+            keys.add(i);
+        }
+
+        assertDtos(keys, dao.getDtos(NumberData.class, "SINGLE_NUMBERS", keys));
+        // the temporary table is dropped after each call
+        assertDtos(keys, dao.getDtos(NumberData.class, "SINGLE_NUMBERS", keys));
+
+        List<Object[]> pairs = new ArrayList<Object[]>();
+        for (int i = 0; i < 30; i++) {
+            pairs.add(new Object[]{i % 12, (long) i % 10});
+        }
+        List<NumberData> dtos = dao.getDtos(NumberData.class, "PAIR_NUMBERS", pairs);
+        for (int i = 0; i < 30; i++) {
+            if (i % 12 < 10) {
+                assertThat(dtos.get(i).getIntegerValue(), is(i % 12));
+                assertThat(dtos.get(i).getLongValue(), is((long) i % 10));
+            } else {
+                assertThat(dtos.get(i), is(nullValue()));
+            }
+        }
+    }
+
+    @Test
+    public void keysOfOtherClassesThanTheColumnAreMatched() {
+        List<Object> keys = Arrays.<Object>asList("42", 7L, new BigDecimal("3.00"), (short) 5,
+                                                  8.0, " 9 ");
+        List<NumberData> dtos = dao.getDtos(NumberData.class, "SINGLE_NUMBERS", keys);
+        assertThat(dtos.get(0).getLongValue(), is(420L));
+        assertThat(dtos.get(1).getLongValue(), is(70L));
+        assertThat(dtos.get(2).getLongValue(), is(30L));
+        assertThat(dtos.get(3).getLongValue(), is(50L));
+        assertThat(dtos.get(4).getLongValue(), is(80L));
+        assertThat(dtos.get(5).getLongValue(), is(90L));
+
+        // through a temporary table of the keys
+        dao.setKeyTableThreshold(1);
+        assertThat(dao.getDtos(NumberData.class, "SINGLE_NUMBERS", keys).get(0).getLongValue(),
+                   is(420L));
+    }
+
+    @Test
+    public void decimalKeysAreMatchedByValue() {
+        List<NumberData> dtos = dao.getDtos(NumberData.class, "DECIMAL_NUMBERS",
+                                            Arrays.<Object>asList(1.5, "2.250", 3.0));
+        assertThat(dtos.get(0).getLongValue(), is(15L));
+        assertThat(dtos.get(1).getLongValue(), is(225L));
+        assertThat(dtos.get(2), is(nullValue()));
+    }
+
+    @Test
+    public void keysComparedRegardlessOfCaseAreMatched() {
+        List<CodeData> dtos = dao.getDtos(CodeData.class, "CODED_NUMBERS",
+                                          Arrays.<Object>asList("abc", "DEF", "xyz"));
+        assertThat(dtos.get(0).getCode(), is("ABC"));
+        assertThat(dtos.get(1).getLongValue(), is(2L));
+        assertThat(dtos.get(2), is(nullValue()));
+        assertThat(dao.getDto(CodeData.class, "CODED_NUMBERS", "abc").getLongValue(), is(1L));
+    }
+
+    @Test(expected = DataExtractionException.class)
+    public void keysOfDifferentLengthsAreRejected() {
+        List<Object> keys = Arrays.<Object>asList(1, new Object[]{1, 2L});
+        dao.getDtos(NumberData.class, "PAIR_NUMBERS", keys);
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    /**
+     * Checks that each DTO is the row of its integer key, or NULL for the keys not between
+     * 0 and 99
+     */
+    private void assertDtos(List<Object> keys, List<NumberData> dtos) {
+        assertThat(dtos.size(), is(keys.size()));
+        for (int i = 0; i < keys.size(); i++) {
+            int key = ((Number) keys.get(i)).intValue();
+            if ((key >= 0) && (key < 100)) {
+                assertThat(dtos.get(i).getIntegerValue(), is(key));
+                assertThat(dtos.get(i).getLongValue(), is(key * 10L));
+            } else {
+                assertThat(dtos.get(i), is(nullValue()));
+            }
+        }
+    }
+
+    // ---- Inner classes -----------------------------------------------------
+
+    public static class CodeData {
+
+        private String code;
+        private long longValue;
+
+        public String getCode() {
+            return code;
+        }
+
+        public void setCode(String code) {
+            this.code = code;
+        }
+
+        public long getLongValue() {
+            return longValue;
+        }
+
+        public void setLongValue(long longValue) {
+            this.longValue = longValue;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.dao.RdoBinding;
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.test.dto.SimpleInteger;
+
+/**
+ * Tests the query options of the retrieval operations, over a single physical connection
+ * handed out through a different proxy on every getConnection, like a connection pool.
+ *
+ * @author Kostas Symeonidis
+ */
+public class QueryOptionsTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    /**
+     * The values of the setReadOnly calls on the pooled connections
+     */
+    private final List<Object> readOnlyCalls = new ArrayList<Object>();
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:query-options");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE option_ints (integer_value INT NOT NULL PRIMARY KEY)");
+        for (int i = 0; i < 10; i++) {
+            stmt.execute("INSERT INTO option_ints VALUES (" + i + ")");
+        }
+        stmt.close();
+        conn.commit();
+
+        DataSource pool = (DataSource) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[]{DataSource.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getConnection")) {
+                            return pooledConnection();
+                        } else if (method.getName().equals("toString")) {
+                            return "pool";
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        this.dao = new RdoDao(pool);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE option_ints");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void maxRowsDoNotLeakThroughCachedStatements() {
+        dao.setStatementCacheSize(4, true);
+        QueryOptions options = new QueryOptions();
+        options.setMaxRows(3);
+        options.setFetchSize(2);
+        options.setQueryTimeout(5);
+
+        assertThat(dao.getDtoList(options, SimpleInteger.class, "OPTION_INTS", null).size(),
+                   is(3));
+        assertThat(dao.getDtoList(SimpleInteger.class, "OPTION_INTS", null).size(), is(10));
+        assertThat(dao.getStatementCache().getHits(), is(1L));
+    }
+
+    @Test
+    public void readOnlyConnectionsAreSetBackToReadWrite() throws Exception {
+        QueryOptions options = new QueryOptions();
+        options.setReadOnly(true);
+
+        SimpleInteger dto = dao.getDto(options, SimpleInteger.class, "OPTION_INTS", 7);
+        assertThat(dto.getIntegerValue(), is(7));
+        assertThat(readOnlyCalls, is(Arrays.<Object>asList(true, false)));
+
+        RdoCursor<SimpleInteger> cursor = dao.iterateDtos(options, SimpleInteger.class,
+                                                          "OPTION_INTS", null);
+        cursor.close();
+        assertThat(readOnlyCalls.size(), is(4));
+        assertThat(conn.isReadOnly(), is(false));
+
+        dao.getDto(SimpleInteger.class, "OPTION_INTS", 7);
+        assertThat(readOnlyCalls.size(), is(4));
+    }
+
+    @Test
+    public void daoDefaultsAreReplacedByTheOptionsOfACall() {
+        QueryOptions defaults = new QueryOptions();
+        defaults.setMaxRows(2);
+        dao.setQueryOptions(defaults);
+        defaults.setMaxRows(4);
+
+        assertThat(dao.getDtoList(SimpleInteger.class, "OPTION_INTS", null).size(), is(2));
+        assertThat(dao.getDtoList(new QueryOptions(), SimpleInteger.class, "OPTION_INTS",
+                                  null).size(), is(10));
+
+        RdoBinding<SimpleInteger> binding = dao.bind(SimpleInteger.class, "OPTION_INTS");
+        assertThat(binding.getList(null).size(), is(2));
+        assertThat(binding.withOptions(defaults).getList(null).size(), is(4));
+    }
+
+    @Test
+    public void scrollableCursorsAreIterated() {
+        QueryOptions options = new QueryOptions();
+        options.setResultSetType(ResultSet.TYPE_SCROLL_INSENSITIVE);
+
+        int sum = 0;
+        RdoCursor<SimpleInteger> cursor = dao.iterateDtos(options, SimpleInteger.class,
+                                                          "OPTION_INTS", null);
+        try {
+            for (SimpleInteger dto : cursor) {
+                sum += dto.getIntegerValue();
+            }
+        } finally {
+            cursor.close();
+        }
+        assertThat(sum, is(45));
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    /**
+     * Returns a new proxy of the physical connection, which is not closed by close and
+     * records the setReadOnly calls
+     */
+    private Connection pooledConnection() {
+        return (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[]{Connection.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        String name = method.getName();
+                        if (name.equals("close")) {
+                            return null;
+                        } else if (name.equals("setReadOnly")) {
+                            readOnlyCalls.add(args[0]);
+                        }
+                        try {
+                            return method.invoke(conn, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+}
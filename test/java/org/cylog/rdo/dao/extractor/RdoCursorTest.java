@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.test.dto.SimpleInteger;
+import org.cylog.rdo.util.SqlResourceUtil;
+
+/**
+ * Tests the cursors of iterateDtos and the scans of scanDtos.
+ *
+ * @author Kostas Symeonidis
+ */
+public class RdoCursorTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:rdo-cursor");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE cursor_ints (integer_value INT NOT NULL)");
+        stmt.close();
+
+        PreparedStatement pstmt = conn.prepareStatement("INSERT INTO cursor_ints VALUES (?)");
+        for (int i = 0; i < 1000; i++) {
+            pstmt.setInt(1, i);
+            pstmt.executeUpdate();
+        }
+        pstmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+        this.dao.setCursorFetchSize(100);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE cursor_ints");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void rowsAreIteratedAndTheConnectionReleased() {
+        int connections = SqlResourceUtil.connectionCount;
+
+        RdoCursor<SimpleInteger> cursor = dao.iterateDtos(SimpleInteger.class, "CURSOR_INTS",
+                                                          "integer_value >= ? ORDER BY 1", 10);
+        assertThat(SqlResourceUtil.connectionCount, is(connections + 1));
+
+        int expected = 10;
+        try {
+            for (SimpleInteger dto : cursor) {
+                assertThat(dto.getIntegerValue(), is(expected++));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        assertThat(expected, is(1000));
+        assertThat(cursor.getRowCount(), is(990));
+        assertThat(cursor.isClosed(), is(true));
+        assertThat(SqlResourceUtil.connectionCount, is(connections));
+    }
+
+    @Test
+    public void closingEarlyReleasesTheConnection() {
+        int connections = SqlResourceUtil.connectionCount;
+
+        RdoCursor<SimpleInteger> cursor = dao.bind(SimpleInteger.class, "CURSOR_INTS")
+                .iterateFromSql("SELECT integer_value FROM cursor_ints ORDER BY 1");
+        try {
+            assertThat(cursor.next().getIntegerValue(), is(0));
+            assertThat(cursor.next().getIntegerValue(), is(1));
+        } finally {
+            cursor.close();
+        }
+
+        assertThat(cursor.hasNext(), is(false));
+        assertThat(SqlResourceUtil.connectionCount, is(connections));
+        cursor.close();
+        assertThat(SqlResourceUtil.connectionCount, is(connections));
+    }
+
+    @Test
+    public void scansRefillASingleDto() {
+        final List<SimpleInteger> seen = new ArrayList<SimpleInteger>();
+        final long[] sum = new long[1];
+
+        int visited = dao.scanDtos(SimpleInteger.class, "CURSOR_INTS", null,
+                                   new RdoVisitor<SimpleInteger>() {
+                                       public boolean visit(SimpleInteger dto) {
+                                           if (seen.isEmpty() || (seen.get(0) != dto)) {
+                                               seen.add(dto);
+                                           }
+                                           sum[0] += dto.getIntegerValue();
+                                           return true;
+                                       }
+                                   });
+
+        assertThat(visited, is(1000));
+        assertThat(sum[0], is(999L * 1000 / 2));
+        assertThat(seen.size(), is(1));
+    }
+
+    @Test
+    public void scansStopWhenTheVisitorDoes() {
+        int connections = SqlResourceUtil.connectionCount;
+        dao.setCompileMappers(true);
+
+        int visited = dao.bind(SimpleInteger.class, "CURSOR_INTS").scanFromSql(
+                "SELECT integer_value FROM cursor_ints WHERE integer_value > ? ORDER BY 1",
+                new RdoVisitor<Object>() {
+                    public boolean visit(Object dto) {
+                        return ((SimpleInteger) dto).getIntegerValue() < 20;
+                    }
+                }, 9);
+
+        assertThat(visited, is(11));
+        assertThat(SqlResourceUtil.connectionCount, is(connections));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void exhaustedCursorHasNoNext() {
+        RdoCursor<SimpleInteger> cursor = dao.iterateDtos(SimpleInteger.class, "CURSOR_INTS",
+                                                          "integer_value < 0");
+        try {
+            assertThat(cursor.hasNext(), is(false));
+            assertThat(cursor.isClosed(), is(true));
+            cursor.next();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.bean.PrimitiveNullPolicy;
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.exception.DataExtractionException;
+import org.cylog.rdo.exception.ModelNotSupportedException;
+import org.cylog.rdo.test.dto.ImmutableNumberData;
+import org.cylog.rdo.test.dto.NumberData;
+
+/**
+ * RdoObjectExtractor Tester.
+ *
+ * @author Kostas Symeonidis
+ */
+public class RdoObjectExtractorTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:object-extractor");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE numbers (integer_value INT NOT NULL, " +
+                     "integer_value_nullable INT, long_value BIGINT NOT NULL, " +
+                     "long_value_nullable BIGINT, float_value REAL NOT NULL, " +
+                     "float_value_nullable REAL, double_value DOUBLE NOT NULL, " +
+                     "double_value_nullable DOUBLE)");
+        stmt.execute("INSERT INTO numbers VALUES (1001, 1002, 2001, 2002, 1.5, 2.5, 3.5, 4.5)");
+        stmt.execute("INSERT INTO numbers VALUES (1003, NULL, 2003, NULL, 5.5, NULL, 6.5, NULL)");
+        stmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE numbers");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void readTableColumns() {
+        NumberData n = dao.getDto(NumberData.class, "NUMBERS", 1003);
+
+        assertThat(n.getIntegerValue(), is(1003));
+        assertThat(n.getIntegerValueNullable(), is(nullValue()));
+        assertThat(n.getLongValue(), is(2003L));
+        assertThat(n.getFloatValue(), is(5.5f));
+        assertThat(n.getDoubleValue(), is(6.5));
+        assertThat(n.getDoubleValueNullable(), is(nullValue()));
+    }
+
+    @Test
+    public void anonymousClassesAreMerged() {
+        NumberData n = dao.mergeDto(new NumberData() { }, "NUMBERS", 1003);
+
+        assertThat(n.getIntegerValue(), is(1003));
+        assertThat(n.getLongValue(), is(2003L));
+        assertThat(n.getDoubleValue(), is(6.5));
+    }
+
+    @Test
+    public void readReorderedColumnsFromSql() {
+        String sql = "SELECT double_value, long_value_nullable, integer_value FROM numbers " +
+                     "ORDER BY integer_value";
+
+        // twice, the second time with the cached column indexes
+        for (int i = 0; i < 2; i++) {
+            List<NumberData> list = dao.getDtoListFromSql(NumberData.class, "NUMBERS", sql);
+
+            assertThat(list.size(), is(2));
+            assertThat(list.get(0).getIntegerValue(), is(1001));
+            assertThat(list.get(0).getLongValueNullable(), is(2002L));
+            assertThat(list.get(0).getDoubleValue(), is(3.5));
+            assertThat(list.get(0).getLongValue(), is(0L));
+            assertThat(list.get(0).getIntegerValueNullable(), is(nullValue()));
+            assertThat(list.get(1).getLongValueNullable(), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void readAliasedColumnsWithCompiledMapper() {
+        dao.setCompileMappers(true);
+
+        NumberData n = dao.getDtoFromSql(
+                NumberData.class, "NUMBERS",
+                "SELECT 7 AS float_value, integer_value FROM numbers WHERE integer_value = ?",
+                1001);
+
+        assertThat(n.getIntegerValue(), is(1001));
+        assertThat(n.getFloatValue(), is(7f));
+        assertThat(n.getDoubleValue(), is(0.0));
+    }
+
+    @Test
+    public void nullIntoPrimitive() {
+        assertThat(mergeNullIntoPrimitive(PrimitiveNullPolicy.ZERO), is(0));
+        assertThat(mergeNullIntoPrimitive(PrimitiveNullPolicy.SKIP), is(5));
+    }
+
+    @Test
+    public void nullIntoPrimitiveWithCompiledMapper() {
+        dao.setCompileMappers(true);
+
+        assertThat(mergeNullIntoPrimitive(PrimitiveNullPolicy.ZERO), is(0));
+        assertThat(mergeNullIntoPrimitive(PrimitiveNullPolicy.SKIP), is(5));
+    }
+
+    @Test(expected = DataExtractionException.class)
+    public void nullIntoPrimitiveFails() {
+        mergeNullIntoPrimitive(PrimitiveNullPolicy.FAIL);
+    }
+
+    @Test(expected = DataExtractionException.class)
+    public void nullIntoPrimitiveFailsWithCompiledMapper() {
+        dao.setCompileMappers(true);
+        mergeNullIntoPrimitive(PrimitiveNullPolicy.FAIL);
+    }
+
+    @Test
+    public void readWithConstructor() {
+        assertImmutableNumbers(dao.getDtoList(ImmutableNumberData.class, "NUMBERS",
+                                              "integer_value > ? ORDER BY integer_value", 0));
+    }
+
+    @Test
+    public void readWithConstructorAndCompiledMapper() {
+        dao.setCompileMappers(true);
+        assertImmutableNumbers(dao.getDtoList(ImmutableNumberData.class, "NUMBERS",
+                                              "integer_value > ? ORDER BY integer_value", 0));
+    }
+
+    @Test(expected = ModelNotSupportedException.class)
+    public void mergeIntoConstructorMappedFails() {
+        ImmutableNumberData n = new ImmutableNumberData(1, null, 2L, null);
+        dao.mergeDto(n, "NUMBERS", 1001);
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    private void assertImmutableNumbers(List<ImmutableNumberData> list) {
+        assertThat(list.size(), is(2));
+
+        assertThat(list.get(0).getIntegerValue(), is(1001));
+        assertThat(list.get(0).getIntegerValueNullable(), is(1002));
+        assertThat(list.get(0).getLongValue(), is(2001L));
+        assertThat(list.get(0).getDoubleValueNullable(), is(4.5));
+
+        assertThat(list.get(1).getIntegerValue(), is(1003));
+        assertThat(list.get(1).getIntegerValueNullable(), is(nullValue()));
+        assertThat(list.get(1).getDoubleValueNullable(), is(nullValue()));
+    }
+
+    /**
+     * Merges a NULL into the primitive integerValue of a DTO whose value is 5
+     */
+    private int mergeNullIntoPrimitive(PrimitiveNullPolicy policy) {
+        NumberData n = new NumberData();
+        n.setIntegerValue(5);
+
+        dao.setPrimitiveNullPolicy(policy);
+        dao.mergeDtoFromSql(n, "NUMBERS", "SELECT integer_value_nullable AS integer_value, " +
+                                          "long_value FROM numbers WHERE integer_value = 1003");
+
+        assertThat(n.getLongValue(), is(2003L));
+        return n.getIntegerValue();
+    }
+}
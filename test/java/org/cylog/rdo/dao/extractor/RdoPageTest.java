@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.dao.extractor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.bean.ColumnModel;
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.dialect.MySqlDialect;
+import org.cylog.rdo.dialect.SqlDialect;
+import org.cylog.rdo.test.dto.NumberData;
+
+/**
+ * Tests the keyset pages of getDtoPage, over a table with a primary key of two columns.
+ *
+ * @author Kostas Symeonidis
+ */
+public class RdoPageTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private RdoDao dao;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:rdo-page");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE paged_numbers (long_value BIGINT NOT NULL, " +
+                     "integer_value INT NOT NULL, PRIMARY KEY (integer_value, long_value))");
+        for (int i = 4; i >= 0; i--) {
+            for (int l = 0; l < 7; l++) {
+                stmt.execute("INSERT INTO paged_numbers VALUES (" + l + ", " + i + ")");
+            }
+        }
+        stmt.close();
+        conn.commit();
+
+        this.dao = new RdoDao(ds);
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE paged_numbers");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void pagesFollowTheKeyOrder() {
+        List<Integer> sizes = readAllPages(10);
+        assertThat(sizes, is(Arrays.asList(10, 10, 10, 5)));
+    }
+
+    @Test
+    public void fullLastPageHasNoNext() {
+        List<Integer> sizes = readAllPages(7);
+        assertThat(sizes, is(Arrays.asList(7, 7, 7, 7, 7)));
+    }
+
+    @Test
+    public void expandedKeyConditionReadsTheSamePages() {
+        dao.setSqlDialect(MySqlDialect.INSTANCE);
+        List<Integer> sizes = readAllPages(6);
+        assertThat(sizes, is(Arrays.asList(6, 6, 6, 6, 6, 5)));
+    }
+
+    @Test
+    public void dialectsAppendTheKeyCondition() {
+        ColumnModel[] keys = new ColumnModel[]{
+                new ColumnModel(1, "A", Types.INTEGER, 32, 0, false),
+                new ColumnModel(2, "B", Types.VARCHAR, 10, 0, false),
+                new ColumnModel(3, "C", Types.BIGINT, 64, 0, false)};
+
+        StringBuilder sb = new StringBuilder();
+        SqlDialect.forProductName("HSQL Database Engine").appendKeyAfter(sb, keys);
+        assertThat(sb.toString(),
+                   is("(a, b, c) > (CAST(? AS INTEGER), CAST(? AS VARCHAR(10)), " +
+                      "CAST(? AS BIGINT))"));
+
+        sb = new StringBuilder();
+        SqlDialect mysql = SqlDialect.forProductName("MySQL");
+        mysql.appendKeyAfter(sb, keys);
+        assertThat(sb.toString(),
+                   is("a >= ? AND ((a > ?) OR (a = ? AND b > ?) OR (a = ? AND b = ? AND c > ?))"));
+        assertThat(Arrays.asList(mysql.getKeyAfterParameters(new Object[]{1, 2, 3})),
+                   is(Arrays.<Object>asList(1, 1, 1, 2, 1, 2, 3)));
+    }
+
+    @Test
+    public void continuationTokensDecodeToTheKey() {
+        Timestamp ts = new Timestamp(1400000000000L);
+        ts.setNanos(123456789);
+        Object[] key = new Object[]{7, 8L, "a:b", ts, null};
+
+        RdoPage<NumberData> page = new RdoPage<NumberData>(new ArrayList<NumberData>(), key);
+        Object[] decoded = RdoPage.decodeToken(page.getContinuationToken());
+        assertThat(Arrays.asList(decoded), is(Arrays.asList(key)));
+
+        assertThat(RdoPage.decodeToken(null), is(nullValue()));
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    /**
+     * Reads all the pages of the table through their continuation tokens, checking that the
+     * rows come in key order, and returns the size of each page
+     */
+    private List<Integer> readAllPages(int pageSize) {
+        List<Integer> sizes = new ArrayList<Integer>();
+        int row = 0;
+
+        String token = null;
+        RdoPage<NumberData> page;
+        do {
+            page = dao.getDtoPage(NumberData.class, "PAGED_NUMBERS", RdoPage.decodeToken(token),
+                                  pageSize);
+            for (NumberData dto : page.getDtos()) {
+                assertThat(dto.getIntegerValue(), is(row / 7));
+                assertThat(dto.getLongValue(), is((long) (row % 7)));
+                row++;
+            }
+            sizes.add(page.getDtos().size());
+            token = page.getContinuationToken();
+        } while (page.hasNext());
+
+        assertThat(row, is(35));
+        return sizes;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.test.dto;
+
+import org.cylog.rdo.annotation.RdoConstructor;
+import org.cylog.rdo.annotation.RdoTable;
+
+/**
+ * An immutable DTO of the NUMBERS table whose mapper is generated at build time, only
+ * used by the tests of the generated mappers.
+ *
+ * @author Kostas Symeonidis
+ */
+@RdoTable("NUMBERS")
+public class GeneratedImmutableNumberData {
+
+    // ---- Member Variables --------------------------------------------------
+
+    private final int integerValue;
+    private final Integer integerValueNullable;
+    private final long longValue;
+    private final Double doubleValueNullable;
+
+    // ---- Constructors ------------------------------------------------------
+
+    @RdoConstructor({"integerValue", "INTEGER_VALUE_NULLABLE", "longValue",
+                     "doubleValueNullable"})
+    public GeneratedImmutableNumberData(int integerValue, Integer integerValueNullable,
+                                        long longValue, Double doubleValueNullable) {
+        this.integerValue = integerValue;
+        this.integerValueNullable = integerValueNullable;
+        this.longValue = longValue;
+        this.doubleValueNullable = doubleValueNullable;
+    }
+
+    // ---- Bean Properties (Read-Only) ---------------------------------------
+
+    public int getIntegerValue() {
+        return integerValue;
+    }
+
+    public Integer getIntegerValueNullable() {
+        return integerValueNullable;
+    }
+
+    public long getLongValue() {
+        return longValue;
+    }
+
+    public Double getDoubleValueNullable() {
+        return doubleValueNullable;
+    }
+}
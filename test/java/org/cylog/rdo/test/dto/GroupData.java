@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.test.dto;
+
+import java.util.List;
+
+/**
+ * Class GroupData, a parent of NumberData members.
+ *
+ * @author Kostas Symeonidis
+ */
+public class GroupData {
+
+    // ---- Member Variables --------------------------------------------------
+
+    private int integerValue;
+    private long longValue;
+    private List<NumberData> members;
+
+    // ---- Constructors ------------------------------------------------------
+
+    public GroupData() {
+        // empty
+    }
+
+    // ---- Bean Properties ---------------------------------------------------
+
+    public int getIntegerValue() {
+        return integerValue;
+    }
+
+    public void setIntegerValue(int integerValue) {
+        this.integerValue = integerValue;
+    }
+
+    public long getLongValue() {
+        return longValue;
+    }
+
+    public void setLongValue(long longValue) {
+        this.longValue = longValue;
+    }
+
+    public List<NumberData> getMembers() {
+        return members;
+    }
+
+    public void setMembers(List<NumberData> members) {
+        this.members = members;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.bean.TableModel;
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.test.dto.SimpleInteger;
+
+/**
+ * Tests the bulk retrieval of table models.
+ *
+ * @author Kostas Symeonidis
+ */
+public class DatabaseMetadataUtilTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private JDBCDataSource ds;
+    private Connection conn;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        this.ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:metadata-util");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE meta_first (id INT NOT NULL, name VARCHAR(20))");
+        stmt.execute("CREATE TABLE meta_second (id BIGINT NOT NULL, amount DECIMAL(10,2), " +
+                     "flag CHAR(1))");
+        stmt.execute("CREATE TABLE table_of_ints (integer_value INT NOT NULL)");
+        stmt.execute("INSERT INTO table_of_ints VALUES (42)");
+        stmt.close();
+        conn.commit();
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE meta_first");
+            stmt.execute("DROP TABLE meta_second");
+            stmt.execute("DROP TABLE table_of_ints");
+            stmt.execute("DROP TABLE dup_table IF EXISTS");
+            stmt.execute("DROP SCHEMA meta_other IF EXISTS CASCADE");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void retrieveAllTableModelsMatchesSingleRetrieval() throws Exception {
+        List<TableModel> models = DatabaseMetadataUtil.retrieveAllTableModels(
+                conn.getMetaData(), "PUBLIC", "META\\_%");
+
+        assertThat(models.size(), is(2));
+        for (TableModel model : models) {
+            TableModel single = DatabaseMetadataUtil.retrieveTableModel(conn.getMetaData(),
+                                                                        model.getTableName());
+            assertThat(model.getColumnsAsCommaList(), is(single.getColumnsAsCommaList()));
+        }
+        assertThat(models.get(1).getColumns().get(1).getColumnName(), is("AMOUNT"));
+        assertThat(models.get(1).getColumns().get(1).isNullable(), is(true));
+    }
+
+    @Test
+    public void daoLoadsTableModelsUpFront() {
+        RdoDao dao = new RdoDao(ds);
+        assertThat(dao.loadTableModels("PUBLIC", null), is(3));
+        assertThat(dao.loadTableModels("PUBLIC", null), is(0));
+
+        assertThat(dao.getDto(SimpleInteger.class, "TABLE_OF_INTS", 42).getIntegerValue(), is(42));
+    }
+
+    @Test
+    public void daoLoadsTableModelsInBackground() throws Exception {
+        RdoDao dao = new RdoDao(ds, "PUBLIC", true);
+
+        assertThat(dao.getDto(SimpleInteger.class, "TABLE_OF_INTS", 42).getIntegerValue(), is(42));
+        assertThat(dao.loadTableModelsInBackground("PUBLIC", "META%").get(), is(0));
+    }
+
+    @Test
+    public void bulkLoadedModelsAreFoundInAnyCase() {
+        AtomicInteger metadataCalls = new AtomicInteger();
+        RdoDao dao = new RdoDao(countMetadataCalls(ds, metadataCalls));
+        assertThat(dao.loadTableModels(null, null), is(3));
+
+        metadataCalls.set(0);
+        assertThat(dao.getDto(SimpleInteger.class, "table_of_ints", 42).getIntegerValue(), is(42));
+        assertThat(dao.getDto(SimpleInteger.class, "Table_Of_Ints", 42).getIntegerValue(), is(42));
+        assertThat(metadataCalls.get(), is(0));
+    }
+
+    @Test
+    public void tablesOfTheSameNameInOtherSchemasAreNotLoaded() throws Exception {
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE dup_table (id INT NOT NULL)");
+        stmt.execute("CREATE SCHEMA meta_other");
+        stmt.execute("CREATE TABLE meta_other.dup_table (id INT NOT NULL)");
+        stmt.close();
+
+        RdoDao dao = new RdoDao(ds);
+        assertThat(dao.loadTableModels("%", "DUP\\_TABLE"), is(0));
+        // the scan is limited to the schema of the connection by default
+        assertThat(dao.loadTableModels(null, "DUP\\_TABLE"), is(1));
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    /**
+     * Returns a data source of the connections of the given one, counting the calls for
+     * their database metadata
+     */
+    private DataSource countMetadataCalls(final DataSource target, final AtomicInteger calls) {
+        return (DataSource) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[]{DataSource.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        Object result = call(target, method, args);
+                        if (method.getName().equals("getConnection")) {
+                            return countMetadataCalls((Connection) result, calls);
+                        }
+                        return result;
+                    }
+                });
+    }
+
+    private Connection countMetadataCalls(final Connection conn, final AtomicInteger calls) {
+        return (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[]{Connection.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        if (method.getName().equals("getMetaData")) {
+                            calls.incrementAndGet();
+                        }
+                        return call(conn, method, args);
+                    }
+                });
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.test.dto.SimpleInteger;
+
+/**
+ * Tests writing and reading the binary snapshot of the models of a DAO.
+ *
+ * @author Kostas Symeonidis
+ */
+public class ModelSnapshotTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private JDBCDataSource ds;
+    private Connection conn;
+    private File file;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        this.ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:model-snapshot");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE snapshot_ints (integer_value INT NOT NULL, " +
+                     "amount DECIMAL(10,2))");
+        stmt.execute("INSERT INTO snapshot_ints VALUES (7, 1.25)");
+        stmt.close();
+        conn.commit();
+
+        this.file = File.createTempFile("rdo-snapshot", ".bin");
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE snapshot_ints");
+            stmt.close();
+            this.conn.close();
+        }
+        this.file.delete();
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void snapshotRestoresModelsWithoutMetadata() throws Exception {
+        RdoDao dao = new RdoDao(ds);
+        assertThat(dao.getDto(SimpleInteger.class, "SNAPSHOT_INTS", 7).getIntegerValue(), is(7));
+        dao.writeModelSnapshot(file, "v1");
+
+        // no dataSource, so any metadata call would fail
+        RdoDao cold = new RdoDao();
+        assertThat(cold.readModelSnapshot(file, "v1"), is(2));
+
+        cold.setDataSource(ds);
+        assertThat(cold.getDto(SimpleInteger.class, "SNAPSHOT_INTS", 7).getIntegerValue(),
+                   is(7));
+    }
+
+    @Test
+    public void snapshotOfAnotherSchemaIsIgnored() throws Exception {
+        RdoDao dao = new RdoDao(ds);
+        dao.loadTableModels("PUBLIC", "SNAPSHOT%");
+        dao.writeModelSnapshot(file, "v1");
+
+        assertThat(ModelSnapshot.read(file, "v2"), is(nullValue()));
+        assertThat(new RdoDao().readModelSnapshot(file, "v2"), is(0));
+        assertThat(new RdoDao().readModelSnapshot(new File(file.getPath() + ".missing"), "v1"),
+                   is(0));
+    }
+
+    @Test
+    public void corruptEntryIsSkipped() throws Exception {
+        RdoDao dao = new RdoDao(ds);
+        dao.loadTableModels("PUBLIC", "SNAPSHOT%");
+        dao.writeModelSnapshot(file, "v1");
+
+        ModelSnapshot snapshot = ModelSnapshot.read(file, "v1");
+        assertThat(snapshot.getTableModels().size(), is(1));
+        assertThat(snapshot.getTableModels().get(0).getColumnsAsCommaList(),
+                   is("integer_value, amount"));
+        assertThat(snapshot.getTableModels().get(0).getColumns().get(1).getDecimalDigits(),
+                   is(2));
+
+        // flip the last byte of the table name, inside the payload of the only entry
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        long pos = 4 + 4 + 2 + 2 + 4 + 1 + 4 + 2 + "SNAPSHOT_INTS".length() - 1;
+        raf.seek(pos);
+        int b = raf.read();
+        raf.seek(pos);
+        raf.write(b ^ 0x01);
+        raf.close();
+
+        snapshot = ModelSnapshot.read(file, "v1");
+        assertThat(snapshot.getTableModels().size(), is(0));
+        assertThat(snapshot.getSkippedEntries(), is(1));
+    }
+}
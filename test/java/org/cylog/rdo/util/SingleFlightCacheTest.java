@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * SingleFlightCache Tester.
+ *
+ * @author Kostas Symeonidis
+ */
+public class SingleFlightCacheTest {
+
+    @Test
+    public void concurrentCallersLoadOnce() throws Exception {
+        final SingleFlightCache<String, String> cache = new SingleFlightCache<String, String>();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<String> results = new ArrayList<String>();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 16; i++) {
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+
+                    String value = cache.get("KEY", new Callable<String>() {
+                        public String call() throws Exception {
+                            loads.incrementAndGet();
+                            Thread.sleep(50);
+                            return "VALUE";
+                        }
+                    });
+                    synchronized (results) {
+                        results.add(value);
+                    }
+                }
+            };
+            t.start();
+            threads.add(t);
+        }
+
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertThat(loads.get(), is(1));
+        assertThat(results.size(), is(16));
+        for (String value : results) {
+            assertThat(value, is("VALUE"));
+        }
+        assertThat(cache.get("KEY"), is("VALUE"));
+    }
+
+    @Test
+    public void nullAndFailedLoadsAreNotCached() {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<String, String>();
+
+        assertThat(cache.get("KEY", new Callable<String>() {
+            public String call() {
+                return null;
+            }
+        }), is(nullValue()));
+        assertThat(cache.size(), is(0));
+
+        try {
+            cache.get("KEY", new Callable<String>() {
+                public String call() {
+                    throw new IllegalStateException("failed");
+                }
+            });
+            fail("The exception of the loader should be thrown");
+        } catch (IllegalStateException ise) {
+            assertThat(ise.getMessage(), is("failed"));
+        }
+        assertThat(cache.size(), is(0));
+        assertThat(cache.get("KEY"), is(nullValue()));
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2009,2014 Kostas Symeonidis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cylog.rdo.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.cylog.rdo.dao.RdoDao;
+import org.cylog.rdo.test.dto.SimpleInteger;
+
+/**
+ * Tests the cache of prepared statements, over a single physical connection handed out
+ * through a different proxy on every getConnection, like a connection pool. Statements
+ * are reused across the proxies only when the cache unwraps them.
+ *
+ * @author Kostas Symeonidis
+ */
+public class StatementCacheTest {
+
+    // ---- Member variables --------------------------------------------------
+
+    private Connection conn;
+    private DataSource pool;
+
+    // ---- Lifecycle ---------------------------------------------------------
+
+    @Before
+    public void setUpInMemoryDatabase() throws Exception {
+        JDBCDataSource ds = new JDBCDataSource();
+        ds.setUrl("jdbc:hsqldb:mem:statement-cache");
+        ds.setUser("SA");
+        ds.setPassword("");
+
+        this.conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE cached_ints (integer_value INT NOT NULL)");
+        stmt.execute("INSERT INTO cached_ints VALUES (11)");
+        stmt.execute("INSERT INTO cached_ints VALUES (12)");
+        stmt.close();
+        conn.commit();
+
+        this.pool = (DataSource) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[]{DataSource.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getConnection")) {
+                            return pooledConnection();
+                        } else if (method.getName().equals("toString")) {
+                            return "pool";
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @After
+    public void closeConnection() throws Exception {
+        if (this.conn != null) {
+            Statement stmt = conn.createStatement();
+            stmt.execute("DROP TABLE cached_ints");
+            stmt.close();
+            this.conn.close();
+        }
+    }
+
+    // ---- Tests -------------------------------------------------------------
+
+    @Test
+    public void statementsAreReusedWhileTheConnectionIsHeld() throws Exception {
+        StatementCache cache = new StatementCache(4);
+        Connection pooled = pooledConnection();
+
+        PreparedStatement first = cache.prepare(pooled, "SELECT 1 FROM cached_ints");
+        cache.release("SELECT 1 FROM cached_ints", first);
+        assertThat(cache.prepare(pooled, "SELECT 1 FROM cached_ints"), is(sameInstance(first)));
+        cache.release("SELECT 1 FROM cached_ints", first);
+        assertThat(cache.size(), is(1));
+
+        cache.releaseConnection(pooled);
+        assertThat(cache.size(), is(0));
+        assertThat(first.isClosed(), is(true));
+    }
+
+    @Test
+    public void statementsAreNotKeptPastTheConnectionByDefault() {
+        RdoDao dao = new RdoDao(pool);
+        dao.setStatementCacheSize(4);
+
+        assertThat(dao.getDto(SimpleInteger.class, "CACHED_INTS", 11).getIntegerValue(), is(11));
+        assertThat(dao.getDto(SimpleInteger.class, "CACHED_INTS", 12).getIntegerValue(), is(12));
+
+        StatementCache cache = dao.getStatementCache();
+        assertThat(cache.isUnwrapConnections(), is(false));
+        assertThat(cache.getMisses(), is(2L));
+        assertThat(cache.getHits(), is(0L));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void statementsArePreparedOncePerPhysicalConnectionWhenUnwrapping() {
+        RdoDao dao = new RdoDao(pool);
+        dao.setStatementCacheSize(4, true);
+
+        assertThat(dao.getDto(SimpleInteger.class, "CACHED_INTS", 11).getIntegerValue(), is(11));
+        assertThat(dao.getDto(SimpleInteger.class, "CACHED_INTS", 12).getIntegerValue(), is(12));
+        assertThat(dao.getDtoList(SimpleInteger.class, "CACHED_INTS", null).size(), is(2));
+        assertThat(dao.getDto(SimpleInteger.class, "CACHED_INTS", 13) == null, is(true));
+
+        StatementCache cache = dao.getStatementCache();
+        assertThat(cache.getMisses(), is(2L));
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getHitRate(), is(0.5));
+        assertThat(cache.size(), is(2));
+    }
+
+    @Test
+    public void statementsInUseAreNotShared() throws Exception {
+        StatementCache cache = new StatementCache(4);
+        Connection pooled = pooledConnection();
+
+        PreparedStatement first = cache.prepare(pooled, "SELECT 1 FROM cached_ints");
+        PreparedStatement second = cache.prepare(pooled, "SELECT 1 FROM cached_ints");
+        assertThat(second, is(not(sameInstance(first))));
+
+        cache.release("SELECT 1 FROM cached_ints", first);
+        cache.release("SELECT 1 FROM cached_ints", second);
+        assertThat(cache.size(), is(1));
+        assertThat(first.isClosed(), is(true));
+        assertThat(cache.prepare(pooled, "SELECT 1 FROM cached_ints"), is(sameInstance(second)));
+    }
+
+    @Test
+    public void leastRecentlyUsedStatementsAreEvicted() throws Exception {
+        StatementCache cache = new StatementCache(2);
+        Connection pooled = pooledConnection();
+
+        String[] sql = {"SELECT 1 FROM cached_ints", "SELECT 2 FROM cached_ints",
+                        "SELECT 3 FROM cached_ints"};
+        PreparedStatement[] pstmts = new PreparedStatement[sql.length];
+        for (int i = 0; i < sql.length; i++) {
+            pstmts[i] = cache.prepare(pooled, sql[i]);
+            cache.release(sql[i], pstmts[i]);
+        }
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.getEvictions(), is(1L));
+        assertThat(pstmts[0].isClosed(), is(true));
+        assertThat(pstmts[2].isClosed(), is(false));
+
+        cache.clear();
+        assertThat(cache.size(), is(0));
+        assertThat(pstmts[2].isClosed(), is(true));
+    }
+
+    // ---- Private methods ---------------------------------------------------
+
+    /**
+     * Returns a new proxy of the physical connection, which is not closed by close
+     */
+    private Connection pooledConnection() {
+        return (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[]{Connection.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        String name = method.getName();
+                        if (name.equals("close")) {
+                            return null;
+                        } else if (name.equals("isWrapperFor")) {
+                            return Boolean.TRUE;
+                        } else if (name.equals("unwrap")) {
+                            return conn;
+                        }
+                        try {
+                            return method.invoke(conn, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+}